@@ -11,6 +11,7 @@
 
 package com.vmware.admiral.adapter.docker.service;
 
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_BUILD_IMAGE_INSPECT_NAME_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_CONTAINER_COMMAND_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_CONTAINER_CONFIG_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_CONTAINER_CREATE_USE_LOCAL_IMAGE_WITH_PRIORITY;
@@ -59,6 +60,7 @@ import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExec
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_EXEC_ATTACH_STDOUT_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_EXEC_COMMAND_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_IMAGE_DATA_PROP_NAME;
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_IMAGE_FILE_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_IMAGE_FROM_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.SINCE;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.STD_ERR;
@@ -77,6 +79,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -94,6 +97,7 @@ import com.vmware.admiral.adapter.docker.util.DockerImage;
 import com.vmware.admiral.adapter.docker.util.DockerPortMapping;
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.util.AssertUtil;
+import com.vmware.admiral.common.util.ConcurrencyLimiter;
 import com.vmware.admiral.common.util.ConfigurationUtil;
 import com.vmware.admiral.common.util.ServiceUtils;
 import com.vmware.admiral.compute.ContainerHostUtil;
@@ -154,6 +158,9 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
 
     private SystemImageRetrievalManager imageRetrievalManager;
 
+    /** Completion handlers of the requests waiting for an image load, by host and image. */
+    private final Map<String, List<CompletionHandler>> imageLoadsInProgress = new HashMap<>();
+
     /**
      * Properties in an inspect response that we want to filter out
      *
@@ -173,6 +180,28 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
     );
     private static final String DELETE_CONTAINER_MISSING_ERROR = "error 404 for DELETE";
 
+    /**
+     * Maximum number of concurrent container start, stop and remove commands to a docker host.
+     */
+    private static final int HOST_POWER_OPERATION_CONCURRENCY = Integer.getInteger(
+            "com.vmware.admiral.adapter.docker.host.power.operation.concurrency", 8);
+
+    /**
+     * Limiters of the concurrent container start, stop and remove commands, by host. A limiter is
+     * dropped when the last command to its host has completed.
+     */
+    private final Map<String, HostLimiter> hostLimiters = new ConcurrentHashMap<>();
+
+    /**
+     * Maximum number of agent image loads running at the same time, e.g. while many hosts are
+     * being added at once.
+     */
+    private static final int AGENT_IMAGE_LOAD_CONCURRENCY = Integer.getInteger(
+            "com.vmware.admiral.adapter.docker.agent.image.load.concurrency", 4);
+
+    private final ConcurrencyLimiter agentImageLoadLimiter = new ConcurrencyLimiter(
+            AGENT_IMAGE_LOAD_CONCURRENCY);
+
     private volatile Integer retriesCount;
     private volatile Integer pullRetriesCount;
 
@@ -189,6 +218,13 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
         public boolean requestFailed;
     }
 
+    private static class HostLimiter {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(
+                HOST_POWER_OPERATION_CONCURRENCY);
+        /** Number of the queued and running commands to the host, updated in the map only. */
+        int commands;
+    }
+
     public static class AuthConfig {
         public String username;
         public String password;
@@ -478,11 +514,7 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
 
         if (SystemContainerDescriptions.getAgentImageNameAndVersion()
                 .equals(context.containerDescription.image)) {
-            String ref = SystemContainerDescriptions.AGENT_IMAGE_REFERENCE;
-
-            imageRetrievalManager.retrieveAgentImage(ref, context.request, (imageData) -> {
-                processLoadedImageData(context, imageData, ref, imageCompletionHandler);
-            });
+            processAgentImage(context, imageCompletionHandler);
         } else if (shouldTryCreateFromLocalImage(context.containerDescription)) {
             // try to create the container from a local image first. Only if the image is not
             // available it will be fetched according to the settings.
@@ -502,6 +534,18 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
             logInfo("Pulling image: %s %s", fullImageName, context.request.getRequestTrackingLog());
             processPullImageFromRegistry(context, createImageCommandInput, imageCompletionHandler);
         } else {
+            // concurrent requests for the same image on the same host wait for a single
+            // download and load instead of each loading the image
+            String imageLoadKey = context.commandInput.getDockerUri() + "|" + imageReference;
+            if (!registerImageLoad(imageLoadKey, imageCompletionHandler)) {
+                logInfo("Image %s is already being loaded to %s, waiting for it %s",
+                        imageReference, context.commandInput.getDockerUri(),
+                        context.request.getRequestTrackingLog());
+                return;
+            }
+            CompletionHandler imageLoadCompletionHandler = (o, ex) -> completeImageLoad(
+                    imageLoadKey, o, ex);
+
             // fetch the image first, then execute a image load command
             logInfo("Downloading image from: %s %s", imageReference,
                     context.request.getRequestTrackingLog());
@@ -509,7 +553,7 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
                 if (FILE_SCHEME.equals(imageReference.getScheme())) {
                     // for file scheme use the file and do not delete it (it is not a temp copy)
                     processDownloadedImage(context, new File(imageReference),
-                            imageCompletionHandler, false);
+                            imageLoadCompletionHandler, false);
                 } else {
                     // for not file scheme, download it to a temp file
                     File tempFile = File.createTempFile(DOWNLOAD_TEMPFILE_PREFIX, null);
@@ -527,7 +571,7 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
                                         this.logWarning("Failed to delete temp file: %s %s",
                                                 tempFile, context.request.getRequestTrackingLog());
                                     }
-                                    fail(context.request, ex);
+                                    imageLoadCompletionHandler.handle(null, ex);
                                 } else {
                                     logInfo("Finished download of %d bytes from %s to %s %s",
                                             tempFile.length(), o.getUri(),
@@ -535,7 +579,7 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
                                             context.request.getRequestTrackingLog());
 
                                     processDownloadedImage(context, tempFile,
-                                            imageCompletionHandler, true);
+                                            imageLoadCompletionHandler, true);
                                 }
                             });
 
@@ -544,43 +588,124 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
                 }
 
             } catch (IOException x) {
-                throw new RuntimeException("Failure downloading image from: " + imageReference
-                        + context.request.getRequestTrackingLog(), x);
+                imageLoadCompletionHandler.handle(null, new RuntimeException(
+                        "Failure downloading image from: " + imageReference
+                                + context.request.getRequestTrackingLog(), x));
             }
         }
     }
 
     /**
-     * read the temp file containing the downloaded image from the file system and proceed with
-     * imageCompletionHandler
+     * Makes sure the agent image is present on the host of the request. The image is loaded only
+     * if the host doesn't have it already, concurrent requests for the same host wait for a
+     * single load and the number of loads to all hosts at the same time is limited.
+     */
+    private void processAgentImage(RequestContext context,
+            CompletionHandler imageCompletionHandler) {
+        String ref = SystemContainerDescriptions.AGENT_IMAGE_REFERENCE;
+        String imageLoadKey = context.commandInput.getDockerUri() + "|" + ref;
+        if (!registerImageLoad(imageLoadKey, imageCompletionHandler)) {
+            logInfo("Agent image is already being loaded to %s, waiting for it %s",
+                    context.commandInput.getDockerUri(), context.request.getRequestTrackingLog());
+            return;
+        }
+
+        CommandInput inspectCommandInput = new CommandInput(context.commandInput)
+                .withProperty(DOCKER_BUILD_IMAGE_INSPECT_NAME_PROP_NAME,
+                        context.containerDescription.image);
+        context.executor.inspectImage(inspectCommandInput, (io, iex) -> {
+            if (iex == null) {
+                logInfo("Agent image %s is already present on %s, skipping load %s",
+                        context.containerDescription.image, context.commandInput.getDockerUri(),
+                        context.request.getRequestTrackingLog());
+                completeImageLoad(imageLoadKey, io, null);
+                return;
+            }
+
+            agentImageLoadLimiter.execute(() -> {
+                AtomicBoolean released = new AtomicBoolean();
+                CompletionHandler loadCompletionHandler = (o, ex) -> {
+                    if (released.compareAndSet(false, true)) {
+                        agentImageLoadLimiter.release();
+                    }
+                    completeImageLoad(imageLoadKey, o, ex);
+                };
+                try {
+                    imageRetrievalManager.retrieveAgentImage(ref, context.request,
+                            (imageData) -> processLoadedImageData(context, imageData, ref,
+                                    loadCompletionHandler));
+                } catch (Throwable e) {
+                    loadCompletionHandler.handle(null, e);
+                }
+            });
+        });
+    }
+
+    /**
+     * Registers the completion handler of a request for the image load with the given key.
+     * Returns <code>true</code> if no such load is in progress and the caller has to start it.
+     */
+    private boolean registerImageLoad(String imageLoadKey, CompletionHandler completionHandler) {
+        synchronized (imageLoadsInProgress) {
+            List<CompletionHandler> handlers = imageLoadsInProgress.get(imageLoadKey);
+            if (handlers != null) {
+                handlers.add(completionHandler);
+                return false;
+            }
+            handlers = new ArrayList<>();
+            handlers.add(completionHandler);
+            imageLoadsInProgress.put(imageLoadKey, handlers);
+            return true;
+        }
+    }
+
+    private void completeImageLoad(String imageLoadKey, Operation o, Throwable ex) {
+        List<CompletionHandler> handlers;
+        synchronized (imageLoadsInProgress) {
+            handlers = imageLoadsInProgress.remove(imageLoadKey);
+        }
+        if (handlers != null) {
+            handlers.forEach((handler) -> handler.handle(o, ex));
+        }
+    }
+
+    /**
+     * stream the file containing the downloaded image from the file system to the docker host
+     * and proceed with imageCompletionHandler
      *
      * @param context
-     * @param tempFile
+     * @param imageFile
      * @param imageCompletionHandler
      */
-    private void processDownloadedImage(RequestContext context, File tempFile,
+    private void processDownloadedImage(RequestContext context, File imageFile,
             CompletionHandler imageCompletionHandler, boolean isTempFile) {
+        String fileName = context.containerDescription.imageReference.toString();
+        if (!imageFile.isFile() || imageFile.length() == 0) {
+            if (isTempFile && !imageFile.delete()) {
+                this.logWarning("Failed to delete temp file: %s %s", imageFile,
+                        context.request.getRequestTrackingLog());
+            }
+            String errMsg = String.format("No content loaded for file: %s %s",
+                    fileName, context.request.getRequestTrackingLog());
+            this.logSevere(errMsg);
+            imageCompletionHandler.handle(null,
+                    new LocalizableValidationException(errMsg, "adapter.load.image.empty", fileName,
+                            context.request.getRequestTrackingLog()));
+            return;
+        }
 
-        Operation fileReadOp = Operation.createPatch(null)
-                .setContextId(context.request.getRequestId())
-                .setCompletion((o, ex) -> {
-                    if (ex != null) {
-                        fail(context.request, ex);
-                        return;
-                    }
-
-                    byte[] imageData = o.getBody(byte[].class);
-                    if (isTempFile && !tempFile.delete()) {
-                        this.logWarning("Failed to delete temp file: %s %s", tempFile,
-                                context.request.getRequestTrackingLog());
-                    }
-
-                    processLoadedImageData(context, imageData,
-                            context.containerDescription.imageReference.toString(),
-                            imageCompletionHandler);
-                });
+        logInfo("Streaming %d bytes of file: %s to host... %s", imageFile.length(), fileName,
+                context.request.getRequestTrackingLog());
 
-        FileUtils.readFileAndComplete(fileReadOp, tempFile);
+        CommandInput loadCommandInput = new CommandInput(context.commandInput)
+                .withProperty(DOCKER_IMAGE_FILE_PROP_NAME, imageFile);
+        context.executor.loadImage(loadCommandInput, (o, ex) -> {
+            if (isTempFile && !imageFile.delete()) {
+                this.logWarning("Failed to delete temp file: %s %s", imageFile,
+                        context.request.getRequestTrackingLog());
+            }
+            imageCompletionHandler.handle(o, ex);
+        });
     }
 
     private void processLoadedImageData(RequestContext context, byte[] imageData,
@@ -1223,21 +1348,54 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
         CommandInput commandInput = new CommandInput(context.commandInput).withProperty(
                 DOCKER_CONTAINER_ID_PROP_NAME, context.containerState.id);
 
-        context.executor.removeContainer(commandInput, (o, ex) -> {
-            if (ex != null) {
-                if (ex instanceof ProtocolException
-                        && ex.getMessage().contains(DELETE_CONTAINER_MISSING_ERROR)) {
-                    logWarning("Container %s not found", context.containerState.id);
-                    patchTaskStage(context.request, TaskStage.FINISHED, null);
+        executeOnHost(context, release -> {
+            context.executor.removeContainer(commandInput, (o, ex) -> {
+                release.run();
+                if (ex != null) {
+                    if (ex instanceof ProtocolException
+                            && ex.getMessage().contains(DELETE_CONTAINER_MISSING_ERROR)) {
+                        logWarning("Container %s not found", context.containerState.id);
+                        patchTaskStage(context.request, TaskStage.FINISHED, null);
+                    } else {
+                        logWarning("Failure while removing container [%s] of host [%s]",
+                                context.containerState.documentSelfLink,
+                                context.computeState.documentSelfLink);
+                        fail(context.request, o, ex);
+                    }
                 } else {
-                    logWarning("Failure while removing container [%s] of host [%s]",
-                            context.containerState.documentSelfLink,
-                            context.computeState.documentSelfLink);
-                    fail(context.request, o, ex);
+                    NetworkUtils.updateConnectedNetworks(getHost(), context.containerState, -1);
+                    patchTaskStage(context.request, TaskStage.FINISHED, null);
                 }
-            } else {
-                NetworkUtils.updateConnectedNetworks(getHost(), context.containerState, -1);
-                patchTaskStage(context.request, TaskStage.FINISHED, null);
+            });
+        });
+    }
+
+    /**
+     * Runs the given container command once the host of the request allows it, so that removing
+     * or powering many containers at once doesn't overload the host. The command must run the
+     * given callback when the host has responded.
+     */
+    private void executeOnHost(RequestContext context, Consumer<Runnable> command) {
+        String hostLink = context.computeState.documentSelfLink;
+        HostLimiter hostLimiter = hostLimiters.compute(hostLink, (link, current) -> {
+            HostLimiter result = current != null ? current : new HostLimiter();
+            result.commands++;
+            return result;
+        });
+        hostLimiter.limiter.execute(() -> {
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    hostLimiter.limiter.release();
+                    hostLimiters.computeIfPresent(hostLink,
+                            (link, current) -> --current.commands == 0 ? null : current);
+                }
+            };
+            try {
+                command.accept(release);
+            } catch (Throwable e) {
+                release.run();
+                fail(context.request, e);
             }
         });
     }
@@ -1253,26 +1411,29 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
         AtomicInteger retryCount = new AtomicInteger(retriesCount);
         CommandInput startCommandInput = new CommandInput(context.commandInput)
                 .withProperty(DOCKER_CONTAINER_ID_PROP_NAME, context.containerState.id);
-        context.executor.startContainer(startCommandInput, (o, ex) -> {
-            if (ex != null) {
-                if (RETRIABLE_HTTP_STATUSES.contains(o.getStatusCode())
-                        && retryCount.getAndIncrement() < maxRetryCount) {
-                    logWarning("Starting container %s failed with %s. Retries left %d",
-                            context.containerState.names.get(0), Utils.toString(ex),
-                            maxRetryCount - retryCount.get());
-                    processStartContainerWithRetry(context, retryCount.get(), maxRetryCount);
+        executeOnHost(context, release -> {
+            context.executor.startContainer(startCommandInput, (o, ex) -> {
+                release.run();
+                if (ex != null) {
+                    if (RETRIABLE_HTTP_STATUSES.contains(o.getStatusCode())
+                            && retryCount.getAndIncrement() < maxRetryCount) {
+                        logWarning("Starting container %s failed with %s. Retries left %d",
+                                context.containerState.names.get(0), Utils.toString(ex),
+                                maxRetryCount - retryCount.get());
+                        processStartContainerWithRetry(context, retryCount.get(), maxRetryCount);
+                    } else {
+                        logWarning("Failure while starting container [%s] of host [%s]",
+                                context.containerState.documentSelfLink,
+                                context.computeState.documentSelfLink);
+                        fail(context.request, o, ex);
+                    }
                 } else {
-                    logWarning("Failure while starting container [%s] of host [%s]",
-                            context.containerState.documentSelfLink,
-                            context.computeState.documentSelfLink);
-                    fail(context.request, o, ex);
+                    handleExceptions(context.request, context.operation, () -> {
+                        NetworkUtils.updateConnectedNetworks(getHost(), context.containerState, 1);
+                        inspectContainer(context);
+                    });
                 }
-            } else {
-                handleExceptions(context.request, context.operation, () -> {
-                    NetworkUtils.updateConnectedNetworks(getHost(), context.containerState, 1);
-                    inspectContainer(context);
-                });
-            }
+            });
         });
     }
 
@@ -1287,26 +1448,29 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
         AtomicInteger retryCount = new AtomicInteger(retriesCount);
         CommandInput stopCommandInput = new CommandInput(context.commandInput)
                 .withProperty(DOCKER_CONTAINER_ID_PROP_NAME, context.containerState.id);
-        context.executor.stopContainer(stopCommandInput, (o, ex) -> {
-            if (ex != null) {
-                if (RETRIABLE_HTTP_STATUSES.contains(o.getStatusCode())
-                        && retryCount.getAndIncrement() < maxRetryCount) {
-                    logWarning("Stopping container %s failed with %s. Retries left %d",
-                            context.containerState.names.get(0), Utils.toString(ex),
-                            maxRetryCount - retryCount.get());
-                    processStopContainerWithRetry(context, retryCount.get(), maxRetryCount);
+        executeOnHost(context, release -> {
+            context.executor.stopContainer(stopCommandInput, (o, ex) -> {
+                release.run();
+                if (ex != null) {
+                    if (RETRIABLE_HTTP_STATUSES.contains(o.getStatusCode())
+                            && retryCount.getAndIncrement() < maxRetryCount) {
+                        logWarning("Stopping container %s failed with %s. Retries left %d",
+                                context.containerState.names.get(0), Utils.toString(ex),
+                                maxRetryCount - retryCount.get());
+                        processStopContainerWithRetry(context, retryCount.get(), maxRetryCount);
+                    } else {
+                        logWarning("Failure while stopping container [%s] of host [%s]",
+                                context.containerState.documentSelfLink,
+                                context.computeState.documentSelfLink);
+                        fail(context.request, o, ex);
+                    }
                 } else {
-                    logWarning("Failure while stopping container [%s] of host [%s]",
-                            context.containerState.documentSelfLink,
-                            context.computeState.documentSelfLink);
-                    fail(context.request, o, ex);
+                    handleExceptions(context.request, context.operation, () -> {
+                        NetworkUtils.updateConnectedNetworks(getHost(), context.containerState, -1);
+                        inspectContainer(context);
+                    });
                 }
-            } else {
-                handleExceptions(context.request, context.operation, () -> {
-                    NetworkUtils.updateConnectedNetworks(getHost(), context.containerState, -1);
-                    inspectContainer(context);
-                });
-            }
+            });
         });
     }
 
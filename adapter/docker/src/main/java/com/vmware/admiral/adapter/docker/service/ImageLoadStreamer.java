@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Operation.CompletionHandler;
+import com.vmware.xenon.common.Service.Action;
+
+/**
+ * Streams image tarballs from disk to the <code>/images/load</code> endpoint of docker hosts in
+ * chunks, so that the image is never held in memory. The xenon HTTP client only sends bodies it
+ * holds in memory, hence the plain {@link HttpURLConnection} with chunked streaming.
+ *
+ * Loads run on a small dedicated thread pool. A blocking write waits for the docker host to
+ * consume the previous chunks, so the memory used by the loads in progress is bounded by the
+ * number of threads times the chunk size.
+ */
+class ImageLoadStreamer {
+
+    private static final Logger logger = Logger.getLogger(ImageLoadStreamer.class.getName());
+
+    private static final int CHUNK_SIZE = Integer.getInteger(
+            "adapter.docker.api.client.image_load_chunk_size", 64 * 1024);
+
+    private static final int MAX_CONCURRENT_LOADS = Integer.getInteger(
+            "adapter.docker.api.client.image_load_max_concurrent", 4);
+
+    private static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+
+    /** Progress is logged every time another 10% of the image is sent. */
+    private static final int PROGRESS_STEP_PERCENT = 10;
+
+    private static final Pattern ERROR_PATTERN = Pattern.compile("\"error\":\"(.*)\"");
+
+    private final ExecutorService executor;
+    private final int readTimeoutMillis;
+
+    ImageLoadStreamer(int readTimeoutSeconds) {
+        this.readTimeoutMillis = (int) TimeUnit.SECONDS.toMillis(readTimeoutSeconds);
+        this.executor = Executors.newFixedThreadPool(MAX_CONCURRENT_LOADS, r -> {
+            Thread t = new Thread(r, ImageLoadStreamer.class.getSimpleName());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Posts the content of the file to the given URI and completes the handler with an operation
+     * holding the status code and response of the docker host.
+     */
+    void load(URI targetUri, File imageFile, String contentType, SSLContext sslContext,
+            CompletionHandler completionHandler) {
+        try {
+            executor.execute(() -> {
+                Operation result = Operation.createPost(targetUri);
+                try {
+                    String response = send(targetUri, imageFile, contentType, sslContext, result);
+                    Matcher matcher = ERROR_PATTERN.matcher(response);
+                    if (matcher.find()) {
+                        completionHandler.handle(result, new IllegalStateException(
+                                "Error: " + matcher.group(1)));
+                        return;
+                    }
+                } catch (Throwable e) {
+                    completionHandler.handle(result, e);
+                    return;
+                }
+                completionHandler.handle(result, null);
+            });
+        } catch (RejectedExecutionException e) {
+            completionHandler.handle(null, e);
+        }
+    }
+
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    private String send(URI targetUri, File imageFile, String contentType,
+            SSLContext sslContext, Operation result) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) targetUri.toURL().openConnection();
+        try {
+            if (connection instanceof HttpsURLConnection && sslContext != null) {
+                HttpsURLConnection https = (HttpsURLConnection) connection;
+                https.setSSLSocketFactory(sslContext.getSocketFactory());
+                // the server certificate is validated by the trust manager against the
+                // certificate stored for the host, as with the other docker requests
+                https.setHostnameVerifier((hostname, session) -> true);
+            }
+            connection.setRequestMethod(Action.POST.name());
+            connection.setRequestProperty(Operation.CONTENT_TYPE_HEADER, contentType);
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(CHUNK_SIZE);
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(readTimeoutMillis);
+
+            long totalBytes = imageFile.length();
+            long sentBytes = 0;
+            int nextProgressPercent = PROGRESS_STEP_PERCENT;
+            byte[] buffer = new byte[CHUNK_SIZE];
+            try (InputStream in = new FileInputStream(imageFile);
+                    OutputStream out = connection.getOutputStream()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    sentBytes += read;
+                    int percent = (int) (sentBytes * 100 / Math.max(1, totalBytes));
+                    if (percent >= nextProgressPercent && percent < 100) {
+                        logger.info(String.format("Sent %d%% (%d of %d bytes) of image %s to %s",
+                                percent, sentBytes, totalBytes, imageFile.getName(),
+                                targetUri));
+                        nextProgressPercent = (percent / PROGRESS_STEP_PERCENT + 1)
+                                * PROGRESS_STEP_PERCENT;
+                    }
+                }
+            }
+            logger.info(String.format("Sent image %s (%d bytes) to %s, waiting for it to load",
+                    imageFile.getName(), sentBytes, targetUri));
+
+            int statusCode = connection.getResponseCode();
+            result.setStatusCode(statusCode);
+            InputStream responseStream = statusCode < Operation.STATUS_CODE_FAILURE_THRESHOLD
+                    ? connection.getInputStream() : connection.getErrorStream();
+            String response = readResponse(responseStream);
+            result.setBodyNoCloning(response);
+
+            if (statusCode >= Operation.STATUS_CODE_FAILURE_THRESHOLD) {
+                throw new IllegalStateException(String.format(
+                        "Loading image to %s failed with status %d: %s", targetUri, statusCode,
+                        response));
+            }
+            return response;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String readResponse(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -14,6 +14,7 @@ package com.vmware.admiral.adapter.docker.service;
 import static com.vmware.admiral.compute.ContainerHostService.SSL_TRUST_ALIAS_PROP_NAME;
 import static com.vmware.admiral.compute.ContainerHostService.SSL_TRUST_CERT_PROP_NAME;
 
+import java.io.File;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -62,15 +63,19 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
 
     public static final String MEDIA_TYPE_APPLICATION_TAR = "application/tar";
 
+    private static final String ATTACH_CONNECTION_TAG = "docker-attach";
+
     private static volatile RemoteApiDockerAdapterCommandExecutorImpl INSTANCE;
 
     private static final Pattern ERROR_PATTERN = Pattern.compile("\"error\":\"(.*)\"");
     private final ServiceHost host;
     private final ServiceClient serviceClient;
-    // Used for commands like exec start
+    // Used for commands like exec start and fetching logs
     private final ServiceClient attachServiceClient;
     // Used for commands like load image from tar
     private final ServiceClient largeDataClient;
+    // Used to stream images from disk
+    private final ImageLoadStreamer imageLoadStreamer;
     private final DelegatingX509KeyManager keyManager = new DelegatingX509KeyManager();
     private ServerX509TrustManager trustManager;
 
@@ -92,11 +97,19 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
     protected RemoteApiDockerAdapterCommandExecutorImpl(ServiceHost host,
             TrustManager trustManager) {
         this.host = host;
-        this.serviceClient = ServiceClientFactory.createServiceClient(trustManager, keyManager);
-        this.attachServiceClient = ServiceClientFactory.createServiceClient(trustManager,
+        String name = getClass().getSimpleName();
+        this.serviceClient = ServiceClientFactory.getSharedServiceClient(name, trustManager,
                 keyManager);
-        this.largeDataClient = ServiceClientFactory.createServiceClient(
-                trustManager, keyManager, DOCKER_REQUEST_PAYLOAD_SIZE_LIMIT);
+        // shares the connections of the default client, but attach requests are tagged so that
+        // the long running ones do not take the connections of the regular requests, and they
+        // are not counted for the limit of the concurrent requests
+        this.attachServiceClient = ServiceClientFactory
+                .getSharedServiceClientForLongRunningRequests(name, trustManager, keyManager);
+        this.attachServiceClient.setConnectionLimitPerTag(ATTACH_CONNECTION_TAG,
+                ServiceClientFactory.MAX_CONNECTIONS_PER_HOST);
+        this.largeDataClient = ServiceClientFactory.getSharedServiceClient(name, trustManager,
+                keyManager, DOCKER_REQUEST_PAYLOAD_SIZE_LIMIT, null);
+        this.imageLoadStreamer = new ImageLoadStreamer(DOCKER_IMAGE_REQUEST_TIMEOUT_SECONDS);
 
         if (trustManager instanceof ServerX509TrustManager) {
             this.trustManager = (ServerX509TrustManager) trustManager;
@@ -193,8 +206,17 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
     @Override
     public void loadImage(CommandInput input, CompletionHandler completionHandler) {
         createOrUpdateTargetSsl(input);
-        Object imageData = input.getProperties().get(DOCKER_IMAGE_DATA_PROP_NAME);
         URI targetUri = UriUtils.extendUri(input.getDockerUri(), "/images/load");
+
+        Object imageFile = input.getProperties().get(DOCKER_IMAGE_FILE_PROP_NAME);
+        if (imageFile instanceof File) {
+            logger.info("Streaming image " + imageFile + " to: " + targetUri);
+            imageLoadStreamer.load(targetUri, (File) imageFile, MEDIA_TYPE_APPLICATION_TAR,
+                    largeDataClient.getSSLContext(), completionHandler);
+            return;
+        }
+
+        Object imageData = input.getProperties().get(DOCKER_IMAGE_DATA_PROP_NAME);
         sendPost(targetUri, imageData, ClientMode.LARGE_DATA, completionHandler);
     }
 
@@ -351,7 +373,8 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         // append all the query parameters which are sent as input.
         targetUri = extendUriWithQuery(targetUri, input);
 
-        sendGet(targetUri, null, completionHandler);
+        // the logs may be followed, so they are fetched like the attach requests
+        sendRequest(Service.Action.GET, targetUri, null, completionHandler, ClientMode.ATTACH);
     }
 
     @Override
@@ -507,6 +530,7 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         if (largeDataClient != null) {
             largeDataClient.stop();
         }
+        imageLoadStreamer.stop();
 
         INSTANCE = null;
     }
@@ -731,6 +755,7 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
             largeDataClient.send(op);
         } else if (ClientMode.ATTACH == mode) {
             op.setBody(body);
+            op.setConnectionTag(ATTACH_CONNECTION_TAG);
             prepareRequest(op,false);
             attachServiceClient.send(op);
         } else {
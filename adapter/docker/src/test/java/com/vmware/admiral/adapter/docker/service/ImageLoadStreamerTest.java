@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.xenon.common.Operation;
+
+public class ImageLoadStreamerTest {
+
+    private HttpServer server;
+    private ImageLoadStreamer streamer;
+    private File imageFile;
+    private final AtomicReference<byte[]> received = new AtomicReference<>();
+    private final AtomicReference<String> transferEncoding = new AtomicReference<>();
+    private volatile String response = "{\"stream\":\"Loaded image: test\"}";
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/images/load", (exchange) -> {
+            transferEncoding.set(exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, read);
+                }
+            }
+            received.set(body.toByteArray());
+
+            byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, responseBytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(responseBytes);
+            }
+        });
+        server.start();
+
+        streamer = new ImageLoadStreamer(10);
+
+        byte[] content = new byte[1024 * 1024 + 17];
+        new Random(0).nextBytes(content);
+        imageFile = File.createTempFile("image-load-test", ".tar");
+        Files.write(imageFile.toPath(), content);
+    }
+
+    @After
+    public void tearDown() {
+        streamer.stop();
+        server.stop(0);
+        imageFile.delete();
+    }
+
+    @Test
+    public void testLoadStreamsFileInChunks() throws Throwable {
+        AtomicReference<Operation> result = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        load(result, failure);
+
+        assertNull(failure.get());
+        assertEquals(Operation.STATUS_CODE_OK, result.get().getStatusCode());
+        assertEquals(response, result.get().getBodyRaw());
+        assertEquals("chunked", transferEncoding.get());
+        assertArrayEquals(Files.readAllBytes(imageFile.toPath()), received.get());
+    }
+
+    @Test
+    public void testLoadFailsOnDockerError() throws Throwable {
+        response = "{\"error\":\"invalid tar header\"}";
+
+        AtomicReference<Operation> result = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        load(result, failure);
+
+        assertNotNull(failure.get());
+        assertTrue(failure.get().getMessage(),
+                failure.get().getMessage().contains("invalid tar header"));
+    }
+
+    private void load(AtomicReference<Operation> result, AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        URI targetUri = URI.create(String.format("http://localhost:%d/images/load",
+                server.getAddress().getPort()));
+        CountDownLatch done = new CountDownLatch(1);
+        streamer.load(targetUri, imageFile, "application/tar", null, (o, e) -> {
+            result.set(o);
+            failure.set(e);
+            done.countDown();
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+    }
+}
@@ -91,7 +91,8 @@ public class KubernetesRemoteApiClient {
     private static KubernetesRemoteApiClient INSTANCE = null;
 
     protected KubernetesRemoteApiClient(ServiceHost host, final TrustManager trustManager) {
-        this.serviceClient = ServiceClientFactory.createServiceClient(trustManager, keyManager);
+        this.serviceClient = ServiceClientFactory.getSharedServiceClient(
+                getClass().getSimpleName(), trustManager, keyManager);
 
         if (trustManager instanceof ServerX509TrustManager) {
             this.trustManager = (ServerX509TrustManager) trustManager;
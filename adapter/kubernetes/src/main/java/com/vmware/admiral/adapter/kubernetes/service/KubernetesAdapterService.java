@@ -13,11 +13,9 @@ package com.vmware.admiral.adapter.kubernetes.service;
 
 import static com.vmware.admiral.compute.content.kubernetes.KubernetesUtil.fromResourceStateToBaseKubernetesState;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.vmware.admiral.adapter.common.AdapterRequest;
@@ -25,17 +23,17 @@ import com.vmware.admiral.adapter.common.KubernetesOperationType;
 import com.vmware.admiral.adapter.kubernetes.KubernetesRemoteApiClient;
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.compute.container.CompositeComponentRegistry;
-import com.vmware.admiral.compute.content.kubernetes.KubernetesUtil;
 import com.vmware.admiral.compute.kubernetes.entities.pods.Container;
 import com.vmware.admiral.compute.kubernetes.service.BaseKubernetesState;
 import com.vmware.admiral.compute.kubernetes.service.KubernetesDescriptionService.KubernetesDescription;
+import com.vmware.admiral.compute.kubernetes.service.PodLogService;
+import com.vmware.admiral.compute.kubernetes.service.PodLogService.PodLogUpdate;
 import com.vmware.admiral.compute.kubernetes.service.PodService;
 import com.vmware.admiral.compute.kubernetes.service.PodService.PodState;
-import com.vmware.admiral.service.common.LogService;
-import com.vmware.admiral.service.common.LogService.LogServiceState;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Operation.CompletionHandler;
 import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.Utils;
 
 public class KubernetesAdapterService extends AbstractKubernetesAdapterService {
     public static final String SELF_LINK = ManagementUriParts.ADAPTER_KUBERNETES;
@@ -43,6 +41,12 @@ public class KubernetesAdapterService extends AbstractKubernetesAdapterService {
     private static final String LOG_FETCH_FAILED_FORMAT = "Unable to fetch logs for container: %s"
             + " error: %s";
 
+    /**
+     * Number of lines fetched from the end of the log of a container the first time.
+     */
+    private static final int INITIAL_LOG_TAIL_LINES = Integer.getInteger(
+            "com.vmware.admiral.adapter.kubernetes.pod.log.tail.lines", 1000);
+
     private static class RequestContext {
         public AdapterRequest request;
         public BaseKubernetesState kubernetesState;
@@ -159,63 +163,113 @@ public class KubernetesAdapterService extends AbstractKubernetesAdapterService {
 
         PodState podState = (PodState) context.kubernetesState;
 
-        Map<String, String> containerNamesToLogLinks = new HashMap<>();
-        for (Container container : podState.pod.spec.containers) {
-            String logLink = podState.kubernetesSelfLink + "/log?container=" + container.name;
-            containerNamesToLogLinks.put(container.name, logLink);
-        }
+        PodLogUpdate update = new PodLogUpdate();
+        update.podLink = podState.documentSelfLink;
+        update.logs = new ConcurrentHashMap<>();
+        update.sinceTimes = new ConcurrentHashMap<>();
+
+        AtomicInteger counter = new AtomicInteger(podState.pod.spec.containers.size());
 
-        Map<String, String> containerNameToLogOutput = new ConcurrentHashMap<>();
+        for (Container container : podState.pod.spec.containers) {
+            String name = container.name;
+            String sinceTime = context.request.customProperties == null ? null
+                    : context.request.customProperties.get(
+                            PodLogService.SINCE_TIME_PROP_NAME_PREFIX + name);
 
-        AtomicInteger counter = new AtomicInteger(containerNamesToLogLinks.size());
+            // only the lines after the last one fetched so far, or the last lines of the log
+            String logLink = podState.kubernetesSelfLink + "/log?container=" + name
+                    + "&timestamps=true"
+                    + (sinceTime != null ? "&sinceTime=" + sinceTime
+                            : "&tailLines=" + INITIAL_LOG_TAIL_LINES);
 
-        for (Entry<String, String> containerNameToLogLink : containerNamesToLogLinks.entrySet()) {
-            String name = containerNameToLogLink.getKey();
-            String logLink = containerNameToLogLink.getValue();
             context.executor.fetchLogs(logLink, context.k8sContext, (o, ex) -> {
                 if (ex != null) {
-                    containerNameToLogOutput.put(name, String.format(LOG_FETCH_FAILED_FORMAT,
-                            name, ex.getMessage()));
+                    logWarning(LOG_FETCH_FAILED_FORMAT, name, Utils.toString(ex));
                 } else {
-                    String log = o.getBody(String.class);
-                    if (log == null || log.isEmpty()) {
-                        log = "--";
+                    PodLogLines lines = PodLogLines.parse(o.getBody(String.class), sinceTime);
+                    if (!lines.lines.isEmpty()) {
+                        update.logs.put(name, lines.lines);
+                    }
+                    if (lines.lastTimestamp != null) {
+                        update.sinceTimes.put(name, lines.lastTimestamp);
                     }
-                    containerNameToLogOutput.put(name, log);
                 }
                 if (counter.decrementAndGet() == 0) {
-                    processFetchedLogs(context, containerNameToLogOutput);
+                    processFetchedLogs(context, update);
                 }
             });
         }
 
     }
 
-    private void processFetchedLogs(RequestContext context, Map<String, String> logs) {
-        AtomicInteger counter = new AtomicInteger(logs.size());
-        AtomicBoolean hasError = new AtomicBoolean(false);
-
-        for (Entry<String, String> log : logs.entrySet()) {
-            LogServiceState logServiceState = new LogServiceState();
-            logServiceState.documentSelfLink = KubernetesUtil.buildLogUriPath(context
-                    .kubernetesState, log.getKey());
-            logServiceState.logs = log.getValue().getBytes();
-            logServiceState.tenantLinks = context.kubernetesState.tenantLinks;
-
-            sendRequest(Operation.createPost(this, LogService.FACTORY_LINK)
-                    .setBody(logServiceState)
-                    .setContextId(context.request.getRequestId())
-                    .setCompletion((o, ex) -> {
-                        if (ex != null) {
-                            if (hasError.compareAndSet(false, true)) {
-                                fail(context.request, ex);
-                            }
-                        } else {
-                            if (counter.decrementAndGet() == 0 && !hasError.get()) {
-                                patchTaskStage(context.request, TaskStage.FINISHED, null);
-                            }
-                        }
-                    }));
+    private void processFetchedLogs(RequestContext context, PodLogUpdate update) {
+        sendRequest(Operation.createPatch(this, PodLogService.SELF_LINK)
+                .setBody(update)
+                .setContextId(context.request.getRequestId())
+                .setCompletion((o, ex) -> {
+                    if (ex != null) {
+                        fail(context.request, ex);
+                    } else {
+                        patchTaskStage(context.request, TaskStage.FINISHED, null);
+                    }
+                }));
+    }
+
+    /**
+     * The log lines fetched with timestamps, without their timestamps.
+     */
+    static class PodLogLines {
+        final String lines;
+        /** Timestamp of the last line, <code>null</code> if there are no timestamped lines. */
+        final String lastTimestamp;
+
+        PodLogLines(String lines, String lastTimestamp) {
+            this.lines = lines;
+            this.lastTimestamp = lastTimestamp;
+        }
+
+        /**
+         * Parses the given log fetched with timestamps, skipping the lines which are not after
+         * the given time. The lines at the given time are returned again by Kubernetes, since
+         * the time is rounded to seconds.
+         */
+        static PodLogLines parse(String log, String sinceTime) {
+            StringBuilder lines = new StringBuilder();
+            String lastTimestamp = null;
+            if (log == null || log.isEmpty()) {
+                return new PodLogLines("", null);
+            }
+
+            Instant since = parseTimestamp(sinceTime);
+            for (String line : log.split("\n")) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int separator = line.indexOf(' ');
+                Instant timestamp = separator > 0
+                        ? parseTimestamp(line.substring(0, separator)) : null;
+                if (timestamp == null) {
+                    lines.append(line).append('\n');
+                    continue;
+                }
+                if (since != null && !timestamp.isAfter(since)) {
+                    continue;
+                }
+                lines.append(line, separator + 1, line.length()).append('\n');
+                lastTimestamp = line.substring(0, separator);
+            }
+            return new PodLogLines(lines.toString(), lastTimestamp);
+        }
+
+        private static Instant parseTimestamp(String timestamp) {
+            if (timestamp == null) {
+                return null;
+            }
+            try {
+                return Instant.parse(timestamp);
+            } catch (DateTimeParseException e) {
+                return null;
+            }
         }
     }
 
@@ -18,23 +18,29 @@ import static com.vmware.admiral.compute.content.kubernetes.KubernetesUtil.POD_T
 import static com.vmware.admiral.compute.content.kubernetes.KubernetesUtil.REPLICATION_CONTROLLER_TYPE;
 import static com.vmware.admiral.compute.content.kubernetes.KubernetesUtil.SERVICE_TYPE;
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.vmware.admiral.adapter.common.ApplicationOperationType;
 import com.vmware.admiral.adapter.common.ApplicationRequest;
 import com.vmware.admiral.adapter.kubernetes.KubernetesRemoteApiClient;
 import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.ConcurrencyLimiter;
 import com.vmware.admiral.compute.container.CompositeComponentRegistry;
 import com.vmware.admiral.compute.container.CompositeComponentService.CompositeComponent;
 import com.vmware.admiral.compute.container.CompositeDescriptionService.CompositeDescription;
 import com.vmware.admiral.compute.content.kubernetes.KubernetesUtil;
+import com.vmware.admiral.compute.kubernetes.entities.common.ObjectMeta;
 import com.vmware.admiral.compute.kubernetes.entities.deployments.Deployment;
 import com.vmware.admiral.compute.kubernetes.entities.deployments.DeploymentList;
 import com.vmware.admiral.compute.kubernetes.entities.pods.Pod;
@@ -68,6 +74,26 @@ import com.vmware.xenon.common.Utils;
 public class KubernetesApplicationAdapterService extends AbstractKubernetesAdapterService {
     public static final String SELF_LINK = ManagementUriParts.ADAPTER_KUBERNETES_APPLICATION;
 
+    /**
+     * Maximum number of concurrent entity creation requests to a Kubernetes cluster.
+     */
+    private static final int DEPLOYMENT_CONCURRENCY = Integer.getInteger(
+            "com.vmware.admiral.adapter.kubernetes.deployment.concurrency", 8);
+
+    /**
+     * Maximum number of discovered entity states persisted concurrently.
+     */
+    private static final int DISCOVERY_PERSISTENCE_BATCH_SIZE = Integer.getInteger(
+            "com.vmware.admiral.adapter.kubernetes.discovery.batch.size", 50);
+
+    private final Map<String, ClusterLimiter> clusterLimiters = new ConcurrentHashMap<>();
+
+    private static class ClusterLimiter {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(DEPLOYMENT_CONCURRENCY);
+        /** Number of the queued and running requests to the cluster, updated in the map only. */
+        int requests;
+    }
+
     private static class RequestContext {
         public ApplicationRequest request;
         public CompositeDescription compositeDescription;
@@ -234,343 +260,221 @@ public class KubernetesApplicationAdapterService extends AbstractKubernetesAdapt
                 .filter(d -> SERVICE_TYPE.equals(d.type)).collect(Collectors.toList());
 
         List<KubernetesDescription> otherDescriptions = descriptions.stream()
-                .filter(d -> !SERVICE_TYPE.endsWith(d.type)).collect(Collectors.toList());
+                .filter(d -> !SERVICE_TYPE.equals(d.type)).collect(Collectors.toList());
 
-        try {
-            processServiceDescriptions(context, serviceDescriptions,
-                    () -> {
-                        try {
-                            processOtherDescriptions(context, otherDescriptions);
-                        } catch (IOException e) {
-                            fail(context.request, e);
-                        }
-                    });
-        } catch (IOException e) {
-            fail(context.request, e);
-        }
+        // Services go first so that their environment variables are available to the pods of the
+        // other entities, the entities of each group are independent and created concurrently.
+        createEntities(context, serviceDescriptions,
+                () -> createEntities(context, otherDescriptions,
+                        () -> startEntityDiscovery(context)));
     }
 
-    private void processServiceDescriptions(RequestContext context,
-            List<KubernetesDescription> serviceDescriptions, Runnable callback) throws IOException {
+    private void createEntities(RequestContext context, List<KubernetesDescription> descriptions,
+            Runnable callback) {
 
-        if (serviceDescriptions.isEmpty()) {
+        if (descriptions.isEmpty()) {
             callback.run();
+            return;
         }
 
-        final AtomicInteger counter = new AtomicInteger(serviceDescriptions.size());
+        final AtomicInteger counter = new AtomicInteger(descriptions.size());
         final AtomicBoolean hasError = new AtomicBoolean(false);
 
-        for (KubernetesDescription description : serviceDescriptions) {
-            context.client.createEntity(description, context.kubernetesContext, (o, ex) -> {
-                if (ex != null) {
-                    if (hasError.compareAndSet(false, true)) {
-                        fail(context.request, ex);
-                    } else {
-                        logWarning("Failure creating kubernetes entity: %s", Utils.toString(ex));
-                    }
-                } else {
-                    createSpecificKubernetesState(context, description, o,
-                            (o1, ex1) -> {
-                                if (counter.decrementAndGet() == 0 && !hasError.get()) {
-                                    callback.run();
+        Consumer<Throwable> failureCallback = (ex) -> {
+            if (hasError.compareAndSet(false, true)) {
+                fail(context.request, ex);
+            } else {
+                logWarning("Failure creating kubernetes entity: %s", Utils.toString(ex));
+            }
+        };
+
+        for (KubernetesDescription description : descriptions) {
+            executeOnCluster(context, release -> {
+                if (hasError.get()) {
+                    release.run();
+                    return;
+                }
+                try {
+                    context.client.createEntity(description, context.kubernetesContext,
+                            (o, ex) -> {
+                                release.run();
+                                if (ex != null) {
+                                    failureCallback.accept(ex);
+                                    return;
                                 }
+                                createSpecificKubernetesState(context, description, o,
+                                        (o1, ex1) -> {
+                                            if (ex1 != null) {
+                                                failureCallback.accept(ex1);
+                                            } else if (counter.decrementAndGet() == 0
+                                                    && !hasError.get()) {
+                                                callback.run();
+                                            }
+                                        });
                             });
-
+                } catch (Throwable e) {
+                    release.run();
+                    failureCallback.accept(e);
                 }
             });
         }
     }
 
-    private void processOtherDescriptions(RequestContext context,
-            List<KubernetesDescription> descriptions) throws IOException {
-
-        final AtomicInteger counter = new AtomicInteger(descriptions.size());
-        final AtomicBoolean hasError = new AtomicBoolean(false);
-
-        for (KubernetesDescription description : descriptions) {
-            context.client.createEntity(description, context.kubernetesContext, (o, ex) -> {
-                if (ex != null) {
-                    if (hasError.compareAndSet(false, true)) {
-                        fail(context.request, ex);
-                    } else {
-                        logWarning("Failure creating kubernetes entity: %s", Utils.toString(ex));
-                    }
-                } else {
-                    createSpecificKubernetesState(context, description, o,
-                            (o1, ex1) -> {
-                                if (counter.decrementAndGet() == 0 && !hasError.get()) {
-                                    startEntityDiscovery(context);
-                                }
-                            });
-
+    /**
+     * Runs the given request once the Kubernetes cluster of the request allows it, the limit is
+     * shared by all requests to the same cluster. The request must run the given callback when
+     * the cluster has responded. The limiter of a cluster is dropped when it has no queued or
+     * running requests.
+     */
+    private void executeOnCluster(RequestContext context, Consumer<Runnable> request) {
+        String clusterLink = context.kubernetesContext.host.documentSelfLink;
+        ClusterLimiter clusterLimiter = clusterLimiters.compute(clusterLink, (link, current) -> {
+            ClusterLimiter result = current != null ? current : new ClusterLimiter();
+            result.requests++;
+            return result;
+        });
+        clusterLimiter.limiter.execute(() -> {
+            AtomicBoolean released = new AtomicBoolean();
+            request.accept(() -> {
+                if (released.compareAndSet(false, true)) {
+                    clusterLimiter.limiter.release();
+                    clusterLimiters.computeIfPresent(clusterLink,
+                            (link, current) -> --current.requests == 0 ? null : current);
                 }
             });
-        }
+        });
     }
 
     private void startEntityDiscovery(RequestContext context) {
+        String compositeComponentId = UriUtils.getLastPathSegment(context.compositeComponent
+                .documentSelfLink);
 
         AtomicInteger parallelDiscoveryCounter = new AtomicInteger(5);
         AtomicBoolean hasError = new AtomicBoolean(false);
+        List<Operation> createStates = Collections.synchronizedList(new ArrayList<>());
 
-        Consumer<Throwable> failureCallback = (ex) -> {
-            if (hasError.compareAndSet(false, true)) {
-                fail(context.request, ex);
+        // The entities of the application are listed in parallel, scoped by the application label,
+        // and their states are persisted together once all of them are listed.
+        Function<Class<?>, CompletionHandler> discoveryCallback = listClass -> (o, ex) -> {
+            if (ex != null) {
+                if (hasError.compareAndSet(false, true)) {
+                    fail(context.request, ex);
+                }
+                return;
+            }
+            try {
+                createStates.addAll(toCreateStateOperations(context, o, listClass));
+            } catch (Throwable e) {
+                if (hasError.compareAndSet(false, true)) {
+                    fail(context.request, e);
+                }
+                return;
             }
-        };
-
-        Runnable successfulCallback = () -> {
             if (parallelDiscoveryCounter.decrementAndGet() == 0 && !hasError.get()) {
-                patchTaskStage(context.request, TaskStage.FINISHED, null);
+                persistDiscoveredStates(context, createStates);
             }
         };
 
-        discoverDeployments(context, failureCallback, successfulCallback);
-        discoverReplicationControllers(context, failureCallback,
-                successfulCallback);
-        discoverServices(context, failureCallback, successfulCallback);
-        discoverReplicaSets(context, failureCallback, successfulCallback);
-        discoverPods(context, failureCallback, successfulCallback);
-
+        context.client.getDeployments(context.kubernetesContext, compositeComponentId,
+                discoveryCallback.apply(DeploymentList.class));
+        context.client.getReplicationControllers(context.kubernetesContext, compositeComponentId,
+                discoveryCallback.apply(ReplicationControllerList.class));
+        context.client.getServices(context.kubernetesContext, compositeComponentId,
+                discoveryCallback.apply(ServiceList.class));
+        context.client.getReplicaSets(context.kubernetesContext, compositeComponentId,
+                discoveryCallback.apply(ReplicaSetList.class));
+        context.client.getPods(context.kubernetesContext, compositeComponentId,
+                discoveryCallback.apply(PodList.class));
     }
 
-    private void discoverDeployments(RequestContext context, Consumer<Throwable> failureCallback,
-            Runnable successfulCallback) {
-        String compositeComponentId = UriUtils.getLastPathSegment(context.compositeComponent
-                .documentSelfLink);
-
-        context.client.getDeployments(context.kubernetesContext, compositeComponentId, (o, ex) -> {
-            if (ex != null) {
-                failureCallback.accept(ex);
-            } else {
-                DeploymentList deployments = o.getBody(DeploymentList.class);
-                if (deployments.items == null || deployments.items.isEmpty()) {
-                    successfulCallback.run();
-                    return;
-                }
-                AtomicInteger counter = new AtomicInteger(deployments.items.size());
-                AtomicBoolean hasError = new AtomicBoolean(false);
-                for (Deployment deployment : deployments.items) {
-                    DeploymentState deploymentState = new DeploymentState();
-                    deploymentState.deployment = deployment;
-                    deploymentState.name = deployment.metadata.name;
-                    deploymentState.compositeComponentLink = context.compositeComponent.documentSelfLink;
-                    deploymentState.parentLink = context.kubernetesContext.host.documentSelfLink;
-                    deploymentState.documentSelfLink = deployment.metadata.uid;
-                    deploymentState.id = deployment.metadata.uid;
-                    deploymentState.kubernetesSelfLink = deployment.metadata.selfLink;
-                    sendRequest(Operation.createPost(this, DeploymentService.FACTORY_LINK)
-                            .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE)
-                            .setBody(deploymentState)
-                            .setCompletion((op, err) -> {
-                                if (err != null) {
-                                    if (hasError.compareAndSet(false, true)) {
-                                        failureCallback.accept(err);
-                                    } else {
-                                        logWarning("Failure creating kubernetes entity: %s",
-                                                Utils.toString(err));
-                                    }
-                                } else {
-                                    if (counter.decrementAndGet() == 0 && !hasError.get()) {
-                                        successfulCallback.run();
-                                    }
-                                }
-                            }));
-                }
+    private List<Operation> toCreateStateOperations(RequestContext context, Operation listOp,
+            Class<?> listClass) {
+        List<Operation> createStates = new ArrayList<>();
+        if (DeploymentList.class == listClass) {
+            DeploymentList deployments = listOp.getBody(DeploymentList.class);
+            for (Deployment deployment : emptyIfNull(deployments.items)) {
+                DeploymentState deploymentState = new DeploymentState();
+                deploymentState.deployment = deployment;
+                createStates.add(createDiscoveredState(context, deploymentState,
+                        DeploymentService.FACTORY_LINK));
             }
-        });
-    }
-
-    private void discoverReplicationControllers(RequestContext context,
-            Consumer<Throwable> failureCallback, Runnable successfulCallback) {
-        String compositeComponentId = UriUtils.getLastPathSegment(context.compositeComponent
-                .documentSelfLink);
-
-        context.client.getReplicationControllers(context.kubernetesContext, compositeComponentId,
-                (o, ex) -> {
-                    if (ex != null) {
-                        failureCallback.accept(ex);
-                    } else {
-                        ReplicationControllerList controllers = o
-                                .getBody(ReplicationControllerList.class);
-                        if (controllers.items == null || controllers.items.isEmpty()) {
-                            successfulCallback.run();
-                            return;
-                        }
-                        AtomicInteger counter = new AtomicInteger(controllers.items.size());
-                        AtomicBoolean hasError = new AtomicBoolean(false);
-                        for (ReplicationController controller : controllers.items) {
-                            ReplicationControllerState controllerState = new ReplicationControllerState();
-                            controllerState.replicationController = controller;
-                            controllerState.name = controller.metadata.name;
-                            controllerState.compositeComponentLink = context.compositeComponent.documentSelfLink;
-                            controllerState.parentLink = context.kubernetesContext.host.documentSelfLink;
-                            controllerState.documentSelfLink = controller.metadata.uid;
-                            controllerState.id = controller.metadata.uid;
-                            controllerState.kubernetesSelfLink = controller.metadata.selfLink;
-                            sendRequest(Operation
-                                    .createPost(this, ReplicationControllerService.FACTORY_LINK)
-                                    .addPragmaDirective(
-                                            Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE)
-                                    .setBody(controllerState)
-                                    .setCompletion((op, err) -> {
-                                        if (err != null) {
-                                            if (hasError.compareAndSet(false, true)) {
-                                                failureCallback.accept(err);
-                                            } else {
-                                                logWarning("Failure creating kubernetes entity: %s",
-                                                        Utils.toString(err));
-                                            }
-                                        } else {
-                                            if (counter.decrementAndGet() == 0 && !hasError.get()) {
-                                                successfulCallback.run();
-                                            }
-                                        }
-                                    }));
-                        }
-                    }
-                });
+        } else if (ReplicationControllerList.class == listClass) {
+            ReplicationControllerList controllers = listOp
+                    .getBody(ReplicationControllerList.class);
+            for (ReplicationController controller : emptyIfNull(controllers.items)) {
+                ReplicationControllerState controllerState = new ReplicationControllerState();
+                controllerState.replicationController = controller;
+                createStates.add(createDiscoveredState(context, controllerState,
+                        ReplicationControllerService.FACTORY_LINK));
+            }
+        } else if (ServiceList.class == listClass) {
+            ServiceList services = listOp.getBody(ServiceList.class);
+            for (Service service : emptyIfNull(services.items)) {
+                ServiceState serviceState = new ServiceState();
+                serviceState.service = service;
+                createStates.add(createDiscoveredState(context, serviceState,
+                        ServiceEntityHandler.FACTORY_LINK));
+            }
+        } else if (ReplicaSetList.class == listClass) {
+            ReplicaSetList replicas = listOp.getBody(ReplicaSetList.class);
+            for (ReplicaSet replicaSet : emptyIfNull(replicas.items)) {
+                ReplicaSetState replicaSetState = new ReplicaSetState();
+                replicaSetState.replicaSet = replicaSet;
+                createStates.add(createDiscoveredState(context, replicaSetState,
+                        ReplicaSetService.FACTORY_LINK));
+            }
+        } else if (PodList.class == listClass) {
+            PodList pods = listOp.getBody(PodList.class);
+            for (Pod pod : emptyIfNull(pods.items)) {
+                PodState podState = new PodState();
+                podState.pod = pod;
+                createStates.add(createDiscoveredState(context, podState,
+                        PodService.FACTORY_LINK));
+            }
+        } else {
+            throw new IllegalArgumentException("Unexpected kubernetes list: " + listClass);
+        }
+        return createStates;
     }
 
-    private void discoverServices(RequestContext context, Consumer<Throwable> failureCallback,
-            Runnable successfulCallback) {
-        String compositeComponentId = UriUtils.getLastPathSegment(context.compositeComponent
-                .documentSelfLink);
-
-        context.client.getServices(context.kubernetesContext, compositeComponentId, (o, ex) -> {
-            if (ex != null) {
-                failureCallback.accept(ex);
-            } else {
-                ServiceList services = o.getBody(ServiceList.class);
-                if (services.items == null || services.items.isEmpty()) {
-                    successfulCallback.run();
-                    return;
-                }
-                AtomicInteger counter = new AtomicInteger(services.items.size());
-                AtomicBoolean hasError = new AtomicBoolean(false);
-                for (Service service : services.items) {
-                    ServiceState serviceState = new ServiceState();
-                    serviceState.service = service;
-                    serviceState.name = service.metadata.name;
-                    serviceState.compositeComponentLink = context.compositeComponent.documentSelfLink;
-                    serviceState.parentLink = context.kubernetesContext.host.documentSelfLink;
-                    serviceState.documentSelfLink = service.metadata.uid;
-                    serviceState.id = service.metadata.uid;
-                    serviceState.kubernetesSelfLink = service.metadata.selfLink;
-                    sendRequest(Operation.createPost(this, ServiceEntityHandler.FACTORY_LINK)
-                            .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE)
-                            .setBody(serviceState)
-                            .setCompletion((op, err) -> {
-                                if (err != null) {
-                                    if (hasError.compareAndSet(false, true)) {
-                                        failureCallback.accept(err);
-                                    } else {
-                                        logWarning("Failure creating kubernetes entity: %s",
-                                                Utils.toString(err));
-                                    }
-                                } else {
-                                    if (counter.decrementAndGet() == 0 && !hasError.get()) {
-                                        successfulCallback.run();
-                                    }
-                                }
-                            }));
-                }
-            }
-        });
+    private Operation createDiscoveredState(RequestContext context, BaseKubernetesState state,
+            String factoryLink) {
+        ObjectMeta metadata = state.getMetadata();
+        state.name = metadata.name;
+        state.compositeComponentLink = context.compositeComponent.documentSelfLink;
+        state.parentLink = context.kubernetesContext.host.documentSelfLink;
+        state.documentSelfLink = metadata.uid;
+        state.id = metadata.uid;
+        state.kubernetesSelfLink = metadata.selfLink;
+        return Operation.createPost(this, factoryLink)
+                .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE)
+                .setBody(state);
     }
 
-    private void discoverReplicaSets(RequestContext context, Consumer<Throwable> failureCallback,
-            Runnable successfulCallback) {
-        String compositeComponentId = UriUtils.getLastPathSegment(context.compositeComponent
-                .documentSelfLink);
+    private void persistDiscoveredStates(RequestContext context, List<Operation> createStates) {
+        if (createStates.isEmpty()) {
+            patchTaskStage(context.request, TaskStage.FINISHED, null);
+            return;
+        }
 
-        context.client.getReplicaSets(context.kubernetesContext, compositeComponentId, (o, ex) -> {
-            if (ex != null) {
-                failureCallback.accept(ex);
-            } else {
-                ReplicaSetList replicas = o.getBody(ReplicaSetList.class);
-                if (replicas.items == null || replicas.items.isEmpty()) {
-                    successfulCallback.run();
-                    return;
-                }
-                AtomicInteger counter = new AtomicInteger(replicas.items.size());
-                AtomicBoolean hasError = new AtomicBoolean(false);
-                for (ReplicaSet replicaSet : replicas.items) {
-                    ReplicaSetState replicaSetState = new ReplicaSetState();
-                    replicaSetState.replicaSet = replicaSet;
-                    replicaSetState.name = replicaSet.metadata.name;
-                    replicaSetState.compositeComponentLink = context.compositeComponent.documentSelfLink;
-                    replicaSetState.parentLink = context.kubernetesContext.host.documentSelfLink;
-                    replicaSetState.documentSelfLink = replicaSet.metadata.uid;
-                    replicaSetState.id = replicaSet.metadata.uid;
-                    replicaSetState.kubernetesSelfLink = replicaSet.metadata.selfLink;
-                    sendRequest(Operation.createPost(this, ReplicaSetService.FACTORY_LINK)
-                            .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE)
-                            .setBody(replicaSetState)
-                            .setCompletion((op, err) -> {
-                                if (err != null) {
-                                    if (hasError.compareAndSet(false, true)) {
-                                        failureCallback.accept(err);
-                                    } else {
-                                        logWarning("Failure creating kubernetes entity: %s",
-                                                Utils.toString(err));
-                                    }
-                                } else {
-                                    if (counter.decrementAndGet() == 0 && !hasError.get()) {
-                                        successfulCallback.run();
-                                    }
-                                }
-                            }));
-                }
-            }
-        });
+        OperationJoin.create(createStates)
+                .setCompletion((ops, errors) -> {
+                    if (errors != null) {
+                        List<Throwable> throwables = errors.values().stream()
+                                .filter(e -> e != null)
+                                .collect(Collectors.toList());
+                        fail(context.request, throwables.get(0));
+                        throwables.stream().skip(1)
+                                .forEach(e -> logWarning("Failure creating kubernetes entity: %s",
+                                        Utils.toString(e)));
+                    } else {
+                        patchTaskStage(context.request, TaskStage.FINISHED, null);
+                    }
+                }).sendWith(this, DISCOVERY_PERSISTENCE_BATCH_SIZE);
     }
 
-    private void discoverPods(RequestContext context, Consumer<Throwable> failureCallback,
-            Runnable successfulCallback) {
-        String compositeComponentId = UriUtils.getLastPathSegment(context.compositeComponent
-                .documentSelfLink);
-
-        context.client.getPods(context.kubernetesContext, compositeComponentId, (o, ex) -> {
-            if (ex != null) {
-                failureCallback.accept(ex);
-            } else {
-                PodList pods = o.getBody(PodList.class);
-                if (pods.items == null || pods.items.isEmpty()) {
-                    successfulCallback.run();
-                    return;
-                }
-                AtomicInteger counter = new AtomicInteger(pods.items.size());
-                AtomicBoolean hasError = new AtomicBoolean(false);
-                for (Pod pod : pods.items) {
-                    PodState podState = new PodState();
-                    podState.pod = pod;
-                    podState.name = pod.metadata.name;
-                    podState.compositeComponentLink = context.compositeComponent.documentSelfLink;
-                    podState.parentLink = context.kubernetesContext.host.documentSelfLink;
-                    podState.documentSelfLink = pod.metadata.uid;
-                    podState.id = pod.metadata.uid;
-                    podState.kubernetesSelfLink = pod.metadata.selfLink;
-                    sendRequest(Operation.createPost(this, PodService.FACTORY_LINK)
-                            .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE)
-                            .setBody(podState)
-                            .setCompletion((op, err) -> {
-                                if (err != null) {
-                                    if (hasError.compareAndSet(false, true)) {
-                                        failureCallback.accept(err);
-                                    } else {
-                                        logWarning("Failure creating kubernetes entity: %s",
-                                                Utils.toString(err));
-                                    }
-                                } else {
-                                    if (counter.decrementAndGet() == 0 && !hasError.get()) {
-                                        successfulCallback.run();
-                                    }
-                                }
-                            }));
-                }
-            }
-        });
+    private static <T> List<T> emptyIfNull(List<T> list) {
+        return list == null ? Collections.emptyList() : list;
     }
 
     private void createSpecificKubernetesState(RequestContext context,
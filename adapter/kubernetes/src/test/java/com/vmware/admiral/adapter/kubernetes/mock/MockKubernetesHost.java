@@ -26,6 +26,7 @@ import java.util.Map.Entry;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import com.vmware.admiral.compute.kubernetes.entities.common.BaseKubernetesObject;
@@ -49,6 +50,14 @@ public class MockKubernetesHost extends StatelessService {
 
     public boolean failIntentionally;
 
+    /** Delay of the responses to the entity creations, random if not set. */
+    public long createDelayMillis;
+
+    /** Maximum number of the entity creations handled concurrently. */
+    public final AtomicInteger maxConcurrentCreates = new AtomicInteger();
+
+    private final AtomicInteger concurrentCreates = new AtomicInteger();
+
     public MockKubernetesHost() {
         super(ServiceDocument.class);
         deployedElements = Collections.synchronizedList(new ArrayList<>());
@@ -109,8 +118,18 @@ public class MockKubernetesHost extends StatelessService {
 
     private void callbackRandomly(Operation post, BaseKubernetesObject element) {
         String responseBody = Utils.toJson(element);
+        int creates = concurrentCreates.incrementAndGet();
+        maxConcurrentCreates.accumulateAndGet(creates, Math::max);
+        post.nestCompletion((o, e) -> {
+            concurrentCreates.decrementAndGet();
+            if (e != null) {
+                o.fail(e);
+            } else {
+                o.complete();
+            }
+        });
 
-        if (Math.random() > 0.5) {
+        if (createDelayMillis == 0 && Math.random() > 0.5) {
             deployedElements.add(element);
             deployedElementsMap.put(post.getBody(BaseKubernetesObject.class).metadata.name,
                     element);
@@ -123,13 +142,12 @@ public class MockKubernetesHost extends StatelessService {
                         element);
                 post.setBody(responseBody);
                 post.complete();
-            }, 20, TimeUnit.MILLISECONDS);
+            }, createDelayMillis > 0 ? createDelayMillis : 20, TimeUnit.MILLISECONDS);
         }
     }
 
     private void handleFetchLog(Operation get) {
-        String uri = get.getUri().toString();
-        String containerName = uri.split("log\\?container=")[1];
+        String containerName = UriUtils.parseUriQueryParams(get.getUri()).get("container");
         get.setBody(containerNamesToLogs.get(containerName));
         get.complete();
     }
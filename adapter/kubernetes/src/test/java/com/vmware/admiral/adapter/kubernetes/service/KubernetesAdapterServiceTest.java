@@ -12,6 +12,7 @@
 package com.vmware.admiral.adapter.kubernetes.service;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.util.ArrayList;
 
@@ -25,15 +26,16 @@ import com.vmware.admiral.adapter.common.service.mock.MockTaskService.MockTaskSt
 import com.vmware.admiral.adapter.kubernetes.mock.BaseKubernetesMockTest;
 import com.vmware.admiral.adapter.kubernetes.mock.MockKubernetesHost;
 import com.vmware.admiral.adapter.kubernetes.mock.MockKubernetesHostService;
+import com.vmware.admiral.adapter.kubernetes.service.KubernetesAdapterService.PodLogLines;
 import com.vmware.admiral.common.DeploymentProfileConfig;
 import com.vmware.admiral.compute.kubernetes.entities.common.ObjectMeta;
 import com.vmware.admiral.compute.kubernetes.entities.pods.Container;
 import com.vmware.admiral.compute.kubernetes.entities.pods.Pod;
 import com.vmware.admiral.compute.kubernetes.entities.pods.PodSpec;
+import com.vmware.admiral.compute.kubernetes.service.PodLogService;
+import com.vmware.admiral.compute.kubernetes.service.PodLogService.ContainerLogs;
 import com.vmware.admiral.compute.kubernetes.service.PodService;
 import com.vmware.admiral.compute.kubernetes.service.PodService.PodState;
-import com.vmware.admiral.service.common.LogService;
-import com.vmware.admiral.service.common.LogService.LogServiceState;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.xenon.common.Operation;
@@ -106,14 +108,38 @@ public class KubernetesAdapterServiceTest extends BaseKubernetesMockTest {
                 TaskState.TaskStage.FINISHED);
 
         for (Container container : podState.pod.spec.containers) {
-            LogServiceState logState = getDocument(LogServiceState.class, LogService
-                    .FACTORY_LINK + podState.documentSelfLink + "-" + container.name);
-            assertEquals(service.containerNamesToLogs.get(container.name), new String(logState
-                    .logs, "UTF-8"));
+            ContainerLogs logs = getDocument(ContainerLogs.class, UriUtils.buildUri(host,
+                    PodLogService.SELF_LINK, UriUtils.buildUriQuery(
+                            PodLogService.POD_ID_QUERY_PARAM,
+                            UriUtils.getLastPathSegment(podState.documentSelfLink),
+                            PodLogService.CONTAINER_QUERY_PARAM, container.name,
+                            PodLogService.LOG_OFFSET_QUERY_PARAM, "0")));
+            assertEquals(service.containerNamesToLogs.get(container.name) + "\n",
+                    new String(logs.logs, "UTF-8"));
         }
 
     }
 
+    @Test
+    public void testParsesFetchedLogLines() {
+        String log = "2017-10-19T10:00:00Z first\n"
+                + "2017-10-19T10:00:00.5Z second\n"
+                + "2017-10-19T10:00:01.25Z third\n";
+
+        PodLogLines lines = PodLogLines.parse(log, null);
+        assertEquals("first\nsecond\nthird\n", lines.lines);
+        assertEquals("2017-10-19T10:00:01.25Z", lines.lastTimestamp);
+
+        // lines up to the time of the previous fetch are skipped
+        lines = PodLogLines.parse(log, "2017-10-19T10:00:00.5Z");
+        assertEquals("third\n", lines.lines);
+        assertEquals("2017-10-19T10:00:01.25Z", lines.lastTimestamp);
+
+        lines = PodLogLines.parse("", "2017-10-19T10:00:00.5Z");
+        assertEquals("", lines.lines);
+        assertNull(lines.lastTimestamp);
+    }
+
     @Test
     public void testInspect() throws Throwable {
         PodState podState = new PodState();
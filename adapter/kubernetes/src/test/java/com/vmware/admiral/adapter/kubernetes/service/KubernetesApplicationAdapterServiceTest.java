@@ -12,6 +12,7 @@
 package com.vmware.admiral.adapter.kubernetes.service;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import static com.vmware.admiral.compute.container.CompositeComponentService.CompositeComponent.CUSTOM_PROPERTY_HOST_LINK;
 import static com.vmware.admiral.compute.content.kubernetes.KubernetesUtil.DEPLOYMENT_TYPE;
@@ -23,9 +24,12 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.vmware.admiral.adapter.common.ApplicationOperationType;
@@ -46,13 +50,20 @@ import com.vmware.admiral.compute.kubernetes.entities.common.BaseKubernetesObjec
 import com.vmware.admiral.compute.kubernetes.entities.common.ObjectMeta;
 import com.vmware.admiral.compute.kubernetes.entities.pods.Pod;
 import com.vmware.admiral.compute.kubernetes.entities.replicaset.ReplicaSet;
+import com.vmware.admiral.compute.kubernetes.service.DeploymentService;
 import com.vmware.admiral.compute.kubernetes.service.DeploymentService.DeploymentState;
+import com.vmware.admiral.compute.kubernetes.service.PodService;
 import com.vmware.admiral.compute.kubernetes.service.PodService.PodState;
+import com.vmware.admiral.compute.kubernetes.service.ReplicaSetService;
 import com.vmware.admiral.compute.kubernetes.service.ReplicaSetService.ReplicaSetState;
 import com.vmware.admiral.compute.kubernetes.service.ServiceEntityHandler.ServiceState;
+import com.vmware.admiral.host.interceptor.OperationInterceptorRegistry;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.Service.Action;
 import com.vmware.xenon.common.Service.ServiceOption;
 import com.vmware.xenon.common.TaskState;
 import com.vmware.xenon.common.TaskState.TaskStage;
@@ -60,11 +71,71 @@ import com.vmware.xenon.common.UriUtils;
 
 public class KubernetesApplicationAdapterServiceTest extends BaseKubernetesMockTest {
 
+    private static final int DEPLOYMENT_CONCURRENCY = 1;
+    private static final int DISCOVERY_PERSISTENCE_BATCH_SIZE = 2;
+
+    private static Object defaultDeploymentConcurrency;
+    private static Object defaultDiscoveryPersistenceBatchSize;
+
     private MockKubernetesHost service;
     private ComputeState kubernetesHostState;
     private String provisioningTaskLink;
     private String testKubernetesCredentialsLink;
 
+    private volatile boolean failDeploymentStates;
+    private final AtomicInteger concurrentDiscoveredStates = new AtomicInteger();
+    private final AtomicInteger maxConcurrentDiscoveredStates = new AtomicInteger();
+
+    @BeforeClass
+    public static void setLimits() throws Throwable {
+        defaultDeploymentConcurrency = getPrivateField(KubernetesApplicationAdapterService.class
+                .getDeclaredField("DEPLOYMENT_CONCURRENCY"), null);
+        defaultDiscoveryPersistenceBatchSize = getPrivateField(
+                KubernetesApplicationAdapterService.class
+                        .getDeclaredField("DISCOVERY_PERSISTENCE_BATCH_SIZE"), null);
+        setFinalStatic(KubernetesApplicationAdapterService.class
+                .getDeclaredField("DEPLOYMENT_CONCURRENCY"), DEPLOYMENT_CONCURRENCY);
+        setFinalStatic(KubernetesApplicationAdapterService.class
+                .getDeclaredField("DISCOVERY_PERSISTENCE_BATCH_SIZE"),
+                DISCOVERY_PERSISTENCE_BATCH_SIZE);
+    }
+
+    @AfterClass
+    public static void resetLimits() throws Throwable {
+        setFinalStatic(KubernetesApplicationAdapterService.class
+                .getDeclaredField("DEPLOYMENT_CONCURRENCY"), defaultDeploymentConcurrency);
+        setFinalStatic(KubernetesApplicationAdapterService.class
+                .getDeclaredField("DISCOVERY_PERSISTENCE_BATCH_SIZE"),
+                defaultDiscoveryPersistenceBatchSize);
+    }
+
+    @Override
+    protected void registerInterceptors(OperationInterceptorRegistry registry) {
+        super.registerInterceptors(registry);
+        registry.addFactoryServiceInterceptor(DeploymentService.class, Action.POST,
+                (s, o) -> failDeploymentStates
+                        ? DeferredResult.failed(new IllegalStateException("expected failure"))
+                        : null);
+        registry.addFactoryServiceInterceptor(PodService.class, Action.POST,
+                this::countDiscoveredState);
+        registry.addFactoryServiceInterceptor(ReplicaSetService.class, Action.POST,
+                this::countDiscoveredState);
+    }
+
+    private DeferredResult<Void> countDiscoveredState(Service factory, Operation post) {
+        maxConcurrentDiscoveredStates.accumulateAndGet(
+                concurrentDiscoveredStates.incrementAndGet(), Math::max);
+        post.nestCompletion((o, e) -> {
+            concurrentDiscoveredStates.decrementAndGet();
+            if (e != null) {
+                o.fail(e);
+            } else {
+                o.complete();
+            }
+        });
+        return null;
+    }
+
     @Before
     public void startServices() throws Throwable {
         DeploymentProfileConfig.getInstance().setTest(true);
@@ -278,6 +349,77 @@ public class KubernetesApplicationAdapterServiceTest extends BaseKubernetesMockT
 
     }
 
+    @Test
+    public void testEntityCreationsAreLimitedPerCluster() throws Throwable {
+        String wordpressTemplate = CommonTestStateFactory
+                .getFileContent("WordPress_with_MySQL_kubernetes.yaml");
+        CompositeDescription compositeDescription = getCompositeDescription(
+                importTemplate(wordpressTemplate));
+
+        // keep the creations running long enough to overlap if they were not limited
+        service.createDelayMillis = 100;
+
+        // two applications deployed at the same time to the same cluster
+        List<String> taskLinks = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            CompositeComponent compositeComponent = createCompositeComponent(compositeDescription);
+            provisioningTaskLink = createProvisioningTask();
+            taskLinks.add(provisioningTaskLink);
+            doOperation(ManagementUriParts.ADAPTER_KUBERNETES_APPLICATION,
+                    createApplicationRequest(compositeComponent.documentSelfLink));
+        }
+        for (String taskLink : taskLinks) {
+            waitForPropertyValue(taskLink, MockTaskState.class, "taskInfo.stage",
+                    TaskStage.FINISHED);
+        }
+
+        assertEquals(8, service.deployedElements.size());
+        assertEquals(DEPLOYMENT_CONCURRENCY, service.maxConcurrentCreates.get());
+    }
+
+    @Test
+    public void testFailedStateCreationFailsRequest() throws Throwable {
+        String wordpressTemplate = CommonTestStateFactory
+                .getFileContent("WordPress_with_MySQL_kubernetes.yaml");
+        CompositeDescription compositeDescription = getCompositeDescription(
+                importTemplate(wordpressTemplate));
+        CompositeComponent compositeComponent = createCompositeComponent(compositeDescription);
+
+        failDeploymentStates = true;
+        provisioningTaskLink = createProvisioningTask();
+        doOperation(ManagementUriParts.ADAPTER_KUBERNETES_APPLICATION,
+                createApplicationRequest(compositeComponent.documentSelfLink));
+
+        waitForPropertyValue(provisioningTaskLink, MockTaskState.class, "taskInfo.stage",
+                TaskStage.FAILED);
+        assertEquals(0, getDocumentLinksOfType(DeploymentState.class).size());
+    }
+
+    @Test
+    public void testDiscoveredStatesArePersistedInBatches() throws Throwable {
+        String wordpressTemplate = CommonTestStateFactory
+                .getFileContent("WordPress_with_MySQL_kubernetes.yaml");
+        CompositeDescription compositeDescription = getCompositeDescription(
+                importTemplate(wordpressTemplate));
+        CompositeComponent compositeComponent = createCompositeComponent(compositeDescription);
+
+        // four pods and four replica sets are discovered, more than a batch
+        String compositeComponentId = extractId(compositeComponent.documentSelfLink);
+        addPodsAndRSForWordpressApp(compositeComponentId);
+        addPodsAndRSForWordpressApp(compositeComponentId);
+
+        provisioningTaskLink = createProvisioningTask();
+        doOperation(ManagementUriParts.ADAPTER_KUBERNETES_APPLICATION,
+                createApplicationRequest(compositeComponent.documentSelfLink));
+
+        waitForPropertyValue(provisioningTaskLink, MockTaskState.class, "taskInfo.stage",
+                TaskStage.FINISHED);
+        assertEquals(4, getDocumentLinksOfType(PodState.class).size());
+        assertEquals(4, getDocumentLinksOfType(ReplicaSetState.class).size());
+        assertTrue(maxConcurrentDiscoveredStates.get() > 0);
+        assertTrue(maxConcurrentDiscoveredStates.get() <= DISCOVERY_PERSISTENCE_BATCH_SIZE);
+    }
+
     private ApplicationRequest createApplicationRequest(String resourceReference) {
         ApplicationRequest appRequest = new ApplicationRequest();
         appRequest.resourceReference = UriUtils.buildUri(host, resourceReference);
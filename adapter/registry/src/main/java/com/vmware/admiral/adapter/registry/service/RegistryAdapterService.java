@@ -46,7 +46,6 @@ import com.vmware.xenon.common.ServiceClient;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
-import com.vmware.xenon.common.http.netty.NettyHttpServiceClient;
 import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsServiceState;
 
 /**
@@ -144,16 +143,8 @@ public class RegistryAdapterService extends StatelessService {
                 && !registryProxyAddress.equals(REGISTRY_PROXY_NULL_VALUE)) {
             try {
                 URI registryProxyURI = new URI(registryProxyAddress);
-                serviceClientProxy = ServiceClientFactory.createServiceClient(trustManager, null);
-
-                if (serviceClientProxy instanceof NettyHttpServiceClient) {
-                    ((NettyHttpServiceClient) serviceClientProxy).setHttpProxy(registryProxyURI);
-                } else {
-                    logSevere("Cannot set proxy for accessing registries. Expecting "
-                            + "NettyHttpServiceClient, actual: %s",
-                            serviceClientProxy.getClass().getSimpleName());
-                    serviceClientProxy = null;
-                }
+                serviceClientProxy = ServiceClientFactory.getSharedServiceClient(
+                        getClass().getSimpleName(), trustManager, null, 0, registryProxyURI);
             } catch (Exception e) {
                 logSevere("Registry proxy URI invalid syntax: %s. Error: %s", e.getMessage(),
                         Utils.toString(e));
@@ -164,7 +155,8 @@ public class RegistryAdapterService extends StatelessService {
 
     private void initNoProxyClient(Map<String, String> props) {
         // create plain, no proxied client
-        serviceClientNoProxy = ServiceClientFactory.createServiceClient(trustManager, null);
+        serviceClientNoProxy = ServiceClientFactory.getSharedServiceClient(
+                getClass().getSimpleName(), trustManager, null);
 
         if (props != null) {
             String registryProxyAddress = props.get(REGITRY_PROXY_PARAM_NAME);
@@ -27,6 +27,7 @@ import java.util.stream.Collectors;
 import com.vmware.admiral.auth.idm.Principal;
 import com.vmware.admiral.auth.idm.PrincipalProvider;
 import com.vmware.admiral.auth.idm.local.LocalPrincipalService.LocalPrincipalState;
+import com.vmware.admiral.auth.util.PrincipalMembershipCache;
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.xenon.common.DeferredResult;
@@ -118,8 +119,10 @@ public class LocalPrincipalProvider implements PrincipalProvider {
     @Override
     public DeferredResult<Set<String>> getAllGroupsForPrincipal(String principalId) {
 
-        return getDirectlyAssignedGroupsForPrincipal(principalId)
-                .thenCompose(groups -> getIndirectlyAssignedGroupsForPrincipal(groups, null, null));
+        return PrincipalMembershipCache.getInstance(host).getGroups(principalId,
+                () -> getDirectlyAssignedGroupsForPrincipal(principalId)
+                        .thenCompose(groups -> getIndirectlyAssignedGroupsForPrincipal(groups,
+                                null, null)));
 
     }
 
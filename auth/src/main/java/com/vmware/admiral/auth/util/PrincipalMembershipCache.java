@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.auth.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import com.vmware.admiral.auth.idm.local.LocalPrincipalService.LocalPrincipalState;
+import com.vmware.admiral.auth.project.ProjectService.ProjectState;
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.admiral.common.util.HostScopedInstances;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.RoleService.RoleState;
+import com.vmware.xenon.services.common.UserGroupService.UserGroupState;
+
+/**
+ * Node-wide cache of the memberships resolved on authorization checks: the transitive local
+ * groups of a principal, the role assignments of a user group and the projects of a set of user
+ * groups. Concurrent lookups of the same key share a single load and failures are not cached.
+ *
+ * The cache is invalidated by continuous queries on the local principals, user groups, roles and
+ * projects seen by the node, the number of entries is bounded, and entries expire after a while
+ * in case a change notification is missed.
+ */
+public class PrincipalMembershipCache {
+
+    public static final int MAX_SIZE = Integer.getInteger(
+            "com.vmware.admiral.auth.membership.cache.size", 10000);
+
+    public static final long ENTRY_EXPIRATION_MICROS = Long.getLong(
+            "com.vmware.admiral.auth.membership.cache.expiration.micros",
+            TimeUnit.MINUTES.toMicros(5));
+
+    private static final String QUERY_ID_PREFIX = "principal-membership-cache-";
+
+    private static class CacheEntry<V> {
+        final DeferredResult<V> value = new DeferredResult<>();
+        final long expirationMicros;
+
+        CacheEntry(long expirationMicros) {
+            this.expirationMicros = expirationMicros;
+        }
+    }
+
+    /**
+     * Bounded LRU map of entries of one kind.
+     */
+    static class Entries<V> {
+        private final Map<String, CacheEntry<V>> entries;
+
+        Entries(int size) {
+            this.entries = new LinkedHashMap<String, CacheEntry<V>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<V>> eldest) {
+                    return size() > size;
+                }
+            };
+        }
+
+        DeferredResult<V> get(String key, Supplier<DeferredResult<V>> loader) {
+            long now = Utils.getSystemNowMicrosUtc();
+            CacheEntry<V> newEntry = new CacheEntry<>(now + ENTRY_EXPIRATION_MICROS);
+            CacheEntry<V> entry;
+            synchronized (entries) {
+                entry = entries.get(key);
+                if (entry == null || entry.expirationMicros <= now) {
+                    entry = newEntry;
+                    entries.put(key, newEntry);
+                }
+            }
+            if (entry == newEntry) {
+                load(key, newEntry, loader);
+            }
+            return entry.value;
+        }
+
+        private void load(String key, CacheEntry<V> entry, Supplier<DeferredResult<V>> loader) {
+            DeferredResult<V> loaded;
+            try {
+                loaded = loader.get();
+            } catch (Throwable e) {
+                loaded = DeferredResult.failed(e);
+            }
+            loaded.whenComplete((value, e) -> {
+                if (e != null) {
+                    // do not cache failures
+                    synchronized (entries) {
+                        entries.remove(key, entry);
+                    }
+                    entry.value.fail(e);
+                } else {
+                    entry.value.complete(value);
+                }
+            });
+        }
+
+        /**
+         * Drops all entries. Loads in progress complete their waiting callers, but their result
+         * is not cached.
+         */
+        void clear() {
+            synchronized (entries) {
+                entries.clear();
+            }
+        }
+
+        int size() {
+            synchronized (entries) {
+                return entries.size();
+            }
+        }
+    }
+
+    // principal id -> transitive local groups
+    private final Entries<Set<String>> groups = new Entries<>(MAX_SIZE);
+    // user group link -> role states
+    private final Entries<List<RoleState>> roles = new Entries<>(MAX_SIZE);
+    // user group links -> projects of the groups
+    private final Entries<List<ProjectState>> projects = new Entries<>(MAX_SIZE);
+
+    public static PrincipalMembershipCache getInstance(ServiceHost host) {
+        return HostScopedInstances.getOrCreate(host, PrincipalMembershipCache.class,
+                PrincipalMembershipCache::new);
+    }
+
+    PrincipalMembershipCache(ServiceHost host) {
+        if (host == null) {
+            return;
+        }
+        subscribe(host, LocalPrincipalState.class, groups);
+        subscribe(host, UserGroupState.class, roles);
+        subscribe(host, RoleState.class, roles);
+        subscribe(host, ProjectState.class, projects);
+    }
+
+    /**
+     * Returns the transitive local groups of the given principal, loading them with the given
+     * loader if not cached.
+     */
+    public DeferredResult<Set<String>> getGroups(String principalId,
+            Supplier<DeferredResult<Set<String>>> loader) {
+        return groups.get(principalId, loader)
+                .thenApply(HashSet::new);
+    }
+
+    /**
+     * Returns the role states assigned to the given user group, loading them with the given
+     * loader if not cached. The returned states are shared and must not be modified.
+     */
+    public DeferredResult<List<RoleState>> getRoles(String userGroupLink,
+            Supplier<DeferredResult<List<RoleState>>> loader) {
+        return roles.get(userGroupLink, loader)
+                .thenApply(ArrayList::new);
+    }
+
+    /**
+     * Returns the projects having any of the given user groups as administrators or members,
+     * loading them with the given loader if not cached. The returned states are shared and must
+     * not be modified.
+     */
+    public DeferredResult<List<ProjectState>> getProjects(Collection<String> userGroupLinks,
+            Supplier<DeferredResult<List<ProjectState>>> loader) {
+        String key = userGroupLinks == null ? "" : String.join(",", new TreeSet<>(userGroupLinks));
+        return projects.get(key, loader)
+                .thenApply(ArrayList::new);
+    }
+
+    /**
+     * Drops all cached memberships.
+     */
+    public void clear() {
+        groups.clear();
+        roles.clear();
+        projects.clear();
+    }
+
+    private static void subscribe(ServiceHost host, Class<? extends ServiceDocument> type,
+            Entries<?> entries) {
+        CommonContinuousQueries.subscribeTo(host, QUERY_ID_PREFIX + type.getSimpleName(),
+                Query.Builder.create().addKindFieldClause(type).build(),
+                op -> {
+                    op.complete();
+                    host.log(Level.FINE, "%s changed, invalidating principal membership cache",
+                            type.getSimpleName());
+                    entries.clear();
+                });
+    }
+}
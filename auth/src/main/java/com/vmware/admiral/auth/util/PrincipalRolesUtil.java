@@ -22,8 +22,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -78,11 +77,12 @@ public class PrincipalRolesUtil {
             Query query = ProjectUtil
                     .buildQueryProjectsFromGroups(userState.userGroupLinks);
 
-            return new QueryByPages<>(host, query, ProjectState.class,
-                    null)
-                            .collectDocuments(Collectors.toList())
-                            .thenApply((projects) -> buildProjectEntries(
-                                    projects, userState.userGroupLinks));
+            return PrincipalMembershipCache.getInstance(host)
+                    .getProjects(userState.userGroupLinks,
+                            () -> new QueryByPages<>(host, query, ProjectState.class, null)
+                                    .collectDocuments(Collectors.toList()))
+                    .thenApply((projects) -> buildProjectEntries(
+                            projects, userState.userGroupLinks));
         });
     }
 
@@ -136,42 +136,44 @@ public class PrincipalRolesUtil {
             return DeferredResult.completed(new HashMap<>());
         }
 
-        AtomicInteger counter = new AtomicInteger(groups.size());
-        AtomicBoolean hasError = new AtomicBoolean(false);
-
-        DeferredResult<Map<String, List<RoleState>>> returnResult = new DeferredResult<>();
-        Map<String, List<RoleState>> result = new HashMap<>();
+        PrincipalMembershipCache cache = PrincipalMembershipCache.getInstance(host);
+        Map<String, List<RoleState>> result = new ConcurrentHashMap<>();
+        List<DeferredResult<Void>> groupRoles = new ArrayList<>();
 
         for (String group : groups) {
             String groupLink = UriUtils.buildUriPath(UserGroupService.FACTORY_LINK, group);
-            Query query = QueryUtil.addListValueClause(RoleState.FIELD_NAME_USER_GROUP_LINK,
-                    Collections.singletonList(groupLink), MatchType.TERM);
+            groupRoles.add(cache.getRoles(groupLink, () -> getRoleStatesForGroup(host, groupLink))
+                    .thenAccept(roles -> result.put(group, roles)));
+        }
 
-            QueryTask queryTask = QueryUtil.buildQuery(RoleState.class, true, query);
-            QueryUtil.addExpandOption(queryTask);
+        return DeferredResult.allOf(groupRoles)
+                .thenApply(ignore -> new HashMap<>(result));
+    }
 
-            List<RoleState> roles = new ArrayList<>();
+    private static DeferredResult<List<RoleState>> getRoleStatesForGroup(ServiceHost host,
+            String groupLink) {
+        Query query = QueryUtil.addListValueClause(RoleState.FIELD_NAME_USER_GROUP_LINK,
+                Collections.singletonList(groupLink), MatchType.TERM);
 
-            new ServiceDocumentQuery<>(host, RoleState.class).query(queryTask, r -> {
-                if (r.hasException()) {
-                    if (hasError.compareAndSet(false, true)) {
-                        returnResult.fail(r.getException());
-                    } else {
-                        host.log(Level.WARNING, "Getting roles for group: %s failed with: %s",
-                                group, Utils.toString(r.getException()));
-                    }
-                } else if (r.hasResult()) {
-                    roles.add(r.getResult());
-                } else {
-                    result.put(group, roles);
-                    if (counter.decrementAndGet() == 0 && !hasError.get()) {
-                        returnResult.complete(result);
-                    }
-                }
-            });
-        }
+        QueryTask queryTask = QueryUtil.buildQuery(RoleState.class, true, query);
+        QueryUtil.addExpandOption(queryTask);
+
+        DeferredResult<List<RoleState>> result = new DeferredResult<>();
+        List<RoleState> roles = new ArrayList<>();
+
+        new ServiceDocumentQuery<>(host, RoleState.class).query(queryTask, r -> {
+            if (r.hasException()) {
+                host.log(Level.WARNING, "Getting roles for group: %s failed with: %s",
+                        groupLink, Utils.toString(r.getException()));
+                result.fail(r.getException());
+            } else if (r.hasResult()) {
+                roles.add(r.getResult());
+            } else {
+                result.complete(roles);
+            }
+        });
 
-        return returnResult;
+        return result;
     }
 
     private static DeferredResult<PrincipalRoles> extractRolesIntoPrincipalRoles(ServiceHost host,
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.auth.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.vmware.admiral.auth.util.PrincipalMembershipCache.Entries;
+import com.vmware.xenon.common.DeferredResult;
+
+public class PrincipalMembershipCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void testSharesLoads() {
+        Entries<String> entries = new Entries<>(10);
+        DeferredResult<String> loaded = new DeferredResult<>();
+
+        DeferredResult<String> first = entries.get("a", () -> load(loaded));
+        DeferredResult<String> second = entries.get("a", () -> load(loaded));
+        assertEquals(1, loads.get());
+
+        loaded.complete("value");
+        assertEquals("value", getNow(first));
+        assertEquals("value", getNow(second));
+
+        assertEquals("value", getNow(entries.get("a", () -> load(null))));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testDoesNotCacheFailures() {
+        Entries<String> entries = new Entries<>(10);
+
+        DeferredResult<String> failed = entries.get("a",
+                () -> load(DeferredResult.failed(new IllegalStateException())));
+        assertTrue(failed.toCompletionStage().toCompletableFuture().isCompletedExceptionally());
+        assertEquals(0, entries.size());
+
+        assertEquals("value", getNow(entries.get("a",
+                () -> load(DeferredResult.completed("value")))));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testClearDropsLoadsInProgress() {
+        Entries<String> entries = new Entries<>(10);
+        DeferredResult<String> loaded = new DeferredResult<>();
+
+        DeferredResult<String> waiting = entries.get("a", () -> load(loaded));
+        entries.clear();
+        loaded.complete("stale");
+
+        // the waiting caller gets the result, but it is not cached
+        assertEquals("stale", getNow(waiting));
+        assertEquals("fresh", getNow(entries.get("a",
+                () -> load(DeferredResult.completed("fresh")))));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        Entries<String> entries = new Entries<>(2);
+        entries.get("a", () -> load(DeferredResult.completed("a")));
+        entries.get("b", () -> load(DeferredResult.completed("b")));
+        entries.get("a", () -> load(null));
+        entries.get("c", () -> load(DeferredResult.completed("c")));
+        assertEquals(2, entries.size());
+        assertEquals(3, loads.get());
+
+        // "b" was evicted
+        entries.get("b", () -> load(DeferredResult.completed("b")));
+        assertEquals(4, loads.get());
+    }
+
+    private <T> DeferredResult<T> load(DeferredResult<T> result) {
+        loads.incrementAndGet();
+        return result;
+    }
+
+    private static <T> T getNow(DeferredResult<T> result) {
+        return result.toCompletionStage().toCompletableFuture().getNow(null);
+    }
+}
@@ -10,6 +10,7 @@ import os
 import json
 import sys
 import importlib
+import threading
 import zipfile
 from urllib.parse import urlparse
 import requests
@@ -17,6 +18,8 @@ import requests
 SRC_DIR = './user_scripts'
 SRC_REQ_FILE = 'requirements.txt'
 TRUSTED_CERTS = '/app/trust.pem'
+LOG_CHUNK_INTERVAL_SECONDS = 1
+LOG_CHUNK_MAX_SIZE = 64 * 1024
 
 def save_source_in_file(closure_description, module_name):
     src_file = None
@@ -84,6 +87,67 @@ def patch_results(outputs, closure_semaphore, token):
         patch_resp.raise_for_status()
 
 
+class LogStreamer(io.TextIOBase):
+    """Tees the output of the closure to the closure log, sent in chunks while the closure runs."""
+
+    def __init__(self, stream, closure_uri, closure_semaphore, token):
+        self.stream = stream
+        self.closure_uri = closure_uri
+        self.closure_semaphore = closure_semaphore
+        self.token = token
+        self.lock = threading.Lock()
+        self.pending = []
+        self.pending_size = 0
+        self.stopped = threading.Event()
+        self.sender = threading.Thread(target=self._send_periodically, daemon=True)
+        self.sender.start()
+
+    def writable(self):
+        return True
+
+    def write(self, text):
+        self.stream.write(text)
+        with self.lock:
+            self.pending.append(text)
+            self.pending_size += len(text)
+            full = self.pending_size >= LOG_CHUNK_MAX_SIZE
+        if full:
+            self.send()
+        return len(text)
+
+    def flush(self):
+        self.stream.flush()
+
+    def send(self):
+        with self.lock:
+            chunk = ''.join(self.pending)
+            self.pending = []
+            self.pending_size = 0
+        if not chunk:
+            return
+        headers = {'Content-type': 'application/json',
+                   'Accept': 'application/json',
+                   'x-xenon-auth-token': self.token
+                   }
+        data = {
+            "closureSemaphore": self.closure_semaphore,
+            "logChunk": chunk
+        }
+        try:
+            requests.patch(self.closure_uri, data=json.dumps(data), headers=headers, verify = TRUSTED_CERTS)
+        except Exception as err:
+            sys.__stderr__.write('Unable to send log chunk: %s\n' % str(err))
+
+    def close(self):
+        self.stopped.set()
+        self.sender.join()
+        self.send()
+
+    def _send_periodically(self):
+        while not self.stopped.wait(LOG_CHUNK_INTERVAL_SECONDS):
+            self.send()
+
+
 class Context:
     def __init__(self, closure_uri, closure_semaphore, inputs):
         self.inputs = inputs
@@ -122,6 +186,10 @@ class Context:
 def execute_saved_source(closure_uri, inputs, closure_semaphore, module_name, handler_name):
     # print 'Calling python script...{}{}' \
     #     .format(os.path.join(SRC_DIR, module_name, handler_name), '.py')
+    token = os.environ['TOKEN']
+    # stream the output of the script to the closure log
+    streamer = LogStreamer(sys.stdout, closure_uri, closure_semaphore, token)
+    sys.stdout = streamer
     print ('Script run logs:')
     print ('*******************')
     try:
@@ -130,7 +198,6 @@ def execute_saved_source(closure_uri, inputs, closure_semaphore, module_name, ha
         #     "inputs": inputs,
         #     "outputs": {}
         # }
-        token = os.environ['TOKEN']
         context = Context(closure_uri, closure_semaphore, inputs)
         context.execute = context.initialize(token)
         os.environ['TOKEN'] = ''
@@ -138,16 +205,26 @@ def execute_saved_source(closure_uri, inputs, closure_semaphore, module_name, ha
         handler = getattr(module, handler_name)
         handler(context)
         print ('*******************')
+        close_log_streamer(streamer)
         patch_results(context.outputs, closure_semaphore, token)
     except Exception as ex:
         print ('*******************')
         print ('Script run failed with: ', ex)
+        close_log_streamer(streamer)
         patch_failure(closure_semaphore, ex, token)
         exit(1)
     finally:
+        close_log_streamer(streamer)
         print ('Script run completed at: {0}'.format(datetime.datetime.now()))
 
 
+def close_log_streamer(streamer):
+    # send the rest of the log before the closure completes
+    if sys.stdout is streamer:
+        sys.stdout = streamer.stream
+        streamer.close()
+
+
 def download_and_save_source(source_url, module_name, closure_description, skip_execution):
     chunk_size = 10 * 1024
     if not os.path.exists(SRC_DIR):
@@ -12,11 +12,13 @@
 package com.vmware.admiral.closures.drivers;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -38,9 +40,13 @@ import org.junit.Test;
 import com.vmware.admiral.closures.drivers.nashorn.EmbeddedNashornJSDriver;
 import com.vmware.admiral.closures.services.closure.Closure;
 import com.vmware.admiral.closures.services.closure.ClosureFactoryService;
+import com.vmware.admiral.closures.services.closure.ClosureService;
+import com.vmware.admiral.closures.services.closure.ClosureService.ClosureLogChunk;
+import com.vmware.admiral.closures.services.closure.ClosureService.ClosureLogs;
 import com.vmware.admiral.closures.services.closuredescription.ClosureDescription;
 import com.vmware.admiral.closures.services.closuredescription.ClosureDescriptionFactoryService;
 import com.vmware.admiral.closures.services.closuredescription.ResourceConstraints;
+import com.vmware.admiral.closures.util.ClosureProps;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
 import com.vmware.xenon.common.BasicReusableHostTestCase;
 import com.vmware.xenon.common.Operation;
@@ -1826,8 +1832,164 @@ public class ClosureServiceTest extends BasicReusableHostTestCase {
         this.host.testWait();
     }
 
+    @Test
+    public void readClosureLogByOffsetAndTailTest() throws Throwable {
+        URI closureChildURI = createLogTestClosure();
+
+        sendLogChunk(closureChildURI, "Hello ");
+        sendLogChunk(closureChildURI, "world");
+
+        ClosureLogs logs = getLogs(closureChildURI, ClosureService.LOG_OFFSET_PARAM, "0");
+        assertEquals(0, logs.offset);
+        assertEquals(11, logs.nextOffset);
+        assertFalse(logs.truncated);
+        assertFalse(logs.completed);
+        assertEquals("Hello world", new String(logs.logs, StandardCharsets.UTF_8));
+
+        logs = getLogs(closureChildURI, ClosureService.LOG_OFFSET_PARAM, "6");
+        assertEquals(6, logs.offset);
+        assertEquals("world", new String(logs.logs, StandardCharsets.UTF_8));
+
+        logs = getLogs(closureChildURI, ClosureService.LOG_TAIL_PARAM, "5");
+        assertEquals(6, logs.offset);
+        assertEquals(11, logs.nextOffset);
+        assertEquals("world", new String(logs.logs, StandardCharsets.UTF_8));
+
+        clean(closureChildURI);
+    }
+
+    @Test
+    public void followClosureLogIsReleasedByNextChunkTest() throws Throwable {
+        URI closureChildURI = createLogTestClosure();
+        sendLogChunk(closureChildURI, "Hello");
+
+        // nothing to read after the end of the log yet, the request waits for the next chunk
+        CompletableFuture<ClosureLogs> followed = new CompletableFuture<>();
+        this.host.send(Operation
+                .createGet(UriUtils.extendUriWithQuery(closureChildURI,
+                        ClosureService.LOG_OFFSET_PARAM, "5",
+                        ClosureService.LOG_FOLLOW_PARAM, Boolean.TRUE.toString()))
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        followed.completeExceptionally(e);
+                    } else {
+                        followed.complete(o.getBody(ClosureLogs.class));
+                    }
+                }));
+        Thread.sleep(500);
+        assertFalse(followed.isDone());
+
+        sendLogChunk(closureChildURI, " world");
+
+        ClosureLogs logs = followed.get(5, TimeUnit.SECONDS);
+        assertEquals(5, logs.offset);
+        assertEquals(11, logs.nextOffset);
+        assertEquals(" world", new String(logs.logs, StandardCharsets.UTF_8));
+
+        clean(closureChildURI);
+    }
+
+    @Test
+    public void completedClosureLogIsTruncatedToPersistedTailTest() throws Throwable {
+        URI closureChildURI = createLogTestClosure();
+
+        // a log longer than the persisted tail
+        int dropped = 10;
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < ClosureProps.MAX_LOG_SIZE_BYTES + dropped - 4; i++) {
+            log.append('a');
+        }
+        log.append("done");
+        sendLogChunk(closureChildURI, log.toString());
+
+        // the closure fails on start, the tail and the size of its log are persisted
+        Closure failed = new Closure();
+        failed.state = TaskStage.FAILED;
+        this.host.testStart(1);
+        this.host.send(Operation
+                .createPatch(closureChildURI)
+                .setBody(failed)
+                .setCompletion(BasicReusableHostTestCase.getSafeHandler((o, e) -> assertNull(e))));
+        this.host.testWait();
+
+        String closureLink = UriUtils.getLastPathSegment(closureChildURI);
+        this.host.waitFor("Closure log not persisted", () -> {
+            Closure closure = getClosure(closureLink);
+            return closure.logSize != null;
+        });
+        Closure closure = getClosure(closureLink);
+        assertEquals(log.length(), closure.logSize.longValue());
+        assertEquals(ClosureProps.MAX_LOG_SIZE_BYTES, closure.logs.length);
+
+        ClosureLogs logs = getLogs(closureChildURI, ClosureService.LOG_OFFSET_PARAM, "0");
+        assertTrue(logs.truncated);
+        assertTrue(logs.completed);
+        assertEquals(dropped, logs.offset);
+
+        logs = getLogs(closureChildURI, ClosureService.LOG_TAIL_PARAM, "4");
+        assertEquals(log.length() - 4, logs.offset);
+        assertEquals(log.length(), logs.nextOffset);
+        assertEquals("done", new String(logs.logs, StandardCharsets.UTF_8));
+
+        clean(closureChildURI);
+    }
+
     // HELPER METHODS
 
+    private URI createLogTestClosure() throws Throwable {
+        ClosureDescription closureDefState = new ClosureDescription();
+        closureDefState.name = "test";
+        closureDefState.source = "var a = 1; print(\"Hello \" + a);";
+        closureDefState.runtime = "nashorn";
+        closureDefState.documentSelfLink = UUID.randomUUID().toString();
+        this.host.testStart(1);
+        this.host.send(Operation
+                .createPost(UriUtils.buildFactoryUri(this.host,
+                        ClosureDescriptionFactoryService.class))
+                .setBody(closureDefState)
+                .setCompletion(BasicReusableHostTestCase.getSafeHandler((o, e) -> assertNull(e))));
+        this.host.testWait();
+
+        Closure closureState = new Closure();
+        closureState.descriptionLink = ClosureDescriptionFactoryService.FACTORY_LINK + "/"
+                + closureDefState.documentSelfLink;
+        closureState.documentSelfLink = UUID.randomUUID().toString();
+        this.host.testStart(1);
+        this.host.send(Operation
+                .createPost(UriUtils.buildFactoryUri(this.host, ClosureFactoryService.class))
+                .setBody(closureState)
+                .setCompletion(BasicReusableHostTestCase.getSafeHandler((o, e) -> assertNull(e))));
+        this.host.testWait();
+
+        return UriUtils.buildUri(this.host,
+                ClosureFactoryService.FACTORY_LINK + "/" + closureState.documentSelfLink);
+    }
+
+    private void sendLogChunk(URI closureChildURI, String chunk) {
+        ClosureLogChunk logChunk = new ClosureLogChunk();
+        logChunk.logChunk = chunk;
+        this.host.testStart(1);
+        this.host.send(Operation
+                .createPatch(closureChildURI)
+                .setBody(logChunk)
+                .setCompletion(BasicReusableHostTestCase.getSafeHandler((o, e) -> assertNull(e))));
+        this.host.testWait();
+    }
+
+    private ClosureLogs getLogs(URI closureChildURI, String param, String value) {
+        ClosureLogs[] logs = new ClosureLogs[1];
+        this.host.testStart(1);
+        this.host.send(Operation
+                .createGet(UriUtils.extendUriWithQuery(closureChildURI, param, value))
+                .setCompletion(BasicReusableHostTestCase.getSafeHandler((o, e) -> {
+                    assertNull(e);
+                    logs[0] = o.getBody(ClosureLogs.class);
+                })));
+        this.host.testWait();
+        return logs[0];
+    }
+
+
     private void verifyJsonArrayStrings(Object[] javaArray, JsonArray jsArray) {
         assertEquals(javaArray.length, jsArray.size());
         for (int i = 0; i < javaArray.length; i++) {
@@ -83,13 +83,21 @@ public class Closure extends ResourceState {
     @Documentation(description = "Error message in case closure execution fails.")
     public String errorMsg;
 
-    /** Closure log data */
-    @Documentation(description = "Closure log data.")
+    /**
+     * Tail of the closure log, persisted on completion. The live log of a running closure is
+     * available through {@link ClosureService#LOG_OFFSET_PARAM}.
+     */
+    @Documentation(description = "Tail of the closure log, set on completion.")
     @PropertyOptions(indexing = {
             PropertyIndexingOption.STORE_ONLY,
             PropertyIndexingOption.EXCLUDE_FROM_SIGNATURE })
     public byte[] logs;
 
+    /** Total size of the closure log in bytes, set on completion. */
+    @Documentation(description = "Total size of the closure log in bytes.")
+    @PropertyOptions(indexing = PropertyIndexingOption.STORE_ONLY)
+    public Long logSize;
+
     /**
      * Hold links to allocated execution resources.
      * (Used internally)
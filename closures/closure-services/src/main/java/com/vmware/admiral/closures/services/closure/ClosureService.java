@@ -15,14 +15,18 @@ import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyIndexin
 import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption.AUTO_MERGE_IF_NOT_NULL;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.vmware.admiral.closures.drivers.DriverRegistry;
 import com.vmware.admiral.closures.drivers.ExecutionDriver;
@@ -30,6 +34,7 @@ import com.vmware.admiral.closures.services.closuredescription.ClosureDescriptio
 import com.vmware.admiral.closures.util.ClosureProps;
 import com.vmware.admiral.closures.util.ClosureUtils;
 import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.LogBuffer;
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.service.common.AbstractTaskStatefulService.TaskStatusState;
 import com.vmware.admiral.service.common.LogService.LogServiceState;
@@ -48,6 +53,12 @@ import com.vmware.xenon.common.Utils;
 /**
  * Represents closure service
  *
+ * The closure runners stream the log of the execution as chunks, sent as PATCH requests with
+ * {@link ClosureLogChunk} body. The chunks are kept in a bounded in-memory buffer and are not
+ * persisted; the log is read with GET requests with {@link #LOG_OFFSET_PARAM} or
+ * {@link #LOG_TAIL_PARAM} parameter, optionally following the log with
+ * {@link #LOG_FOLLOW_PARAM}. Only the tail and the size of the log are persisted in the closure
+ * state on completion.
  */
 public class ClosureService<T extends TaskServiceDocument<E>, E extends Enum<E>>
         extends StatefulService {
@@ -56,8 +67,51 @@ public class ClosureService<T extends TaskServiceDocument<E>, E extends Enum<E>>
     private static final Map<String, Integer> TEMPLATE_PROGRESS_MAP = Collections.singletonMap(
             "__DEFAULT__", 0);
 
+    /** Read the closure log starting from the given offset. */
+    public static final String LOG_OFFSET_PARAM = "logOffset";
+    /** Read the given number of bytes from the end of the closure log. */
+    public static final String LOG_TAIL_PARAM = "logTail";
+    /** Wait for new log data if there is none at the requested offset. */
+    public static final String LOG_FOLLOW_PARAM = "follow";
+
+    private static final int MAX_LOG_READ_BYTES = 64 * 1024;
+
+    /**
+     * Log chunk emitted by the closure runner during the execution.
+     */
+    public static class ClosureLogChunk {
+        public String closureSemaphore;
+
+        /** Log data to append to the log of the closure. */
+        public String logChunk;
+    }
+
+    /**
+     * A range of the closure log.
+     */
+    public static class ClosureLogs {
+        /** Offset of the returned log data. */
+        public long offset;
+
+        /** Offset to read the log from next. */
+        public long nextOffset;
+
+        /** Whether the log data before the requested offset is no longer available. */
+        public boolean truncated;
+
+        /** Whether the closure execution has completed, i.e. no more log data will follow. */
+        public boolean completed;
+
+        public byte[] logs;
+    }
+
     private final transient DriverRegistry driverRegistry;
 
+    private final transient Object logLock = new Object();
+    private transient LogBuffer logBuffer;
+    private final transient List<Runnable> logFollowers = new ArrayList<>();
+    private transient volatile boolean logCompleted;
+
     public ClosureService(DriverRegistry driverRegistry, long maintenanceTimeout) {
         super(Closure.class);
 
@@ -138,8 +192,43 @@ public class ClosureService<T extends TaskServiceDocument<E>, E extends Enum<E>>
         }
     }
 
+    @Override
+    public void handleGet(Operation get) {
+        Map<String, String> params = UriUtils.parseUriQueryParams(get.getUri());
+        if (!params.containsKey(LOG_OFFSET_PARAM) && !params.containsKey(LOG_TAIL_PARAM)) {
+            super.handleGet(get);
+            return;
+        }
+
+        Closure closure = this.getState(get);
+        long offset;
+        try {
+            if (params.containsKey(LOG_TAIL_PARAM)) {
+                long tail = Long.parseLong(params.get(LOG_TAIL_PARAM));
+                synchronized (logLock) {
+                    offset = Math.max(0, getLogBuffer(closure).getEndOffset() - tail);
+                }
+            } else {
+                offset = Long.parseLong(params.get(LOG_OFFSET_PARAM));
+            }
+        } catch (NumberFormatException e) {
+            get.setStatusCode(Operation.STATUS_CODE_BAD_REQUEST);
+            get.fail(new IllegalArgumentException("Invalid log offset: " + e.getMessage()));
+            return;
+        }
+
+        boolean follow = Boolean.parseBoolean(params.get(LOG_FOLLOW_PARAM));
+        readLogs(get, closure, offset, follow);
+    }
+
     @Override
     public void handlePatch(Operation patchOp) {
+        ClosureLogChunk logChunk = patchOp.getBody(ClosureLogChunk.class);
+        if (logChunk.logChunk != null) {
+            handleLogChunk(patchOp, logChunk);
+            return;
+        }
+
         Closure requestedState = patchOp.getBody(Closure.class);
         Closure currentState = this.getState(patchOp);
 
@@ -168,6 +257,9 @@ public class ClosureService<T extends TaskServiceDocument<E>, E extends Enum<E>>
             if (isDone(currentState)) {
                 currentClosure = this.getState(patchOp);
                 currentClosure.logs = requestedState.logs;
+                if (requestedState.logSize != null) {
+                    currentClosure.logSize = requestedState.logSize;
+                }
 
                 this.setState(patchOp, currentClosure);
                 patchOp.setBody(currentClosure).complete();
@@ -345,9 +437,9 @@ public class ClosureService<T extends TaskServiceDocument<E>, E extends Enum<E>>
     }
 
     private void handleStateChanged(Closure closure) {
-        fetchLogs(closure, () -> {
-        });
         if (isDone(closure)) {
+            completeLogs();
+
             sendRequest(Operation
                     .createGet(this, closure.descriptionLink)
                     .setCompletion((op, ex) -> {
@@ -357,7 +449,7 @@ public class ClosureService<T extends TaskServiceDocument<E>, E extends Enum<E>>
                         } else {
                             ClosureDescription closureDesc = op.getBody(ClosureDescription.class);
 
-                            getHost().schedule(() -> fetchLogs(closure, () -> {
+                            getHost().schedule(() -> persistLogs(closure, () -> {
                                 if (!ClosureProps.IS_KEEP_ON_COMPLETION_ON
                                         && closure.state != TaskStage.CANCELLED) {
                                     // clean execution container
@@ -531,6 +623,127 @@ public class ClosureService<T extends TaskServiceDocument<E>, E extends Enum<E>>
 
     // PRIVATE METHODS
 
+    private void handleLogChunk(Operation patchOp, ClosureLogChunk logChunk) {
+        Closure currentState = this.getState(patchOp);
+        if (currentState.closureSemaphore != null
+                && !currentState.closureSemaphore.equals(logChunk.closureSemaphore)) {
+            patchOp.setStatusCode(Operation.STATUS_CODE_BAD_REQUEST);
+            patchOp.fail(new IllegalArgumentException("Unexpected version state on log chunk: "
+                    + logChunk.closureSemaphore + " expected: "
+                    + currentState.closureSemaphore));
+            return;
+        }
+
+        List<Runnable> followers;
+        synchronized (logLock) {
+            getLogBuffer(currentState).append(logChunk.logChunk.getBytes(StandardCharsets.UTF_8));
+            followers = new ArrayList<>(logFollowers);
+            logFollowers.clear();
+        }
+        followers.forEach(Runnable::run);
+
+        // the log is kept in memory only, the closure state is not modified
+        patchOp.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
+        patchOp.complete();
+    }
+
+    private void readLogs(Operation get, Closure closure, long offset, boolean follow) {
+        LogBuffer.Chunk chunk;
+        synchronized (logLock) {
+            chunk = getLogBuffer(closure).read(offset, MAX_LOG_READ_BYTES);
+            if (chunk.data.length == 0 && follow && !isLogCompleted(closure)) {
+                // wait for the next log chunk, the completion of the closure or the timeout
+                AtomicBoolean resumed = new AtomicBoolean();
+                Runnable resume = () -> {
+                    if (resumed.compareAndSet(false, true)) {
+                        readLogs(get, closure, offset, false);
+                    }
+                };
+                logFollowers.add(resume);
+                getHost().schedule(() -> {
+                    synchronized (logLock) {
+                        logFollowers.remove(resume);
+                    }
+                    resume.run();
+                }, ClosureProps.LOG_FOLLOW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                return;
+            }
+        }
+
+        ClosureLogs logs = new ClosureLogs();
+        logs.offset = chunk.offset;
+        logs.nextOffset = chunk.nextOffset;
+        logs.truncated = chunk.truncated;
+        logs.completed = isLogCompleted(closure);
+        logs.logs = chunk.data;
+        get.setBody(logs).complete();
+    }
+
+    private boolean isLogCompleted(Closure closure) {
+        return logCompleted || isDone(closure);
+    }
+
+    /**
+     * Returns the log buffer, restoring it from the persisted tail of the log if the closure has
+     * completed. Must be called holding the log lock.
+     */
+    private LogBuffer getLogBuffer(Closure closure) {
+        if (logBuffer == null) {
+            logBuffer = new LogBuffer(ClosureProps.MAX_LOG_BUFFER_SIZE_BYTES);
+        }
+        if (logBuffer.isEmpty() && closure != null && closure.logs != null) {
+            logBuffer.reset(closure.logs, closure.logSize != null ? closure.logSize
+                    : closure.logs.length);
+        }
+        return logBuffer;
+    }
+
+    private void resetLogs() {
+        synchronized (logLock) {
+            logBuffer = null;
+            logCompleted = false;
+        }
+    }
+
+    private void completeLogs() {
+        List<Runnable> followers;
+        synchronized (logLock) {
+            logCompleted = true;
+            followers = new ArrayList<>(logFollowers);
+            logFollowers.clear();
+        }
+        followers.forEach(Runnable::run);
+    }
+
+    /**
+     * Persists the tail and the size of the log streamed by the closure runner. Falls back to
+     * fetching the log of the execution container if the runner did not stream its log.
+     */
+    private void persistLogs(Closure closure, Runnable operation) {
+        byte[] tail;
+        long size;
+        synchronized (logLock) {
+            if (logBuffer == null || logBuffer.isEmpty()) {
+                tail = null;
+                size = 0;
+            } else {
+                tail = logBuffer.tail(ClosureProps.MAX_LOG_SIZE_BYTES);
+                size = logBuffer.getEndOffset();
+                // the persisted tail is served from now on
+                logBuffer = null;
+            }
+        }
+
+        if (tail == null) {
+            fetchLogs(closure, operation);
+            return;
+        }
+        closure.logs = tail;
+        closure.logSize = size;
+        sendSelfPatch(closure);
+        operation.run();
+    }
+
     private void fetchLogs(Closure closure, Runnable operation) {
         if (closure.resourceLinks == null || closure.resourceLinks.size() <= 0) {
             return;
@@ -552,6 +765,7 @@ public class ClosureService<T extends TaskServiceDocument<E>, E extends Enum<E>>
                         byte[] fetchedLogs = shrinkToMaxAllowedSize(logState.logs);
                         if (shouldUpdateLogs(closure.logs, fetchedLogs)) {
                             closure.logs = fetchedLogs;
+                            closure.logSize = (long) logState.logs.length;
                             sendSelfPatch(closure);
                         }
 
@@ -810,6 +1024,7 @@ public class ClosureService<T extends TaskServiceDocument<E>, E extends Enum<E>>
             return;
         }
         sendSelfPatch(closure);
+        resetLogs();
 
         String token = getToken(op);
         execDriver.executeClosure(closure, closureDesc, token, (error) -> {
@@ -51,6 +51,15 @@ public class ClosureProps {
             .getInteger("com.vmware.admiral.closures.max.log.size.bytes",
                     90 * 1024);
 
+    // size of the in-memory buffer of the live log of a closure execution
+    public static final int MAX_LOG_BUFFER_SIZE_BYTES = Integer
+            .getInteger("com.vmware.admiral.closures.max.log.buffer.size.bytes",
+                    1024 * 1024);
+
+    // how long a follow request for the log of a closure waits for new log data
+    public static final int LOG_FOLLOW_TIMEOUT_SECONDS = Integer
+            .getInteger("com.vmware.admiral.closures.log.follow.timeout.seconds", 30);
+
     public static final int MAX_FILE_DESCRIPTORS = Integer
             .getInteger("com.vmware.admiral.closures.max.file.descriptors",
                     2048);
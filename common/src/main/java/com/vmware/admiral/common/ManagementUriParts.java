@@ -32,9 +32,12 @@ public interface ManagementUriParts {
     String IMAGE_PROFILES = CONFIG + "/image-profiles";
     String INSTANCE_TYPE_PROFILES = CONFIG + "/instance-types";
     String MIGRATION = CONFIG + "/migration";
+    String MIGRATION_CHECKPOINTS = CONFIG + "/migration-checkpoints";
 
     String UTIL = "/util";
     String LONG_URI_GET = UTIL + "/long-uri-get";
+    String TASK_STAGE_METRICS = UTIL + "/task-stage-metrics";
+    String SERVICE_CLIENT_POOLS = UTIL + "/service-client-pools";
 
     String CERT_DISTRIBUTION_ADD_REGISTRY = CONFIG + "/cert-dist-add-reg";
     String CERT_DISTRIBUTION_ADD_HOST = CONFIG + "/certs-dist-add-host";
@@ -197,10 +200,13 @@ public interface ManagementUriParts {
     String ENDPOINT_PERIODIC_HEALTHCHECK = REQUEST + "/endpoint-periodic-healthcheck";
 
     String CONFIGURE_HOST = REQUEST + "/configure-host/";
+    String CONTAINER_HOST_ONBOARDING = REQUEST + "/container-host-onboarding/";
 
     String DELETE_SERVICE_DOCUMENTS = "/delete-tasks";
 
     String COUNTER_SUB_TASKS = "/counter-subtasks";
+    String COUNTER_LATCHES = "/counter-latches";
+    String HOST_SCOPED_INSTANCES = "/host-scoped-instances";
     // Continuous delivery:
     String CONTINUOUS_DELIVERY = "/continous-delivery";
 
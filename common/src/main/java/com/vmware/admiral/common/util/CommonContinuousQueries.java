@@ -83,7 +83,28 @@ public class CommonContinuousQueries {
      */
     public static void subscribeTo(ServiceHost host, ContinuousQueryId queryId,
             Consumer<Operation> consumer) {
-        QueryTask task = getQueryTask(host, queryId);
+        subscribeTo(host, getQueryTask(host, queryId), consumer);
+    }
+
+    /**
+     * Subscribes a consumer to a continuous query for the documents matching the given query.
+     * Queries with the same id are shared between the subscribers on the host. Matching
+     * documents are included in the notifications.
+     */
+    public static void subscribeTo(ServiceHost host, String queryId, Query query,
+            Consumer<Operation> consumer) {
+        QueryTask task = QueryTask.Builder.create()
+                .addOptions(EnumSet.of(QueryOption.CONTINUOUS, QueryOption.EXPAND_CONTENT))
+                .setQuery(query).build();
+        task.documentSelfLink = getTaskSelfLink(queryId);
+        task.documentExpirationTimeMicros = Utils.fromNowMicrosUtc(
+                TimeUnit.DAYS.toMicros(QUERY_TASK_EXPIRATION_DAYS));
+
+        subscribeTo(host, task, consumer);
+    }
+
+    private static void subscribeTo(ServiceHost host, QueryTask task,
+            Consumer<Operation> consumer) {
         Operation.createPost(host, ServiceUriPaths.CORE_LOCAL_QUERY_TASKS)
                 .setBody(task)
                 .setReferer(host.getUri())
@@ -160,6 +181,10 @@ public class CommonContinuousQueries {
     }
 
     private static String getTaskSelfLink(ContinuousQueryId queryId) {
-        return QUERY_TASK_SELF_LINK_PREFIX + "-" + queryId.name().toLowerCase();
+        return getTaskSelfLink(queryId.name());
+    }
+
+    private static String getTaskSelfLink(String queryId) {
+        return QUERY_TASK_SELF_LINK_PREFIX + "-" + queryId.toLowerCase();
     }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of concurrently running asynchronous tasks. Tasks over the limit are queued
+ * and started in FIFO order as running tasks call {@link #release()}. Every started task must
+ * call {@link #release()} exactly once when it is done.
+ */
+public class ConcurrencyLimiter {
+
+    private final int limit;
+    private final AtomicInteger running = new AtomicInteger();
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    public ConcurrencyLimiter(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("'limit' must be positive");
+        }
+        this.limit = limit;
+    }
+
+    /**
+     * Runs the task on the calling thread if the limit allows it, otherwise queues it to be run
+     * on the thread of a later {@link #release()}.
+     */
+    public void execute(Runnable task) {
+        pending.add(task);
+        drain();
+    }
+
+    /**
+     * Removes the task from the queue if it has not been started yet.
+     *
+     * @return whether the task was removed and will not be run
+     */
+    public boolean cancel(Runnable task) {
+        return pending.remove(task);
+    }
+
+    /**
+     * Marks a started task as done and starts the next queued one, if any.
+     */
+    public void release() {
+        running.decrementAndGet();
+        drain();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private void drain() {
+        while (!pending.isEmpty()) {
+            int current = running.get();
+            if (current >= limit) {
+                // the task which is still running will drain the queue on release
+                return;
+            }
+            if (!running.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Runnable task = pending.poll();
+            if (task == null) {
+                running.decrementAndGet();
+                continue;
+            }
+            task.run();
+        }
+    }
+}
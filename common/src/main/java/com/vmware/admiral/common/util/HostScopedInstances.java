@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Node-wide objects (caches, indexes, etc.) with the lifetime of a service host: one instance of
+ * a given type per host, created on first use. The instances of a host are dropped when the host
+ * stops, through a service started on the host with the first instance, since they usually
+ * reference the host and would otherwise keep it from being collected.
+ */
+public class HostScopedInstances {
+
+    public static final String SELF_LINK = ManagementUriParts.HOST_SCOPED_INSTANCES;
+
+    private static final Map<ServiceHost, Map<Class<?>, Object>> INSTANCES =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Returns the instance of the given type for the host, created with the given factory if
+     * there isn't one yet.
+     */
+    public static <T> T getOrCreate(ServiceHost host, Class<T> type,
+            Function<ServiceHost, T> factory) {
+        Map<Class<?>, Object> instances = INSTANCES.computeIfAbsent(host,
+                HostScopedInstances::register);
+        // not a computeIfAbsent, instances may create other instances of the host
+        synchronized (instances) {
+            Object instance = instances.get(type);
+            if (instance == null) {
+                instance = factory.apply(host);
+                instances.put(type, instance);
+            }
+            return type.cast(instance);
+        }
+    }
+
+    /**
+     * Returns the instance of the given type for the host or <code>null</code> if none has been
+     * created.
+     */
+    public static <T> T get(ServiceHost host, Class<T> type) {
+        Map<Class<?>, Object> instances = INSTANCES.get(host);
+        if (instances == null) {
+            return null;
+        }
+        synchronized (instances) {
+            return type.cast(instances.get(type));
+        }
+    }
+
+    static int getHostCount() {
+        return INSTANCES.size();
+    }
+
+    private static Map<Class<?>, Object> register(ServiceHost host) {
+        if (host.isStarted() && !host.isStopping()) {
+            host.startService(Operation.createPost(host, SELF_LINK)
+                    .setReferer(host.getUri())
+                    .setCompletion((o, e) -> {
+                        if (e != null) {
+                            host.log(Level.WARNING, "Failed to start %s: %s", SELF_LINK,
+                                    Utils.toString(e));
+                        }
+                    }), new HostStopListenerService());
+        }
+        return new HashMap<>();
+    }
+
+    /**
+     * Drops the instances of the host when the host stops.
+     */
+    private static class HostStopListenerService extends StatelessService {
+
+        @Override
+        public void handleStop(Operation delete) {
+            INSTANCES.remove(getHost());
+            super.handleStop(delete);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+/**
+ * Bounded in-memory buffer of a log, e.g. of a closure execution or a container. The log chunks
+ * are appended at the end, and the oldest data is dropped once the buffer is full.
+ *
+ * The data is addressed by absolute offsets from the beginning of the log, so that a reader can
+ * follow the log by passing the offset returned by the previous read, and can find out whether
+ * data has been dropped in between.
+ */
+public class LogBuffer {
+
+    /**
+     * A range of the log.
+     */
+    public static class Chunk {
+        /** Offset of the first byte of the data. */
+        public final long offset;
+        /** Offset to read from next. */
+        public final long nextOffset;
+        /** Whether data before the offset of the chunk has been dropped. */
+        public final boolean truncated;
+        public final byte[] data;
+
+        Chunk(long offset, long nextOffset, boolean truncated, byte[] data) {
+            this.offset = offset;
+            this.nextOffset = nextOffset;
+            this.truncated = truncated;
+            this.data = data;
+        }
+    }
+
+    private final byte[] buffer;
+    private long startOffset;
+    private long endOffset;
+
+    public LogBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("'capacity' must be positive");
+        }
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Appends a chunk at the end of the log and returns the new end offset.
+     */
+    public synchronized long append(byte[] chunk) {
+        if (chunk == null || chunk.length == 0) {
+            return endOffset;
+        }
+
+        int from = 0;
+        int length = chunk.length;
+        if (length > buffer.length) {
+            // only the tail of the chunk fits
+            from = length - buffer.length;
+            length = buffer.length;
+        }
+
+        endOffset += from;
+        int position = position(endOffset);
+        int first = Math.min(length, buffer.length - position);
+        System.arraycopy(chunk, from, buffer, position, first);
+        System.arraycopy(chunk, from + first, buffer, 0, length - first);
+        endOffset += length;
+
+        startOffset = Math.max(startOffset, endOffset - buffer.length);
+        return endOffset;
+    }
+
+    /**
+     * Resets the log to the given data, ending at the given offset. Used to restore the log from
+     * its persisted tail, e.g. of a completed closure.
+     */
+    public synchronized void reset(byte[] tail, long end) {
+        int length = tail == null ? 0 : Math.min(tail.length, buffer.length);
+        startOffset = endOffset = Math.max(0, end - length);
+        if (length > 0) {
+            append(tail.length == length ? tail : tail(tail, length));
+        }
+    }
+
+    /**
+     * Reads up to the given number of bytes starting from the given offset. If the data at the
+     * offset has been dropped the read starts from the oldest data available.
+     */
+    public synchronized Chunk read(long offset, int maxBytes) {
+        long from = Math.max(offset, startOffset);
+        boolean truncated = offset < startOffset;
+        if (from >= endOffset) {
+            return new Chunk(endOffset, endOffset, truncated, new byte[0]);
+        }
+        int length = (int) Math.min(endOffset - from, Math.max(0, maxBytes));
+        return new Chunk(from, from + length, truncated, copy(from, length));
+    }
+
+    /**
+     * Returns the last bytes of the log, up to the given number.
+     */
+    public synchronized byte[] tail(int maxBytes) {
+        int length = (int) Math.min(endOffset - startOffset, Math.max(0, maxBytes));
+        return copy(endOffset - length, length);
+    }
+
+    public synchronized long getStartOffset() {
+        return startOffset;
+    }
+
+    public synchronized long getEndOffset() {
+        return endOffset;
+    }
+
+    public synchronized boolean isEmpty() {
+        return endOffset == 0;
+    }
+
+    private byte[] copy(long from, int length) {
+        byte[] data = new byte[length];
+        int position = position(from);
+        int first = Math.min(length, buffer.length - position);
+        System.arraycopy(buffer, position, data, 0, first);
+        System.arraycopy(buffer, 0, data, first, length - first);
+        return data;
+    }
+
+    private int position(long offset) {
+        return (int) (offset % buffer.length);
+    }
+
+    private static byte[] tail(byte[] data, int length) {
+        byte[] tail = new byte[length];
+        System.arraycopy(data, data.length - length, tail, 0, length);
+        return tail;
+    }
+}
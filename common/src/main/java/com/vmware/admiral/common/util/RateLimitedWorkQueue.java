@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Queue of keys which need to be processed. A key is present at most once no matter how many
+ * times it is added before being processed, and a key is not returned again before the given
+ * minimal interval has passed since it was last returned. Times are passed explicitly so that
+ * the caller decides on the clock and the scheduling.
+ */
+public class RateLimitedWorkQueue<K> {
+
+    private final long minIntervalMicros;
+
+    /** Queued keys mapped to the time they were first added. */
+    private final LinkedHashMap<K, Long> queued = new LinkedHashMap<>();
+
+    /** Time each key was last returned for processing. */
+    private final Map<K, Long> lastPolled = new HashMap<>();
+
+    public RateLimitedWorkQueue(long minIntervalMicros) {
+        this.minIntervalMicros = minIntervalMicros;
+    }
+
+    /**
+     * Adds the key to the queue. Returns <code>false</code> if the key is already queued.
+     */
+    public synchronized boolean add(K key, long nowMicros) {
+        if (queued.containsKey(key)) {
+            return false;
+        }
+        queued.put(key, nowMicros);
+        return true;
+    }
+
+    /**
+     * Removes and returns up to <code>max</code> keys which are allowed to be processed at the
+     * given time, in the order they were added.
+     */
+    public synchronized List<K> poll(long nowMicros, int max) {
+        List<K> result = new ArrayList<>();
+        Iterator<Entry<K, Long>> it = queued.entrySet().iterator();
+        while (it.hasNext() && result.size() < max) {
+            K key = it.next().getKey();
+            Long last = lastPolled.get(key);
+            if (last != null && nowMicros - last < minIntervalMicros) {
+                continue;
+            }
+            it.remove();
+            lastPolled.put(key, nowMicros);
+            result.add(key);
+        }
+
+        // forget keys which are no longer rate limited
+        lastPolled.values().removeIf(last -> nowMicros - last >= minIntervalMicros);
+        return result;
+    }
+
+    /**
+     * Records that the key is processed by other means at the given time, e.g. by a full pass
+     * over all keys, unless it was processed less than the minimal interval ago. Returns
+     * <code>false</code> if the key is rate limited and should not be processed now. Otherwise
+     * the key is removed from the queue and is rate limited as if it was polled.
+     */
+    public synchronized boolean markProcessed(K key, long nowMicros) {
+        Long last = lastPolled.get(key);
+        if (last != null && nowMicros - last < minIntervalMicros) {
+            return false;
+        }
+        queued.remove(key);
+        lastPolled.put(key, nowMicros);
+        return true;
+    }
+
+    /**
+     * Returns the time until the next queued key can be polled, 0 if there is one ready now or
+     * -1 if the queue is empty.
+     */
+    public synchronized long getNextReadyDelayMicros(long nowMicros) {
+        long delay = -1;
+        for (K key : queued.keySet()) {
+            Long last = lastPolled.get(key);
+            long keyDelay = last == null ? 0 : Math.max(0, last + minIntervalMicros - nowMicros);
+            if (keyDelay == 0) {
+                return 0;
+            }
+            delay = delay < 0 ? keyDelay : Math.min(delay, keyDelay);
+        }
+        return delay;
+    }
+
+    /**
+     * Returns how long the oldest queued key has been waiting, 0 if the queue is empty.
+     */
+    public synchronized long getLagMicros(long nowMicros) {
+        Iterator<Long> it = queued.values().iterator();
+        return it.hasNext() ? nowMicros - it.next() : 0;
+    }
+
+    public synchronized int size() {
+        return queued.size();
+    }
+}
@@ -11,8 +11,19 @@
 
 package com.vmware.admiral.common.util;
 
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
@@ -20,16 +31,251 @@ import javax.net.ssl.TrustManager;
 
 import com.vmware.photon.controller.model.security.util.CertificateUtil;
 import com.vmware.xenon.common.ServiceClient;
+import com.vmware.xenon.common.ServiceClient.ConnectionPoolMetrics;
 import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.common.http.netty.NettyHttpServiceClient;
 
 /**
- * Factory for ServiceClient instances with support for providing custom SSLContext
+ * Factory for ServiceClient instances with support for providing custom SSLContext.
  *
- * TODO cache SSLContext/client for a given sslTrust instead of recreating for every request
+ * Adapters should use the shared clients returned by
+ * {@link #getSharedServiceClient(String, TrustManager, KeyManager, int, URI)}. Callers passing
+ * the same trust manager, key manager, payload size limit and proxy get handles to the same
+ * client, so its event loops, connection pools and SSLContext are shared. All shared clients use
+ * a single scheduled executor, the number of connections per destination is limited by
+ * {@link #MAX_CONNECTIONS_PER_HOST} and the number of requests in flight through all shared
+ * clients is limited by {@link #MAX_CONCURRENT_REQUESTS}, except for the long running ones sent
+ * through {@link #getSharedServiceClientForLongRunningRequests(String, TrustManager, KeyManager)}.
+ * Utilization of the shared clients is available through {@link #getSharedServiceClientStats()}.
  */
 public class ServiceClientFactory {
 
+    public static final int MAX_CONCURRENT_REQUESTS = Integer.getInteger(
+            "com.vmware.admiral.service.client.max.concurrent.requests", 1024);
+
+    public static final int MAX_CONNECTIONS_PER_HOST = Integer.getInteger(
+            "com.vmware.admiral.service.client.max.connections.per.host",
+            ServiceClient.DEFAULT_CONNECTION_LIMIT_PER_HOST);
+
+    private static final ConcurrencyLimiter REQUEST_LIMITER = new ConcurrencyLimiter(
+            MAX_CONCURRENT_REQUESTS);
+
+    private static final Map<ClientKey, SSLContext> SSL_CONTEXTS = new ConcurrentHashMap<>();
+
+    private static final Map<ClientKey, SharedClientEntry> SHARED_CLIENTS = new HashMap<>();
+
+    private static volatile ScheduledExecutorService scheduledExecutor;
+
+    /**
+     * Utilization of a shared client.
+     */
+    public static class ServiceClientPoolStats {
+        /** Names of the components using the client. */
+        public Set<String> names;
+        public int references;
+        public int requestPayloadSizeLimit;
+        public String proxy;
+        public int inUseConnectionCount;
+        public int availableConnectionCount;
+        public int pendingRequestCount;
+    }
+
+    /**
+     * Identity of a shared client. Trust and key managers are compared by reference, since the
+     * ones used by the adapters delegate to certificates which change over time.
+     */
+    static class ClientKey {
+        final TrustManager trustManager;
+        final KeyManager keyManager;
+        final int requestPayloadSizeLimit;
+        final URI proxy;
+
+        ClientKey(TrustManager trustManager, KeyManager keyManager,
+                int requestPayloadSizeLimit, URI proxy) {
+            this.trustManager = trustManager;
+            this.keyManager = keyManager;
+            this.requestPayloadSizeLimit = requestPayloadSizeLimit;
+            this.proxy = proxy;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ClientKey)) {
+                return false;
+            }
+            ClientKey other = (ClientKey) o;
+            return trustManager == other.trustManager
+                    && keyManager == other.keyManager
+                    && requestPayloadSizeLimit == other.requestPayloadSizeLimit
+                    && Objects.equals(proxy, other.proxy);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(trustManager),
+                    System.identityHashCode(keyManager), requestPayloadSizeLimit, proxy);
+        }
+    }
+
+    static class SharedClientEntry {
+        final ClientKey key;
+        final ServiceClient client;
+        final Set<String> names = new TreeSet<>();
+        int references;
+
+        SharedClientEntry(ClientKey key, ServiceClient client) {
+            this.key = key;
+            this.client = client;
+        }
+    }
+
+    /**
+     * Returns a handle to the shared client for the given trust and key managers, creating the
+     * client if needed. The handle must be stopped when no longer used.
+     *
+     * @param name
+     *            name of the component using the client, for reporting
+     * @param trustManager
+     * @param keyManager
+     * @return
+     */
+    public static ServiceClient getSharedServiceClient(String name, TrustManager trustManager,
+            KeyManager keyManager) {
+        return getSharedServiceClient(name, trustManager, keyManager, 0, null);
+    }
+
+    /**
+     * Returns a handle to the shared client for the given trust and key managers, payload size
+     * limit and HTTP proxy, creating the client if needed. The handle must be stopped when no
+     * longer used.
+     *
+     * @param name
+     *            name of the component using the client, for reporting
+     * @param trustManager
+     * @param keyManager
+     * @param requestPayloadSizeLimit
+     *            0 for the default limit
+     * @param proxy
+     *            HTTP proxy to use or <code>null</code>
+     * @return
+     */
+    public static ServiceClient getSharedServiceClient(String name, TrustManager trustManager,
+            KeyManager keyManager, int requestPayloadSizeLimit, URI proxy) {
+        return getSharedServiceClient(name, trustManager, keyManager, requestPayloadSizeLimit,
+                proxy, REQUEST_LIMITER);
+    }
+
+    /**
+     * Returns a handle to the shared client for the given trust and key managers, for requests
+     * which stay open for long, e.g. attaching to a container or following its logs. Such
+     * requests are not counted for the {@link #MAX_CONCURRENT_REQUESTS} limit, so that they
+     * don't block the regular requests. The handle must be stopped when no longer used.
+     *
+     * @param name
+     *            name of the component using the client, for reporting
+     * @param trustManager
+     * @param keyManager
+     * @return
+     */
+    public static ServiceClient getSharedServiceClientForLongRunningRequests(String name,
+            TrustManager trustManager, KeyManager keyManager) {
+        return getSharedServiceClient(name, trustManager, keyManager, 0, null, null);
+    }
+
+    private static ServiceClient getSharedServiceClient(String name, TrustManager trustManager,
+            KeyManager keyManager, int requestPayloadSizeLimit, URI proxy,
+            ConcurrencyLimiter limiter) {
+        ClientKey key = new ClientKey(trustManager, keyManager, requestPayloadSizeLimit, proxy);
+        SharedClientEntry entry;
+        synchronized (SHARED_CLIENTS) {
+            entry = SHARED_CLIENTS.get(key);
+            if (entry == null) {
+                ServiceClient client = createServiceClient(
+                        getSSLContext(trustManager, keyManager), requestPayloadSizeLimit);
+                client.setConnectionLimitPerTag(ServiceClient.CONNECTION_TAG_DEFAULT,
+                        MAX_CONNECTIONS_PER_HOST);
+                if (proxy != null) {
+                    ((NettyHttpServiceClient) client).setHttpProxy(proxy);
+                }
+                entry = new SharedClientEntry(key, client);
+                SHARED_CLIENTS.put(key, entry);
+            }
+            entry.names.add(name);
+            entry.references++;
+        }
+        return new SharedServiceClient(entry, limiter);
+    }
+
+    static void release(SharedClientEntry entry) {
+        synchronized (SHARED_CLIENTS) {
+            if (--entry.references > 0) {
+                return;
+            }
+            SHARED_CLIENTS.remove(entry.key);
+        }
+        entry.client.stop();
+    }
+
+    /**
+     * Returns the utilization of the shared clients for the default connection tag.
+     */
+    public static List<ServiceClientPoolStats> getSharedServiceClientStats() {
+        List<SharedClientEntry> entries;
+        synchronized (SHARED_CLIENTS) {
+            entries = new ArrayList<>(SHARED_CLIENTS.values());
+        }
+
+        List<ServiceClientPoolStats> result = new ArrayList<>();
+        for (SharedClientEntry entry : entries) {
+            ServiceClientPoolStats stats = new ServiceClientPoolStats();
+            synchronized (SHARED_CLIENTS) {
+                stats.names = new TreeSet<>(entry.names);
+                stats.references = entry.references;
+            }
+            stats.requestPayloadSizeLimit = entry.client.getRequestPayloadSizeLimit();
+            stats.proxy = entry.key.proxy != null ? entry.key.proxy.toString() : null;
+            try {
+                ConnectionPoolMetrics metrics = entry.client
+                        .getConnectionPoolMetrics(ServiceClient.CONNECTION_TAG_DEFAULT);
+                if (metrics != null) {
+                    stats.inUseConnectionCount = metrics.inUseConnectionCount;
+                    stats.availableConnectionCount = metrics.availableConnectionCount;
+                    stats.pendingRequestCount = metrics.pendingRequestCount;
+                }
+            } catch (IllegalArgumentException e) {
+                // no connections were opened for the tag yet
+            }
+            result.add(stats);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of requests currently in flight through the shared clients.
+     */
+    public static int getRunningRequestCount() {
+        return REQUEST_LIMITER.getRunningCount();
+    }
+
+    /**
+     * Returns the number of requests waiting for the {@link #MAX_CONCURRENT_REQUESTS} limit.
+     */
+    public static int getQueuedRequestCount() {
+        return REQUEST_LIMITER.getPendingCount();
+    }
+
+    /**
+     * Returns an SSLContext for the given TrustManager and KeyManager, reusing the one created
+     * for the same instances before.
+     */
+    public static SSLContext getSSLContext(TrustManager trustManager, KeyManager keyManager) {
+        return SSL_CONTEXTS.computeIfAbsent(new ClientKey(trustManager, keyManager, 0, null),
+                (k) -> CertificateUtil.createSSLContext(trustManager, keyManager));
+    }
+
     /**
      * Create a ServiceClient instance using the given TrustManager and KeyManager
      *
@@ -40,8 +286,7 @@ public class ServiceClientFactory {
     public static ServiceClient createServiceClient(TrustManager trustManager,
             KeyManager keyManager) {
 
-        return createServiceClient(CertificateUtil.createSSLContext(
-                trustManager, keyManager));
+        return createServiceClient(getSSLContext(trustManager, keyManager));
     }
 
     /**
@@ -55,8 +300,8 @@ public class ServiceClientFactory {
     public static ServiceClient createServiceClient(TrustManager trustManager,
             KeyManager keyManager, int requestPayloadSizeLimit) {
 
-        return createServiceClient(CertificateUtil.createSSLContext(
-                trustManager, keyManager), requestPayloadSizeLimit);
+        return createServiceClient(getSSLContext(trustManager, keyManager),
+                requestPayloadSizeLimit);
     }
 
     /**
@@ -80,13 +325,12 @@ public class ServiceClientFactory {
             int requestPayloadSizeLimit) {
         ServiceClient serviceClient;
         try {
-            // supply a scheduled executor for re-use by the client, but do not supply our
+            // supply a scheduled executor for re-use by the clients, but do not supply our
             // regular executor, since the I/O threads might take up all threads
             serviceClient = NettyHttpServiceClient.create(
                     ServiceClientFactory.class.getCanonicalName(),
                     null,
-                    Executors.newScheduledThreadPool(Utils.DEFAULT_THREAD_COUNT, r -> new Thread(
-                            r, ServiceClientFactory.class.getSimpleName())));
+                    getScheduledExecutor());
 
             if (requestPayloadSizeLimit > 0) {
                 serviceClient.setRequestPayloadSizeLimit(requestPayloadSizeLimit);
@@ -100,4 +344,29 @@ public class ServiceClientFactory {
             throw new RuntimeException("Failed to create ServiceClient", e);
         }
     }
+
+    static void schedule(Runnable task, long delay, TimeUnit unit) {
+        getScheduledExecutor().schedule(task, delay, unit);
+    }
+
+    /**
+     * Stopping a client does not shut down its scheduled executor, so a single one is shared by
+     * all clients instead of leaking one per client.
+     */
+    private static ScheduledExecutorService getScheduledExecutor() {
+        if (scheduledExecutor == null) {
+            synchronized (ServiceClientFactory.class) {
+                if (scheduledExecutor == null) {
+                    scheduledExecutor = Executors.newScheduledThreadPool(
+                            Utils.DEFAULT_THREAD_COUNT, r -> {
+                                Thread t = new Thread(r,
+                                        ServiceClientFactory.class.getSimpleName());
+                                t.setDaemon(true);
+                                return t;
+                            });
+                }
+            }
+        }
+        return scheduledExecutor;
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Operation.CompletionHandler;
+import com.vmware.xenon.common.ServiceClient;
+import com.vmware.xenon.common.ServiceHost.ServiceHostState;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Handle to a {@link ServiceClient} shared through {@link ServiceClientFactory}. Requests are
+ * admitted through the process-wide concurrency limit before reaching the shared client, unless
+ * the handle is for long running requests, and {@link #stop()} releases the handle instead of
+ * stopping the shared client, which is stopped when its last handle is released. Requests which
+ * wait for the limit longer than their expiration fail without being sent.
+ */
+class SharedServiceClient implements ServiceClient {
+
+    private static final Logger logger = Logger.getLogger(SharedServiceClient.class.getName());
+
+    private final ServiceClientFactory.SharedClientEntry entry;
+    private final ConcurrencyLimiter limiter;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * @param limiter
+     *            limit of the requests in flight or <code>null</code> if the requests sent
+     *            through the handle are not limited
+     */
+    SharedServiceClient(ServiceClientFactory.SharedClientEntry entry,
+            ConcurrencyLimiter limiter) {
+        this.entry = entry;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void send(Operation op) {
+        if (limiter == null) {
+            entry.client.send(op);
+            return;
+        }
+
+        // the time spent waiting for the limit counts for the expiration of the request
+        if (op.getExpirationMicrosUtc() == 0) {
+            op.setExpiration(Utils.fromNowMicrosUtc(
+                    ServiceHostState.DEFAULT_OPERATION_TIMEOUT_MICROS));
+        }
+
+        CompletionHandler completion = op.getCompletion();
+        op.setCompletion((o, e) -> {
+            limiter.release();
+            if (completion != null) {
+                completion.handle(o, e);
+            }
+        });
+        AtomicBoolean started = new AtomicBoolean();
+        Runnable task = () -> {
+            started.set(true);
+            entry.client.send(op);
+        };
+        limiter.execute(task);
+
+        if (!started.get()) {
+            long delayMicros = op.getExpirationMicrosUtc() - Utils.getSystemNowMicrosUtc();
+            ServiceClientFactory.schedule(() -> {
+                if (limiter.cancel(task)) {
+                    // the request was not admitted, so it does not release the limit
+                    op.setCompletion(completion);
+                    op.setStatusCode(Operation.STATUS_CODE_TIMEOUT);
+                    op.fail(new TimeoutException(String.format(
+                            "Request to %s expired while waiting for the limit of %d"
+                                    + " concurrent requests", op.getUri(),
+                            limiter.getLimit())));
+                }
+            }, Math.max(delayMicros, 0), TimeUnit.MICROSECONDS);
+        }
+    }
+
+    @Override
+    public void sendRequest(Operation op) {
+        send(op);
+    }
+
+    @Override
+    public void start() {
+        // the shared client is started when it is created
+    }
+
+    @Override
+    public void stop() {
+        if (released.compareAndSet(false, true)) {
+            ServiceClientFactory.release(entry);
+        }
+    }
+
+    @Override
+    public void handleMaintenance(Operation op) {
+        entry.client.handleMaintenance(op);
+    }
+
+    @Override
+    public ServiceClient setSSLContext(SSLContext context) {
+        logger.log(Level.WARNING, "Ignoring SSL context set to a shared client, its SSL context"
+                + " is defined by the trust and key managers it is requested with");
+        return this;
+    }
+
+    @Override
+    public SSLContext getSSLContext() {
+        return entry.client.getSSLContext();
+    }
+
+    @Override
+    public ServiceClient setConnectionLimitPerTag(String connectionTag, int limit) {
+        entry.client.setConnectionLimitPerTag(connectionTag, limit);
+        return this;
+    }
+
+    @Override
+    public int getConnectionLimitPerTag(String connectionTag) {
+        return entry.client.getConnectionLimitPerTag(connectionTag);
+    }
+
+    @Override
+    public ServiceClient setPendingRequestQueueLimit(int limit) {
+        entry.client.setPendingRequestQueueLimit(limit);
+        return this;
+    }
+
+    @Override
+    public int getPendingRequestQueueLimit() {
+        return entry.client.getPendingRequestQueueLimit();
+    }
+
+    @Override
+    public ServiceClient setRequestPayloadSizeLimit(int limit) {
+        logger.log(Level.WARNING, String.format("Ignoring request payload size limit %d set to a"
+                + " shared client, the limit is part of the request for the client", limit));
+        return this;
+    }
+
+    @Override
+    public int getRequestPayloadSizeLimit() {
+        return entry.client.getRequestPayloadSizeLimit();
+    }
+
+    @Override
+    public ConnectionPoolMetrics getConnectionPoolMetrics(String connectionTag) {
+        return entry.client.getConnectionPoolMetrics(connectionTag);
+    }
+}
@@ -20,6 +20,7 @@ import com.vmware.admiral.log.EventLogService;
 import com.vmware.admiral.service.common.ClusterMonitoringService;
 import com.vmware.admiral.service.common.CommonInitialBootService;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationFactoryService;
+import com.vmware.admiral.service.common.CounterLatchService;
 import com.vmware.admiral.service.common.CounterSubTaskService;
 import com.vmware.admiral.service.common.EventTopicService;
 import com.vmware.admiral.service.common.ExtensibilitySubscriptionCallbackService;
@@ -28,12 +29,15 @@ import com.vmware.admiral.service.common.HbrApiProxyService;
 import com.vmware.admiral.service.common.LogService;
 import com.vmware.admiral.service.common.LongURIGetService;
 import com.vmware.admiral.service.common.NodeHealthCheckService;
+import com.vmware.admiral.service.common.NodeMigrationCheckpointService;
 import com.vmware.admiral.service.common.NodeMigrationService;
 import com.vmware.admiral.service.common.RegistryService;
 import com.vmware.admiral.service.common.ResourceNamePrefixService;
 import com.vmware.admiral.service.common.ReverseProxyService;
+import com.vmware.admiral.service.common.ServiceClientPoolsService;
 import com.vmware.admiral.service.common.SslTrustCertificateFactoryService;
 import com.vmware.admiral.service.common.SslTrustImportService;
+import com.vmware.admiral.service.common.TaskStageMetricsService;
 import com.vmware.admiral.service.common.mock.MockHbrApiProxyService;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
@@ -57,7 +61,10 @@ public class HostInitCommonServiceConfig extends HostInitServiceHelper {
                 CommonInitialBootService.class,
                 ReverseProxyService.class,
                 ExtensibilitySubscriptionFactoryService.class,
-                LongURIGetService.class);
+                LongURIGetService.class,
+                TaskStageMetricsService.class,
+                ServiceClientPoolsService.class,
+                CounterLatchService.class);
 
         if (mockHbrApiProxyService) {
             startServices(host, MockHbrApiProxyService.class);
@@ -69,7 +76,7 @@ public class HostInitCommonServiceConfig extends HostInitServiceHelper {
                 LogService.class, EventLogService.class,
                 CounterSubTaskService.class,
                 ExtensibilitySubscriptionCallbackService.class,
-                EventTopicService.class);
+                EventTopicService.class, NodeMigrationCheckpointService.class);
 
         // start initialization of system documents, posting with pragma to queue a request,
         // for a service to become available
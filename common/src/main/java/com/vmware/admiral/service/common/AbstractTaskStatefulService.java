@@ -80,6 +80,13 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
 
     private volatile String locale;
 
+    /**
+     * Time the current sub stage and the task were entered on this node, used for the stage
+     * metrics. Not persisted, so the first stage after a restart is not measured.
+     */
+    private volatile long subStageStartMicros;
+    private volatile long taskStartMicros;
+
     public static class TaskStatusState extends MultiTenantDocument {
         public static final String FIELD_NAME_EVENT_LOG_LINK = "eventLogLink";
         public static final String FIELD_NAME_TASK_INFO = "taskInfo";
@@ -184,7 +191,9 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
             return; // the task should not restart in this stage
         }
 
+        subStageStartMicros = Utils.getNowMicrosUtc();
         if (state.taskInfo.stage == TaskStage.CREATED || state.documentVersion == 0) {
+            taskStartMicros = subStageStartMicros;
             state.taskInfo.stage = TaskStage.STARTED;
             if (!state.serviceTaskCallback.isEmpty()) {
                 log(this.logLevel, "Starting task with parent link: %s",
@@ -398,6 +407,7 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
                                     .equals(state.taskInfo.stage.name())
                                     || TaskStage.FAILED.name().equals(state.taskInfo.stage.name())
                                     && retryCount > 0) {
+                                recordRetry(state.taskSubStage);
                                 getHost().schedule(
                                         () -> updateRequestTracker(state, retryCount - 1),
                                         QueryUtil.QUERY_RETRY_INTERVAL_MILLIS,
@@ -524,6 +534,8 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
                 currentState.taskInfo.stage, currentState.taskSubStage,
                 patchBody.taskInfo.stage, patchBody.taskSubStage, refererLogPart);
 
+        recordStageTransition(currentState, patchBody);
+
         if (patchBody.taskInfo.failure != null) {
             currentState.taskInfo.failure = patchBody.taskInfo.failure;
         }
@@ -546,6 +558,41 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
         return false;
     }
 
+    private void recordStageTransition(T currentState, T patchBody) {
+        boolean subStageChanged = patchBody.taskSubStage != null
+                && patchBody.taskSubStage != currentState.taskSubStage;
+        if (!subStageChanged && patchBody.taskInfo.stage == currentState.taskInfo.stage) {
+            return;
+        }
+
+        TaskStageMetrics metrics = TaskStageMetrics.getInstance(getHost());
+        String taskType = getClass().getSimpleName();
+        String subStage = currentState.taskSubStage.name();
+        long now = Utils.getNowMicrosUtc();
+        if (subStageStartMicros > 0) {
+            metrics.recordDuration(taskType, subStage, now - subStageStartMicros);
+        }
+        subStageStartMicros = now;
+
+        if (patchBody.taskInfo.stage == TaskStage.FAILED) {
+            metrics.recordFailure(taskType, subStage);
+        }
+        if (patchBody.taskInfo.stage.ordinal() >= TaskStage.FINISHED.ordinal()
+                && taskStartMicros > 0) {
+            metrics.recordDuration(taskType, TaskStageMetrics.TASK_TOTAL, now - taskStartMicros);
+            taskStartMicros = 0;
+        }
+    }
+
+    /**
+     * Records a retry of an operation done in the given sub stage, to be reported in the task stage
+     * metrics.
+     */
+    protected void recordRetry(E subStage) {
+        TaskStageMetrics.getInstance(getHost()).recordRetry(getClass().getSimpleName(),
+                subStage != null ? subStage.name() : TaskStageMetrics.TASK_TOTAL);
+    }
+
     /**
      * Performs automatic task state merge based on state annotations.
      */
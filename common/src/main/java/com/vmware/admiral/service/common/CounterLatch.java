@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static com.vmware.admiral.common.util.PropertyUtils.mergeCustomProperties;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vmware.admiral.service.common.CounterSubTaskService.CounterSubTaskState;
+import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.TaskState;
+import com.vmware.xenon.common.TaskState.TaskStage;
+
+/**
+ * In-memory counterpart of {@link CounterSubTaskState}. Counts the completions of parallel
+ * services/tasks with the same semantics as {@link CounterSubTaskService}, but without persisting
+ * or replicating every completion. Held by {@link CounterLatchService} on the node owning the
+ * parent task. The counts are saved to a checkpoint from time to time, see
+ * {@link #startCheckpoint(List)}, from which the latch is rebuilt by another node.
+ */
+class CounterLatch {
+
+    private final ServiceTaskCallback serviceTaskCallback;
+    private final double errorThreshold;
+    private final long expirationMicros;
+
+    private long completionsRemaining;
+    private long failCount;
+    private long finishedCount;
+    private Map<String, String> customProperties;
+
+    // completions counted but not saved to the checkpoint yet, and whether a save is in flight
+    private List<Operation> unsavedCompletions = new ArrayList<>();
+    private boolean saving;
+
+    /**
+     * Creates a latch with the given initial state or with the state of a checkpoint.
+     */
+    CounterLatch(CounterSubTaskState state) {
+        this.serviceTaskCallback = state.serviceTaskCallback;
+        this.errorThreshold = state.errorThreshold;
+        this.expirationMicros = state.documentExpirationTimeMicros;
+        this.completionsRemaining = state.completionsRemaining;
+        this.failCount = state.failCount;
+        this.finishedCount = state.finishedCount;
+        this.customProperties = state.customProperties == null ? null
+                : new HashMap<>(state.customProperties);
+    }
+
+    /**
+     * Creates an already completed latch, which ignores the completions reported to it.
+     */
+    static CounterLatch completed(long expirationMicros) {
+        CounterSubTaskState state = new CounterSubTaskState();
+        state.completionsRemaining = 0;
+        state.documentExpirationTimeMicros = expirationMicros;
+        return new CounterLatch(state);
+    }
+
+    /**
+     * Records the completion reported in the given body and returns the response to send to the
+     * parent task when this was the last expected completion or the error threshold was exceeded,
+     * <code>null</code> otherwise.
+     */
+    synchronized ServiceTaskCallbackResponse countDown(CounterSubTaskState patchBody) {
+        if (completionsRemaining <= 0) {
+            return null;
+        }
+
+        TaskState taskInfo = patchBody.taskInfo;
+        switch (taskInfo.stage) {
+        case FINISHED:
+            completionsRemaining--;
+            finishedCount++;
+            if (patchBody.customProperties != null) {
+                // merged into a map of its own, the reported ones may be shared or immutable
+                customProperties = mergeCustomProperties(
+                        customProperties == null ? new HashMap<>() : customProperties,
+                        patchBody.customProperties);
+            }
+            break;
+        case FAILED:
+        case CANCELLED:
+            completionsRemaining--;
+            failCount++;
+            double failedRatio = (double) failCount
+                    / (double) (finishedCount + failCount + completionsRemaining);
+            if (errorThreshold == 0 || failedRatio > errorThreshold) {
+                completionsRemaining = 0;
+            }
+            break;
+        default:
+            return null;
+        }
+
+        if (completionsRemaining > 0) {
+            return null;
+        }
+
+        ServiceTaskCallbackResponse response;
+        if (TaskStage.FINISHED == taskInfo.stage) {
+            response = serviceTaskCallback.getFinishedResponse();
+        } else {
+            response = serviceTaskCallback.getFailedResponse(taskInfo.failure);
+        }
+        response.customProperties = mergeCustomProperties(response.customProperties,
+                customProperties);
+        return response;
+    }
+
+    /**
+     * Adds a completion request which is to be completed once the latch state including it is
+     * saved to the checkpoint.
+     */
+    synchronized void addUnsavedCompletion(Operation completion) {
+        unsavedCompletions.add(completion);
+    }
+
+    /**
+     * Starts saving the latch to its checkpoint, unless a save is already in flight or there is
+     * nothing to save. Returns the state to save and adds to the given list the completion
+     * requests it includes, or returns <code>null</code>. {@link #endCheckpoint()} must be called
+     * when the state is saved.
+     */
+    synchronized CounterSubTaskState startCheckpoint(List<Operation> completions) {
+        if (saving || unsavedCompletions.isEmpty()) {
+            return null;
+        }
+        saving = true;
+        completions.addAll(unsavedCompletions);
+        unsavedCompletions = new ArrayList<>();
+
+        CounterSubTaskState state = new CounterSubTaskState();
+        state.serviceTaskCallback = serviceTaskCallback;
+        state.errorThreshold = errorThreshold;
+        state.documentExpirationTimeMicros = expirationMicros;
+        state.completionsRemaining = completionsRemaining;
+        state.failCount = failCount;
+        state.finishedCount = finishedCount;
+        state.customProperties = customProperties == null ? null
+                : new HashMap<>(customProperties);
+        return state;
+    }
+
+    synchronized void endCheckpoint() {
+        saving = false;
+    }
+
+    ServiceTaskCallback getServiceTaskCallback() {
+        return serviceTaskCallback;
+    }
+
+    synchronized long getCompletionsRemaining() {
+        return completionsRemaining;
+    }
+
+    synchronized long getFinishedCount() {
+        return finishedCount;
+    }
+
+    boolean isExpired(long nowMicros) {
+        return expirationMicros > 0 && expirationMicros < nowMicros;
+    }
+}
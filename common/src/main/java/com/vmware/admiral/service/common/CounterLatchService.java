@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.HostScopedInstances;
+import com.vmware.admiral.common.util.ServiceUtils;
+import com.vmware.admiral.service.common.CounterSubTaskService.CounterSubTaskState;
+import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.NodeSelectorService.SelectOwnerResponse;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+
+/**
+ * Fan-in of parallel services/tasks through in-memory latches. A latch is created on the node
+ * owning the parent task and has a link of the form
+ * <code>/counter-latches/{id}/{parent task link}</code>. Completions are reported with PATCH
+ * requests with a {@link CounterSubTaskState} body, as with {@link CounterSubTaskService}, and the
+ * parent task is patched when all expected completions are reported or the error threshold is
+ * exceeded.
+ *
+ * The state of a latch is checkpointed to a persisted {@link CounterSubTaskState} with a link of
+ * the form <code>/counter-sub-tasks/{id}/{parent task link}</code>. The completions which arrive
+ * while the checkpoint is being saved are saved together by the next save, and a completion is
+ * acknowledged only once it is saved. Completions reported to another node are forwarded to the
+ * owner of the parent task. If the latch is not found there (the owner has restarted or changed)
+ * it is rebuilt from its checkpoint.
+ */
+public class CounterLatchService extends StatelessService {
+
+    public static final String SELF_LINK = ManagementUriParts.COUNTER_LATCHES;
+
+    /**
+     * The latches of a node, by link.
+     */
+    @SuppressWarnings("serial")
+    static class CounterLatches extends ConcurrentHashMap<String, CounterLatch> {
+    }
+
+    public CounterLatchService() {
+        super.toggleOption(ServiceOption.URI_NAMESPACE_OWNER, true);
+        super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+    }
+
+    /**
+     * Creates a latch for the given parent task on the local node and its checkpoint. The
+     * returned result is completed with the link of the latch once the checkpoint is saved.
+     */
+    public static DeferredResult<String> createLatch(ServiceHost host, String parentLink,
+            CounterSubTaskState initState) {
+        String id = UUID.randomUUID().toString();
+        String link = UriUtils.buildUriPath(SELF_LINK, id, parentLink);
+        if (initState.documentExpirationTimeMicros == 0) {
+            initState.documentExpirationTimeMicros = ServiceUtils
+                    .getDefaultTaskExpirationTimeInMicros();
+        }
+        initState.documentSelfLink = getCheckpointLink(link);
+        getLatches(host).put(link, new CounterLatch(initState));
+
+        DeferredResult<String> result = new DeferredResult<>();
+        host.sendRequest(Operation.createPost(host, CounterSubTaskService.FACTORY_LINK)
+                .setBody(initState)
+                .setReferer(host.getUri())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        getLatches(host).remove(link);
+                        result.fail(e);
+                        return;
+                    }
+                    result.complete(link);
+                }));
+        return result;
+    }
+
+    /**
+     * Returns the link of the checkpoint of the given latch link.
+     */
+    static String getCheckpointLink(String latchLink) {
+        return CounterSubTaskService.FACTORY_LINK + latchLink.substring(SELF_LINK.length());
+    }
+
+    /**
+     * Returns the link of the parent task of the given latch link.
+     */
+    static String getParentLink(String latchLink) {
+        String path = latchLink.substring(SELF_LINK.length() + 1);
+        int index = path.indexOf(UriUtils.URI_PATH_CHAR);
+        return index < 0 ? null : path.substring(index);
+    }
+
+    static int getLatchCount(ServiceHost host) {
+        return getLatches(host).size();
+    }
+
+    static CounterLatches getLatches(ServiceHost host) {
+        return HostScopedInstances.getOrCreate(host, CounterLatches.class,
+                (h) -> new CounterLatches());
+    }
+
+    @Override
+    public void handlePatch(Operation patch) {
+        String link = patch.getUri().getPath();
+        String parentLink = link.startsWith(SELF_LINK + UriUtils.URI_PATH_CHAR)
+                ? getParentLink(link) : null;
+        if (parentLink == null) {
+            patch.fail(new IllegalArgumentException("Invalid counter latch link: " + link));
+            return;
+        }
+
+        CounterSubTaskState patchBody = patch.getBody(CounterSubTaskState.class);
+        if (patchBody.taskInfo == null || patchBody.taskInfo.stage == null) {
+            String error = "taskInfo, taskInfo.stage are required";
+            logWarning(error);
+            patch.fail(new IllegalArgumentException(error));
+            return;
+        }
+
+        CounterLatch latch = getLatches(getHost()).get(link);
+        if (latch != null) {
+            countDown(patch, link, latch, patchBody);
+            return;
+        }
+
+        if (patch.hasPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORWARDED)) {
+            rebuildLatch(patch, link, patchBody);
+            return;
+        }
+
+        // selection is queued while the node group is unavailable, as long as the patch is valid
+        Operation selectOp = Operation.createPost(null)
+                .setExpiration(patch.getExpirationMicrosUtc())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        patch.fail(e);
+                        return;
+                    }
+                    SelectOwnerResponse owner = o.getBody(SelectOwnerResponse.class);
+                    if (owner.isLocalHostOwner) {
+                        rebuildLatch(patch, link, patchBody);
+                        return;
+                    }
+                    forwardToOwner(patch, owner, patchBody);
+                });
+        getHost().selectOwner(ServiceUriPaths.DEFAULT_NODE_SELECTOR, parentLink, selectOp);
+    }
+
+    @Override
+    public void handlePeriodicMaintenance(Operation post) {
+        long now = Utils.getSystemNowMicrosUtc();
+        getLatches(getHost()).values().removeIf((latch) -> latch.isExpired(now));
+        post.complete();
+    }
+
+    private void countDown(Operation patch, String link, CounterLatch latch,
+            CounterSubTaskState patchBody) {
+        if (latch.getCompletionsRemaining() <= 0) {
+            logWarning("Already completed. Ignoring patch from %s", patch.getReferer());
+            patch.complete();
+            return;
+        }
+
+        ServiceTaskCallbackResponse response = latch.countDown(patchBody);
+        // acknowledged once saved, so that an acknowledged completion is not lost with the node
+        latch.addUnsavedCompletion(patch);
+        saveCheckpoint(link, latch);
+
+        if (response == null) {
+            logFine("Remaining %d for %s", latch.getCompletionsRemaining(), link);
+            return;
+        }
+
+        if (patchBody.taskInfo.stage != TaskStage.FINISHED) {
+            logWarning("Notifying parent of task failure from stage %s. Error: %s",
+                    patchBody.taskInfo.stage, patchBody.taskInfo.failure == null ? "n.a."
+                            : patchBody.taskInfo.failure.message);
+        }
+        logInfo("Counter latch %s completing with count [%d]", link, latch.getFinishedCount());
+        notifyParent(latch.getServiceTaskCallback().serviceSelfLink, response);
+    }
+
+    private void forwardToOwner(Operation patch, SelectOwnerResponse owner,
+            CounterSubTaskState patchBody) {
+        sendRequest(Operation.createPatch(SelectOwnerResponse.buildUriToOwner(owner, patch))
+                .setBody(patchBody)
+                .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORWARDED)
+                .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_QUEUE_FOR_SERVICE_AVAILABILITY)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        patch.fail(e);
+                        return;
+                    }
+                    patch.complete();
+                }));
+    }
+
+    private void saveCheckpoint(String link, CounterLatch latch) {
+        List<Operation> completions = new ArrayList<>();
+        CounterSubTaskState checkpoint = latch.startCheckpoint(completions);
+        if (checkpoint == null) {
+            return;
+        }
+
+        sendRequest(Operation.createPut(this, getCheckpointLink(link))
+                .setBody(checkpoint)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        // the latch keeps counting, only a rebuild would miss the completions
+                        logWarning("Failure saving the checkpoint of counter latch %s. Error: %s",
+                                link, Utils.toString(e));
+                    }
+                    latch.endCheckpoint();
+                    completions.forEach(Operation::complete);
+                    saveCheckpoint(link, latch);
+                }));
+    }
+
+    private void rebuildLatch(Operation patch, String link, CounterSubTaskState patchBody) {
+        sendRequest(Operation.createGet(this, getCheckpointLink(link))
+                .setCompletion((o, e) -> {
+                    if (o.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND) {
+                        // expired together with its latch, its parent task has expired as well
+                        logWarning("Counter latch %s and its checkpoint were not found. Ignoring"
+                                + " patch from %s", link, patch.getReferer());
+                        getLatches(getHost()).putIfAbsent(link, CounterLatch.completed(
+                                ServiceUtils.getDefaultTaskExpirationTimeInMicros()));
+                        patch.complete();
+                        return;
+                    }
+                    if (e != null) {
+                        logWarning("Failure retrieving the checkpoint of counter latch %s."
+                                + " Error: %s", link, Utils.toString(e));
+                        patch.fail(e);
+                        return;
+                    }
+
+                    CounterLatch rebuilt = new CounterLatch(o.getBody(CounterSubTaskState.class));
+                    CounterLatch latch = getLatches(getHost()).putIfAbsent(link, rebuilt);
+                    if (latch == null) {
+                        // the node owning the parent task has restarted or changed
+                        logInfo("Counter latch %s rebuilt from its checkpoint with %d remaining",
+                                link, rebuilt.getCompletionsRemaining());
+                        latch = rebuilt;
+                    }
+                    countDown(patch, link, latch, patchBody);
+                }));
+    }
+
+    private void notifyParent(String parentLink, ServiceTaskCallbackResponse response) {
+        try {
+            sendRequest(Operation.createPatch(this, parentLink)
+                    .setBody(response)
+                    .setCompletion((o, e) -> {
+                        if (e != null) {
+                            logSevere("Failure notifying parent task %s. Error: %s",
+                                    parentLink, Utils.toString(e));
+                        }
+                    }));
+        } catch (Throwable e) {
+            logSevere("Can't notify parent task %s. Error: %s", parentLink, Utils.toString(e));
+        }
+    }
+}
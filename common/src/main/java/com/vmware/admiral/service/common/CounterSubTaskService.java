@@ -37,6 +37,14 @@ import com.vmware.xenon.common.Utils;
 public class CounterSubTaskService extends StatefulService {
     public static final String FACTORY_LINK = ManagementUriParts.COUNTER_SUB_TASKS;
 
+    /**
+     * Whether to count completions with in-memory {@link CounterLatchService} latches instead of
+     * persisted counters, which is the default. The latches save their counts to a checkpoint in
+     * batches instead of persisting every completion.
+     */
+    private static final boolean IN_MEMORY_COUNTERS = Boolean.parseBoolean(System.getProperty(
+            "com.vmware.admiral.counter.subtask.in.memory", Boolean.TRUE.toString()));
+
     public static class CounterSubTaskState extends ServiceDocument {
         public TaskState taskInfo = new TaskState();
         public long completionsRemaining = 1;
@@ -73,9 +81,35 @@ public class CounterSubTaskService extends StatefulService {
         super.toggleOption(ServiceOption.OWNER_SELECTION, true);
     }
 
+    /**
+     * Creates a counter for the given parent task and passes its link to the callback function.
+     * The counter is an in-memory {@link CounterLatchService} latch held on the node owning the
+     * parent task, or a persisted counter sub task if the
+     * <code>com.vmware.admiral.counter.subtask.in.memory</code> system property is
+     * <code>false</code>.
+     */
     public static void createSubTask(
             AbstractTaskStatefulService<?, ?> service, CounterSubTaskState subTaskInitState,
             Consumer<String> callbackFunc) {
+        if (IN_MEMORY_COUNTERS) {
+            try {
+                CounterLatchService.createLatch(service.getHost(), service.getSelfLink(),
+                        subTaskInitState).whenComplete((link, e) -> {
+                            if (e != null) {
+                                service.failTask("Failure creating counter latch", e);
+                                return;
+                            }
+                            service.logInfo(
+                                    "Creating %d tasks(s), reporting through counter latch %s",
+                                    subTaskInitState.completionsRemaining, link);
+                            callbackFunc.accept(link);
+                        });
+            } catch (Throwable e) {
+                service.failTask("Failure creating counter latch", e);
+            }
+            return;
+        }
+
         try {
             final String link = UriUtils.buildUriPath(CounterSubTaskService.FACTORY_LINK,
                     UUID.randomUUID().toString(), service.getSelfLink());
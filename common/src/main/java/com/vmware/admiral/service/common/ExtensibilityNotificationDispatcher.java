@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Delivers extensibility notifications through a queue per subscriber (callback address).
+ * <ul>
+ * <li>At most a fixed number of requests per subscriber are in flight, the rest wait in the
+ * queue.</li>
+ * <li>When the backlog of a subscriber exceeds its limit, the tasks raising asynchronous
+ * notifications to it are not resumed until the backlog drains (back-pressure).</li>
+ * <li>Consecutive asynchronous notifications are sent in a single
+ * {@link ExtensibilityNotificationBatch} to subscribers which opted in for batches. The batch size
+ * is taken from the subscription of every notification, several subscriptions may share the
+ * callback address.</li>
+ * <li>Blocking notifications of the same task are delivered one at a time, in the order they
+ * were raised.</li>
+ * <li>Notifications which still fail after all retries are kept in a bounded dead-letter store
+ * and the task is failed, as before.</li>
+ * </ul>
+ */
+public class ExtensibilityNotificationDispatcher {
+
+    private static final Logger logger = Logger.getLogger(
+            ExtensibilityNotificationDispatcher.class.getName());
+
+    /**
+     * Sends the notification requests and schedules their retries.
+     */
+    interface Transport {
+        void send(Operation op);
+
+        void schedule(Runnable task, long delay, TimeUnit unit);
+    }
+
+    /**
+     * Body of a request holding several asynchronous notifications.
+     */
+    public static class ExtensibilityNotificationBatch {
+        public List<ServiceDocument> notifications;
+    }
+
+    /**
+     * Notification which could not be delivered.
+     */
+    public static class DeadLetter {
+        public URI callbackReference;
+        public String taskLink;
+        public boolean blocking;
+        public int attempts;
+        public String failure;
+        public long timestampMicros;
+        public String payloadJson;
+    }
+
+    /**
+     * Delivery metrics of a subscriber.
+     */
+    public static class SubscriberStats {
+        public URI callbackReference;
+        public int backlog;
+        public int inFlight;
+        public int waitingTasks;
+        public long delivered;
+        public long failedAttempts;
+        public long deadLettered;
+        public long meanLatencyMicros;
+        public long maxLatencyMicros;
+        public long oldestPendingAgeMicros;
+    }
+
+    private static class Delivery {
+        final ServiceDocument body;
+        final String taskLink;
+        final boolean blocking;
+        final int batchSize;
+        final long enqueuedMicros;
+
+        Delivery(ServiceDocument body, String taskLink, boolean blocking, int batchSize) {
+            this.body = body;
+            this.taskLink = taskLink;
+            this.blocking = blocking;
+            this.batchSize = batchSize;
+            this.enqueuedMicros = Utils.getSystemNowMicrosUtc();
+        }
+    }
+
+    private static class SubscriberQueue {
+        final URI callbackReference;
+        final Deque<Delivery> pending = new ArrayDeque<>();
+        final Deque<Runnable> waitingTasks = new ArrayDeque<>();
+        final Set<String> tasksInFlight = new HashSet<>();
+        int inFlight;
+
+        final LongAdder delivered = new LongAdder();
+        final LongAdder failedAttempts = new LongAdder();
+        final LongAdder deadLettered = new LongAdder();
+        final LongAdder totalLatencyMicros = new LongAdder();
+        final LongAccumulator maxLatencyMicros = new LongAccumulator(Math::max, 0);
+
+        SubscriberQueue(URI callbackReference) {
+            this.callbackReference = callbackReference;
+        }
+    }
+
+    private final Transport transport;
+    private final BiConsumer<String, String> taskFailureHandler;
+    private final int maxConcurrent;
+    private final int backlogLimit;
+    private final int retryCount;
+    private final int retryWaitSeconds;
+    private final int deadLetterLimit;
+
+    private final Map<URI, SubscriberQueue> queues = new ConcurrentHashMap<>();
+    private final Deque<DeadLetter> deadLetters = new ArrayDeque<>();
+
+    /**
+     * @param taskFailureHandler called with the failure message and the task link when a
+     *                           notification is given up
+     */
+    ExtensibilityNotificationDispatcher(Transport transport,
+            BiConsumer<String, String> taskFailureHandler, int maxConcurrent, int backlogLimit,
+            int retryCount, int retryWaitSeconds, int deadLetterLimit) {
+        this.transport = transport;
+        this.taskFailureHandler = taskFailureHandler;
+        this.maxConcurrent = maxConcurrent;
+        this.backlogLimit = backlogLimit;
+        this.retryCount = retryCount;
+        this.retryWaitSeconds = retryWaitSeconds;
+        this.deadLetterLimit = deadLetterLimit;
+    }
+
+    /**
+     * Queues a notification for delivery.
+     *
+     * @param batchSize  maximum number of asynchronous notifications the subscriber accepts in a
+     *                   single request
+     * @param onAccepted (optional) run once the backlog of the subscriber allows more
+     *                   notifications, immediately in most cases
+     */
+    void dispatch(URI callbackReference, int batchSize, ServiceDocument body, String taskLink,
+            boolean blocking, Runnable onAccepted) {
+        SubscriberQueue queue = queues.computeIfAbsent(callbackReference, SubscriberQueue::new);
+        boolean accepted = true;
+        synchronized (queue) {
+            queue.pending.add(new Delivery(body, taskLink, blocking, Math.max(1, batchSize)));
+            if (onAccepted != null && queue.pending.size() > backlogLimit) {
+                queue.waitingTasks.add(onAccepted);
+                accepted = false;
+            }
+        }
+        drain(queue);
+        if (!accepted) {
+            logger.fine(() -> String.format("Backlog of [%s] is full, task [%s] waits for it",
+                    callbackReference, taskLink));
+        } else if (onAccepted != null) {
+            onAccepted.run();
+        }
+    }
+
+    List<SubscriberStats> getStats() {
+        long now = Utils.getSystemNowMicrosUtc();
+        List<SubscriberStats> result = new ArrayList<>();
+        for (SubscriberQueue queue : queues.values()) {
+            SubscriberStats stats = new SubscriberStats();
+            stats.callbackReference = queue.callbackReference;
+            synchronized (queue) {
+                stats.backlog = queue.pending.size();
+                stats.inFlight = queue.inFlight;
+                stats.waitingTasks = queue.waitingTasks.size();
+                Delivery oldest = queue.pending.peek();
+                stats.oldestPendingAgeMicros = oldest != null ? now - oldest.enqueuedMicros : 0;
+            }
+            stats.delivered = queue.delivered.sum();
+            stats.failedAttempts = queue.failedAttempts.sum();
+            stats.deadLettered = queue.deadLettered.sum();
+            stats.meanLatencyMicros = stats.delivered > 0
+                    ? queue.totalLatencyMicros.sum() / stats.delivered : 0;
+            stats.maxLatencyMicros = queue.maxLatencyMicros.get();
+            result.add(stats);
+        }
+        return result;
+    }
+
+    List<DeadLetter> getDeadLetters() {
+        synchronized (deadLetters) {
+            return new ArrayList<>(deadLetters);
+        }
+    }
+
+    private void drain(SubscriberQueue queue) {
+        List<List<Delivery>> batches = new ArrayList<>();
+        List<Runnable> resumed = new ArrayList<>();
+        synchronized (queue) {
+            while (queue.inFlight < maxConcurrent) {
+                List<Delivery> batch = pollBatch(queue);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                queue.inFlight++;
+                batches.add(batch);
+            }
+            while (!queue.waitingTasks.isEmpty() && queue.pending.size() <= backlogLimit) {
+                resumed.add(queue.waitingTasks.poll());
+            }
+        }
+        for (List<Delivery> batch : batches) {
+            send(queue, batch, retryCount);
+        }
+        for (Runnable task : resumed) {
+            task.run();
+        }
+    }
+
+    /**
+     * Takes the next deliveries to send in a single request. A blocking delivery is not taken
+     * while an earlier one of the same task is in flight. Asynchronous deliveries are grouped up
+     * to the batch size of the first one, only with deliveries of the same batch size, so that a
+     * subscription which did not opt in never receives a batch.
+     */
+    private List<Delivery> pollBatch(SubscriberQueue queue) {
+        List<Delivery> batch = new ArrayList<>();
+        Iterator<Delivery> it = queue.pending.iterator();
+        while (it.hasNext() && (batch.isEmpty() || batch.size() < batch.get(0).batchSize)) {
+            Delivery delivery = it.next();
+            if (!batch.isEmpty() && delivery.batchSize != batch.get(0).batchSize) {
+                continue;
+            }
+            if (delivery.blocking) {
+                if (!batch.isEmpty()) {
+                    // blocking notifications are never batched
+                    continue;
+                }
+                if (queue.tasksInFlight.contains(delivery.taskLink)) {
+                    // an earlier notification of the task is in flight
+                    continue;
+                }
+                it.remove();
+                queue.tasksInFlight.add(delivery.taskLink);
+                batch.add(delivery);
+                break;
+            }
+            it.remove();
+            batch.add(delivery);
+        }
+        return batch;
+    }
+
+    private void send(SubscriberQueue queue, List<Delivery> batch, int retriesLeft) {
+        Object body;
+        if (batch.size() == 1) {
+            body = batch.get(0).body;
+        } else {
+            ExtensibilityNotificationBatch notifications = new ExtensibilityNotificationBatch();
+            notifications.notifications = new ArrayList<>(batch.size());
+            batch.forEach((d) -> notifications.notifications.add(d.body));
+            body = notifications;
+        }
+
+        Operation op = Operation.createPost(queue.callbackReference)
+                .setBody(body)
+                .setCompletion((o, e) -> {
+                    if (e == null) {
+                        long now = Utils.getSystemNowMicrosUtc();
+                        for (Delivery delivery : batch) {
+                            long latency = now - delivery.enqueuedMicros;
+                            queue.delivered.increment();
+                            queue.totalLatencyMicros.add(latency);
+                            queue.maxLatencyMicros.accumulate(latency);
+                        }
+                        complete(queue, batch);
+                        return;
+                    }
+
+                    queue.failedAttempts.increment();
+                    logger.warning(String.format("Retrying [%s] times to notify [%s]. Error: [%s]",
+                            retriesLeft, queue.callbackReference, e.getMessage()));
+
+                    if (retriesLeft <= 1) {
+                        giveUp(queue, batch, e);
+                        complete(queue, batch);
+                    } else if (o != null && o.getStatusCode() == Operation.STATUS_CODE_TIMEOUT) {
+                        // Call to ExtensibilitySubscriptionCallback will resume the service
+                        // task.
+                        logger.warning(String.format("Request to [%s] for task [%s] expired!",
+                                queue.callbackReference, batch.get(0).taskLink));
+                        complete(queue, batch);
+                    } else {
+                        transport.schedule(() -> send(queue, batch, retriesLeft - 1),
+                                retryWaitSeconds, TimeUnit.SECONDS);
+                    }
+                });
+        try {
+            transport.send(op);
+        } catch (Throwable e) {
+            op.fail(e);
+        }
+    }
+
+    private void complete(SubscriberQueue queue, List<Delivery> batch) {
+        synchronized (queue) {
+            queue.inFlight--;
+            for (Delivery delivery : batch) {
+                if (delivery.blocking) {
+                    queue.tasksInFlight.remove(delivery.taskLink);
+                }
+            }
+        }
+        drain(queue);
+    }
+
+    private void giveUp(SubscriberQueue queue, List<Delivery> batch, Throwable e) {
+        for (Delivery delivery : batch) {
+            logger.warning(String.format("Cannot notify [%s] for task [%s]. Error: %s",
+                    queue.callbackReference, delivery.taskLink, e.getMessage()));
+
+            DeadLetter deadLetter = new DeadLetter();
+            deadLetter.callbackReference = queue.callbackReference;
+            deadLetter.taskLink = delivery.taskLink;
+            deadLetter.blocking = delivery.blocking;
+            deadLetter.attempts = retryCount;
+            deadLetter.failure = e.getMessage();
+            deadLetter.timestampMicros = Utils.getSystemNowMicrosUtc();
+            deadLetter.payloadJson = Utils.toJson(delivery.body);
+            synchronized (deadLetters) {
+                deadLetters.add(deadLetter);
+                while (deadLetters.size() > deadLetterLimit) {
+                    deadLetters.poll();
+                }
+            }
+            queue.deadLettered.increment();
+
+            taskFailureHandler.accept(e.getMessage(), delivery.taskLink);
+        }
+    }
+}
@@ -13,6 +13,7 @@ package com.vmware.admiral.service.common;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -27,6 +28,8 @@ import com.vmware.admiral.common.util.PropertyUtils;
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.service.common.EventTopicService.EventTopicState;
+import com.vmware.admiral.service.common.ExtensibilityNotificationDispatcher.DeadLetter;
+import com.vmware.admiral.service.common.ExtensibilityNotificationDispatcher.SubscriberStats;
 import com.vmware.admiral.service.common.ExtensibilitySubscriptionCallbackService.ExtensibilitySubscriptionCallback;
 import com.vmware.admiral.service.common.ExtensibilitySubscriptionService.ExtensibilitySubscription;
 import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
@@ -57,6 +60,12 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
             "com.vmware.admiral.service.extensibility.notification.retries", 3);
     private static final int NOTIFICATION_RETRY_WAIT = Integer.getInteger(
             "com.vmware.admiral.service.extensibility.notification.wait", 15);
+    private static final int NOTIFICATION_MAX_CONCURRENT = Integer.getInteger(
+            "com.vmware.admiral.service.extensibility.notification.max.concurrent", 16);
+    private static final int NOTIFICATION_BACKLOG_LIMIT = Integer.getInteger(
+            "com.vmware.admiral.service.extensibility.notification.backlog.limit", 1000);
+    private static final int NOTIFICATION_DEAD_LETTER_LIMIT = Integer.getInteger(
+            "com.vmware.admiral.service.extensibility.notification.dead.letter.limit", 1000);
     private static final Duration EXTENSIBILITY_TIMEOUT = Duration.parse(
             System.getProperty("com.vmware.admiral.service.extensibility.timeout", "PT30M"));
 
@@ -72,7 +81,33 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
 
     private AtomicBoolean initialized = new AtomicBoolean();
 
+    private final ExtensibilityNotificationDispatcher dispatcher;
+
+    /**
+     * Delivery metrics per subscriber and the notifications which could not be delivered.
+     */
+    public static class ExtensibilityNotificationStats {
+        public List<SubscriberStats> subscribers;
+        public List<DeadLetter> deadLetters;
+    }
+
     public ExtensibilitySubscriptionManager() {
+        ExtensibilityNotificationDispatcher.Transport transport =
+                new ExtensibilityNotificationDispatcher.Transport() {
+                    @Override
+                    public void send(Operation op) {
+                        sendRequest(op);
+                    }
+
+                    @Override
+                    public void schedule(Runnable task, long delay, TimeUnit unit) {
+                        getHost().schedule(task, delay, unit);
+                    }
+                };
+        dispatcher = new ExtensibilityNotificationDispatcher(transport, this::failTask,
+                NOTIFICATION_MAX_CONCURRENT, NOTIFICATION_BACKLOG_LIMIT,
+                NOTIFICATION_RETRY_COUNT, NOTIFICATION_RETRY_WAIT,
+                NOTIFICATION_DEAD_LETTER_LIMIT);
     }
 
     @Override
@@ -80,6 +115,15 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
         initialize(start);
     }
 
+    @Override
+    public void handleGet(Operation get) {
+        ExtensibilityNotificationStats stats = new ExtensibilityNotificationStats();
+        stats.subscribers = dispatcher.getStats();
+        stats.deadLetters = dispatcher.getDeadLetters();
+        get.setBody(stats);
+        get.complete();
+    }
+
     @Override
     public void handleStop(Operation delete) {
         initialized.set(false);
@@ -114,11 +158,10 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
             sendBlockingNotificationCall(notificationPayload, replyPayload,
                     extensibilitySubscription, state);
         } else {
-            // asynchronous notification
+            // asynchronous notification, task execution continues with the original state once
+            // the backlog of the subscriber allows it
             sendAsyncNotificationCall(notificationPayload, replyPayload, extensibilitySubscription,
-                    state);
-            // continue task execution with original state
-            callback.accept(state);
+                    state, () -> callback.accept(state));
         }
     }
 
@@ -301,7 +344,7 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
 
                     sendExternalNotification(extensibility,
                             buildDataToSend(notificationPayload, replyPayload, result),
-                            state, NOTIFICATION_RETRY_COUNT);
+                            state, null);
                 }));
     }
 
@@ -312,18 +355,18 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
      * @param replyPayload        reply payload
      * @param extensibility       extensibility state
      * @param state               task state to send
+     * @param onAccepted          resumes the task once the notification is accepted
      */
     @SuppressWarnings({ "rawtypes" })
     private <T extends TaskServiceDocument> void sendAsyncNotificationCall(
             ServiceTaskCallbackResponse notificationPayload,
             ServiceTaskCallbackResponse replyPayload,
-            ExtensibilitySubscription extensibility, T state) {
+            ExtensibilitySubscription extensibility, T state, Runnable onAccepted) {
         logFine("Sending async notification to [%s] for [%s]",
                 extensibility.callbackReference, state.documentSelfLink);
         // Task is filtered to provide only fields declared as notification payload.
         T notificationPayloadState = prepareTaskNotificationPayload(notificationPayload, state);
-        sendExternalNotification(extensibility, notificationPayloadState, state,
-                NOTIFICATION_RETRY_COUNT);
+        sendExternalNotification(extensibility, notificationPayloadState, state, onAccepted);
     }
 
     @SuppressWarnings("unchecked")
@@ -339,49 +382,25 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
     }
 
     /**
-     * Sends a service document to external url. Supports retry in case of an error and if task
-     * service is provided this method will call failTask when no more retries left.
+     * Queues a service document for delivery to the external url of the subscriber. Delivery is
+     * retried in case of an error and the task is failed when no more retries left, see
+     * {@link ExtensibilityNotificationDispatcher}.
      *
      * @param extensibility extensibility state
      * @param body          document to send
-     * @param state         - task state
-     * @param retriesLeft   number of retries left before give up
+     * @param state         task state
+     * @param onAccepted    (optional) run once the backlog of the subscriber allows more
+     *                      notifications
      */
     @SuppressWarnings("rawtypes")
     private <T extends TaskServiceDocument> void sendExternalNotification(
             ExtensibilitySubscription extensibility,
             ServiceDocument body, T state,
-            int retriesLeft) {
-
-        sendRequest(Operation.createPost(extensibility.callbackReference)
-                .setBody(body)
-                .setCompletion((o, e) -> {
-                    if (e != null) {
-                        logWarning(
-                                "Retrying [%s] times to notify [%s]. Error: [%s]",
-                                retriesLeft, extensibility.callbackReference,
-                                e.getMessage());
-
-                        if (retriesLeft <= 1) {
-                            logWarning("Cannot notify [%s] for task [%s]. Error: %s",
-                                    extensibility.callbackReference, body.documentSelfLink,
-                                    e.getMessage());
-
-                            failTask(e.getMessage(), state.documentSelfLink);
-                        } else if (o.getStatusCode() == Operation.STATUS_CODE_TIMEOUT) {
-                            // Call to ExtensibilitySubscriptionCallback will resume the service
-                            // task.
-                            logWarning("Request to [%s] for task [%s] expired!",
-                                    extensibility.callbackReference, body.documentSelfLink);
-                        } else {
-                            getHost().schedule(() -> {
-                                sendExternalNotification(extensibility, body, state,
-                                        retriesLeft - 1);
-                            }, NOTIFICATION_RETRY_WAIT, TimeUnit.SECONDS);
-
-                        }
-                    }
-                }));
+            Runnable onAccepted) {
+        int batchSize = extensibility.notificationBatchSize != null
+                ? extensibility.notificationBatchSize : 1;
+        dispatcher.dispatch(extensibility.callbackReference, batchSize, body,
+                state.documentSelfLink, Boolean.TRUE.equals(extensibility.blocking), onAccepted);
     }
 
     @SuppressWarnings("rawtypes")
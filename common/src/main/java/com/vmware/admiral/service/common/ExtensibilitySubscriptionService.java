@@ -13,7 +13,10 @@ package com.vmware.admiral.service.common;
 
 import java.net.URI;
 
+import com.google.gson.annotations.Since;
+
 import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.serialization.ReleaseConstants;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption;
@@ -54,6 +57,12 @@ public class ExtensibilitySubscriptionService extends StatefulService {
         @UsageOption(option = PropertyUsageOption.REQUIRED)
         public URI callbackReference;
 
+        @Since(ReleaseConstants.RELEASE_VERSION_1_2_0)
+        @Documentation(description = "(Optional) Maximum number of asynchronous notifications "
+                + "sent to the subscriber in a single request. When greater than 1, consecutive "
+                + "notifications are sent as a batch with a 'notifications' array.")
+        public Integer notificationBatchSize;
+
     }
 
     public ExtensibilitySubscriptionService() {
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatefulService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Progress of the migration of a factory from a source to a destination node group, so that an interrupted
+ * migration resumes where it stopped, and a migration run again migrates only the documents
+ * updated since.
+ */
+public class NodeMigrationCheckpointService extends StatefulService {
+
+    public static final String FACTORY_LINK = ManagementUriParts.MIGRATION_CHECKPOINTS;
+
+    public static class NodeMigrationCheckpoint extends ServiceDocument {
+
+        @Documentation(description = "The source node group of the migration.")
+        public String sourceNodeGroup;
+
+        @Documentation(description = "The destination node group of the migration.")
+        public String destinationNodeGroup;
+
+        @Documentation(description = "The migrated factory.")
+        public String factoryLink;
+
+        @Documentation(description = "Whether the migration of the factory has completed.")
+        public Boolean completed;
+
+        @Documentation(description = "The latest update time of the migrated source documents.")
+        public Long latestSourceUpdateTimeMicros;
+
+        @Documentation(description = "The number of migrated documents of the factory.")
+        public Long migratedDocuments;
+    }
+
+    public NodeMigrationCheckpointService() {
+        super(NodeMigrationCheckpoint.class);
+        super.toggleOption(ServiceOption.PERSISTENCE, true);
+        super.toggleOption(ServiceOption.REPLICATION, true);
+        super.toggleOption(ServiceOption.OWNER_SELECTION, true);
+        super.toggleOption(ServiceOption.IDEMPOTENT_POST, true);
+    }
+
+    /**
+     * Returns the link of the checkpoint of the given factory, source and destination node groups.
+     * The progress of a migration to one destination says nothing about another destination.
+     */
+    public static String getCheckpointLink(String sourceNodeGroup, String destinationNodeGroup,
+            String factoryLink) {
+        return UriUtils.buildUriPath(FACTORY_LINK, Utils.computeHash(
+                String.join("|", sourceNodeGroup, destinationNodeGroup, factoryLink)));
+    }
+
+    @Override
+    public void handleCreate(Operation create) {
+        if (!checkForBody(create)) {
+            return;
+        }
+        create.complete();
+    }
+
+    @Override
+    public void handlePut(Operation put) {
+        if (!checkForBody(put)) {
+            return;
+        }
+        NodeMigrationCheckpoint body = put.getBody(NodeMigrationCheckpoint.class);
+        setState(put, body);
+        put.setBody(body).complete();
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.xenon.common.DeferredResult;
+
+/**
+ * A run of a node migration: migrates groups of factories one group after another, the factories
+ * of a group in parallel with a bounded number of migrations in flight, and keeps track of the
+ * progress of the run.
+ */
+class NodeMigrationRun {
+
+    /**
+     * Migrates the documents of a factory.
+     */
+    @FunctionalInterface
+    interface FactoryMigration {
+        DeferredResult<FactoryResult> migrate(String factoryLink);
+    }
+
+    static class FactoryResult {
+        final long migratedDocuments;
+        final boolean skipped;
+
+        FactoryResult(long migratedDocuments, boolean skipped) {
+            this.migratedDocuments = migratedDocuments;
+            this.skipped = skipped;
+        }
+    }
+
+    /**
+     * Progress of a migration run.
+     */
+    public static class MigrationStatus {
+        public enum Stage {
+            RUNNING, COMPLETED, FAILED
+        }
+
+        public Stage stage;
+        public String failure;
+        public int totalFactories;
+        public int completedFactories;
+        public int skippedFactories;
+        public List<String> factoriesInProgress;
+        public long migratedDocuments;
+        public long estimatedTotalDocuments;
+        public double documentsPerSecond;
+        public Long etaSeconds;
+        public long elapsedSeconds;
+    }
+
+    private final int parallelism;
+    private final FactoryMigration migration;
+    private final long startNanos = System.nanoTime();
+
+    private final Deque<List<String>> groups = new ArrayDeque<>();
+    private final Deque<String> pending = new ArrayDeque<>();
+    private final Map<String, Long> inProgressDocuments = new HashMap<>();
+    private final Map<String, Long> inProgressEstimates = new HashMap<>();
+    private final DeferredResult<Void> result = new DeferredResult<>();
+
+    private int totalFactories;
+    private int completedFactories;
+    private int skippedFactories;
+    private long migratedDocuments;
+    private long endNanos;
+    private MigrationStatus.Stage stage = MigrationStatus.Stage.RUNNING;
+    private String failure;
+
+    NodeMigrationRun(int parallelism, FactoryMigration migration) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("'parallelism' must be positive");
+        }
+        this.parallelism = parallelism;
+        this.migration = migration;
+    }
+
+    /**
+     * Migrates the given groups of factories, a group is started once the previous one has
+     * completed. Fails on the first failed factory migration; the migrations in flight are let
+     * complete but no new ones are started.
+     */
+    DeferredResult<Void> run(List<? extends Collection<String>> factoryGroups) {
+        synchronized (this) {
+            for (Collection<String> group : factoryGroups) {
+                groups.add(new ArrayList<>(group));
+                totalFactories += group.size();
+            }
+        }
+        startNext();
+        return result;
+    }
+
+    /**
+     * Updates the progress of a factory migration in flight.
+     */
+    synchronized void updateProgress(String factoryLink, long migratedDocuments,
+            long estimatedTotalDocuments) {
+        if (inProgressDocuments.containsKey(factoryLink)) {
+            inProgressDocuments.put(factoryLink, migratedDocuments);
+            inProgressEstimates.put(factoryLink, estimatedTotalDocuments);
+        }
+    }
+
+    synchronized Collection<String> getFactoriesInProgress() {
+        return new ArrayList<>(inProgressDocuments.keySet());
+    }
+
+    synchronized boolean isRunning() {
+        return stage == MigrationStatus.Stage.RUNNING;
+    }
+
+    synchronized MigrationStatus getStatus() {
+        MigrationStatus status = new MigrationStatus();
+        status.stage = stage;
+        status.failure = failure;
+        status.totalFactories = totalFactories;
+        status.completedFactories = completedFactories;
+        status.skippedFactories = skippedFactories;
+        status.factoriesInProgress = new ArrayList<>(inProgressDocuments.keySet());
+
+        long inProgress = inProgressDocuments.values().stream().mapToLong(Long::longValue).sum();
+        status.migratedDocuments = migratedDocuments + inProgress;
+
+        long elapsedNanos = (stage == MigrationStatus.Stage.RUNNING ? System.nanoTime()
+                : endNanos) - startNanos;
+        status.elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(elapsedNanos);
+        double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        status.documentsPerSecond = elapsedSeconds > 0
+                ? status.migratedDocuments / elapsedSeconds : 0;
+
+        // the documents of the factories not started yet are estimated with the average of the
+        // completed factories
+        int finishedFactories = completedFactories - skippedFactories;
+        int notStarted = totalFactories - completedFactories - inProgressDocuments.size();
+        long averagePerFactory = finishedFactories > 0 ? migratedDocuments / finishedFactories
+                : 0;
+        long inProgressEstimate = 0;
+        for (Map.Entry<String, Long> estimate : inProgressEstimates.entrySet()) {
+            inProgressEstimate += Math.max(estimate.getValue(),
+                    inProgressDocuments.get(estimate.getKey()));
+        }
+        status.estimatedTotalDocuments = migratedDocuments + inProgressEstimate
+                + notStarted * averagePerFactory;
+
+        if (stage == MigrationStatus.Stage.COMPLETED) {
+            status.etaSeconds = 0L;
+        } else if (stage == MigrationStatus.Stage.RUNNING && status.documentsPerSecond > 0) {
+            long remaining = Math.max(0,
+                    status.estimatedTotalDocuments - status.migratedDocuments);
+            status.etaSeconds = (long) Math.ceil(remaining / status.documentsPerSecond);
+        }
+        return status;
+    }
+
+    private void startNext() {
+        List<String> toStart = new ArrayList<>();
+        boolean completed = false;
+        synchronized (this) {
+            if (stage != MigrationStatus.Stage.RUNNING) {
+                return;
+            }
+            while (pending.isEmpty() && inProgressDocuments.isEmpty() && !groups.isEmpty()) {
+                pending.addAll(groups.poll());
+            }
+            while (!pending.isEmpty() && inProgressDocuments.size() < parallelism) {
+                String factoryLink = pending.poll();
+                inProgressDocuments.put(factoryLink, 0L);
+                toStart.add(factoryLink);
+            }
+            if (inProgressDocuments.isEmpty() && pending.isEmpty() && groups.isEmpty()) {
+                stage = MigrationStatus.Stage.COMPLETED;
+                endNanos = System.nanoTime();
+                completed = true;
+            }
+        }
+
+        if (completed) {
+            result.complete(null);
+            return;
+        }
+        for (String factoryLink : toStart) {
+            DeferredResult<FactoryResult> factoryResult;
+            try {
+                factoryResult = migration.migrate(factoryLink);
+            } catch (Throwable e) {
+                factoryResult = DeferredResult.failed(e);
+            }
+            factoryResult.whenComplete((r, e) -> onFactoryCompleted(factoryLink, r, e));
+        }
+    }
+
+    private void onFactoryCompleted(String factoryLink, FactoryResult factoryResult,
+            Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        boolean failed = false;
+        synchronized (this) {
+            inProgressDocuments.remove(factoryLink);
+            inProgressEstimates.remove(factoryLink);
+            if (e != null) {
+                if (stage == MigrationStatus.Stage.RUNNING) {
+                    stage = MigrationStatus.Stage.FAILED;
+                    failure = e.getMessage();
+                    endNanos = System.nanoTime();
+                    failed = true;
+                }
+            } else {
+                completedFactories++;
+                migratedDocuments += factoryResult.migratedDocuments;
+                if (factoryResult.skipped) {
+                    skippedFactories++;
+                }
+            }
+        }
+
+        if (failed) {
+            result.fail(e);
+        } else {
+            startNext();
+        }
+    }
+}
@@ -14,7 +14,11 @@ package com.vmware.admiral.service.common;
 import static com.vmware.admiral.common.util.ServiceUtils.addServiceRequestRoute;
 
 import java.net.URI;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -22,33 +26,63 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 
 import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.service.common.NodeMigrationCheckpointService.NodeMigrationCheckpoint;
+import com.vmware.admiral.service.common.NodeMigrationRun.FactoryResult;
+import com.vmware.admiral.service.common.NodeMigrationRun.MigrationStatus;
 import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
 import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.TaskState;
 import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.services.common.MigrationTaskService;
+import com.vmware.xenon.services.common.MigrationTaskService.MigrationOption;
 import com.vmware.xenon.services.common.MigrationTaskService.State;
+import com.vmware.xenon.services.common.QueryTask.NumericRange;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification;
 import com.vmware.xenon.services.common.ServiceUriPaths;
 
 /**
  * Service is meant to do a migration of the documents/states from another xenon node.
+ *
+ * The factories are migrated in parallel, with a bounded number of migration tasks in flight.
+ * The completion of the migration tasks is notified through subscriptions. The migration of
+ * every factory is checkpointed, so that a migration from the same source migrates only the
+ * documents updated since the last one, see {@link NodeMigrationCheckpointService}. A GET
+ * returns the progress of the current migration.
  */
 public class NodeMigrationService extends StatelessService {
 
     public static final String SELF_LINK = ManagementUriParts.MIGRATION;
 
-    private static final int MIGRATION_CHECK_DELAY_SECONDS = 6;
-    private static final int MIGRATION_CHECK_RETRIES = 200;
+    private static final int MIGRATION_PARALLELISM = Integer.getInteger(
+            "com.vmware.admiral.migration.parallelism", 4);
+
+    private static final long MIGRATION_FACTORY_TIMEOUT_MICROS = Long.getLong(
+            "com.vmware.admiral.migration.factory.timeout.micros", TimeUnit.HOURS.toMicros(4));
 
     public Set<String> services = ConcurrentHashMap.newKeySet();
 
     // Services that must be migrated last because their states depend on others
     private Set<String> dependentServices = ConcurrentHashMap.newKeySet();
 
+    private volatile NodeMigrationRun currentRun;
+    private final Map<String, String> migrationTaskLinks = new ConcurrentHashMap<>();
+
     public static class MigrationRequest {
         public String sourceNodeGroup;
         public String destinationNodeGroup;
+
+        /**
+         * Ignore the checkpoints of previous migrations between the same node groups and migrate
+         * all documents again.
+         */
+        public Boolean restart;
     }
 
     @Override
@@ -67,6 +101,36 @@ public class NodeMigrationService extends StatelessService {
         migrateData(body, post);
     }
 
+    /**
+     * Returns the progress of the current or last migration.
+     */
+    @Override
+    public void handleGet(Operation get) {
+        NodeMigrationRun run = currentRun;
+        if (run == null) {
+            get.fail(Operation.STATUS_CODE_NOT_FOUND);
+            return;
+        }
+
+        // update the progress of the factories in flight from the stats of their tasks
+        List<DeferredResult<Void>> updates = new ArrayList<>();
+        for (String factoryLink : run.getFactoriesInProgress()) {
+            String taskLink = migrationTaskLinks.get(factoryLink);
+            if (taskLink != null) {
+                updates.add(getMigrationTaskStats(taskLink).thenAccept(stats -> run
+                        .updateProgress(factoryLink,
+                                (long) getStat(stats,
+                                        MigrationTaskService.STAT_NAME_PROCESSED_DOCUMENTS),
+                                (long) getStat(stats,
+                                        MigrationTaskService.STAT_NAME_ESTIMATED_TOTAL_SERVICE_COUNT))));
+            }
+        }
+        DeferredResult.allOf(updates).whenComplete((ignore, e) -> {
+            get.setBody(run.getStatus());
+            get.complete();
+        });
+    }
+
     @Override
     public void handlePatch(Operation patch) {
         NodeMigrationService patchState = patch.getBody(NodeMigrationService.class);
@@ -131,108 +195,264 @@ public class NodeMigrationService extends StatelessService {
             }
         }
 
-        performMigration(post, services, migrationState, () -> {
-            performMigration(post, dependentServices, migrationState, () -> {
-                logInfo("Migration completed successfully");
-                post.complete();
-            });
-        });
+        NodeMigrationRun run;
+        synchronized (this) {
+            if (currentRun != null && currentRun.isRunning()) {
+                post.fail(new IllegalStateException("A migration is already running"));
+                return;
+            }
+            migrationTaskLinks.clear();
+            run = new NodeMigrationRun(MIGRATION_PARALLELISM,
+                    factoryLink -> migrateFactory(factoryLink, body, migrationState));
+            currentRun = run;
+        }
+
+        run.run(Arrays.asList(new ArrayList<>(services), new ArrayList<>(dependentServices)))
+                .whenComplete((ignore, e) -> {
+                    if (e != null) {
+                        post.fail(e);
+                        return;
+                    }
+                    MigrationStatus status = run.getStatus();
+                    logInfo("Migration completed successfully: %d documents of %d factories in "
+                            + "%d s", status.migratedDocuments, status.completedFactories,
+                            status.elapsedSeconds);
+                    post.complete();
+                });
     }
 
-    private void performMigration(Operation post, Set<String> services, State migrationState,
-            Runnable callback) {
-
-        Set<String> migrationTasksInProgress = ConcurrentHashMap.newKeySet();
-        AtomicBoolean hasError = new AtomicBoolean(false);
-
-        Iterator<String> servicesIterator = services.iterator();
-        servicesIterator.forEachRemaining(currentService -> {
-            migrationState.destinationFactoryLink = currentService;
-            migrationState.sourceFactoryLink = currentService;
-
-            Operation operation = Operation.createPost(this, MigrationTaskService.FACTORY_LINK)
-                    .setBody(migrationState)
-                    .setCompletion((o, ex) -> {
-                        if (ex != null) {
-                            getHost().log(Level.SEVERE,
-                                    "Failure when calling migration task. Error: %s",
-                                    ex.getMessage());
-                            if (hasError.compareAndSet(false, true)) {
-                                post.fail(new Throwable("Failure when calling migration task"));
-                            }
-                        } else {
-                            State state = o.getBody(State.class);
-                            migrationTasksInProgress.add(state.documentSelfLink);
-                            getHost().log(Level.INFO, "Migration task created: %s",
-                                    state.documentSelfLink);
-                            if (migrationTasksInProgress.size() == services.size()) {
-                                waitForMigrationToComplete(MIGRATION_CHECK_RETRIES,
-                                        migrationTasksInProgress, hasError, post, callback);
-                            }
-                        }
-                    });
-            super.setAuthorizationContext(operation, this.getSystemAuthorizationContext());
-            sendRequest(operation);
+    /**
+     * Migrates the documents of the factory which are updated after the checkpoint of the
+     * previous migration between the same node groups, if there is one, and checkpoints the
+     * progress.
+     */
+    private DeferredResult<FactoryResult> migrateFactory(String factoryLink,
+            MigrationRequest request, State template) {
+        // the destination of the request may be empty, the resolved one is in the template
+        String checkpointLink = NodeMigrationCheckpointService.getCheckpointLink(
+                request.sourceNodeGroup, template.destinationNodeGroupReference.toString(),
+                factoryLink);
+        DeferredResult<NodeMigrationCheckpoint> checkpoint = Boolean.TRUE.equals(request.restart)
+                ? DeferredResult.completed(null) : getCheckpoint(checkpointLink);
+
+        return checkpoint.thenCompose(previous -> {
+            State migrationState = createMigrationState(factoryLink, template, previous);
+            return startMigrationTask(migrationState)
+                    .thenCompose(taskLink -> {
+                        migrationTaskLinks.put(factoryLink, taskLink);
+                        return waitForMigrationTask(taskLink);
+                    })
+                    .thenCompose(state -> completeFactory(factoryLink, request, template,
+                            previous, checkpointLink, state));
         });
     }
 
-    private void waitForMigrationToComplete(int retryCount, Set<String> migrationTasksInProgress,
-            AtomicBoolean hasError, Operation post, Runnable callback) {
+    private State createMigrationState(String factoryLink, State template,
+            NodeMigrationCheckpoint checkpoint) {
+        State migrationState = new State();
+        migrationState.continuousMigration = template.continuousMigration;
+        migrationState.sourceNodeGroupReference = template.sourceNodeGroupReference;
+        migrationState.destinationNodeGroupReference = template.destinationNodeGroupReference;
+        migrationState.sourceFactoryLink = factoryLink;
+        migrationState.destinationFactoryLink = factoryLink;
+        migrationState.migrationOptions = EnumSet.of(MigrationOption.ESTIMATE_COUNT);
+
+        if (checkpoint != null && Boolean.TRUE.equals(checkpoint.completed)
+                && checkpoint.latestSourceUpdateTimeMicros != null) {
+            // resume: migrate only the documents updated since the previous migration
+            migrationState.querySpec = new QuerySpecification();
+            migrationState.querySpec.query = Query.Builder.create()
+                    .addRangeClause(ServiceDocument.FIELD_NAME_UPDATE_TIME_MICROS,
+                            NumericRange.createGreaterThanOrEqualRange(
+                                    checkpoint.latestSourceUpdateTimeMicros))
+                    .build();
+            logInfo("Resuming migration of %s from %d", factoryLink,
+                    checkpoint.latestSourceUpdateTimeMicros);
+        }
+        return migrationState;
+    }
+
+    private DeferredResult<String> startMigrationTask(State migrationState) {
+        DeferredResult<String> result = new DeferredResult<>();
+        Operation operation = Operation.createPost(this, MigrationTaskService.FACTORY_LINK)
+                .setBody(migrationState)
+                .setCompletion((o, ex) -> {
+                    if (ex != null) {
+                        getHost().log(Level.SEVERE,
+                                "Failure when calling migration task. Error: %s",
+                                ex.getMessage());
+                        result.fail(new Throwable("Failure when calling migration task"));
+                        return;
+                    }
+                    State state = o.getBody(State.class);
+                    getHost().log(Level.INFO, "Migration task created: %s",
+                            state.documentSelfLink);
+                    result.complete(state.documentSelfLink);
+                });
+        sendAsSystem(operation);
+        return result;
+    }
+
+    /**
+     * Subscribes for the updates of the migration task and completes once the task has
+     * completed, instead of polling it.
+     */
+    private DeferredResult<State> waitForMigrationTask(String taskLink) {
+        DeferredResult<State> result = new DeferredResult<>();
+        AtomicBoolean done = new AtomicBoolean();
+        URI taskUri = UriUtils.buildUri(getHost(), taskLink);
+        URI[] subscriber = new URI[1];
+
+        Runnable checkTask = () -> sendAsSystem(Operation.createGet(taskUri)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logWarning("Failure getting migration task: %s. Error: %s", taskLink,
+                                e.getMessage());
+                        return;
+                    }
+                    State state = o.getBody(State.class);
+                    if (state.taskInfo != null && TaskState.isInProgress(state.taskInfo)) {
+                        return;
+                    }
+                    if (done.compareAndSet(false, true)) {
+                        if (subscriber[0] != null) {
+                            getHost().stopSubscriptionService(Operation.createDelete(taskUri)
+                                    .setReferer(getUri()), subscriber[0]);
+                        }
+                        result.complete(state);
+                    }
+                }));
+
+        Operation subscribe = Operation.createPost(taskUri)
+                .setReferer(getUri())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logWarning("Failure subscribing for migration task: %s. Error: %s",
+                                taskLink, e.getMessage());
+                    }
+                    // the task may have completed before the subscription
+                    checkTask.run();
+                });
+        setAuthorizationContext(subscribe, getSystemAuthorizationContext());
+        subscriber[0] = getHost().startSubscriptionService(subscribe, notification -> {
+            notification.complete();
+            checkTask.run();
+        });
 
         getHost().schedule(() -> {
-            Iterator<String> tasksIterator = migrationTasksInProgress.iterator();
-            tasksIterator.forEachRemaining(currentTask -> {
-                sendRequest(Operation.createGet(this, currentTask)
-                        .setCompletion((o, ex) -> {
-                            if (ex != null) {
-                                getHost().log(Level.SEVERE,
-                                        "Failure getting migration task: %s. Error: %s",
-                                        currentTask, ex.getMessage());
-                            } else {
-                                State state = o.getBody(State.class);
-                                if (state.taskInfo.stage == TaskStage.FINISHED) {
-                                    logInfo("Migration task completed: %s", currentTask);
-                                    migrationTasksInProgress.remove(currentTask);
-                                } else if (state.taskInfo.stage == TaskStage.FAILED) {
-                                    // If a factory is missing on the source this is not a problem
-                                    // for the migration. The factory should be skipped.
-                                    if (state.taskInfo.failure.message.contains(
-                                            String.valueOf(Operation.STATUS_CODE_NOT_FOUND))) {
-                                        logInfo("Migration task skipped because it does not exist"
-                                                        + " on source: %s", currentTask);
-                                        migrationTasksInProgress.remove(currentTask);
-                                    } else {
-                                        logInfo("Migration task failed: %s", currentTask);
-                                        if (hasError.compareAndSet(false, true)) {
-                                            logSevere("Migration failed");
-                                            post.fail(new Throwable(
-                                                    "One or more migration tasks failed"));
-                                            migrationTasksInProgress.remove(currentTask);
-                                        }
-                                    }
-                                }
-                            }
-                        }));
-            });
-            if (migrationTasksInProgress.isEmpty() && !hasError.get()) {
-                callback.run();
-                return;
+            if (done.compareAndSet(false, true)) {
+                getHost().stopSubscriptionService(Operation.createDelete(taskUri)
+                        .setReferer(getUri()), subscriber[0]);
+                logSevere("Migration task %s did not finish in the expected time frame",
+                        taskLink);
+                result.fail(new Throwable(
+                        "Migration did not finish in the expected time frame"));
             }
-            if (retryCount > 0) {
-                waitForMigrationToComplete(retryCount - 1, migrationTasksInProgress, hasError,
-                        post, callback);
-            } else if (!hasError.get()) {
-                post.fail(new Throwable("Migration did not finish in the expected time frame"));
-                logSevere("Migration did not finish in the expected time frame");
+        }, MIGRATION_FACTORY_TIMEOUT_MICROS, TimeUnit.MICROSECONDS);
+
+        return result;
+    }
+
+    private DeferredResult<FactoryResult> completeFactory(String factoryLink,
+            MigrationRequest request, State template, NodeMigrationCheckpoint previous,
+            String checkpointLink, State state) {
+        if (state.taskInfo.stage != TaskStage.FINISHED) {
+            // If a factory is missing on the source this is not a problem for the migration.
+            // The factory should be skipped.
+            if (state.taskInfo.failure != null && state.taskInfo.failure.message != null
+                    && state.taskInfo.failure.message.contains(
+                            String.valueOf(Operation.STATUS_CODE_NOT_FOUND))) {
+                logInfo("Migration task skipped because it does not exist on source: %s",
+                        state.documentSelfLink);
+                return DeferredResult.completed(new FactoryResult(0, true));
+            }
+            logInfo("Migration task failed: %s", state.documentSelfLink);
+            logSevere("Migration failed");
+            return DeferredResult.failed(new Throwable("One or more migration tasks failed"));
+        }
+
+        logInfo("Migration task completed: %s", state.documentSelfLink);
+        return getMigrationTaskStats(state.documentSelfLink).thenCompose(stats -> {
+            long migrated = (long) getStat(stats,
+                    MigrationTaskService.STAT_NAME_PROCESSED_DOCUMENTS);
+
+            NodeMigrationCheckpoint checkpoint = new NodeMigrationCheckpoint();
+            checkpoint.documentSelfLink = checkpointLink;
+            checkpoint.sourceNodeGroup = request.sourceNodeGroup;
+            checkpoint.destinationNodeGroup = template.destinationNodeGroupReference.toString();
+            checkpoint.factoryLink = factoryLink;
+            checkpoint.completed = true;
+            checkpoint.latestSourceUpdateTimeMicros = state.latestSourceUpdateTimeMicros;
+            if (checkpoint.latestSourceUpdateTimeMicros == null && previous != null) {
+                checkpoint.latestSourceUpdateTimeMicros = previous.latestSourceUpdateTimeMicros;
             }
-        }, MIGRATION_CHECK_DELAY_SECONDS, TimeUnit.SECONDS);
+            checkpoint.migratedDocuments = migrated + (previous != null
+                    && previous.migratedDocuments != null ? previous.migratedDocuments : 0);
+
+            DeferredResult<FactoryResult> result = new DeferredResult<>();
+            sendAsSystem(Operation.createPost(this, NodeMigrationCheckpointService.FACTORY_LINK)
+                    .setBody(checkpoint)
+                    .setCompletion((o, e) -> {
+                        if (e != null) {
+                            // the migration itself succeeded, it will be repeated on resume
+                            logWarning("Failure saving migration checkpoint of %s: %s",
+                                    factoryLink, e.getMessage());
+                        }
+                        result.complete(new FactoryResult(migrated, false));
+                    }));
+            return result;
+        });
+    }
+
+    private DeferredResult<NodeMigrationCheckpoint> getCheckpoint(String checkpointLink) {
+        DeferredResult<NodeMigrationCheckpoint> result = new DeferredResult<>();
+        sendAsSystem(Operation.createGet(this, checkpointLink)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        if (o.getStatusCode() != Operation.STATUS_CODE_NOT_FOUND) {
+                            logWarning("Failure getting migration checkpoint %s: %s",
+                                    checkpointLink, e.getMessage());
+                        }
+                        result.complete(null);
+                        return;
+                    }
+                    result.complete(o.getBody(NodeMigrationCheckpoint.class));
+                }));
+        return result;
+    }
+
+    private DeferredResult<ServiceStats> getMigrationTaskStats(String taskLink) {
+        DeferredResult<ServiceStats> result = new DeferredResult<>();
+        sendAsSystem(Operation.createGet(UriUtils.buildStatsUri(getHost(), taskLink))
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logWarning("Failure getting stats of migration task %s: %s", taskLink,
+                                e.getMessage());
+                        result.complete(new ServiceStats());
+                        return;
+                    }
+                    result.complete(o.getBody(ServiceStats.class));
+                }));
+        return result;
+    }
+
+    private static double getStat(ServiceStats stats, String name) {
+        ServiceStat stat = stats.entries != null ? stats.entries.get(name) : null;
+        return stat != null ? stat.latestValue : 0;
+    }
+
+    private void sendAsSystem(Operation op) {
+        setAuthorizationContext(op, getSystemAuthorizationContext());
+        sendRequest(op);
     }
 
     @Override
     public ServiceDocument getDocumentTemplate() {
         ServiceDocument d = super.getDocumentTemplate();
-        addServiceRequestRoute(d, Action.GET,
+        addServiceRequestRoute(d, Action.POST,
                 "Do migration of documents from another xenon node.", MigrationRequest.class);
+        addServiceRequestRoute(d, Action.GET,
+                "Get the progress of the current or last migration.", MigrationStatus.class);
         addServiceRequestRoute(d, Action.PATCH,
                 "Add services for migration from another xenon node.", NodeMigrationService.class);
         return d;
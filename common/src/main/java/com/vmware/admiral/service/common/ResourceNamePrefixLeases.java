@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.admiral.common.util.HostScopedInstances;
+import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixLease;
+import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixRequest;
+import com.vmware.admiral.service.common.ResourceNamePrefixService.ResourceNamePrefixState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+
+/**
+ * Generates resource name prefixes locally from blocks of numbers leased from the
+ * {@link ResourceNamePrefixService} documents, instead of a round trip to the owner of the prefix
+ * document for every allocation.
+ *
+ * The requests waiting for a lease of the same prefix are served by a single lease request. A
+ * lease is dropped when the prefix, the random token flag or the number range of the prefix
+ * document change, or when the document is deleted, and expires after a while in case a change
+ * is missed; the unused numbers of a dropped or expired lease are skipped.
+ */
+public class ResourceNamePrefixLeases {
+
+    public static final long LEASE_SIZE = Long.getLong(
+            "com.vmware.admiral.name.prefix.lease.size", 1000);
+
+    public static final long LEASE_EXPIRATION_MICROS = Long.getLong(
+            "com.vmware.admiral.name.prefix.lease.expiration.micros",
+            TimeUnit.MINUTES.toMicros(10));
+
+    private static final String PREFIXES_QUERY_ID = "resource-name-prefix-leases";
+
+    private final Map<String, PrefixLease> leases = new ConcurrentHashMap<>();
+
+    long leaseExpirationMicros = LEASE_EXPIRATION_MICROS;
+
+    private static class Waiter {
+        final long count;
+        final DeferredResult<List<String>> result = new DeferredResult<>();
+
+        Waiter(long count) {
+            this.count = count;
+        }
+    }
+
+    /**
+     * The current lease of a prefix document and the requests waiting for the next one.
+     */
+    private static class PrefixLease {
+        NamePrefixLease lease;
+        long used;
+        long expirationMicros;
+        boolean leasing;
+        final Deque<Waiter> waiters = new ArrayDeque<>();
+
+        /** The latest known state of the prefix document. */
+        ResourceNamePrefixState state;
+
+        /**
+         * Whether the lease was taken from an older version of the prefix document than the
+         * latest known one, which generates other names.
+         */
+        boolean isStale(NamePrefixLease lease) {
+            return state != null && state.documentVersion > lease.documentVersion
+                    && (!Objects.equals(state.prefix, lease.prefix)
+                            || !Objects.equals(state.addRandomToken, lease.addRandomToken)
+                            || state.nextNumber != lease.nextNumber
+                            || state.getMaxNumber() != lease.maxNumber);
+        }
+
+        boolean isAvailable(long count) {
+            return lease != null && Utils.getSystemNowMicrosUtc() < expirationMicros
+                    && lease.count - used >= count;
+        }
+
+        List<String> take(long count) {
+            List<String> namePrefixes = new ArrayList<>((int) count);
+            for (long i = 0; i < count; i++) {
+                namePrefixes.add(ResourceNamePrefixService.buildNamePrefix(lease.prefix,
+                        lease.getNumber(used++), lease.addRandomToken));
+            }
+            return namePrefixes;
+        }
+
+        long getWaitingCount() {
+            return waiters.stream().mapToLong(w -> w.count).sum();
+        }
+    }
+
+    /**
+     * Constructor for tests, with no subscription to changes of the prefix documents.
+     */
+    ResourceNamePrefixLeases() {
+    }
+
+    private ResourceNamePrefixLeases(ServiceHost host) {
+        CommonContinuousQueries.subscribeTo(host, PREFIXES_QUERY_ID,
+                Query.Builder.create().addKindFieldClause(ResourceNamePrefixState.class).build(),
+                this::onNotification);
+    }
+
+    public static ResourceNamePrefixLeases getInstance(ServiceHost host) {
+        return HostScopedInstances.getOrCreate(host, ResourceNamePrefixLeases.class,
+                ResourceNamePrefixLeases::new);
+    }
+
+    /**
+     * Drops the lease of the given prefix document if it was taken from an older version of the
+     * document with another prefix, random token flag or number range, or if the document is
+     * deleted. A lease which is being taken is checked once it is received.
+     */
+    void onPrefixChange(String resourceNamePrefixLink, ResourceNamePrefixState state) {
+        PrefixLease prefixLease = leases.get(resourceNamePrefixLink);
+        if (prefixLease == null) {
+            return;
+        }
+        synchronized (prefixLease) {
+            if (Action.DELETE.toString().equals(state.documentUpdateAction)) {
+                prefixLease.lease = null;
+                prefixLease.state = null;
+                return;
+            }
+            if (prefixLease.state != null
+                    && prefixLease.state.documentVersion >= state.documentVersion) {
+                return;
+            }
+            prefixLease.state = state;
+            if (prefixLease.lease != null && prefixLease.isStale(prefixLease.lease)) {
+                prefixLease.lease = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the given number of name prefixes of the given prefix document, leasing a new
+     * block of numbers if the current one is not enough.
+     */
+    public DeferredResult<List<String>> allocate(Service sender, String resourceNamePrefixLink,
+            long count) {
+        PrefixLease prefixLease = leases.computeIfAbsent(resourceNamePrefixLink,
+                l -> new PrefixLease());
+        Waiter waiter = new Waiter(count);
+        List<String> namePrefixes = null;
+        long leaseCount = 0;
+        synchronized (prefixLease) {
+            if (!prefixLease.leasing && prefixLease.isAvailable(count)) {
+                namePrefixes = prefixLease.take(count);
+            } else {
+                prefixLease.waiters.add(waiter);
+                if (!prefixLease.leasing) {
+                    prefixLease.leasing = true;
+                    leaseCount = prefixLease.getWaitingCount();
+                }
+            }
+        }
+
+        if (namePrefixes != null) {
+            return DeferredResult.completed(namePrefixes);
+        }
+        if (leaseCount > 0) {
+            lease(sender, resourceNamePrefixLink, prefixLease, count, leaseCount);
+        }
+        return waiter.result;
+    }
+
+    private void lease(Service sender, String resourceNamePrefixLink, PrefixLease prefixLease,
+            long resourceCount, long waitingCount) {
+        NamePrefixRequest request = new NamePrefixRequest();
+        request.resourceCount = resourceCount;
+        request.leaseCount = Math.max(LEASE_SIZE, waitingCount);
+
+        sender.sendRequest(Operation.createPatch(sender, resourceNamePrefixLink)
+                .setBody(request)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        onLeaseFailed(prefixLease, e);
+                    } else {
+                        onLeased(sender, resourceNamePrefixLink, prefixLease,
+                                o.getBody(NamePrefixLease.class));
+                    }
+                }));
+    }
+
+    private void onLeased(Service sender, String resourceNamePrefixLink,
+            PrefixLease prefixLease, NamePrefixLease lease) {
+        List<Waiter> served = new ArrayList<>();
+        List<List<String>> namePrefixes = new ArrayList<>();
+        long nextResourceCount = 0;
+        long waitingCount = 0;
+        synchronized (prefixLease) {
+            if (prefixLease.isStale(lease)) {
+                // the document changed while leasing, all waiters get names of the new state
+                nextResourceCount = prefixLease.waiters.peek().count;
+                waitingCount = prefixLease.getWaitingCount();
+                lease = null;
+            }
+            prefixLease.lease = lease;
+            prefixLease.used = 0;
+            prefixLease.expirationMicros = Utils.fromNowMicrosUtc(leaseExpirationMicros);
+            while (lease != null && !prefixLease.waiters.isEmpty()
+                    && prefixLease.isAvailable(prefixLease.waiters.peek().count)) {
+                Waiter waiter = prefixLease.waiters.poll();
+                served.add(waiter);
+                namePrefixes.add(prefixLease.take(waiter.count));
+            }
+            if (prefixLease.waiters.isEmpty()) {
+                prefixLease.leasing = false;
+            } else if (lease != null) {
+                // the rest of the lease is skipped
+                nextResourceCount = prefixLease.waiters.peek().count;
+                waitingCount = prefixLease.getWaitingCount();
+            }
+        }
+
+        for (int i = 0; i < served.size(); i++) {
+            served.get(i).result.complete(namePrefixes.get(i));
+        }
+        if (nextResourceCount > 0) {
+            lease(sender, resourceNamePrefixLink, prefixLease, nextResourceCount, waitingCount);
+        }
+    }
+
+    private void onNotification(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+        for (Object document : queryTask.results.documents.values()) {
+            ResourceNamePrefixState state = Utils.fromJson(document,
+                    ResourceNamePrefixState.class);
+            if (state.documentSelfLink != null) {
+                onPrefixChange(state.documentSelfLink, state);
+            }
+        }
+    }
+
+    private void onLeaseFailed(PrefixLease prefixLease, Throwable e) {
+        List<Waiter> failed;
+        synchronized (prefixLease) {
+            failed = new ArrayList<>(prefixLease.waiters);
+            prefixLease.waiters.clear();
+            prefixLease.leasing = false;
+        }
+        failed.forEach(w -> w.result.fail(e));
+    }
+}
@@ -40,6 +40,10 @@ import com.vmware.xenon.common.UriUtils;
  * A prefix is a base name to be followed by a counter of a specified number of digits. When the
  * digits have all been used the service rolls back to the first number (which potentially might
  * cause issue if the resources are still not removed).
+ *
+ * Instead of requesting names, the nodes may lease blocks of numbers and generate the names
+ * locally, see {@link ResourceNamePrefixLeases}. The counter is advanced past the whole block,
+ * so the numbers not used by a node (e.g. when the node is lost) are skipped.
  */
 public class ResourceNamePrefixService extends StatefulService {
     public static final String FACTORY_LINK = ManagementUriParts.RESOURCE_NAME_PREFIXES;
@@ -114,9 +118,22 @@ public class ResourceNamePrefixService extends StatefulService {
         }
     }
 
+    /**
+     * Leases are bounded to this fraction of the range of a prefix, so that prefixes with small
+     * ranges do not wrap around because of unused leased numbers.
+     */
+    private static final long MAX_LEASE_RANGE_DIVISOR = 100;
+
     /** An DTO used during PATCH request in order to get the next prefix in the sequence. */
     public static class NamePrefixRequest {
         public long resourceCount;
+
+        /**
+         * When set, a block of at least <code>resourceCount</code> and up to
+         * <code>leaseCount</code> numbers is leased and a {@link NamePrefixLease} is returned
+         * instead of the prefixes.
+         */
+        public long leaseCount;
     }
 
     /** An DTO used during PATCH response in order to return the requested prefixes. */
@@ -124,6 +141,32 @@ public class ResourceNamePrefixService extends StatefulService {
         public List<String> resourceNamePrefixes;
     }
 
+    /** An DTO used during PATCH response in order to return a leased block of numbers. */
+    public static class NamePrefixLease {
+        public String prefix;
+        public Boolean addRandomToken;
+
+        /** The first leased number. */
+        public long firstNumber;
+
+        /** The number of leased numbers. */
+        public long count;
+
+        /** The number where the sequence begins, the numbers after the max number wrap to it. */
+        public long nextNumber;
+        public long maxNumber;
+
+        /** The version of the prefix document the numbers were leased from. */
+        public long documentVersion;
+
+        /**
+         * Returns the i-th leased number.
+         */
+        public long getNumber(long i) {
+            return advance(firstNumber, i, nextNumber, maxNumber);
+        }
+    }
+
     public ResourceNamePrefixService() {
         super(ResourceNamePrefixState.class);
         super.toggleOption(ServiceOption.REPLICATION, true);
@@ -202,20 +245,18 @@ public class ResourceNamePrefixService extends StatefulService {
             return;
         }
 
+        if (request.leaseCount > 0) {
+            patch.setBodyNoCloning(lease(state, request));
+            patch.complete();
+            return;
+        }
+
         NamePrefixResponse response = new NamePrefixResponse();
         response.resourceNamePrefixes = new ArrayList<String>((int) request.resourceCount);
 
         for (int i = 0; i < request.resourceCount; i++) {
-            final StringBuilder namePrefix = new StringBuilder();
-            namePrefix.append(state.prefix);
-            namePrefix.append(state.currentCount++);
-            if (state.addRandomToken) {
-                namePrefix.append(RANDOM_GENERATED_TOKEN_DELIMITER);
-                //adding time since 2016 as shortest and smallest possible guaranteed random token
-                long timestamp = System.currentTimeMillis() - SINCE_TIME;
-                namePrefix.append(timestamp);
-            }
-            response.resourceNamePrefixes.add(namePrefix.toString());
+            response.resourceNamePrefixes.add(buildNamePrefix(state.prefix, state.currentCount++,
+                    state.addRandomToken));
             if (state.currentCount > state.getMaxNumber()) {
                 // reset back to the beginning.
                 logWarning("Reseting name prefix counter [%s] to initial value [%s]...",
@@ -228,6 +269,49 @@ public class ResourceNamePrefixService extends StatefulService {
         patch.complete();
     }
 
+    private NamePrefixLease lease(ResourceNamePrefixState state, NamePrefixRequest request) {
+        long maxLeaseCount = Math.max(1, state.getRange() / MAX_LEASE_RANGE_DIVISOR);
+        long count = Math.max(request.resourceCount,
+                Math.min(request.leaseCount, maxLeaseCount));
+
+        NamePrefixLease lease = new NamePrefixLease();
+        lease.prefix = state.prefix;
+        lease.addRandomToken = state.addRandomToken;
+        lease.firstNumber = state.currentCount;
+        lease.count = count;
+        lease.nextNumber = state.nextNumber;
+        lease.maxNumber = state.getMaxNumber();
+        lease.documentVersion = state.documentVersion;
+
+        state.currentCount = advance(state.currentCount, count, state.nextNumber,
+                state.getMaxNumber());
+        logFine("Leased %d numbers of name prefix [%s] starting from %d", count, state.prefix,
+                lease.firstNumber);
+        return lease;
+    }
+
+    /**
+     * Returns the number the given count of numbers after the given one, rolling back to the
+     * first number of the sequence after the max number.
+     */
+    static long advance(long number, long count, long nextNumber, long maxNumber) {
+        long size = maxNumber - nextNumber + 1;
+        return nextNumber + Math.floorMod(number - nextNumber + count, size);
+    }
+
+    static String buildNamePrefix(String prefix, long number, Boolean addRandomToken) {
+        final StringBuilder namePrefix = new StringBuilder();
+        namePrefix.append(prefix);
+        namePrefix.append(number);
+        if (Boolean.TRUE.equals(addRandomToken)) {
+            namePrefix.append(RANDOM_GENERATED_TOKEN_DELIMITER);
+            //adding time since 2016 as shortest and smallest possible guaranteed random token
+            long timestamp = System.currentTimeMillis() - SINCE_TIME;
+            namePrefix.append(timestamp);
+        }
+        return namePrefix.toString();
+    }
+
     @Override
     public ServiceDocument getDocumentTemplate() {
         ServiceDocument template = super.getDocumentTemplate();
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.util.List;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.ServiceClientFactory;
+import com.vmware.admiral.common.util.ServiceClientFactory.ServiceClientPoolStats;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+
+/**
+ * Exposes the utilization of the outbound HTTP clients shared by the adapters on this node, see
+ * {@link ServiceClientFactory}.
+ */
+public class ServiceClientPoolsService extends StatelessService {
+
+    public static final String SELF_LINK = ManagementUriParts.SERVICE_CLIENT_POOLS;
+
+    public static class ServiceClientPoolsResponse {
+        public int maxConcurrentRequests;
+        public int maxConnectionsPerHost;
+        public int runningRequestCount;
+        public int queuedRequestCount;
+        public List<ServiceClientPoolStats> pools;
+    }
+
+    @Override
+    public void handleGet(Operation get) {
+        ServiceClientPoolsResponse response = new ServiceClientPoolsResponse();
+        response.maxConcurrentRequests = ServiceClientFactory.MAX_CONCURRENT_REQUESTS;
+        response.maxConnectionsPerHost = ServiceClientFactory.MAX_CONNECTIONS_PER_HOST;
+        response.runningRequestCount = ServiceClientFactory.getRunningRequestCount();
+        response.queuedRequestCount = ServiceClientFactory.getQueuedRequestCount();
+        response.pools = ServiceClientFactory.getSharedServiceClientStats();
+
+        get.setBody(response);
+        get.complete();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.vmware.admiral.common.util.HostScopedInstances;
+import com.vmware.xenon.common.ServiceHost;
+
+/**
+ * Node-wide recorder of the time task services spend in each of their sub stages, along with the
+ * number of retries and failures per sub stage. Durations are kept in lock-free histograms with
+ * power of two buckets, so the percentiles are approximations within a factor of two.
+ */
+public class TaskStageMetrics {
+
+    /** Pseudo sub stage under which the duration of whole tasks is recorded. */
+    public static final String TASK_TOTAL = "(total)";
+
+    /**
+     * Pseudo sub stage under which the duration of the longest chain of dependent steps of a task
+     * is recorded, for tasks running steps in parallel.
+     */
+    public static final String CRITICAL_PATH = "(critical path)";
+
+    private static final int BUCKET_COUNT = 64;
+
+    /**
+     * Summary of the metrics of a single sub stage of a task type.
+     */
+    public static class StageStats {
+        public String taskType;
+        public String subStage;
+        public long count;
+        public long totalMicros;
+        public long meanMicros;
+        public long p50Micros;
+        public long p90Micros;
+        public long p99Micros;
+        public long maxMicros;
+        public long retries;
+        public long failures;
+    }
+
+    private static class StageRecorder {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalMicros = new LongAdder();
+        final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        final LongAdder retries = new LongAdder();
+        final LongAdder failures = new LongAdder();
+    }
+
+    private final Map<String, Map<String, StageRecorder>> recorders = new ConcurrentHashMap<>();
+
+    public static TaskStageMetrics getInstance(ServiceHost host) {
+        return HostScopedInstances.getOrCreate(host, TaskStageMetrics.class,
+                (h) -> new TaskStageMetrics());
+    }
+
+    public void recordDuration(String taskType, String subStage, long durationMicros) {
+        long micros = Math.max(0, durationMicros);
+        StageRecorder recorder = getRecorder(taskType, subStage);
+        recorder.count.increment();
+        recorder.totalMicros.add(micros);
+        recorder.maxMicros.accumulate(micros);
+        recorder.buckets.incrementAndGet(bucketOf(micros));
+    }
+
+    public void recordRetry(String taskType, String subStage) {
+        getRecorder(taskType, subStage).retries.increment();
+    }
+
+    public void recordFailure(String taskType, String subStage) {
+        getRecorder(taskType, subStage).failures.increment();
+    }
+
+    /**
+     * Returns the metrics of all sub stages of the given task type, or of all task types if
+     * <code>null</code>, sorted by the total time spent in the sub stage, descending.
+     */
+    public List<StageStats> getStats(String taskType) {
+        List<StageStats> result = new ArrayList<>();
+        recorders.forEach((type, stages) -> {
+            if (taskType != null && !taskType.equals(type)) {
+                return;
+            }
+            stages.forEach((subStage, recorder) -> result.add(toStats(type, subStage, recorder)));
+        });
+        result.sort(Comparator.comparingLong((StageStats s) -> s.totalMicros).reversed());
+        return result;
+    }
+
+    public void reset() {
+        recorders.clear();
+    }
+
+    private StageRecorder getRecorder(String taskType, String subStage) {
+        return recorders.computeIfAbsent(taskType, (k) -> new ConcurrentHashMap<>())
+                .computeIfAbsent(subStage, (k) -> new StageRecorder());
+    }
+
+    private static StageStats toStats(String taskType, String subStage, StageRecorder recorder) {
+        StageStats stats = new StageStats();
+        stats.taskType = taskType;
+        stats.subStage = subStage;
+        stats.retries = recorder.retries.sum();
+        stats.failures = recorder.failures.sum();
+
+        long[] buckets = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = recorder.buckets.get(i);
+            count += buckets[i];
+        }
+        stats.count = count;
+        stats.totalMicros = recorder.totalMicros.sum();
+        stats.maxMicros = recorder.maxMicros.get();
+        stats.meanMicros = count > 0 ? stats.totalMicros / count : 0;
+        stats.p50Micros = Math.min(stats.maxMicros, percentile(buckets, count, 50));
+        stats.p90Micros = Math.min(stats.maxMicros, percentile(buckets, count, 90));
+        stats.p99Micros = Math.min(stats.maxMicros, percentile(buckets, count, 99));
+        return stats;
+    }
+
+    /**
+     * Returns the upper bound of the bucket which contains the given percentile.
+     */
+    private static long percentile(long[] buckets, long count, int percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Bucket 0 holds 0, bucket i holds the values in [2^(i-1), 2^i).
+     */
+    static int bucketOf(long micros) {
+        return micros <= 0 ? 0 : Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
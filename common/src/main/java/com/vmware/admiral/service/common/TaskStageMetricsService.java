@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.util.List;
+import java.util.Map;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.service.common.TaskStageMetrics.StageStats;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+
+/**
+ * Exposes the sub stage durations, retries and failures of the task services recorded on this
+ * node. The stages are sorted by total time spent, so the hot stages are on top. Use the
+ * <code>taskType</code> query parameter to get the stages of a single task type (the simple class
+ * name of the task service) and <code>reset=true</code> to clear the metrics after reading them.
+ */
+public class TaskStageMetricsService extends StatelessService {
+
+    public static final String SELF_LINK = ManagementUriParts.TASK_STAGE_METRICS;
+
+    public static final String TASK_TYPE_PARAM = "taskType";
+    public static final String RESET_PARAM = "reset";
+
+    public static class TaskStageMetricsResponse {
+        public List<StageStats> stages;
+    }
+
+    @Override
+    public void handleGet(Operation get) {
+        Map<String, String> params = UriUtils.parseUriQueryParams(get.getUri());
+        TaskStageMetrics metrics = TaskStageMetrics.getInstance(getHost());
+
+        TaskStageMetricsResponse response = new TaskStageMetricsResponse();
+        response.stages = metrics.getStats(params.get(TASK_TYPE_PARAM));
+        if (Boolean.parseBoolean(params.get(RESET_PARAM))) {
+            metrics.reset();
+        }
+
+        get.setBody(response);
+        get.complete();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void testQueuesOverLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2);
+        List<Integer> started = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int task = i;
+            limiter.execute(() -> started.add(task));
+        }
+
+        assertEquals(2, started.size());
+        assertEquals(2, limiter.getRunningCount());
+        assertEquals(3, limiter.getPendingCount());
+
+        limiter.release();
+        assertEquals(3, started.size());
+        assertEquals(Integer.valueOf(2), started.get(2));
+
+        limiter.release();
+        limiter.release();
+        assertEquals(5, started.size());
+        assertEquals(2, limiter.getRunningCount());
+        assertEquals(0, limiter.getPendingCount());
+
+        limiter.release();
+        limiter.release();
+        assertEquals(0, limiter.getRunningCount());
+    }
+
+    @Test
+    public void testCancelsQueuedTasksOnly() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+        List<String> started = new ArrayList<>();
+        Runnable first = () -> started.add("first");
+        Runnable second = () -> started.add("second");
+        Runnable third = () -> started.add("third");
+        limiter.execute(first);
+        limiter.execute(second);
+        limiter.execute(third);
+
+        assertFalse(limiter.cancel(first));
+        assertTrue(limiter.cancel(second));
+        assertEquals(1, limiter.getPendingCount());
+
+        limiter.release();
+        assertEquals(Arrays.asList("first", "third"), started);
+        assertFalse(limiter.cancel(third));
+    }
+
+    @Test
+    public void testLimitIsNeverExceeded() throws Throwable {
+        int limit = 4;
+        int taskCount = 2000;
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(limit);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(taskCount);
+        try {
+            for (int i = 0; i < taskCount; i++) {
+                executor.execute(() -> limiter.execute(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    // complete asynchronously, like a request sent over the network
+                    executor.execute(() -> {
+                        running.decrementAndGet();
+                        done.countDown();
+                        limiter.release();
+                    });
+                }));
+            }
+            done.await(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, done.getCount());
+        assertTrue("max running: " + maxRunning.get(), maxRunning.get() <= limit);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.test.VerificationHost;
+
+public class HostScopedInstancesTest {
+
+    private VerificationHost host;
+    private VerificationHost otherHost;
+
+    @Before
+    public void setUp() throws Throwable {
+        host = createHost();
+        otherHost = createHost();
+    }
+
+    @After
+    public void tearDown() {
+        host.tearDown();
+        otherHost.tearDown();
+    }
+
+    @Test
+    public void testInstancesArePerHostAndType() throws Throwable {
+        StringBuilder instance = HostScopedInstances.getOrCreate(host, StringBuilder.class,
+                (h) -> new StringBuilder());
+        assertSame(instance, HostScopedInstances.getOrCreate(host, StringBuilder.class,
+                (h) -> new StringBuilder()));
+        assertSame(instance, HostScopedInstances.get(host, StringBuilder.class));
+        assertNull(HostScopedInstances.get(host, Object.class));
+
+        assertNull(HostScopedInstances.get(otherHost, StringBuilder.class));
+        assertNotSame(instance, HostScopedInstances.getOrCreate(otherHost, StringBuilder.class,
+                (h) -> new StringBuilder()));
+
+        // an instance may create other instances of the host
+        Integer nested = HostScopedInstances.getOrCreate(host, Integer.class,
+                (h) -> HostScopedInstances.getOrCreate(h, Long.class, (hh) -> 1L).intValue());
+        assertEquals(Integer.valueOf(1), nested);
+    }
+
+    @Test
+    public void testInstancesAreDroppedWhenHostStops() throws Throwable {
+        int hostCount = HostScopedInstances.getHostCount();
+        HostScopedInstances.getOrCreate(host, StringBuilder.class, (h) -> new StringBuilder());
+        assertEquals(hostCount + 1, HostScopedInstances.getHostCount());
+        host.waitForServiceAvailable(HostScopedInstances.SELF_LINK);
+
+        host.tearDown();
+
+        assertNull(HostScopedInstances.get(host, StringBuilder.class));
+        assertTrue(HostScopedInstances.getHostCount() <= hostCount);
+    }
+
+    private static VerificationHost createHost() throws Throwable {
+        VerificationHost host = VerificationHost.create();
+        ServiceHost.Arguments args = VerificationHost.buildDefaultServiceHostArguments(0);
+        VerificationHost.initialize(host, args);
+        host.start();
+        host.setMaintenanceIntervalMicros(TimeUnit.MILLISECONDS.toMicros(100));
+        return host;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class LogBufferTest {
+
+    @Test
+    public void testReadsFromOffset() {
+        LogBuffer buffer = new LogBuffer(16);
+        assertTrue(buffer.isEmpty());
+        assertEquals(6, buffer.append(bytes("hello ")));
+        assertEquals(11, buffer.append(bytes("world")));
+
+        LogBuffer.Chunk chunk = buffer.read(0, 100);
+        assertEquals("hello world", string(chunk.data));
+        assertEquals(0, chunk.offset);
+        assertEquals(11, chunk.nextOffset);
+        assertFalse(chunk.truncated);
+
+        chunk = buffer.read(6, 3);
+        assertEquals("wor", string(chunk.data));
+        assertEquals(9, chunk.nextOffset);
+
+        chunk = buffer.read(11, 100);
+        assertEquals(0, chunk.data.length);
+        assertEquals(11, chunk.nextOffset);
+    }
+
+    @Test
+    public void testDropsOldestData() {
+        LogBuffer buffer = new LogBuffer(8);
+        buffer.append(bytes("0123456"));
+        buffer.append(bytes("789ab"));
+
+        assertEquals(4, buffer.getStartOffset());
+        assertEquals(12, buffer.getEndOffset());
+
+        LogBuffer.Chunk chunk = buffer.read(2, 100);
+        assertTrue(chunk.truncated);
+        assertEquals(4, chunk.offset);
+        assertEquals("456789ab", string(chunk.data));
+        assertEquals("9ab", string(buffer.tail(3)));
+
+        // a chunk larger than the buffer keeps its tail only
+        buffer.append(bytes("cdefghijklmn"));
+        assertEquals(24, buffer.getEndOffset());
+        assertEquals("ghijklmn", string(buffer.read(0, 100).data));
+    }
+
+    @Test
+    public void testResetsFromPersistedTail() {
+        LogBuffer buffer = new LogBuffer(8);
+        buffer.reset(bytes("tail"), 100);
+
+        assertEquals(96, buffer.getStartOffset());
+        assertEquals(100, buffer.getEndOffset());
+        LogBuffer.Chunk chunk = buffer.read(0, 100);
+        assertTrue(chunk.truncated);
+        assertEquals(96, chunk.offset);
+        assertEquals("tail", string(chunk.data));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] data) {
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class RateLimitedWorkQueueTest {
+
+    @Test
+    public void testAddCoalescesKeys() {
+        RateLimitedWorkQueue<String> queue = new RateLimitedWorkQueue<>(100);
+
+        assertTrue(queue.add("a", 0));
+        assertFalse(queue.add("a", 10));
+        assertTrue(queue.add("b", 20));
+        assertEquals(2, queue.size());
+        assertEquals(30, queue.getLagMicros(30));
+
+        assertEquals(Arrays.asList("a", "b"), queue.poll(30, 10));
+        assertEquals(0, queue.size());
+        assertEquals(0, queue.getLagMicros(40));
+        assertEquals(-1, queue.getNextReadyDelayMicros(40));
+    }
+
+    @Test
+    public void testPollIsRateLimitedPerKey() {
+        RateLimitedWorkQueue<String> queue = new RateLimitedWorkQueue<>(100);
+
+        queue.add("a", 0);
+        assertEquals(Collections.singletonList("a"), queue.poll(0, 10));
+
+        queue.add("a", 10);
+        queue.add("b", 20);
+        assertEquals(Collections.singletonList("b"), queue.poll(50, 10));
+        assertEquals(50, queue.getNextReadyDelayMicros(50));
+        assertEquals(Collections.emptyList(), queue.poll(99, 10));
+
+        assertEquals(0, queue.getNextReadyDelayMicros(100));
+        assertEquals(Collections.singletonList("a"), queue.poll(100, 10));
+    }
+
+    @Test
+    public void testMarkProcessedRateLimitsKey() {
+        RateLimitedWorkQueue<String> queue = new RateLimitedWorkQueue<>(100);
+
+        queue.add("a", 0);
+        assertTrue(queue.markProcessed("a", 10));
+        assertEquals(0, queue.size());
+        assertFalse(queue.markProcessed("a", 50));
+
+        // added again right after being processed, so it has to wait
+        queue.add("a", 20);
+        assertEquals(Collections.emptyList(), queue.poll(20, 10));
+        assertEquals(90, queue.getNextReadyDelayMicros(20));
+        assertEquals(Collections.singletonList("a"), queue.poll(110, 10));
+
+        // a key which was just polled is not processed by other means either
+        assertFalse(queue.markProcessed("a", 150));
+        assertTrue(queue.markProcessed("a", 210));
+    }
+
+    @Test
+    public void testPollHonorsMax() {
+        RateLimitedWorkQueue<String> queue = new RateLimitedWorkQueue<>(0);
+
+        queue.add("a", 0);
+        queue.add("b", 0);
+        queue.add("c", 0);
+
+        assertEquals(Arrays.asList("a", "b"), queue.poll(0, 2));
+        assertEquals(Collections.singletonList("c"), queue.poll(0, 2));
+    }
+}
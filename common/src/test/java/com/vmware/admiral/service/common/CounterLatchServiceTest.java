@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.service.common.CounterSubTaskService.CounterSubTaskState;
+import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.test.TestContext;
+import com.vmware.xenon.common.test.VerificationHost;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+
+public class CounterLatchServiceTest {
+
+    private static final String PARENT_LINK = "/test-parent-tasks/parent";
+
+    private static final List<ServiceTaskCallbackResponse> PARENT_PATCHES =
+            new CopyOnWriteArrayList<>();
+
+    private enum TestSubStage {
+        DONE, FAILED
+    }
+
+    private VerificationHost cluster;
+    private VerificationHost owner;
+    private VerificationHost peer;
+
+    /**
+     * Records the callbacks received by the parent task.
+     */
+    public static class TestParentService extends StatelessService {
+        @Override
+        public void handlePatch(Operation patch) {
+            PARENT_PATCHES.add(patch.getBody(ServiceTaskCallbackResponse.class));
+            patch.complete();
+        }
+    }
+
+    @Before
+    public void setUp() throws Throwable {
+        PARENT_PATCHES.clear();
+
+        cluster = VerificationHost.create();
+        ServiceHost.Arguments args = VerificationHost.buildDefaultServiceHostArguments(0);
+        VerificationHost.initialize(cluster, args);
+        cluster.start();
+        cluster.setMaintenanceIntervalMicros(TimeUnit.MILLISECONDS.toMicros(100));
+        cluster.setUpPeerHosts(2);
+        cluster.joinNodesAndVerifyConvergence(2);
+
+        for (VerificationHost h : cluster.getInProcessHostMap().values()) {
+            h.startFactory(new CounterSubTaskService());
+            h.waitForServiceAvailable(CounterSubTaskService.FACTORY_LINK);
+            h.startServiceAndWait(CounterLatchService.class, CounterLatchService.SELF_LINK);
+            h.startServiceAndWait(TestParentService.class, PARENT_LINK);
+            if (h.isOwner(PARENT_LINK, ServiceUriPaths.DEFAULT_NODE_SELECTOR)) {
+                owner = h;
+            } else {
+                peer = h;
+            }
+        }
+        assertNotNull(owner);
+        assertNotNull(peer);
+    }
+
+    @After
+    public void tearDown() {
+        cluster.tearDownInProcessPeers();
+        cluster.tearDown();
+    }
+
+    @Test
+    public void testCompletionsAreForwardedToOwner() throws Throwable {
+        String latchLink = createLatch(2);
+
+        // the completions are reported to the node which does not hold the latch
+        countDown(peer, latchLink, TaskStage.FINISHED);
+        assertTrue(PARENT_PATCHES.isEmpty());
+        countDown(peer, latchLink, TaskStage.FINISHED);
+
+        cluster.waitFor("Parent task not notified", () -> !PARENT_PATCHES.isEmpty());
+        // only the owner holds latches and the parent is notified once
+        assertEquals(0, CounterLatchService.getLatchCount(peer));
+        countDown(peer, latchLink, TaskStage.FINISHED);
+        Thread.sleep(200);
+        assertEquals(1, PARENT_PATCHES.size());
+        assertEquals(TestSubStage.DONE.name(), String.valueOf(PARENT_PATCHES.get(0).taskSubStage));
+    }
+
+    @Test
+    public void testLostLatchIsRebuiltFromCheckpoint() throws Throwable {
+        String latchLink = createLatch(3);
+        countDown(owner, latchLink, TaskStage.FINISHED);
+
+        // the acknowledged completion is saved to the checkpoint
+        CounterSubTaskState checkpoint = getCheckpoint(latchLink);
+        assertEquals(2, checkpoint.completionsRemaining);
+        assertEquals(1, checkpoint.finishedCount);
+
+        // the latch is lost, e.g. after a restart of its node
+        CounterLatchService.getLatches(owner).clear();
+
+        countDown(peer, latchLink, TaskStage.FINISHED);
+        assertEquals(1, CounterLatchService.getLatchCount(owner));
+        assertTrue(PARENT_PATCHES.isEmpty());
+        countDown(peer, latchLink, TaskStage.FAILED);
+
+        cluster.waitFor("Parent task not notified", () -> !PARENT_PATCHES.isEmpty());
+        ServiceTaskCallbackResponse response = PARENT_PATCHES.get(0);
+        // the parent is failed with the sub stage of its callback
+        assertEquals(TestSubStage.FAILED.name(), String.valueOf(response.taskSubStage));
+        assertEquals(0, getCheckpoint(latchLink).completionsRemaining);
+    }
+
+    @Test
+    public void testLatchWithoutCheckpointIgnoresCompletions() throws Throwable {
+        // a latch which has expired together with its checkpoint
+        String latchLink = UriUtils.buildUriPath(CounterLatchService.SELF_LINK,
+                UUID.randomUUID().toString(), PARENT_LINK);
+
+        countDown(peer, latchLink, TaskStage.FINISHED);
+        countDown(owner, latchLink, TaskStage.FINISHED);
+        Thread.sleep(200);
+        assertTrue(PARENT_PATCHES.isEmpty());
+        assertEquals(1, CounterLatchService.getLatchCount(owner));
+    }
+
+    private String createLatch(long count) throws Exception {
+        CounterSubTaskState initState = new CounterSubTaskState();
+        initState.completionsRemaining = count;
+        initState.serviceTaskCallback = ServiceTaskCallback.create(PARENT_LINK,
+                TaskStage.STARTED, TestSubStage.DONE, TaskStage.STARTED, TestSubStage.FAILED);
+        return CounterLatchService.createLatch(owner, PARENT_LINK, initState)
+                .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    private CounterSubTaskState getCheckpoint(String latchLink) {
+        return owner.getServiceState(null, CounterSubTaskState.class,
+                UriUtils.buildUri(owner, CounterLatchService.getCheckpointLink(latchLink)));
+    }
+
+    private void countDown(VerificationHost host, String latchLink, TaskStage stage) {
+        CounterSubTaskState body = new CounterSubTaskState();
+        body.taskInfo.stage = stage;
+
+        TestContext ctx = host.testCreate(1);
+        host.send(Operation.createPatch(host, latchLink)
+                .setBody(body)
+                .setReferer(host.getUri())
+                .setCompletion(ctx.getCompletion()));
+        host.testWait(ctx);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.vmware.admiral.service.common.CounterSubTaskService.CounterSubTaskState;
+import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
+import com.vmware.xenon.common.TaskState;
+import com.vmware.xenon.common.TaskState.TaskStage;
+
+public class CounterLatchTest {
+
+    private static final String PARENT_LINK = "/request/allocation-tasks/test";
+
+    @Test
+    public void testCompletesAfterAllFinished() {
+        CounterLatch latch = new CounterLatch(initState(3, 0));
+
+        assertNull(latch.countDown(completion(TaskStage.FINISHED, "a", "1")));
+        assertNull(latch.countDown(completion(TaskStage.STARTED, null, null)));
+        assertNull(latch.countDown(completion(TaskStage.FINISHED, "b", "2")));
+        ServiceTaskCallbackResponse response = latch.countDown(
+                completion(TaskStage.FINISHED, null, null));
+
+        assertNotNull(response);
+        assertEquals(TaskStage.STARTED, response.taskInfo.stage);
+        assertEquals(DefaultSubStage.COMPLETED, response.taskSubStage);
+        assertEquals("1", response.customProperties.get("a"));
+        assertEquals("2", response.customProperties.get("b"));
+        assertEquals(3, latch.getFinishedCount());
+
+        // completions after the latch has completed are ignored
+        assertNull(latch.countDown(completion(TaskStage.FINISHED, null, null)));
+    }
+
+    @Test
+    public void testFailsOnFirstFailureWithoutThreshold() {
+        CounterLatch latch = new CounterLatch(initState(3, 0));
+
+        assertNull(latch.countDown(completion(TaskStage.FINISHED, null, null)));
+        ServiceTaskCallbackResponse response = latch.countDown(
+                completion(TaskStage.FAILED, null, null));
+
+        assertNotNull(response);
+        assertEquals(DefaultSubStage.ERROR, response.taskSubStage);
+        assertEquals(0, latch.getCompletionsRemaining());
+    }
+
+    @Test
+    public void testToleratesFailuresWithinThreshold() {
+        CounterLatch latch = new CounterLatch(initState(4, 0.5));
+
+        assertNull(latch.countDown(completion(TaskStage.FAILED, null, null)));
+        assertNull(latch.countDown(completion(TaskStage.FINISHED, null, null)));
+        assertNull(latch.countDown(completion(TaskStage.FINISHED, null, null)));
+        ServiceTaskCallbackResponse response = latch.countDown(
+                completion(TaskStage.FINISHED, null, null));
+
+        assertNotNull(response);
+        assertEquals(DefaultSubStage.COMPLETED, response.taskSubStage);
+    }
+
+    @Test
+    public void testParentLink() {
+        assertEquals(PARENT_LINK, CounterLatchService.getParentLink(
+                CounterLatchService.SELF_LINK + "/0c3e6f0e-5d17-4a8f-9f6b-7d4f2b0fce11"
+                        + PARENT_LINK));
+        assertNull(CounterLatchService.getParentLink(CounterLatchService.SELF_LINK + "/id"));
+    }
+
+    private static CounterSubTaskState initState(long count, double errorThreshold) {
+        CounterSubTaskState state = new CounterSubTaskState();
+        state.completionsRemaining = count;
+        state.errorThreshold = errorThreshold;
+        state.serviceTaskCallback = ServiceTaskCallback.create(PARENT_LINK,
+                TaskStage.STARTED, DefaultSubStage.COMPLETED,
+                TaskStage.STARTED, DefaultSubStage.ERROR);
+        return state;
+    }
+
+    private static CounterSubTaskState completion(TaskStage stage, String key, String value) {
+        CounterSubTaskState body = new CounterSubTaskState();
+        body.taskInfo = new TaskState();
+        body.taskInfo.stage = stage;
+        if (key != null) {
+            body.customProperties = Collections.singletonMap(key, value);
+        }
+        return body;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.service.common.ExtensibilityNotificationDispatcher.DeadLetter;
+import com.vmware.admiral.service.common.ExtensibilityNotificationDispatcher.ExtensibilityNotificationBatch;
+import com.vmware.admiral.service.common.ExtensibilityNotificationDispatcher.SubscriberStats;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+
+public class ExtensibilityNotificationDispatcherTest {
+
+    private static final URI SUBSCRIBER = URI.create("http://subscriber:8080/notify");
+
+    private final List<Operation> sent = new ArrayList<>();
+    private final List<String> failedTasks = new ArrayList<>();
+
+    private ExtensibilityNotificationDispatcher.Transport transport;
+
+    @Before
+    public void setUp() {
+        transport = new ExtensibilityNotificationDispatcher.Transport() {
+            @Override
+            public void send(Operation op) {
+                sent.add(op);
+            }
+
+            @Override
+            public void schedule(Runnable task, long delay, TimeUnit unit) {
+                task.run();
+            }
+        };
+    }
+
+    @Test
+    public void testBatchesAsyncNotificationsWithinConcurrencyLimit() {
+        ExtensibilityNotificationDispatcher dispatcher = createDispatcher(1, 100, 3);
+
+        for (int i = 0; i < 4; i++) {
+            dispatcher.dispatch(SUBSCRIBER, 3, document("task-" + i), "/tasks/" + i, false,
+                    null);
+        }
+
+        assertEquals(1, sent.size());
+        assertTrue(sent.get(0).getBodyRaw() instanceof ServiceDocument);
+
+        sent.get(0).complete();
+
+        assertEquals(2, sent.size());
+        ExtensibilityNotificationBatch batch = (ExtensibilityNotificationBatch) sent.get(1)
+                .getBodyRaw();
+        assertEquals(3, batch.notifications.size());
+
+        sent.get(1).complete();
+        SubscriberStats stats = dispatcher.getStats().get(0);
+        assertEquals(4, stats.delivered);
+        assertEquals(0, stats.backlog);
+        assertEquals(0, stats.inFlight);
+    }
+
+    @Test
+    public void testBatchesOnlyForSubscriptionsWhichOptedIn() {
+        ExtensibilityNotificationDispatcher dispatcher = createDispatcher(1, 100, 3);
+
+        // two subscriptions with the same callback address, only one of them accepts batches
+        dispatcher.dispatch(SUBSCRIBER, 3, document("batched-0"), "/tasks/0", false, null);
+        dispatcher.dispatch(SUBSCRIBER, 3, document("batched-1"), "/tasks/1", false, null);
+        dispatcher.dispatch(SUBSCRIBER, 1, document("single-1"), "/tasks/2", false, null);
+        dispatcher.dispatch(SUBSCRIBER, 3, document("batched-2"), "/tasks/3", false, null);
+        dispatcher.dispatch(SUBSCRIBER, 1, document("single-2"), "/tasks/4", false, null);
+
+        assertEquals(1, sent.size());
+        sent.get(0).complete();
+
+        assertEquals(2, sent.size());
+        ExtensibilityNotificationBatch batch = (ExtensibilityNotificationBatch) sent.get(1)
+                .getBodyRaw();
+        assertEquals(2, batch.notifications.size());
+        assertEquals("batched-1", batch.notifications.get(0).documentSelfLink);
+        assertEquals("batched-2", batch.notifications.get(1).documentSelfLink);
+        sent.get(1).complete();
+
+        assertEquals(3, sent.size());
+        assertEquals("single-1", ((ServiceDocument) sent.get(2).getBodyRaw()).documentSelfLink);
+        sent.get(2).complete();
+
+        assertEquals(4, sent.size());
+        assertEquals("single-2", ((ServiceDocument) sent.get(3).getBodyRaw()).documentSelfLink);
+    }
+
+    @Test
+    public void testBlockingNotificationsOfATaskAreDeliveredInOrder() {
+        ExtensibilityNotificationDispatcher dispatcher = createDispatcher(4, 100, 3);
+
+        dispatcher.dispatch(SUBSCRIBER, 1, document("a-1"), "/tasks/a", true, null);
+        dispatcher.dispatch(SUBSCRIBER, 1, document("a-2"), "/tasks/a", true, null);
+        dispatcher.dispatch(SUBSCRIBER, 1, document("b-1"), "/tasks/b", true, null);
+
+        assertEquals(2, sent.size());
+        assertEquals("a-1", ((ServiceDocument) sent.get(0).getBodyRaw()).documentSelfLink);
+        assertEquals("b-1", ((ServiceDocument) sent.get(1).getBodyRaw()).documentSelfLink);
+
+        sent.get(0).complete();
+
+        assertEquals(3, sent.size());
+        assertEquals("a-2", ((ServiceDocument) sent.get(2).getBodyRaw()).documentSelfLink);
+    }
+
+    @Test
+    public void testBackPressureDelaysTasks() {
+        ExtensibilityNotificationDispatcher dispatcher = createDispatcher(1, 1, 3);
+        AtomicBoolean resumed = new AtomicBoolean();
+
+        dispatcher.dispatch(SUBSCRIBER, 1, document("1"), "/tasks/1", false, () -> {
+        });
+        dispatcher.dispatch(SUBSCRIBER, 1, document("2"), "/tasks/2", false, () -> {
+        });
+        dispatcher.dispatch(SUBSCRIBER, 1, document("3"), "/tasks/3", false,
+                () -> resumed.set(true));
+
+        assertFalse(resumed.get());
+        assertEquals(1, dispatcher.getStats().get(0).waitingTasks);
+
+        sent.get(0).complete();
+
+        assertTrue(resumed.get());
+        assertEquals(0, dispatcher.getStats().get(0).waitingTasks);
+    }
+
+    @Test
+    public void testFailedNotificationsGoToDeadLetters() {
+        ExtensibilityNotificationDispatcher dispatcher = createDispatcher(1, 100, 2);
+
+        dispatcher.dispatch(SUBSCRIBER, 1, document("1"), "/tasks/1", true, null);
+        sent.get(0).fail(new IllegalStateException("unreachable"));
+        assertEquals(2, sent.size());
+        sent.get(1).fail(new IllegalStateException("unreachable"));
+
+        List<DeadLetter> deadLetters = dispatcher.getDeadLetters();
+        assertEquals(1, deadLetters.size());
+        assertEquals("/tasks/1", deadLetters.get(0).taskLink);
+        assertEquals("unreachable", deadLetters.get(0).failure);
+        assertEquals(1, failedTasks.size());
+
+        SubscriberStats stats = dispatcher.getStats().get(0);
+        assertEquals(2, stats.failedAttempts);
+        assertEquals(1, stats.deadLettered);
+        assertEquals(0, stats.inFlight);
+    }
+
+    private ExtensibilityNotificationDispatcher createDispatcher(int maxConcurrent,
+            int backlogLimit, int retryCount) {
+        return new ExtensibilityNotificationDispatcher(transport,
+                (message, taskLink) -> failedTasks.add(taskLink), maxConcurrent, backlogLimit,
+                retryCount, 0, 10);
+    }
+
+    private static ServiceDocument document(String link) {
+        ServiceDocument document = new ServiceDocument();
+        document.documentSelfLink = link;
+        return document;
+    }
+}
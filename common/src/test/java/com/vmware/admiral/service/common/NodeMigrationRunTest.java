@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.vmware.admiral.service.common.NodeMigrationRun.FactoryResult;
+import com.vmware.admiral.service.common.NodeMigrationRun.MigrationStatus;
+import com.vmware.xenon.common.DeferredResult;
+
+public class NodeMigrationRunTest {
+
+    /**
+     * Factory migrations completed manually by the test.
+     */
+    private final Map<String, DeferredResult<FactoryResult>> started = new LinkedHashMap<>();
+
+    private final NodeMigrationRun.FactoryMigration migration = factoryLink -> {
+        DeferredResult<FactoryResult> result = new DeferredResult<>();
+        started.put(factoryLink, result);
+        return result;
+    };
+
+    @Test
+    public void testBoundsParallelism() {
+        NodeMigrationRun run = new NodeMigrationRun(2, migration);
+        DeferredResult<Void> result = run.run(Collections.singletonList(
+                Arrays.asList("/a", "/b", "/c", "/d")));
+
+        assertEquals(Arrays.asList("/a", "/b"), new ArrayList<>(started.keySet()));
+
+        started.get("/b").complete(new FactoryResult(5, false));
+        assertEquals(Arrays.asList("/a", "/b", "/c"), new ArrayList<>(started.keySet()));
+
+        started.get("/a").complete(new FactoryResult(5, false));
+        started.get("/c").complete(new FactoryResult(0, true));
+        assertTrue(run.isRunning());
+        started.get("/d").complete(new FactoryResult(10, false));
+
+        assertTrue(result.toCompletionStage().toCompletableFuture().isDone());
+        assertFalse(run.isRunning());
+        MigrationStatus status = run.getStatus();
+        assertEquals(MigrationStatus.Stage.COMPLETED, status.stage);
+        assertEquals(4, status.completedFactories);
+        assertEquals(1, status.skippedFactories);
+        assertEquals(20, status.migratedDocuments);
+        assertEquals(Long.valueOf(0), status.etaSeconds);
+    }
+
+    @Test
+    public void testStartsGroupsInOrder() {
+        NodeMigrationRun run = new NodeMigrationRun(4, migration);
+        run.run(Arrays.asList(Arrays.asList("/a", "/b"), Collections.singletonList("/c")));
+
+        assertEquals(Arrays.asList("/a", "/b"), new ArrayList<>(started.keySet()));
+        started.get("/a").complete(new FactoryResult(1, false));
+        assertEquals(2, started.size());
+
+        started.get("/b").complete(new FactoryResult(1, false));
+        assertEquals(Arrays.asList("/a", "/b", "/c"), new ArrayList<>(started.keySet()));
+    }
+
+    @Test
+    public void testFailsOnFirstFailure() {
+        NodeMigrationRun run = new NodeMigrationRun(1, migration);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        run.run(Collections.singletonList(Arrays.asList("/a", "/b")))
+                .whenComplete((ignore, e) -> failure.set(e));
+
+        started.get("/a").fail(new IllegalStateException("One or more migration tasks failed"));
+
+        assertNotNull(failure.get());
+        assertEquals("One or more migration tasks failed", failure.get().getMessage());
+        assertEquals(1, started.size());
+        MigrationStatus status = run.getStatus();
+        assertEquals(MigrationStatus.Stage.FAILED, status.stage);
+        assertEquals("One or more migration tasks failed", status.failure);
+    }
+
+    @Test
+    public void testReportsProgressOfFactoriesInProgress() throws Exception {
+        NodeMigrationRun run = new NodeMigrationRun(1, migration);
+        run.run(Collections.singletonList(Arrays.asList("/a", "/b", "/c")));
+
+        started.get("/a").complete(new FactoryResult(100, false));
+        Thread.sleep(10);
+        run.updateProgress("/b", 50, 200);
+        // not in progress, ignored
+        run.updateProgress("/c", 10, 10);
+
+        List<String> inProgress = new ArrayList<>(run.getFactoriesInProgress());
+        assertEquals(Collections.singletonList("/b"), inProgress);
+
+        MigrationStatus status = run.getStatus();
+        assertEquals(MigrationStatus.Stage.RUNNING, status.stage);
+        assertEquals(150, status.migratedDocuments);
+        // the completed factory, the estimate of the one in progress and the average of the
+        // completed ones for the one not started yet
+        assertEquals(100 + 200 + 100, status.estimatedTotalDocuments);
+        assertTrue(status.documentsPerSecond > 0);
+        assertNotNull(status.etaSeconds);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixLease;
+import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixRequest;
+import com.vmware.admiral.service.common.ResourceNamePrefixService.ResourceNamePrefixState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.test.VerificationHost;
+
+public class ResourceNamePrefixLeasesTest {
+
+    private static final String PREFIX_LINK = ResourceNamePrefixService.FACTORY_LINK + "/test";
+
+    private VerificationHost host;
+    private ResourceNamePrefixLeases leases;
+    private StatelessService sender;
+    private final List<Operation> sent = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Throwable {
+        host = VerificationHost.create();
+        VerificationHost.initialize(host, VerificationHost.buildDefaultServiceHostArguments(0));
+        host.start();
+
+        leases = new ResourceNamePrefixLeases();
+        sender = new StatelessService() {
+            @Override
+            public void sendRequest(Operation op) {
+                sent.add(op);
+            }
+        };
+        sender.setHost(host);
+    }
+
+    @After
+    public void tearDown() {
+        host.tearDown();
+    }
+
+    @Test
+    public void testWaitingRequestsShareALease() throws Throwable {
+        DeferredResult<List<String>> first = leases.allocate(sender, PREFIX_LINK, 2);
+        DeferredResult<List<String>> second = leases.allocate(sender, PREFIX_LINK, 3);
+        DeferredResult<List<String>> third = leases.allocate(sender, PREFIX_LINK, 1);
+
+        assertEquals(1, sent.size());
+        NamePrefixRequest request = sent.get(0).getBody(NamePrefixRequest.class);
+        assertEquals(2, request.resourceCount);
+        assertEquals(ResourceNamePrefixLeases.LEASE_SIZE, request.leaseCount);
+
+        respond(0, lease("a", 1, 10, 1));
+
+        assertEquals(Arrays.asList("a1", "a2"), get(first));
+        assertEquals(Arrays.asList("a3", "a4", "a5"), get(second));
+        assertEquals(Arrays.asList("a6"), get(third));
+
+        // served from the current lease
+        assertEquals(Arrays.asList("a7"), get(leases.allocate(sender, PREFIX_LINK, 1)));
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void testRestOfTooSmallLeaseIsSkipped() throws Throwable {
+        DeferredResult<List<String>> first = leases.allocate(sender, PREFIX_LINK, 2);
+        respond(0, lease("a", 1, 3, 1));
+        assertEquals(Arrays.asList("a1", "a2"), get(first));
+
+        // a single number is left, which is not enough
+        DeferredResult<List<String>> second = leases.allocate(sender, PREFIX_LINK, 2);
+        assertEquals(2, sent.size());
+        respond(1, lease("a", 4, 3, 2));
+        assertEquals(Arrays.asList("a4", "a5"), get(second));
+    }
+
+    @Test
+    public void testExpiredLeaseIsNotUsed() throws Throwable {
+        leases.leaseExpirationMicros = TimeUnit.MILLISECONDS.toMicros(10);
+        DeferredResult<List<String>> first = leases.allocate(sender, PREFIX_LINK, 1);
+        respond(0, lease("a", 1, 10, 1));
+        assertEquals(Arrays.asList("a1"), get(first));
+
+        Thread.sleep(20);
+        DeferredResult<List<String>> second = leases.allocate(sender, PREFIX_LINK, 1);
+        assertEquals(2, sent.size());
+        respond(1, lease("a", 11, 10, 2));
+        assertEquals(Arrays.asList("a11"), get(second));
+    }
+
+    @Test
+    public void testChangedPrefixDropsLease() throws Throwable {
+        DeferredResult<List<String>> first = leases.allocate(sender, PREFIX_LINK, 1);
+        respond(0, lease("a", 1, 10, 1));
+        assertEquals(Arrays.asList("a1"), get(first));
+
+        // the update of the counter by the lease does not change the names
+        leases.onPrefixChange(PREFIX_LINK, state("a", 2));
+        assertEquals(Arrays.asList("a2"), get(leases.allocate(sender, PREFIX_LINK, 1)));
+        assertEquals(1, sent.size());
+
+        leases.onPrefixChange(PREFIX_LINK, state("b", 3));
+        DeferredResult<List<String>> second = leases.allocate(sender, PREFIX_LINK, 1);
+        assertEquals(2, sent.size());
+        respond(1, lease("b", 11, 10, 3));
+        assertEquals(Arrays.asList("b11"), get(second));
+    }
+
+    @Test
+    public void testLeaseOfChangedPrefixIsTakenAgain() throws Throwable {
+        DeferredResult<List<String>> first = leases.allocate(sender, PREFIX_LINK, 1);
+        DeferredResult<List<String>> second = leases.allocate(sender, PREFIX_LINK, 1);
+
+        // the prefix changes while the lease is taken from the previous version
+        leases.onPrefixChange(PREFIX_LINK, state("b", 5));
+        respond(0, lease("a", 1, 10, 4));
+
+        assertEquals(2, sent.size());
+        assertFalse(first.toCompletionStage().toCompletableFuture().isDone());
+        respond(1, lease("b", 11, 10, 5));
+        assertEquals(Arrays.asList("b11"), get(first));
+        assertEquals(Arrays.asList("b12"), get(second));
+    }
+
+    @Test
+    public void testDeletedPrefixDropsLease() throws Throwable {
+        DeferredResult<List<String>> first = leases.allocate(sender, PREFIX_LINK, 1);
+        respond(0, lease("a", 1, 10, 1));
+        assertEquals(Arrays.asList("a1"), get(first));
+
+        ResourceNamePrefixState deleted = state("a", 2);
+        deleted.documentUpdateAction = Action.DELETE.toString();
+        leases.onPrefixChange(PREFIX_LINK, deleted);
+
+        leases.allocate(sender, PREFIX_LINK, 1);
+        assertEquals(2, sent.size());
+    }
+
+    private void respond(int index, NamePrefixLease lease) {
+        Operation op = sent.get(index);
+        assertTrue(op.getUri().getPath().endsWith(PREFIX_LINK));
+        op.setBodyNoCloning(lease).complete();
+    }
+
+    private static NamePrefixLease lease(String prefix, long firstNumber, long count,
+            long documentVersion) {
+        NamePrefixLease lease = new NamePrefixLease();
+        lease.prefix = prefix;
+        lease.addRandomToken = false;
+        lease.firstNumber = firstNumber;
+        lease.count = count;
+        lease.nextNumber = 1;
+        lease.maxNumber = 999;
+        lease.documentVersion = documentVersion;
+        return lease;
+    }
+
+    private static ResourceNamePrefixState state(String prefix, long documentVersion) {
+        ResourceNamePrefixState state = new ResourceNamePrefixState();
+        state.documentSelfLink = PREFIX_LINK;
+        state.prefix = prefix;
+        state.addRandomToken = false;
+        state.nextNumber = 1;
+        state.numberOfDigits = 3;
+        state.documentVersion = documentVersion;
+        return state;
+    }
+
+    private static List<String> get(DeferredResult<List<String>> result) throws Exception {
+        return result.toCompletionStage().toCompletableFuture().get(1, TimeUnit.SECONDS);
+    }
+}
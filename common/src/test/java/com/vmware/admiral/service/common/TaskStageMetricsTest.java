@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.vmware.admiral.service.common.TaskStageMetrics.StageStats;
+
+public class TaskStageMetricsTest {
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, TaskStageMetrics.bucketOf(0));
+        assertEquals(1, TaskStageMetrics.bucketOf(1));
+        assertEquals(2, TaskStageMetrics.bucketOf(2));
+        assertEquals(2, TaskStageMetrics.bucketOf(3));
+        assertEquals(11, TaskStageMetrics.bucketOf(1024));
+        assertEquals(63, TaskStageMetrics.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testStatsAreSortedByTotalTime() {
+        TaskStageMetrics metrics = new TaskStageMetrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.recordDuration("AllocationTask", "PLACEMENT", i * 1000);
+            metrics.recordDuration("AllocationTask", "RESERVATION", 10);
+        }
+        metrics.recordRetry("AllocationTask", "PLACEMENT");
+        metrics.recordFailure("AllocationTask", "RESERVATION");
+        metrics.recordDuration("RemovalTask", "REMOVING", 5);
+
+        List<StageStats> stats = metrics.getStats(null);
+        assertEquals(3, stats.size());
+
+        StageStats placement = stats.get(0);
+        assertEquals("AllocationTask", placement.taskType);
+        assertEquals("PLACEMENT", placement.subStage);
+        assertEquals(100, placement.count);
+        assertEquals(5050000, placement.totalMicros);
+        assertEquals(50500, placement.meanMicros);
+        assertEquals(100000, placement.maxMicros);
+        assertEquals(1, placement.retries);
+        // percentiles are approximated by the power of two bucket upper bound
+        assertTrue(placement.p50Micros >= 50000 && placement.p50Micros < 2 * 50000);
+        assertTrue(placement.p99Micros >= 99000 && placement.p99Micros <= 100000);
+
+        StageStats reservation = stats.get(1);
+        assertEquals("RESERVATION", reservation.subStage);
+        assertEquals(1, reservation.failures);
+        assertEquals(10, reservation.maxMicros);
+
+        assertEquals(1, metrics.getStats("RemovalTask").size());
+
+        metrics.reset();
+        assertTrue(metrics.getStats(null).isEmpty());
+    }
+}
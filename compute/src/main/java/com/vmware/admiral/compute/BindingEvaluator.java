@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -39,8 +40,8 @@ import com.google.gson.JsonPrimitive;
 import com.vmware.admiral.closures.services.closure.Closure;
 import com.vmware.admiral.common.util.PropertyUtils;
 import com.vmware.admiral.common.util.YamlMapper;
+import com.vmware.admiral.compute.BindingPlan.CompiledBinding;
 import com.vmware.admiral.compute.content.Binding;
-import com.vmware.admiral.compute.content.Binding.ComponentBinding;
 import com.vmware.admiral.compute.content.ComponentTemplate;
 import com.vmware.admiral.compute.content.CompositeTemplate;
 import com.vmware.admiral.compute.content.NestedState;
@@ -102,6 +103,9 @@ import com.vmware.xenon.common.LocalizableValidationException;
  */
 public class BindingEvaluator {
 
+    private static final Map<Class<?>, Map<String, Optional<Field>>> FIELDS =
+            new ConcurrentHashMap<>();
+
     private static ObjectMapper objectMapper;
     private static ObjectWriter objectAsStringWriter;
 
@@ -126,29 +130,30 @@ public class BindingEvaluator {
         Map<String, ComponentTemplate<?>> componentNameToTemplate = getComponentNameToDescription(
                 compositeTemplate);
 
-        Map<String, ComponentBinding> bindingByComponentName = getBindingByComponentName(
-                compositeTemplate.bindings);
+        BindingPlan plan = new BindingPlan(compositeTemplate.bindings);
 
-        for (Binding.ComponentBinding componentBinding : bindingByComponentName.values()) {
+        for (String componentName : plan.getComponentNames()) {
             @SuppressWarnings("rawtypes")
-            ComponentTemplate componentTemplate = componentNameToTemplate
-                    .get(componentBinding.componentName);
+            ComponentTemplate componentTemplate = componentNameToTemplate.get(componentName);
 
-            for (Binding binding : componentBinding.bindings) {
-                if (binding.isProvisioningTimeBinding()) {
-                    continue;
-                }
+            List<CompiledBinding> bindings = plan.getBindings(componentName).stream()
+                    .filter(b -> !b.binding.isProvisioningTimeBinding())
+                    .collect(Collectors.toList());
 
-                try {
-                    evaluateBinding(binding, componentBinding.componentName, componentTemplate,
-                            componentNameToTemplate,
-                            bindingByComponentName,
-                            new HashSet<>());
-                } catch (ReflectiveOperationException | IOException e) {
-                    throw new RuntimeException(e);
+            try {
+                if (plan.isSelfReferencing(componentName)) {
+                    // the bindings of the component may read the values set by the previous ones
+                    for (CompiledBinding binding : bindings) {
+                        evaluateBindings(Collections.singletonList(binding), componentName,
+                                componentTemplate, componentNameToTemplate, plan);
+                    }
+                } else {
+                    evaluateBindings(bindings, componentName, componentTemplate,
+                            componentNameToTemplate, plan);
                 }
+            } catch (ReflectiveOperationException | IOException e) {
+                throw new RuntimeException(e);
             }
-
         }
     }
 
@@ -173,6 +178,11 @@ public class BindingEvaluator {
             }
         }
 
+        if (evaluatedBindingMap.isEmpty()) {
+            // none of the source components is provisioned yet, the state is not changed
+            return result;
+        }
+
         try {
             final Map<String, Object> resultBindingMap = new HashMap<>();
             sanitizeState(state, (normalizedState) -> {
@@ -187,10 +197,8 @@ public class BindingEvaluator {
             });
 
             applyEvaluatedState(resultBindingMap, evaluatedBindingMap, bindings);
-            if (!evaluatedBindingMap.isEmpty()) {
-                result = TemplateSerializationUtils.deserializeServiceDocument(resultBindingMap,
-                        state.object.getClass());
-            }
+            result = TemplateSerializationUtils.deserializeServiceDocument(resultBindingMap,
+                    state.object.getClass());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -266,38 +274,52 @@ public class BindingEvaluator {
         evaluatedBindings.put(binding.placeholder.bindingExpression, value);
     }
 
+    /**
+     * Resolves the values of the given bindings of a component and sets them all at once, so
+     * that the component template is serialized and deserialized once per component instead of
+     * once per binding.
+     */
     @SuppressWarnings("unchecked")
-    private static void evaluateBinding(
-            Binding binding,
+    private static void evaluateBindings(
+            List<CompiledBinding> bindings,
             String componentName,
             @SuppressWarnings("rawtypes") ComponentTemplate componentTemplate,
             Map<String, ComponentTemplate<?>> componentNameToTemplate,
-            Map<String, Binding.ComponentBinding> allBindings,
-            Set<String> visited) throws ReflectiveOperationException, IOException {
+            BindingPlan plan) throws ReflectiveOperationException, IOException {
+
+        List<Binding> resolvedBindings = new ArrayList<>(bindings.size());
+        List<Object> resolvedValues = new ArrayList<>(bindings.size());
+        for (CompiledBinding binding : bindings) {
+            Object rootSourceValue = resolveValue(binding, componentName,
+                    componentNameToTemplate, plan, new HashSet<>());
+            if (rootSourceValue != null) {
+                resolvedBindings.add(binding.binding);
+                resolvedValues.add(rootSourceValue);
+            }
+        }
 
-        Object rootSourceValue = resolveValue(binding, componentName, componentTemplate,
-                componentNameToTemplate, allBindings, visited);
+        if (resolvedBindings.isEmpty()) {
+            return;
+        }
 
-        if (rootSourceValue != null) {
-            Map<String, Object> serializedComponentTemplate = TemplateSerializationUtils
-                    .serializeComponentTemplate(componentTemplate, objectMapper,
-                            objectAsStringWriter);
+        Map<String, Object> serializedComponentTemplate = TemplateSerializationUtils
+                .serializeComponentTemplate(componentTemplate, objectMapper,
+                        objectAsStringWriter);
+        for (int i = 0; i < resolvedBindings.size(); i++) {
             setValue((Map<String, Object>) serializedComponentTemplate.get("data"),
-                    binding.targetFieldPath, rootSourceValue);
-            ComponentTemplate<?> updatedComponentTemplate = TemplateSerializationUtils
-                    .deserializeComponent(serializedComponentTemplate, objectMapper);
-            componentTemplate.data = updatedComponentTemplate.data;
-            componentTemplate.children = updatedComponentTemplate.children;
-            componentTemplate.type = updatedComponentTemplate.type;
-            componentTemplate.dependsOn = updatedComponentTemplate.dependsOn;
+                    resolvedBindings.get(i).targetFieldPath, resolvedValues.get(i));
         }
-
+        ComponentTemplate<?> updatedComponentTemplate = TemplateSerializationUtils
+                .deserializeComponent(serializedComponentTemplate, objectMapper);
+        componentTemplate.data = updatedComponentTemplate.data;
+        componentTemplate.children = updatedComponentTemplate.children;
+        componentTemplate.type = updatedComponentTemplate.type;
+        componentTemplate.dependsOn = updatedComponentTemplate.dependsOn;
     }
 
-    private static Object resolveValue(Binding binding, String templateName,
-            @SuppressWarnings("rawtypes") ComponentTemplate targetTemplate,
+    private static Object resolveValue(CompiledBinding binding, String templateName,
             Map<String, ComponentTemplate<?>> componentNameToDescription,
-            Map<String, Binding.ComponentBinding> allBindings, Set<String> visited)
+            BindingPlan plan, Set<String> visited)
             throws ReflectiveOperationException {
 
         // Assume the <<description>>.name is the same as the component name because of
@@ -310,10 +332,8 @@ public class BindingEvaluator {
         }
         visited.add(componentName);
 
-        String bindingExpression = binding.placeholder.bindingExpression;
-        List<String> sourceFieldPath = BindingUtils.convertToFieldPath(bindingExpression);
-        String sourceComponentName = BindingUtils
-                .extractComponentNameFromBindingExpression(bindingExpression);
+        List<String> sourceFieldPath = binding.sourceFieldPath;
+        String sourceComponentName = binding.sourceComponentName;
 
         @SuppressWarnings("rawtypes")
         ComponentTemplate sourceTemplate = componentNameToDescription.get(sourceComponentName);
@@ -322,34 +342,15 @@ public class BindingEvaluator {
 
         // if the source value is null it may be bound to something else
         if (rootSourceValue == null) {
-            Optional<Binding> isSourceValueABinding = findBinding(sourceFieldPath,
-                    sourceComponentName,
-                    allBindings);
-            if (isSourceValueABinding.isPresent()) {
-                Binding nestedBinding = isSourceValueABinding.get();
-                rootSourceValue = resolveValue(nestedBinding, sourceComponentName, sourceTemplate,
-                        componentNameToDescription,
-                        allBindings, visited);
+            CompiledBinding nestedBinding = plan.findBinding(sourceComponentName,
+                    sourceFieldPath);
+            if (nestedBinding != null) {
+                rootSourceValue = resolveValue(nestedBinding, sourceComponentName,
+                        componentNameToDescription, plan, visited);
             }
         }
 
-        return BindingUtils.valueForBinding(binding, rootSourceValue);
-    }
-
-    private static Map<String, Binding.ComponentBinding> getBindingByComponentName(
-            List<Binding.ComponentBinding> bindings) {
-        return bindings.stream().collect(Collectors.toMap(cb -> cb.componentName, cb -> cb));
-    }
-
-    private static Optional<Binding> findBinding(List<String> fieldPath, String componentName,
-            Map<String, Binding.ComponentBinding> allBindings) {
-
-        if (!allBindings.containsKey(componentName)) {
-            return Optional.empty();
-        }
-
-        return allBindings.get(componentName).bindings.stream()
-                .filter(b -> b.targetFieldPath.equals(fieldPath)).findFirst();
+        return BindingUtils.valueForBinding(binding.binding, rootSourceValue);
     }
 
     @SuppressWarnings("unchecked")
@@ -518,11 +519,7 @@ public class BindingEvaluator {
             }
 
             Class<?> type = value.getClass();
-            Field field = PropertyUtils.findField(type, fieldName);
-            if (field == null) {
-                String snakeCaseFieldName = convertSnakeCaseToCamelCase(fieldName);
-                field = PropertyUtils.findField(type, snakeCaseFieldName);
-            }
+            Field field = findField(type, fieldName);
 
             if (field != null) {
                 if (value instanceof Closure) {
@@ -568,7 +565,7 @@ public class BindingEvaluator {
     private static Object tryGetValueFromCustomProperties(Class<?> type, Object value,
             String fieldName) {
         Object result = null;
-        Field field = PropertyUtils.findField(type, ResourceState.FIELD_NAME_CUSTOM_PROPERTIES);
+        Field field = findField(type, ResourceState.FIELD_NAME_CUSTOM_PROPERTIES);
         if (field != null) {
             try {
                 Map<String, Object> customProperties = (Map<String, Object>) field.get(value);
@@ -580,6 +577,21 @@ public class BindingEvaluator {
         return result;
     }
 
+    /**
+     * Returns the field with the given name, or with its camel case form if the name is in snake
+     * case. The lookups are cached since the fields of a class do not change.
+     */
+    private static Field findField(Class<?> type, String fieldName) {
+        return FIELDS.computeIfAbsent(type, (t) -> new ConcurrentHashMap<>())
+                .computeIfAbsent(fieldName, (f) -> {
+                    Field field = PropertyUtils.findField(type, f);
+                    if (field == null) {
+                        field = PropertyUtils.findField(type, convertSnakeCaseToCamelCase(f));
+                    }
+                    return Optional.ofNullable(field);
+                }).orElse(null);
+    }
+
     private static Map<String, ComponentTemplate<?>> getComponentNameToDescription(
             CompositeTemplate compositeTemplate) {
         if (compositeTemplate.components == null) {
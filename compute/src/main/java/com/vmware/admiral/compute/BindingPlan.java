@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vmware.admiral.compute.content.Binding;
+import com.vmware.admiral.compute.content.Binding.ComponentBinding;
+
+/**
+ * The bindings of a composite template with their expressions parsed once: the source component
+ * and field path of every binding, and an index of the bindings by target component and field
+ * path, used to find out whether a source field is bound itself.
+ */
+class BindingPlan {
+
+    static class CompiledBinding {
+        final Binding binding;
+        final String sourceComponentName;
+        final List<String> sourceFieldPath;
+
+        CompiledBinding(Binding binding) {
+            this.binding = binding;
+            String expression = binding.placeholder.bindingExpression;
+            this.sourceComponentName = BindingUtils
+                    .extractComponentNameFromBindingExpression(expression);
+            this.sourceFieldPath = Collections.unmodifiableList(
+                    BindingUtils.convertToFieldPath(expression));
+        }
+    }
+
+    private final Map<String, List<CompiledBinding>> bindingsByComponent = new LinkedHashMap<>();
+    private final Map<String, Map<List<String>, CompiledBinding>> bindingsByTarget =
+            new HashMap<>();
+
+    BindingPlan(Collection<ComponentBinding> componentBindings) {
+        for (ComponentBinding componentBinding : componentBindings) {
+            List<CompiledBinding> compiled = new ArrayList<>(componentBinding.bindings.size());
+            Map<List<String>, CompiledBinding> byTarget = new HashMap<>();
+            for (Binding binding : componentBinding.bindings) {
+                CompiledBinding compiledBinding = new CompiledBinding(binding);
+                compiled.add(compiledBinding);
+                byTarget.putIfAbsent(binding.targetFieldPath, compiledBinding);
+            }
+            if (bindingsByComponent.put(componentBinding.componentName, compiled) != null) {
+                throw new IllegalStateException(
+                        "Duplicate bindings of component " + componentBinding.componentName);
+            }
+            bindingsByTarget.put(componentBinding.componentName, byTarget);
+        }
+    }
+
+    Collection<String> getComponentNames() {
+        return bindingsByComponent.keySet();
+    }
+
+    List<CompiledBinding> getBindings(String componentName) {
+        return bindingsByComponent.getOrDefault(componentName, Collections.emptyList());
+    }
+
+    /**
+     * Returns the binding of the given component which sets the given field, if any.
+     */
+    CompiledBinding findBinding(String componentName, List<String> targetFieldPath) {
+        Map<List<String>, CompiledBinding> byTarget = bindingsByTarget.get(componentName);
+        return byTarget == null ? null : byTarget.get(targetFieldPath);
+    }
+
+    /**
+     * Whether any of the design time bindings of the given component refers to the component
+     * itself, in which case the bindings of the component depend on each other.
+     */
+    boolean isSelfReferencing(String componentName) {
+        for (CompiledBinding compiled : getBindings(componentName)) {
+            if (!compiled.binding.isProvisioningTimeBinding()
+                    && componentName.equals(compiled.sourceComponentName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
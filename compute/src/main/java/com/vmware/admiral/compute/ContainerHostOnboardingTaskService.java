@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute;
+
+import static com.vmware.admiral.common.util.AssertUtil.assertNotEmpty;
+import static com.vmware.admiral.common.util.AssertUtil.assertNotNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.admiral.adapter.common.ContainerOperationType;
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.ConcurrencyLimiter;
+import com.vmware.admiral.compute.ContainerHostOnboardingTaskService.ContainerHostOnboardingTaskState.HostOnboardingStage;
+import com.vmware.admiral.compute.ContainerHostOnboardingTaskService.ContainerHostOnboardingTaskState.HostOnboardingStatus;
+import com.vmware.admiral.compute.ContainerHostOnboardingTaskService.ContainerHostOnboardingTaskState.SubStage;
+import com.vmware.admiral.compute.ContainerHostService.ContainerHostSpec;
+import com.vmware.admiral.service.common.AbstractTaskStatefulService;
+import com.vmware.admiral.service.common.TaskServiceDocument;
+import com.vmware.xenon.common.LocalizableValidationException;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocumentDescription.PropertyIndexingOption;
+import com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption;
+import com.vmware.xenon.common.TaskState;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Adds many container hosts at once. Each host is added by its own pipeline of requests to the
+ * {@link ContainerHostService}, which validates its connection and trust and stores it, and the
+ * pipelines of the different hosts run in parallel, up to a limit. There is no barrier between
+ * the hosts: a host is placement eligible as soon as its own pipeline has completed, regardless
+ * of the others. The progress of every host is tracked in the task state.
+ */
+public class ContainerHostOnboardingTaskService extends
+        AbstractTaskStatefulService<ContainerHostOnboardingTaskService.ContainerHostOnboardingTaskState, ContainerHostOnboardingTaskService.ContainerHostOnboardingTaskState.SubStage> {
+
+    public static final String DISPLAY_NAME = "Add Hosts";
+    public static final String FACTORY_LINK = ManagementUriParts.CONTAINER_HOST_ONBOARDING;
+
+    /**
+     * Maximum number of hosts being added at the same time by a task.
+     */
+    private static final int HOST_ONBOARDING_CONCURRENCY = Integer.getInteger(
+            "com.vmware.admiral.compute.host.onboarding.concurrency", 16);
+
+    private final ConcurrencyLimiter limiter = new ConcurrencyLimiter(
+            HOST_ONBOARDING_CONCURRENCY);
+
+    /**
+     * Maximum number of consecutive retries of a failed status update, and the delay between
+     * them.
+     */
+    private static final int STATUS_UPDATE_RETRIES = Integer.getInteger(
+            "com.vmware.admiral.compute.host.onboarding.status.update.retries", 10);
+    private static final long STATUS_UPDATE_RETRY_DELAY_MILLIS = Long.getLong(
+            "com.vmware.admiral.compute.host.onboarding.status.update.retry.delay.millis",
+            TimeUnit.SECONDS.toMillis(1));
+
+    // hosts whose pipeline has been started by this instance of the task
+    private final Set<String> startedHosts = new HashSet<>();
+
+    // host statuses not sent to the task yet, and whether a status update is in flight
+    private final Map<String, HostOnboardingStatus> pendingStatuses = new HashMap<>();
+    private boolean updatingStatuses;
+    private int failedStatusUpdates;
+
+    public ContainerHostOnboardingTaskService() {
+        super(ContainerHostOnboardingTaskState.class, SubStage.class, DISPLAY_NAME);
+        super.toggleOption(ServiceOption.PERSISTENCE, true);
+        super.toggleOption(ServiceOption.REPLICATION, true);
+        super.toggleOption(ServiceOption.OWNER_SELECTION, true);
+        super.toggleOption(ServiceOption.INSTRUMENTATION, true);
+    }
+
+    public static class ContainerHostOnboardingTaskState
+            extends TaskServiceDocument<ContainerHostOnboardingTaskState.SubStage> {
+
+        public static enum SubStage {
+            CREATED,
+            ONBOARDING,
+            COMPLETED,
+            ERROR
+        }
+
+        public static enum HostOnboardingStage {
+            PENDING,
+            ADDING,
+            ADDED,
+            FAILED;
+
+            public boolean isFinal() {
+                return this == ADDED || this == FAILED;
+            }
+        }
+
+        public static class HostOnboardingStatus {
+            public HostOnboardingStage stage;
+
+            /** Link to the added host. */
+            public String hostLink;
+
+            /** The reason the host was not added. */
+            public String failureMessage;
+        }
+
+        @Documentation(description = "The hosts to add, with unique addresses.")
+        @PropertyOptions(usage = { PropertyUsageOption.SERVICE_USE,
+                PropertyUsageOption.SINGLE_ASSIGNMENT }, indexing = {
+                        PropertyIndexingOption.STORE_ONLY })
+        public List<ContainerHostSpec> hostSpecs;
+
+        @Documentation(description = "The onboarding status of the hosts, by address.")
+        @PropertyOptions(usage = { PropertyUsageOption.SERVICE_USE }, indexing = {
+                PropertyIndexingOption.STORE_ONLY })
+        public Map<String, HostOnboardingStatus> hostStatuses;
+    }
+
+    @Override
+    protected void validateStateOnStart(ContainerHostOnboardingTaskState state)
+            throws IllegalArgumentException {
+        assertNotEmpty(state.hostSpecs, "hostSpecs");
+
+        state.hostStatuses = new HashMap<>();
+        for (ContainerHostSpec hostSpec : state.hostSpecs) {
+            assertNotNull(hostSpec.hostState, "hostSpecs.hostState");
+            String address = hostSpec.hostState.address;
+            assertNotEmpty(address, "hostSpecs.hostState.address");
+
+            HostOnboardingStatus status = new HostOnboardingStatus();
+            status.stage = HostOnboardingStage.PENDING;
+            if (state.hostStatuses.put(address, status) != null) {
+                throw new LocalizableValidationException(
+                        String.format("Duplicate host address: %s", address),
+                        "compute.host.onboarding.duplicate.address", address);
+            }
+        }
+    }
+
+    @Override
+    protected void customStateValidationAndMerge(Operation patch,
+            ContainerHostOnboardingTaskState patchBody,
+            ContainerHostOnboardingTaskState currentState) {
+        if (patchBody.hostStatuses == null) {
+            return;
+        }
+        if (currentState.hostStatuses == null) {
+            currentState.hostStatuses = new HashMap<>();
+        }
+        patchBody.hostStatuses.forEach((address, status) -> {
+            HostOnboardingStatus current = currentState.hostStatuses.get(address);
+            // statuses of a host never go back, e.g. when updates are reordered
+            if (current == null || current.stage == null
+                    || current.stage.ordinal() < status.stage.ordinal()) {
+                currentState.hostStatuses.put(address, status);
+            }
+        });
+    }
+
+    @Override
+    protected void handleStartedStagePatch(ContainerHostOnboardingTaskState state) {
+        switch (state.taskSubStage) {
+        case CREATED:
+            proceedTo(SubStage.ONBOARDING);
+            break;
+        case ONBOARDING:
+            onboardHosts(state);
+            break;
+        case COMPLETED:
+            complete();
+            break;
+        case ERROR:
+            completeWithError();
+            break;
+        default:
+            break;
+        }
+    }
+
+    @Override
+    protected TaskStatusState fromTask(TaskServiceDocument<SubStage> state) {
+        TaskStatusState statusTask = super.fromTask(state);
+        statusTask.name = ContainerOperationType.extractDisplayName(DISPLAY_NAME);
+        Map<String, HostOnboardingStatus> hostStatuses =
+                ((ContainerHostOnboardingTaskState) state).hostStatuses;
+        if (hostStatuses != null) {
+            hostStatuses.values().forEach(status -> {
+                if (status.hostLink != null) {
+                    if (statusTask.resourceLinks == null) {
+                        statusTask.resourceLinks = new HashSet<>();
+                    }
+                    statusTask.resourceLinks.add(status.hostLink);
+                }
+            });
+        }
+        return statusTask;
+    }
+
+    /**
+     * Starts the pipelines of the hosts which are not being added yet, or completes the task if
+     * all hosts are done. Called again on every status update of the hosts.
+     */
+    private void onboardHosts(ContainerHostOnboardingTaskState state) {
+        int failed = 0;
+        boolean done = true;
+        for (ContainerHostSpec hostSpec : state.hostSpecs) {
+            String address = hostSpec.hostState.address;
+            HostOnboardingStatus status = state.hostStatuses.get(address);
+            if (status != null && status.stage.isFinal()) {
+                if (status.stage == HostOnboardingStage.FAILED) {
+                    failed++;
+                }
+                continue;
+            }
+            done = false;
+
+            synchronized (startedHosts) {
+                // the pipeline of a host is restarted only if it was lost, e.g. the task owner
+                // has changed
+                if (!startedHosts.add(address)) {
+                    continue;
+                }
+            }
+            limiter.execute(() -> addHost(address, hostSpec));
+        }
+
+        if (!done) {
+            return;
+        }
+        if (failed == 0) {
+            proceedTo(SubStage.COMPLETED);
+        } else {
+            failTask(String.format("Failed to add %d of %d hosts", failed,
+                    state.hostSpecs.size()), null);
+        }
+    }
+
+    private void addHost(String address, ContainerHostSpec hostSpec) {
+        updateStatus(address, HostOnboardingStage.ADDING, null, null);
+
+        sendRequest(Operation.createPut(this, ContainerHostService.SELF_LINK)
+                .setBody(hostSpec)
+                .setCompletion((o, e) -> {
+                    limiter.release();
+                    if (e != null) {
+                        logWarning("Failed to add host %s: %s", address, Utils.toString(e));
+                        updateStatus(address, HostOnboardingStage.FAILED, null, e.getMessage());
+                        return;
+                    }
+                    String hostLink = o.getResponseHeader(Operation.LOCATION_HEADER);
+                    if (hostLink == null) {
+                        // the certificate of the host has to be accepted first
+                        updateStatus(address, HostOnboardingStage.FAILED, null,
+                                "Certificate of the host is not trusted");
+                        return;
+                    }
+                    updateStatus(address, HostOnboardingStage.ADDED, hostLink, null);
+                }));
+    }
+
+    /**
+     * Records the new status of a host. Status updates are coalesced: while an update is in
+     * flight, new statuses are collected and sent together once it completes.
+     */
+    private void updateStatus(String address, HostOnboardingStage stage, String hostLink,
+            String failureMessage) {
+        HostOnboardingStatus status = new HostOnboardingStatus();
+        status.stage = stage;
+        status.hostLink = hostLink;
+        status.failureMessage = failureMessage;
+        synchronized (pendingStatuses) {
+            pendingStatuses.put(address, status);
+        }
+        sendStatuses();
+    }
+
+    private void sendStatuses() {
+        ContainerHostOnboardingTaskState body = new ContainerHostOnboardingTaskState();
+        synchronized (pendingStatuses) {
+            if (updatingStatuses || pendingStatuses.isEmpty()) {
+                return;
+            }
+            updatingStatuses = true;
+            body.hostStatuses = new HashMap<>(pendingStatuses);
+            pendingStatuses.clear();
+        }
+        body.taskInfo = new TaskState();
+        body.taskInfo.stage = TaskStage.STARTED;
+        body.taskSubStage = SubStage.ONBOARDING;
+
+        sendRequest(Operation.createPatch(getUri())
+                .setBody(body)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        retryStatuses(body.hostStatuses, e);
+                        return;
+                    }
+                    synchronized (pendingStatuses) {
+                        updatingStatuses = false;
+                        failedStatusUpdates = 0;
+                    }
+                    sendStatuses();
+                }));
+    }
+
+    /**
+     * Puts the statuses of a failed update back to the pending ones, unless newer statuses of
+     * the same hosts have been recorded meanwhile, and sends them again after a delay.
+     */
+    private void retryStatuses(Map<String, HostOnboardingStatus> statuses, Throwable e) {
+        boolean retry;
+        synchronized (pendingStatuses) {
+            retry = ++failedStatusUpdates <= STATUS_UPDATE_RETRIES
+                    && getProcessingStage() != ProcessingStage.STOPPED;
+            if (retry) {
+                statuses.forEach(pendingStatuses::putIfAbsent);
+            } else {
+                updatingStatuses = false;
+            }
+        }
+        if (!retry) {
+            logSevere("Failed to update the status of hosts %s: %s", statuses.keySet(),
+                    Utils.toString(e));
+            return;
+        }
+
+        logWarning("Failed to update the status of hosts %s, retrying: %s", statuses.keySet(),
+                Utils.toString(e));
+        getHost().schedule(() -> {
+            synchronized (pendingStatuses) {
+                updatingStatuses = false;
+            }
+            sendStatuses();
+        }, STATUS_UPDATE_RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.admiral.common.util.HostScopedInstances;
+import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService.ElasticPlacementZoneConfigurationState;
+import com.vmware.admiral.compute.ElasticPlacementZoneService.ElasticPlacementZoneState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask.Query;
+
+/**
+ * Node-wide cache of the elastic placement zone (placement policy, tags to match, etc.) of
+ * resource pools, so that placements do not look it up for every host selection. Concurrent
+ * lookups for the same resource pool share a single request. The cache is invalidated on any
+ * {@link ElasticPlacementZoneState} change seen by the node, and entries expire after a while in
+ * case a change notification is missed.
+ */
+public class ElasticPlacementZonePolicyCache {
+
+    private static final long ENTRY_EXPIRATION_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.epz.policy.cache.expiration.micros",
+            TimeUnit.MINUTES.toMicros(5));
+
+    private static final String EPZ_QUERY_ID = "epz-policy-cache";
+
+    private static class CacheEntry {
+        final DeferredResult<ElasticPlacementZoneState> epzState;
+        final long expirationMicros;
+
+        CacheEntry(DeferredResult<ElasticPlacementZoneState> epzState, long expirationMicros) {
+            this.epzState = epzState;
+            this.expirationMicros = expirationMicros;
+        }
+    }
+
+    private final ServiceHost host;
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    public static ElasticPlacementZonePolicyCache getInstance(ServiceHost host) {
+        return HostScopedInstances.getOrCreate(host, ElasticPlacementZonePolicyCache.class,
+                ElasticPlacementZonePolicyCache::new);
+    }
+
+    /**
+     * Invalidates the cached elastic placement zone of the given resource pool on the host, if
+     * there is any.
+     */
+    public static void invalidate(ServiceHost host, String resourcePoolLink) {
+        ElasticPlacementZonePolicyCache instance = HostScopedInstances.get(host,
+                ElasticPlacementZonePolicyCache.class);
+        if (instance != null && resourcePoolLink != null) {
+            instance.cache.remove(resourcePoolLink);
+        }
+    }
+
+    private ElasticPlacementZonePolicyCache(ServiceHost host) {
+        this.host = host;
+        CommonContinuousQueries.subscribeTo(host, EPZ_QUERY_ID,
+                Query.Builder.create().addKindFieldClause(ElasticPlacementZoneState.class).build(),
+                this::onElasticPlacementZoneChange);
+    }
+
+    /**
+     * Returns the elastic placement zone of the given resource pool or <code>null</code> if the
+     * resource pool is not elastic.
+     */
+    public DeferredResult<ElasticPlacementZoneState> getElasticPlacementZone(
+            String resourcePoolLink) {
+        long now = Utils.getNowMicrosUtc();
+        CacheEntry newEntry = new CacheEntry(new DeferredResult<>(),
+                now + ENTRY_EXPIRATION_MICROS);
+        CacheEntry entry = cache.compute(resourcePoolLink,
+                (k, v) -> v != null && v.expirationMicros > now ? v : newEntry);
+        if (entry == newEntry) {
+            fetchElasticPlacementZone(resourcePoolLink, newEntry);
+        }
+        return entry.epzState;
+    }
+
+    private void fetchElasticPlacementZone(String resourcePoolLink, CacheEntry entry) {
+        host.sendRequest(Operation
+                .createGet(UriUtils.buildUri(host, UriUtils.buildUriPath(
+                        ElasticPlacementZoneConfigurationService.SELF_LINK, resourcePoolLink)))
+                .setReferer(host.getUri())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        // do not cache failures
+                        cache.remove(resourcePoolLink, entry);
+                        entry.epzState.fail(e);
+                        return;
+                    }
+                    ElasticPlacementZoneConfigurationState epz = o
+                            .getBody(ElasticPlacementZoneConfigurationState.class);
+                    entry.epzState.complete(epz != null ? epz.epzState : null);
+                }));
+    }
+
+    private void onElasticPlacementZoneChange(Operation op) {
+        op.complete();
+        host.log(Level.FINE, "Elastic placement zone changed, invalidating policy cache");
+        cache.clear();
+    }
+}
@@ -21,7 +21,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
 
+import com.esotericsoftware.kryo.serializers.VersionFieldSerializer.Since;
+
 import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.serialization.ReleaseConstants;
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.service.common.MultiTenantDocument;
 import com.vmware.photon.controller.model.ComputeProperties;
@@ -89,6 +92,13 @@ public class ElasticPlacementZoneService extends StatefulService {
         @UsageOption(option = PropertyUsageOption.LINKS)
         @UsageOption(option = PropertyUsageOption.AUTO_MERGE_IF_NOT_NULL)
         public Set<String> tagLinksToMatch;
+
+        @Since(ReleaseConstants.RELEASE_VERSION_1_2_0)
+        @Documentation(description = "Minimal memory in bytes a host must have available in order"
+                + " to be selected by the BINPACK placement policy.")
+        @UsageOption(option = PropertyUsageOption.OPTIONAL)
+        @UsageOption(option = PropertyUsageOption.AUTO_MERGE_IF_NOT_NULL)
+        public Long binpackMinimalAvailableMemoryInBytes;
     }
 
     public ElasticPlacementZoneService() {
@@ -112,10 +122,13 @@ public class ElasticPlacementZoneService extends StatefulService {
     @Override
     public void handleDelete(Operation delete) {
         // revert the underlying resource pool to a non-elastic one
-        removeResourcePoolElasticity(getState(delete), (t) -> {
+        ElasticPlacementZoneState currentState = getState(delete);
+        removeResourcePoolElasticity(currentState, (t) -> {
             if (t != null) {
                 delete.fail(t);
             } else {
+                ElasticPlacementZonePolicyCache.invalidate(getHost(),
+                        currentState.resourcePoolLink);
                 super.handleDelete(delete);
             }
         });
@@ -144,6 +157,8 @@ public class ElasticPlacementZoneService extends StatefulService {
                 if (t != null) {
                     patch.fail(t);
                 } else {
+                    ElasticPlacementZonePolicyCache.invalidate(getHost(),
+                            currentState.resourcePoolLink);
                     patch.complete();
                 }
             });
@@ -160,6 +175,7 @@ public class ElasticPlacementZoneService extends StatefulService {
                     op.fail(t);
                 } else {
                     setState(op, state);
+                    ElasticPlacementZonePolicyCache.invalidate(getHost(), state.resourcePoolLink);
                     op.complete();
                 }
             });
@@ -71,7 +71,8 @@ public class EpzComputeEnumerationTaskService extends
             "com.vmware.admiral.service.EpzComputeEnumerationTaskService.log.level",
             Level.FINE.getName()));
 
-    private static final int COMPUTE_PAGE_SIZE = 16;
+    private static final int COMPUTE_PAGE_SIZE = Integer.getInteger(
+            "com.vmware.admiral.compute.epz.compute.page.size", 64);
 
     /**
      * Task state associated with {@code EpzComputeEnumerationTaskService}.
@@ -13,6 +13,10 @@ package com.vmware.admiral.compute;
 
 import static java.util.concurrent.TimeUnit.MINUTES;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
@@ -26,7 +30,8 @@ import com.vmware.xenon.services.common.QueryTask;
 
 /**
  * A stateless service that periodically triggers capacity update on placements and
- * placement zones based on the computes participating in them.
+ * placement zones based on the computes participating in them. Compute changes only trigger the
+ * update of the placement zones of the changed computes.
  */
 public class PlacementCapacityUpdatePeriodicService extends StatelessService {
 
@@ -41,6 +46,7 @@ public class PlacementCapacityUpdatePeriodicService extends StatelessService {
             "dcp.management.placement.compute.periodic.pause.seconds", 10);
     private final AtomicBoolean paused = new AtomicBoolean();
     private final AtomicBoolean invalidated = new AtomicBoolean();
+    private final Set<String> changedComputeLinks = ConcurrentHashMap.newKeySet();
 
     public PlacementCapacityUpdatePeriodicService() {
         super.toggleOption(ServiceOption.INSTRUMENTATION, true);
@@ -51,7 +57,7 @@ public class PlacementCapacityUpdatePeriodicService extends StatelessService {
     @Override
     public void handlePeriodicMaintenance(Operation post) {
         post.complete();
-        doTrigger(() -> "Periodic refresh", false);
+        doTrigger(() -> "Periodic refresh", false, true);
     }
 
     @Override
@@ -67,12 +73,14 @@ public class PlacementCapacityUpdatePeriodicService extends StatelessService {
         QueryTask queryTask = op.getBody(QueryTask.class);
         if (queryTask.results != null && queryTask.results.documentLinks != null
                 && !queryTask.results.documentLinks.isEmpty()) {
+            changedComputeLinks.addAll(queryTask.results.documentLinks);
             doTrigger(() -> String.format("Compute change: %s",
-                    String.join(", ", queryTask.results.documentLinks)), true);
+                    String.join(", ", queryTask.results.documentLinks)), true, false);
         }
     }
 
-    private void doTrigger(Supplier<String> logSupplier, boolean postponeIfPaused) {
+    private void doTrigger(Supplier<String> logSupplier, boolean postponeIfPaused,
+            boolean allResourcePools) {
         // do nothing if refresh is currently paused
         if (!this.paused.compareAndSet(false, true)) {
             String s = logSupplier.get() + " %s";
@@ -87,7 +95,13 @@ public class PlacementCapacityUpdatePeriodicService extends StatelessService {
 
         // refresh
         logInfo(logSupplier);
-        PlacementCapacityUpdateTaskService.triggerForAllResourcePools(this);
+        Collection<String> computeLinks = new ArrayList<>(this.changedComputeLinks);
+        this.changedComputeLinks.removeAll(computeLinks);
+        if (allResourcePools) {
+            PlacementCapacityUpdateTaskService.triggerForAllResourcePools(this);
+        } else if (!computeLinks.isEmpty()) {
+            PlacementCapacityUpdateTaskService.triggerForComputes(this, computeLinks);
+        }
 
         // re-enable after the pause
         this.getHost().schedule(() -> {
@@ -95,7 +109,7 @@ public class PlacementCapacityUpdatePeriodicService extends StatelessService {
             this.paused.set(false);
 
             if (isRefreshRequired) {
-                doTrigger(() -> "Postponed refresh", false);
+                doTrigger(() -> "Postponed refresh", false, false);
             }
         }, PAUSE_SECONDS, TimeUnit.SECONDS);
     }
@@ -25,6 +25,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -43,6 +45,7 @@ import com.vmware.photon.controller.model.resources.ComputeDescriptionService.Co
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription.ComputeType;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.photon.controller.model.tasks.helpers.ResourcePoolQueryHelper;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.Service;
@@ -72,7 +75,14 @@ public class PlacementCapacityUpdateTaskService extends
             "com.vmware.admiral.service.EpzComputeEnumerationTaskService.log.level",
             Level.FINE.getName()));
 
-    private static final int COMPUTE_PAGE_SIZE = 100;
+    private static final int COMPUTE_PAGE_SIZE = Integer.getInteger(
+            "com.vmware.admiral.compute.placement.capacity.compute.page.size", 256);
+
+    // delay of the single retry scheduled for triggers arriving while an update is running
+    private static final long PENDING_TRIGGER_DELAY_SECONDS = Long.getLong(
+            "com.vmware.admiral.compute.placement.capacity.pending.trigger.delay.seconds", 10);
+
+    private static final Set<String> PENDING_TRIGGERS = ConcurrentHashMap.newKeySet();
 
     /**
      * Task parameters and internal state.
@@ -148,6 +158,7 @@ public class PlacementCapacityUpdateTaskService extends
                     if (o.getStatusCode() == Operation.STATUS_CODE_NOT_MODIFIED) {
                         sender.getHost().log(Level.FINE,
                                 "Capacity update task already running for " + resourcePoolLink);
+                        schedulePendingTrigger(sender, resourcePoolLink);
                         return;
                     }
 
@@ -163,6 +174,49 @@ public class PlacementCapacityUpdateTaskService extends
                 }).sendWith(sender);
     }
 
+    /**
+     * The running task may have missed the change that caused the trigger, so the update is
+     * triggered once more later. All triggers arriving meanwhile share the same retry.
+     */
+    private static void schedulePendingTrigger(Service sender, String resourcePoolLink) {
+        String key = sender.getHost().getId() + resourcePoolLink;
+        if (!PENDING_TRIGGERS.add(key)) {
+            return;
+        }
+        sender.getHost().schedule(() -> {
+            PENDING_TRIGGERS.remove(key);
+            triggerForResourcePool(sender, resourcePoolLink);
+        }, PENDING_TRIGGER_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Triggers a capacity update task for each resource pool the given computes participate in.
+     * Falls back to all resource pools if some of the computes are not found, e.g. because they
+     * were removed.
+     */
+    public static void triggerForComputes(Service sender, Collection<String> computeLinks) {
+        ResourcePoolQueryHelper rpHelper = ResourcePoolQueryHelper.createForComputes(
+                sender.getHost(), computeLinks);
+        rpHelper.query(qr -> {
+            if (qr.error != null) {
+                sender.getHost().log(Level.WARNING,
+                        "Failed to retrieve resource pools of computes %s: %s", computeLinks,
+                        qr.error.getMessage());
+                return;
+            }
+
+            if (!qr.rpLinksByComputeLink.keySet().containsAll(computeLinks)) {
+                triggerForAllResourcePools(sender);
+                return;
+            }
+
+            qr.rpLinksByComputeLink.values().stream()
+                    .flatMap(Collection::stream)
+                    .distinct()
+                    .forEach(rpLink -> triggerForResourcePool(sender, rpLink));
+        });
+    }
+
     /**
      * Triggers a capacity update task for each resource pool. Makes sure no multiple tasks are
      * run in parallel for the same resource pool.
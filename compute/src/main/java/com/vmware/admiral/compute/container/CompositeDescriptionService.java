@@ -159,6 +159,7 @@ public class CompositeDescriptionService extends StatefulService {
             CompositeDescription state = startPost.getBody(CompositeDescription.class);
             logFine("Initial name is %s", state.name);
             validateStateOnStart(state);
+            TemplateSearchIndex.update(getHost(), getSelfLink(), state);
             startPost.complete();
         } catch (Throwable e) {
             logSevere(e);
@@ -208,6 +209,7 @@ public class CompositeDescriptionService extends StatefulService {
             AssertUtil.assertTrue(putBody.getClass().equals(CompositeDescription.class),
                     "State should be instance of CompositeDescription, not of any subclass.");
             this.setState(put, putBody);
+            TemplateSearchIndex.update(getHost(), getSelfLink(), putBody);
             put.setBody(putBody).complete();
         } catch (Throwable e) {
             put.fail(e);
@@ -251,11 +253,19 @@ public class CompositeDescriptionService extends StatefulService {
         if (currentSignature.equals(newSignature)) {
             currentState = null;
             patch.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
+        } else {
+            TemplateSearchIndex.update(getHost(), getSelfLink(), currentState);
         }
 
         patch.setBody(currentState).complete();
     }
 
+    @Override
+    public void handleDelete(Operation delete) {
+        TemplateSearchIndex.remove(getHost(), getSelfLink());
+        super.handleDelete(delete);
+    }
+
     @Override
     public ServiceDocument getDocumentTemplate() {
         CompositeDescription template = (CompositeDescription) super.getDocumentTemplate();
@@ -496,6 +496,7 @@ public class ContainerDescriptionService extends StatefulService {
             ContainerDescription state = startPost.getBody(ContainerDescription.class);
             logFine("Initial name is %s", state.name);
             validateState(state);
+            TemplateSearchIndex.update(getHost(), getSelfLink(), state);
             startPost.complete();
         } catch (Throwable e) {
             logSevere(e);
@@ -604,6 +605,7 @@ public class ContainerDescriptionService extends StatefulService {
         try {
             validateState(putBody);
             this.setState(put, putBody);
+            TemplateSearchIndex.update(getHost(), getSelfLink(), putBody);
             put.setBody(putBody).complete();
         } catch (Throwable e) {
             put.fail(e);
@@ -639,6 +641,8 @@ public class ContainerDescriptionService extends StatefulService {
         if (currentSignature.equals(newSignature)) {
             currentState = null;
             patch.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
+        } else {
+            TemplateSearchIndex.update(getHost(), getSelfLink(), currentState);
         }
 
         patch.setBody(currentState).complete();
@@ -646,6 +650,7 @@ public class ContainerDescriptionService extends StatefulService {
 
     @Override
     public void handleDelete(Operation delete) {
+        TemplateSearchIndex.remove(getHost(), getSelfLink());
 
         if (delete.getBodyRaw() == null) {
             super.handleDelete(delete);
@@ -19,6 +19,7 @@ import java.net.ConnectException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -43,7 +44,6 @@ import com.vmware.admiral.adapter.common.ContainerHostOperationType;
 import com.vmware.admiral.common.DeploymentProfileConfig;
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.serialization.ReleaseConstants;
-import com.vmware.admiral.common.util.PropertyUtils;
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.compute.ComputeConstants;
@@ -55,6 +55,7 @@ import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupR
 import com.vmware.admiral.compute.container.HostContainerListDataCollection.ContainerListCallback;
 import com.vmware.admiral.compute.container.HostNetworkListDataCollection.NetworkListCallback;
 import com.vmware.admiral.compute.container.HostVolumeListDataCollection.VolumeListCallback;
+import com.vmware.admiral.compute.container.ResourcePoolCapacityAggregator.HostCapacity;
 import com.vmware.admiral.compute.kubernetes.KubernetesEntityDataCollection;
 import com.vmware.admiral.compute.kubernetes.KubernetesEntityDataCollection.EntityListCallback;
 import com.vmware.admiral.log.EventLogService;
@@ -112,6 +113,14 @@ public class ContainerHostDataCollectionService extends StatefulService {
     public static final String RESOURCE_POOL_CPU_USAGE_CUSTOM_PROP = "__cpuUsage";
     public static final String RESOURCE_POOL_AVAILABLE_MEMORY_CUSTOM_PROP = "__availableMemory";
 
+    private static final long CAPACITY_RECONCILIATION_INTERVAL_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.capacity.reconciliation.interval.micros",
+            TimeUnit.MINUTES.toMicros(30));
+
+    private final ResourcePoolCapacityAggregator capacityAggregator =
+            new ResourcePoolCapacityAggregator(CAPACITY_RECONCILIATION_INTERVAL_MICROS,
+                    this::publishResourcePoolCapacity);
+
     protected volatile AtomicBoolean scheduled = new AtomicBoolean(false);
     protected long maintenanceIntervalInitial = TimeUnit.SECONDS.toMicros(90);
 
@@ -250,9 +259,7 @@ public class ContainerHostDataCollectionService extends StatefulService {
                                 }
                             } else {
                                 handleHostAvailable(computeState);
-                                // TODO multiple operations in parallel for the same RP;
-                                // needs to be reworked
-                                updateResourcePool(computeState,
+                                updateResourcePools(computeState,
                                         qr.rpLinksByComputeLink.get(computeState.documentSelfLink),
                                         body.remove);
                                 if (ContainerHostUtil.isKubernetesHost(computeState)) {
@@ -268,9 +275,7 @@ public class ContainerHostDataCollectionService extends StatefulService {
                             }
                         }, null);
                     } else {
-                        // TODO multiple operations in parallel for the same RP;
-                        // needs to be reworked
-                        updateResourcePool(computeState,
+                        updateResourcePools(computeState,
                                 qr.rpLinksByComputeLink.get(computeState.documentSelfLink),
                                 body.remove);
                     }
@@ -425,64 +430,78 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 .setCompletion(cc));
     }
 
-    private void updateResourcePool(ComputeState computeState, Collection<String> rpLinks,
+    private void updateResourcePools(ComputeState computeState, Collection<String> rpLinks,
             boolean remove) {
-        Long totalMemory = PropertyUtils.getPropertyLong(computeState.customProperties,
-                ContainerHostService.DOCKER_HOST_TOTAL_MEMORY_PROP_NAME).orElse(Long.MAX_VALUE);
-
-        Long hostAvailableMemory = PropertyUtils.getPropertyLong(computeState.customProperties,
-                ContainerHostService.DOCKER_HOST_AVAILABLE_MEMORY_PROP_NAME)
-                .orElse(totalMemory);
+        if (rpLinks == null) {
+            return;
+        }
 
-        CompletionHandler cc = (o1, ex1) -> {
-            if (ex1 != null) {
-                logSevere(ex1);
-                return;
+        // update all resource pools this compute is part of
+        HostCapacity capacity = remove ? null : HostCapacity.of(computeState);
+        for (String rpLink : rpLinks) {
+            Runnable update = () -> capacityAggregator.updateHost(rpLink,
+                    computeState.documentSelfLink, capacity);
+            if (!capacityAggregator.updateHost(rpLink, computeState.documentSelfLink, capacity)) {
+                // the totals of the pool are not known yet, apply the update once they are
+                reconcileResourcePool(rpLink, update);
             }
-            ResourcePoolService.ResourcePoolState resourcePoolState = o1
-                    .getBody(ResourcePoolService.ResourcePoolState.class);
+        }
+    }
 
-            int coef = remove ? -1 : 1;
+    private void reconcileResourcePool(String rpLink, Runnable callback) {
+        if (!capacityAggregator.awaitReconciliation(rpLink, callback)) {
+            return;
+        }
 
-            resourcePoolState.minMemoryBytes = 0L;
-            if (resourcePoolState.maxMemoryBytes == Long.MAX_VALUE
-                    || totalMemory.equals(Long.MAX_VALUE)) {
-                resourcePoolState.maxMemoryBytes = Long.MAX_VALUE;
-            } else {
-                resourcePoolState.maxMemoryBytes += totalMemory * coef;
-            }
+        ResourcePoolQueryHelper rpHelper = ResourcePoolQueryHelper.createForResourcePools(
+                getHost(), Collections.singletonList(rpLink));
+        rpHelper.setExpandComputes(true);
+        rpHelper.setAdditionalQueryClausesProvider(qb -> {
+            qb.addCompositeFieldClause(ComputeState.FIELD_NAME_CUSTOM_PROPERTIES,
+                    ComputeConstants.COMPUTE_CONTAINER_HOST_PROP_NAME, "true");
+        });
 
-            Long resourcePoolAvailableMemory = resourcePoolState.customProperties != null
-                    ? PropertyUtils
-                            .getPropertyLong(resourcePoolState.customProperties,
-                                    RESOURCE_POOL_AVAILABLE_MEMORY_CUSTOM_PROP)
-                            .orElse(null)
-                    : null;
-            if (hostAvailableMemory != Long.MAX_VALUE
-                    && resourcePoolAvailableMemory != null
-                    && resourcePoolAvailableMemory != Long.MAX_VALUE) {
-                resourcePoolAvailableMemory += hostAvailableMemory * coef;
-                resourcePoolState.customProperties
-                        .put(RESOURCE_POOL_AVAILABLE_MEMORY_CUSTOM_PROP,
-                                Long.toString(resourcePoolAvailableMemory));
+        rpHelper.query(qr -> {
+            if (qr.error != null) {
+                logWarning("Unable to retrieve the hosts of resource pool %s: %s", rpLink,
+                        Utils.toString(qr.error));
+                capacityAggregator.cancelReconciliation(rpLink);
+                return;
             }
+            ResourcePoolData rpData = qr.resourcesPools.get(rpLink);
+            capacityAggregator.reconcile(rpLink, rpData == null ? Collections.emptyMap()
+                    : getHostCapacities(rpData, qr.computesByLink),
+                    Utils.getSystemNowMicrosUtc());
+        });
+    }
 
-            sendRequest(Operation.createPut(this, resourcePoolState.documentSelfLink)
-                    .setBody(resourcePoolState).setCompletion((op, e) -> {
-                        if (e != null) {
-                            logSevere("Unable to update the resource pool with link %s : %s",
-                                    resourcePoolState.documentSelfLink, Utils.toString(e));
-                        }
-                        updatePlacements(resourcePoolState);
-                    }));
-        };
-
-        // update all resource pools this compute is part of
-        if (rpLinks != null) {
-            for (String rpLink : rpLinks) {
-                sendRequest(Operation.createGet(this, rpLink).setCompletion(cc));
+    private static Map<String, HostCapacity> getHostCapacities(ResourcePoolData rpData,
+            Map<String, ComputeState> computesByLink) {
+        Map<String, HostCapacity> capacities = new HashMap<>();
+        for (String computeLink : rpData.computeStateLinks) {
+            ComputeState computeState = computesByLink.get(computeLink);
+            if (computeState != null) {
+                capacities.put(computeLink, HostCapacity.of(computeState));
             }
         }
+        return capacities;
+    }
+
+    private void publishResourcePoolCapacity(ResourcePoolState rpPatchState, Runnable done) {
+        if (getHost().isStopping()) {
+            done.run();
+            return;
+        }
+        // TODO this will not work in a multi-node setting, with consensus. There is a race.
+        sendRequest(Operation.createPatch(this, rpPatchState.documentSelfLink)
+                .setBodyNoCloning(rpPatchState).setCompletion((op, e) -> {
+                    done.run();
+                    if (e != null) {
+                        logSevere("Unable to update the resource pool with link %s : %s",
+                                rpPatchState.documentSelfLink, Utils.toString(e));
+                    }
+                    updatePlacements(rpPatchState);
+                }));
     }
 
     /**
@@ -568,75 +587,6 @@ public class ContainerHostDataCollectionService extends StatefulService {
         return tenantAndGroupLinks != null ? String.join("/", tenantAndGroupLinks) : "";
     }
 
-    private void updateResourcePool(ResourcePoolState resourcePoolState,
-            Collection<ComputeState> computeStates) {
-        if (getHost().isStopping()) {
-            return;
-        }
-        Long memorySum = 0L;
-        double totalCpuUsage = 0.0;
-        long totalAvailableMemory = 0L;
-        long totalNumCores = 0;
-        for (ComputeState computeState : computeStates) {
-
-            Long hostTotalMemory = PropertyUtils.getPropertyLong(computeState.customProperties,
-                    ContainerHostService.DOCKER_HOST_TOTAL_MEMORY_PROP_NAME).orElse(Long.MAX_VALUE);
-
-            if (memorySum != Long.MAX_VALUE) {
-                memorySum += hostTotalMemory;
-            }
-
-            Long numCores = PropertyUtils.getPropertyLong(computeState.customProperties,
-                    ContainerHostService.DOCKER_HOST_NUM_CORES_PROP_NAME).orElse(1L);
-
-            Double hostCpuUsage = PropertyUtils.getPropertyDouble(computeState.customProperties,
-                    ContainerHostService.DOCKER_HOST_CPU_USAGE_PCT_PROP_NAME).orElse(0.0);
-
-            totalCpuUsage += numCores * hostCpuUsage;
-            totalNumCores += numCores;
-
-            // get the available memory, if missing => use the total memory, if missing => 0
-            Long availableMemory = PropertyUtils
-                    .getPropertyLong(computeState.customProperties,
-                            ContainerHostService.DOCKER_HOST_AVAILABLE_MEMORY_PROP_NAME)
-                    .orElse(PropertyUtils
-                            .getPropertyLong(computeState.customProperties,
-                                    ContainerHostService.DOCKER_HOST_TOTAL_MEMORY_PROP_NAME)
-                            .orElse(0L));
-
-            totalAvailableMemory += availableMemory;
-        }
-
-        // the aggregateCpuUsage is calculated:
-        // (H1.cpuUsage * H1.numCores + ... + Hn.cpuUsage * Hn.numCores) / (H1.numCores + ... +
-        // Hn.numCores)
-        double aggregateCpuUsage = totalNumCores == 0 ? 0 : totalCpuUsage / totalNumCores;
-        long resourcePoolAvailableMemory = totalAvailableMemory;
-
-        final Long totalMemory = memorySum;
-
-        // TODO this will not work in a multi-node setting, with consensus. There is a race.
-        ResourcePoolState rpPatchState = new ResourcePoolState();
-        rpPatchState.documentSelfLink = resourcePoolState.documentSelfLink;
-        rpPatchState.customProperties = new HashMap<>();
-
-        rpPatchState.customProperties
-                .put(RESOURCE_POOL_CPU_USAGE_CUSTOM_PROP, Double.toString(aggregateCpuUsage));
-        rpPatchState.customProperties
-                .put(RESOURCE_POOL_AVAILABLE_MEMORY_CUSTOM_PROP,
-                        Long.toString(resourcePoolAvailableMemory));
-        rpPatchState.maxMemoryBytes = totalMemory;
-        rpPatchState.minMemoryBytes = 0L;
-        sendRequest(Operation.createPatch(this, rpPatchState.documentSelfLink)
-                .setBodyNoCloning(rpPatchState).setCompletion((op, e) -> {
-                    if (e != null) {
-                        logSevere("Unable to update the resource pool with link %s : %s",
-                                rpPatchState.documentSelfLink, Utils.toString(e));
-                    }
-                    updatePlacements(rpPatchState);
-                }));
-    }
-
     private void updateHostStats(ComputeState computeHost) {
         AdapterRequest request = new AdapterRequest();
         request.operationTypeId = ContainerHostOperationType.STATS.id;
@@ -754,10 +704,19 @@ public class ContainerHostDataCollectionService extends StatefulService {
                         updateContainerHosts(list);
                     }, counter.getAndIncrement() * DC_DELAY_SECONDS, TimeUnit.SECONDS));
 
+            // recompute the pool totals from all hosts only once in a while, otherwise just
+            // apply the changes of the hosts, including the hosts removed from the pool
+            long now = Utils.getSystemNowMicrosUtc();
+            capacityAggregator.retainResourcePools(qr.resourcesPools.keySet());
             for (ResourcePoolData rpData : qr.resourcesPools.values()) {
-                updateResourcePool(rpData.resourcePoolState, rpData.computeStateLinks.stream()
-                        .map(link -> qr.computesByLink.get(link))
-                        .collect(Collectors.toList()));
+                String rpLink = rpData.resourcePoolState.documentSelfLink;
+                Map<String, HostCapacity> capacities = getHostCapacities(rpData,
+                        qr.computesByLink);
+                if (capacityAggregator.isReconciliationDue(rpLink, now)) {
+                    capacityAggregator.reconcile(rpLink, capacities, now);
+                } else {
+                    capacityAggregator.updateHosts(rpLink, capacities);
+                }
             }
         });
     }
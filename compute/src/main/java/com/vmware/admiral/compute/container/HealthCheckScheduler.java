@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Schedules container health checks on a hashed timing wheel. Each container has at most one
+ * pending or running check, checks of a container description are spread over a time window
+ * instead of being fired at once, and the number of concurrently running checks is bounded
+ * both globally and per container host. Checks which are due but cannot start because a limit
+ * is reached are moved to the next tick.
+ */
+public class HealthCheckScheduler {
+
+    public static final long DEFAULT_TICK_MILLIS = Long.getLong(
+            "com.vmware.admiral.compute.container.health.check.tick.millis", 100);
+
+    public static final int DEFAULT_MAX_CONCURRENT_CHECKS = Integer.getInteger(
+            "com.vmware.admiral.compute.container.health.check.max.concurrent", 64);
+
+    public static final int DEFAULT_MAX_CONCURRENT_CHECKS_PER_HOST = Integer.getInteger(
+            "com.vmware.admiral.compute.container.health.check.max.concurrent.per.host", 8);
+
+    /**
+     * Time after which a started check is considered complete even if it has not reported back,
+     * so that a lost completion does not block the container's checks forever.
+     */
+    public static final long DEFAULT_CHECK_TIMEOUT_MILLIS = Long.getLong(
+            "com.vmware.admiral.compute.container.health.check.timeout.millis",
+            TimeUnit.MINUTES.toMillis(1));
+
+    private static final int WHEEL_SIZE = 512;
+
+    /**
+     * A health check waiting in the wheel. The check is given a callback which must be invoked
+     * exactly once when it completes, successfully or not.
+     */
+    private static class ScheduledCheck {
+        final String key;
+        final String hostKey;
+        final Consumer<Runnable> check;
+        long deadlineTick;
+
+        ScheduledCheck(String key, String hostKey, Consumer<Runnable> check) {
+            this.key = key;
+            this.hostKey = hostKey;
+            this.check = check;
+        }
+    }
+
+    private final ScheduledExecutorService executor;
+    private final long tickMillis;
+    private final int maxConcurrentChecks;
+    private final int maxConcurrentChecksPerHost;
+
+    private final Queue<ScheduledCheck>[] wheel;
+    private final Map<String, ScheduledCheck> scheduled = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> runningPerHost = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private long currentTick;
+    private boolean started;
+
+    public HealthCheckScheduler(ScheduledExecutorService executor) {
+        this(executor, DEFAULT_TICK_MILLIS, DEFAULT_MAX_CONCURRENT_CHECKS,
+                DEFAULT_MAX_CONCURRENT_CHECKS_PER_HOST);
+    }
+
+    @SuppressWarnings("unchecked")
+    public HealthCheckScheduler(ScheduledExecutorService executor, long tickMillis,
+            int maxConcurrentChecks, int maxConcurrentChecksPerHost) {
+        this.executor = executor;
+        this.tickMillis = tickMillis;
+        this.maxConcurrentChecks = maxConcurrentChecks;
+        this.maxConcurrentChecksPerHost = maxConcurrentChecksPerHost;
+        this.wheel = new Queue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            this.wheel[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Schedules a health check to run after the given delay. Returns <code>false</code> if a
+     * check with the same key is already scheduled or running, in which case the new check is
+     * dropped.
+     */
+    public boolean schedule(String key, String hostKey, long delayMillis,
+            Consumer<Runnable> check) {
+        ScheduledCheck scheduledCheck = new ScheduledCheck(key,
+                hostKey != null ? hostKey : "", check);
+        if (scheduled.putIfAbsent(key, scheduledCheck) != null) {
+            return false;
+        }
+
+        long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        synchronized (this) {
+            scheduledCheck.deadlineTick = currentTick + ticks;
+            addToWheel(scheduledCheck);
+            startIfNeeded();
+        }
+        return true;
+    }
+
+    /**
+     * Returns a delay within [0, spreadMillis) which is stable for the given key, so that checks
+     * of different containers are distributed evenly over the spread window.
+     */
+    public static long spreadDelay(String key, long spreadMillis) {
+        if (spreadMillis <= 0 || key == null) {
+            return 0;
+        }
+        return (key.hashCode() & Integer.MAX_VALUE) % spreadMillis;
+    }
+
+    public int getScheduledCount() {
+        return scheduled.size();
+    }
+
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    private void startIfNeeded() {
+        if (started) {
+            return;
+        }
+        started = true;
+        executor.scheduleAtFixedRate(this::tick, tickMillis, tickMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void addToWheel(ScheduledCheck scheduledCheck) {
+        wheel[(int) (scheduledCheck.deadlineTick % WHEEL_SIZE)].add(scheduledCheck);
+    }
+
+    private void tick() {
+        Queue<ScheduledCheck> due = new ArrayDeque<>();
+        synchronized (this) {
+            long tick = ++currentTick;
+            Queue<ScheduledCheck> bucket = wheel[(int) (tick % WHEEL_SIZE)];
+            int size = bucket.size();
+            for (int i = 0; i < size; i++) {
+                ScheduledCheck scheduledCheck = bucket.poll();
+                if (scheduledCheck.deadlineTick > tick) {
+                    // not due in this round of the wheel
+                    bucket.add(scheduledCheck);
+                } else if (tryAcquire(scheduledCheck)) {
+                    due.add(scheduledCheck);
+                } else {
+                    scheduledCheck.deadlineTick = tick + 1;
+                    addToWheel(scheduledCheck);
+                }
+            }
+        }
+
+        for (ScheduledCheck scheduledCheck : due) {
+            executor.schedule(() -> release(scheduledCheck), DEFAULT_CHECK_TIMEOUT_MILLIS,
+                    TimeUnit.MILLISECONDS);
+            try {
+                scheduledCheck.check.accept(() -> release(scheduledCheck));
+            } catch (Throwable e) {
+                release(scheduledCheck);
+            }
+        }
+    }
+
+    private boolean tryAcquire(ScheduledCheck scheduledCheck) {
+        if (running.get() >= maxConcurrentChecks) {
+            return false;
+        }
+        AtomicInteger hostRunning = runningPerHost.computeIfAbsent(scheduledCheck.hostKey,
+                (k) -> new AtomicInteger());
+        if (hostRunning.get() >= maxConcurrentChecksPerHost) {
+            return false;
+        }
+        hostRunning.incrementAndGet();
+        running.incrementAndGet();
+        return true;
+    }
+
+    private synchronized void release(ScheduledCheck scheduledCheck) {
+        if (!scheduled.remove(scheduledCheck.key, scheduledCheck)) {
+            // already released
+            return;
+        }
+        running.decrementAndGet();
+        runningPerHost.computeIfPresent(scheduledCheck.hostKey,
+                (k, v) -> v.decrementAndGet() <= 0 ? null : v);
+    }
+}
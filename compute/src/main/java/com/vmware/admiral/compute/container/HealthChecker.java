@@ -15,6 +15,8 @@ import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -31,7 +33,9 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
+import com.vmware.admiral.common.DeploymentProfileConfig;
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.serialization.ReleaseConstants;
 import com.vmware.admiral.common.util.QueryUtil;
@@ -43,6 +47,7 @@ import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
 import com.vmware.admiral.compute.container.HealthChecker.HealthConfig.HttpVersion;
 import com.vmware.admiral.compute.container.ShellContainerExecutorService.ShellContainerExecutorState;
+import com.vmware.admiral.compute.container.maintenance.ContainerHealthEvaluator;
 import com.vmware.admiral.compute.container.maintenance.ContainerStats;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.xenon.common.Operation;
@@ -67,6 +72,23 @@ public class HealthChecker {
 
     private static final int DEFAULT_PORT = 80;
     private static final int DEFAULT_TIMEOUT = 2000;
+    private static final String HEALTH_CHECK_CONNECTION_TAG = "health-check";
+
+    /**
+     * Time window over which the health checks of the containers of a description are spread.
+     */
+    private static final long HEALTH_CHECK_SPREAD_MILLIS = Long.getLong(
+            "com.vmware.admiral.compute.container.health.check.spread.millis",
+            TimeUnit.SECONDS.toMillis(30));
+
+    private static final int HEALTH_CHECK_EVENT_LOOP_THREADS = Integer.getInteger(
+            "com.vmware.admiral.compute.container.health.check.event.loop.threads", 2);
+
+    private static final int HEALTH_CHECK_CONNECTION_LIMIT = Integer.getInteger(
+            "com.vmware.admiral.compute.container.health.check.connection.limit", 4);
+
+    private static final int MAX_TRACKED_HEALTH_STATUSES = 10_000;
+
     private static volatile HealthChecker instance;
 
     public static class HealthConfig {
@@ -119,7 +141,24 @@ public class HealthChecker {
         public String command;
     }
 
+    /**
+     * Outcome of the consecutive health checks of a container, used to skip patching the
+     * container when the result would not change its status.
+     */
+    private static class HealthStatus {
+        final boolean success;
+        final int count;
+
+        HealthStatus(boolean success, int count) {
+            this.success = success;
+            this.count = count;
+        }
+    }
+
+    private NioEventLoopGroup eventLoopGroup;
     private Bootstrap bootstrap;
+    private HealthCheckScheduler scheduler;
+    private final Map<String, HealthStatus> healthStatuses = new ConcurrentHashMap<>();
 
     public static HealthChecker getInstance() {
         if (instance == null) {
@@ -138,11 +177,14 @@ public class HealthChecker {
     }
 
     /**
-     * Initialize Netty bootstrap
+     * Initialize Netty bootstrap and the health check scheduler sharing its event loop
      */
     private void initialize() {
+        this.eventLoopGroup = new NioEventLoopGroup(HEALTH_CHECK_EVENT_LOOP_THREADS,
+                new DefaultThreadFactory("health-checker", true));
+        this.scheduler = new HealthCheckScheduler(eventLoopGroup);
         this.bootstrap = new Bootstrap()
-                .group(new NioEventLoopGroup())
+                .group(eventLoopGroup)
                 .channel(NioSocketChannel.class)
                 .handler(new ChannelInitializer<Channel>() {
                     @Override
@@ -168,6 +210,16 @@ public class HealthChecker {
 
     public void doHealthCheckRequest(ServiceHost host, ContainerState containerState,
             HealthConfig healthConfig, Consumer<ContainerStats> callback) {
+        doHealthCheckRequest(host, containerState, healthConfig, callback, true);
+    }
+
+    /**
+     * Performs a health check of the given container. If <code>reportAlways</code> is false the
+     * result is patched to the container only when it may change the container's health
+     * status, in which case the callback is invoked with <code>null</code>.
+     */
+    private void doHealthCheckRequest(ServiceHost host, ContainerState containerState,
+            HealthConfig healthConfig, Consumer<ContainerStats> callback, boolean reportAlways) {
         if (healthConfig == null || healthConfig.protocol == null) {
             return;
         }
@@ -176,6 +228,7 @@ public class HealthChecker {
                 containerState.powerState == PowerState.PROVISIONING ||
                 containerState.powerState == PowerState.STOPPED) {
 
+            healthStatuses.remove(containerState.documentSelfLink);
             if (callback != null) {
                 callback.accept(null);
             }
@@ -185,17 +238,22 @@ public class HealthChecker {
 
         switch (healthConfig.protocol) {
         case HTTP:
-            healthCheckHttp(host, containerState, healthConfig, null, null, callback);
+            healthCheckHttp(host, containerState, healthConfig, null, null, callback,
+                    reportAlways);
             break;
         case TCP:
-            healthCheckTcp(host, containerState, healthConfig, null, null, callback);
+            healthCheckTcp(host, containerState, healthConfig, null, null, callback,
+                    reportAlways);
             break;
         case COMMAND:
-            healthCheckExec(host, containerState, healthConfig, callback);
+            healthCheckExec(host, containerState, healthConfig, callback, reportAlways);
             break;
         default:
             host.log(Level.SEVERE, "Health config protocol not supported: %s",
                     healthConfig.protocol);
+            if (callback != null) {
+                callback.accept(null);
+            }
             break;
         }
     }
@@ -221,15 +279,34 @@ public class HealthChecker {
                                 "Failed to retrieve container's health config: %s - %s",
                                 r.getDocumentSelfLink(), r.getException());
                     } else if (r.hasResult()) {
-                        doHealthCheckRequest(host, r.getResult(), containerDescription.healthConfig,
-                                null);
+                        scheduleHealthCheck(host, r.getResult(), containerDescription.healthConfig);
                     }
                 });
     }
 
+    private void scheduleHealthCheck(ServiceHost host, ContainerState containerState,
+            HealthConfig healthConfig) {
+        if (healthConfig == null || healthConfig.protocol == null) {
+            return;
+        }
+
+        long delayMillis = DeploymentProfileConfig.getInstance().isTest() ? 0
+                : HealthCheckScheduler.spreadDelay(containerState.documentSelfLink,
+                        HEALTH_CHECK_SPREAD_MILLIS);
+
+        boolean scheduled = scheduler.schedule(containerState.documentSelfLink,
+                containerState.parentLink, delayMillis,
+                (done) -> doHealthCheckRequest(host, containerState, healthConfig,
+                        (stats) -> done.run(), false));
+        if (!scheduled) {
+            host.log(Level.FINE, "Health check already pending for container %s",
+                    containerState.documentSelfLink);
+        }
+    }
+
     private void healthCheckExec(ServiceHost host, ContainerState containerState,
-            HealthConfig healthConfig,
-            Consumer<ContainerStats> callback) {
+            HealthConfig healthConfig, Consumer<ContainerStats> callback,
+            boolean reportAlways) {
 
         ShellContainerExecutorState executorState = new ShellContainerExecutorState();
         executorState.command = healthConfig.command.split(" ");
@@ -253,32 +330,35 @@ public class HealthChecker {
                                 String.format("Health check failed: %s",
                                         o.getBody(String.class)));
                     }
-                    handleHealthResponse(host, containerState, e, callback);
+                    handleHealthResponse(host, containerState, healthConfig, e, callback,
+                            reportAlways);
                 }));
     }
 
     private void healthCheckTcp(ServiceHost host, ContainerState containerState,
             HealthConfig healthConfig, String targetAddress, Integer targetPort,
-            Consumer<ContainerStats> callback) {
+            Consumer<ContainerStats> callback, boolean reportAlways) {
         if (targetAddress == null) {
             determineContainerHostPort(host, containerState, healthConfig,
                     (address, port) -> healthCheckTcp(host, containerState, healthConfig,
-                            address, port, callback));
+                            address, port, callback, reportAlways), callback);
             return;
         }
 
-        this.bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, getTimeoutMillis(healthConfig));
-
         targetPort = targetPort != null && targetPort > 0 ? targetPort : DEFAULT_PORT;
 
         InetSocketAddress remoteAddress = new InetSocketAddress(targetAddress, targetPort);
-        ChannelFuture channelFuture = bootstrap.connect(remoteAddress);
+        // the bootstrap is shared between concurrent checks, set the timeout on a copy of it
+        ChannelFuture channelFuture = bootstrap.clone()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, getTimeoutMillis(healthConfig))
+                .connect(remoteAddress);
         OperationContext origContext = OperationContext.getOperationContext();
 
         channelFuture.addListener((ChannelFutureListener) result -> {
             try {
                 OperationContext.setFrom(origContext);
-                handleHealthResponse(host, containerState, result.cause(), callback);
+                handleHealthResponse(host, containerState, healthConfig, result.cause(),
+                        callback, reportAlways);
             } finally {
                 result.channel().close();
             }
@@ -287,12 +367,12 @@ public class HealthChecker {
 
     private void healthCheckHttp(ServiceHost host, ContainerState containerState,
             HealthConfig healthConfig, String targetAddress, Integer targetPort,
-            Consumer<ContainerStats> callback) {
+            Consumer<ContainerStats> callback, boolean reportAlways) {
 
         if (targetAddress == null) {
             determineContainerHostPort(host, containerState, healthConfig,
                     (address, port) -> healthCheckHttp(host, containerState, healthConfig,
-                            address, port, callback));
+                            address, port, callback, reportAlways), callback);
             return;
         }
 
@@ -302,6 +382,9 @@ public class HealthChecker {
         } catch (URISyntaxException e) {
             host.log(Level.SEVERE, "Health config for container description %s is invalid: %s",
                     containerState.descriptionLink, Utils.toJson(e));
+            if (callback != null) {
+                callback.accept(null);
+            }
             return;
         }
 
@@ -310,10 +393,19 @@ public class HealthChecker {
                 .createGet(uri)
                 .setAction(healthConfig.httpMethod)
                 .setReferer(UriUtils.buildUri(host, SERVICE_REFERRER_PATH))
-                .setCompletion((o, ex) -> handleHealthResponse(host, containerState, ex, callback));
+                .setCompletion((o, ex) -> handleHealthResponse(host, containerState,
+                        healthConfig, ex, callback, reportAlways));
 
         if (healthConfig.httpVersion == HttpVersion.HTTP_v2) {
             op.setConnectionSharing(true);
+        } else {
+            // keep health checks in their own bounded connection pool per target
+            if (host.getClient().getConnectionLimitPerTag(HEALTH_CHECK_CONNECTION_TAG)
+                    != HEALTH_CHECK_CONNECTION_LIMIT) {
+                host.getClient().setConnectionLimitPerTag(HEALTH_CHECK_CONNECTION_TAG,
+                        HEALTH_CHECK_CONNECTION_LIMIT);
+            }
+            op.setConnectionTag(HEALTH_CHECK_CONNECTION_TAG);
         }
 
         op.setExpiration(ServiceUtils.getExpirationTimeFromNowInMicros(
@@ -342,7 +434,8 @@ public class HealthChecker {
     }
 
     private void determineContainerHostPort(ServiceHost host, ContainerState containerState,
-            HealthConfig healthConfig, BiConsumer<String, Integer> callback) {
+            HealthConfig healthConfig, BiConsumer<String, Integer> callback,
+            Consumer<ContainerStats> failureCallback) {
 
         if (containerState.ports != null && healthConfig.port != null) {
             for (PortBinding portBinding : containerState.ports) {
@@ -351,7 +444,7 @@ public class HealthChecker {
                         && Integer.parseInt(portBinding.containerPort) == healthConfig.port) {
                     getHostPortBinding(host, containerState, Integer.parseInt(portBinding.hostPort),
                             null,
-                            callback);
+                            callback, failureCallback);
                     return;
                 }
             }
@@ -363,10 +456,13 @@ public class HealthChecker {
     }
 
     private void getHostPortBinding(ServiceHost host, ContainerState containerState, int port,
-            String hostAddress, BiConsumer<String, Integer> callback) {
+            String hostAddress, BiConsumer<String, Integer> callback,
+            Consumer<ContainerStats> failureCallback) {
         if (hostAddress == null || hostAddress.isEmpty()) {
             getContainerHost(host, containerState.parentLink,
-                    (h) -> getHostPortBinding(host, containerState, port, h.address, callback));
+                    (h) -> getHostPortBinding(host, containerState, port, h.address, callback,
+                            failureCallback),
+                    failureCallback);
             return;
         }
 
@@ -374,7 +470,7 @@ public class HealthChecker {
     }
 
     private void getContainerHost(ServiceHost host, String parentLink,
-            Consumer<ComputeState> callback) {
+            Consumer<ComputeState> callback, Consumer<ContainerStats> failureCallback) {
         host.sendRequest(Operation
                 .createGet(UriUtils.buildUri(host, parentLink))
                 .setReferer(UriUtils.buildUri(host, SERVICE_REFERRER_PATH))
@@ -385,19 +481,34 @@ public class HealthChecker {
                                         "Unable to retrieve container's host during health "
                                                 + "check: %s",
                                         Utils.toJson(ex));
+                                // the check is not done, but it has to release its slot
+                                if (failureCallback != null) {
+                                    failureCallback.accept(null);
+                                }
                             } else {
                                 callback.accept(ob.getBody(ComputeState.class));
                             }
                         }));
     }
 
-    private void handleHealthResponse(ServiceHost host, ContainerState containerState, Throwable ex,
-            Consumer<ContainerStats> callback) {
+    private void handleHealthResponse(ServiceHost host, ContainerState containerState,
+            HealthConfig healthConfig, Throwable ex, Consumer<ContainerStats> callback,
+            boolean reportAlways) {
         if (ex != null) {
             host.log(Level.WARNING, "Health check status is failed for container %s : %s",
                     containerState, Utils.toJson(ex));
         }
 
+        boolean statusChanging = updateHealthStatus(containerState, healthConfig, ex == null);
+        if (!reportAlways && !statusChanging) {
+            host.log(Level.FINE, "Health status of container %s is unchanged, skipping patch",
+                    containerState.documentSelfLink);
+            if (callback != null) {
+                callback.accept(null);
+            }
+            return;
+        }
+
         /* if ex != null, the health check is failed */
         ContainerStats containerStats = new ContainerStats();
         containerStats.healthCheckSuccess = (ex == null);
@@ -424,4 +535,36 @@ public class HealthChecker {
                 }));
     }
 
+    /**
+     * Records the result of a health check and returns whether patching it to the container may
+     * change the container's health status. Once a container has been consistently healthy or
+     * unhealthy for longer than the corresponding threshold and its status reflects that, further
+     * identical results are not reported.
+     */
+    private boolean updateHealthStatus(ContainerState containerState, HealthConfig healthConfig,
+            boolean success) {
+        if (healthStatuses.size() > MAX_TRACKED_HEALTH_STATUSES) {
+            // the tracked statuses only allow skipping patches, it is safe to forget them
+            healthStatuses.clear();
+        }
+
+        HealthStatus status = healthStatuses.compute(containerState.documentSelfLink,
+                (k, v) -> v == null || v.success != success
+                        ? new HealthStatus(success, 1)
+                        : new HealthStatus(success, v.count + 1));
+
+        int threshold;
+        String expectedStatus;
+        if (success) {
+            threshold = healthConfig.healthyThreshold != null ? healthConfig.healthyThreshold
+                    : ContainerHealthEvaluator.DEFAULT_HEALTHY_THRESHOLD;
+            expectedStatus = ContainerState.CONTAINER_RUNNING_STATUS;
+        } else {
+            threshold = healthConfig.unhealthyThreshold != null ? healthConfig.unhealthyThreshold
+                    : ContainerHealthEvaluator.DEFAULT_UNHEALTHY_THRESHOLD;
+            expectedStatus = ContainerState.CONTAINER_UNHEALTHY_STATUS;
+        }
+
+        return status.count <= threshold || !expectedStatus.equals(containerState.status);
+    }
 }
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import com.vmware.admiral.common.util.PropertyUtils;
+import com.vmware.admiral.compute.ContainerHostService;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+
+/**
+ * Keeps running capacity totals of the resource pools, built from the stats of the container
+ * hosts in them. A host update only applies the difference to the totals of its pools, instead
+ * of summing up all the hosts of the pools again, and the pools are published only when their
+ * totals change.
+ *
+ * Publishing is coalesced per pool: while an update of a pool is in flight, further changes only
+ * mark the pool as pending and the latest totals are published once the update completes. The
+ * totals of a pool are only known after a reconciliation, i.e. a full recompute from all of its
+ * hosts, which is also repeated periodically to fix any drift.
+ */
+class ResourcePoolCapacityAggregator {
+
+    /**
+     * Capacity contributed by a container host.
+     */
+    static class HostCapacity {
+        // Long.MAX_VALUE when the total memory of the host is not known
+        final long totalMemoryBytes;
+        final long availableMemoryBytes;
+        final long cpuCoreCount;
+        final double cpuUsage;
+
+        HostCapacity(long totalMemoryBytes, long availableMemoryBytes, long cpuCoreCount,
+                double cpuUsage) {
+            this.totalMemoryBytes = totalMemoryBytes;
+            this.availableMemoryBytes = availableMemoryBytes;
+            this.cpuCoreCount = cpuCoreCount;
+            this.cpuUsage = cpuUsage;
+        }
+
+        static HostCapacity of(ComputeState computeState) {
+            Long totalMemory = PropertyUtils.getPropertyLong(computeState.customProperties,
+                    ContainerHostService.DOCKER_HOST_TOTAL_MEMORY_PROP_NAME)
+                    .orElse(Long.MAX_VALUE);
+
+            Long numCores = PropertyUtils.getPropertyLong(computeState.customProperties,
+                    ContainerHostService.DOCKER_HOST_NUM_CORES_PROP_NAME).orElse(1L);
+
+            Double cpuUsage = PropertyUtils.getPropertyDouble(computeState.customProperties,
+                    ContainerHostService.DOCKER_HOST_CPU_USAGE_PCT_PROP_NAME).orElse(0.0);
+
+            // get the available memory, if missing => use the total memory, if missing => 0
+            Long availableMemory = PropertyUtils
+                    .getPropertyLong(computeState.customProperties,
+                            ContainerHostService.DOCKER_HOST_AVAILABLE_MEMORY_PROP_NAME)
+                    .orElse(PropertyUtils
+                            .getPropertyLong(computeState.customProperties,
+                                    ContainerHostService.DOCKER_HOST_TOTAL_MEMORY_PROP_NAME)
+                            .orElse(0L));
+
+            return new HostCapacity(totalMemory, availableMemory, numCores, cpuUsage);
+        }
+
+        boolean isSame(HostCapacity other) {
+            return other != null
+                    && totalMemoryBytes == other.totalMemoryBytes
+                    && availableMemoryBytes == other.availableMemoryBytes
+                    && cpuCoreCount == other.cpuCoreCount
+                    && Double.compare(cpuUsage, other.cpuUsage) == 0;
+        }
+    }
+
+    private static class PoolCapacity {
+        final Map<String, HostCapacity> hosts = new HashMap<>();
+        long unknownMemoryHostCount;
+        long totalMemoryBytes;
+        long availableMemoryBytes;
+        long cpuCoreCount;
+        double cpuUsageSumAllCores;
+
+        long reconciledTimeMicros;
+        List<Runnable> reconciliationWaiters;
+        boolean publishing;
+        boolean publishPending;
+
+        boolean isReconciled() {
+            return reconciledTimeMicros > 0;
+        }
+
+        void put(String computeLink, HostCapacity capacity) {
+            HostCapacity previous = capacity == null ? hosts.remove(computeLink)
+                    : hosts.put(computeLink, capacity);
+            add(previous, -1);
+            add(capacity, 1);
+        }
+
+        void reset() {
+            hosts.clear();
+            unknownMemoryHostCount = 0;
+            totalMemoryBytes = 0;
+            availableMemoryBytes = 0;
+            cpuCoreCount = 0;
+            cpuUsageSumAllCores = 0.0;
+        }
+
+        private void add(HostCapacity capacity, int sign) {
+            if (capacity == null) {
+                return;
+            }
+            if (capacity.totalMemoryBytes == Long.MAX_VALUE) {
+                unknownMemoryHostCount += sign;
+            } else {
+                totalMemoryBytes += sign * capacity.totalMemoryBytes;
+            }
+            availableMemoryBytes += sign * capacity.availableMemoryBytes;
+            cpuCoreCount += sign * capacity.cpuCoreCount;
+            cpuUsageSumAllCores += sign * capacity.cpuCoreCount * capacity.cpuUsage;
+        }
+
+        ResourcePoolState toPatchState(String resourcePoolLink) {
+            // the aggregate cpu usage is calculated:
+            // (H1.cpuUsage * H1.numCores + ... + Hn.cpuUsage * Hn.numCores) / (H1.numCores + ...
+            // + Hn.numCores)
+            double aggregateCpuUsage = cpuCoreCount <= 0 ? 0 : cpuUsageSumAllCores / cpuCoreCount;
+
+            ResourcePoolState rpPatchState = new ResourcePoolState();
+            rpPatchState.documentSelfLink = resourcePoolLink;
+            rpPatchState.customProperties = new HashMap<>();
+            rpPatchState.customProperties.put(
+                    ContainerHostDataCollectionService.RESOURCE_POOL_CPU_USAGE_CUSTOM_PROP,
+                    Double.toString(aggregateCpuUsage));
+            rpPatchState.customProperties.put(
+                    ContainerHostDataCollectionService.RESOURCE_POOL_AVAILABLE_MEMORY_CUSTOM_PROP,
+                    Long.toString(availableMemoryBytes));
+            rpPatchState.maxMemoryBytes = unknownMemoryHostCount > 0 ? Long.MAX_VALUE
+                    : totalMemoryBytes;
+            rpPatchState.minMemoryBytes = 0L;
+            return rpPatchState;
+        }
+    }
+
+    private final Map<String, PoolCapacity> pools = new HashMap<>();
+    private final long reconciliationIntervalMicros;
+    private final BiConsumer<ResourcePoolState, Runnable> publisher;
+
+    /**
+     * @param reconciliationIntervalMicros how often the totals of a pool are recomputed from all
+     *        of its hosts
+     * @param publisher publishes the given totals of a pool and runs the given callback when done
+     */
+    ResourcePoolCapacityAggregator(long reconciliationIntervalMicros,
+            BiConsumer<ResourcePoolState, Runnable> publisher) {
+        this.reconciliationIntervalMicros = reconciliationIntervalMicros;
+        this.publisher = publisher;
+    }
+
+    /**
+     * Applies the capacity of the given host to the totals of the given pool, or removes the host
+     * from the pool if the capacity is <code>null</code>. Returns <code>false</code> if the pool
+     * has not been reconciled yet and the update was not applied.
+     */
+    boolean updateHost(String resourcePoolLink, String computeLink, HostCapacity capacity) {
+        synchronized (this) {
+            PoolCapacity pool = pools.get(resourcePoolLink);
+            if (pool == null || !pool.isReconciled()) {
+                return false;
+            }
+            HostCapacity current = pool.hosts.get(computeLink);
+            if (capacity == null ? current == null : capacity.isSame(current)) {
+                return true;
+            }
+            pool.put(computeLink, capacity);
+        }
+        publish(resourcePoolLink);
+        return true;
+    }
+
+    /**
+     * Applies the capacities of all the current hosts of the given pool to its totals, removing
+     * the hosts which are not in the pool any more, and publishes the totals once if they
+     * changed. Returns <code>false</code> if the pool has not been reconciled yet and the update
+     * was not applied.
+     */
+    boolean updateHosts(String resourcePoolLink, Map<String, HostCapacity> hosts) {
+        boolean changed = false;
+        synchronized (this) {
+            PoolCapacity pool = pools.get(resourcePoolLink);
+            if (pool == null || !pool.isReconciled()) {
+                return false;
+            }
+            for (String computeLink : new ArrayList<>(pool.hosts.keySet())) {
+                if (!hosts.containsKey(computeLink)) {
+                    pool.put(computeLink, null);
+                    changed = true;
+                }
+            }
+            for (Map.Entry<String, HostCapacity> host : hosts.entrySet()) {
+                if (!host.getValue().isSame(pool.hosts.get(host.getKey()))) {
+                    pool.put(host.getKey(), host.getValue());
+                    changed = true;
+                }
+            }
+        }
+        if (changed) {
+            publish(resourcePoolLink);
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the totals of the given pool are not known or have not been recomputed
+     * for longer than the reconciliation interval.
+     */
+    synchronized boolean isReconciliationDue(String resourcePoolLink, long nowMicros) {
+        PoolCapacity pool = pools.get(resourcePoolLink);
+        return pool == null || !pool.isReconciled()
+                || pool.reconciledTimeMicros + reconciliationIntervalMicros <= nowMicros;
+    }
+
+    /**
+     * Registers the given callback to be run once the given pool is reconciled. Returns
+     * <code>true</code> if the caller should load the hosts of the pool and call
+     * {@link #reconcile(String, Map, long)}, or <code>false</code> if a reconciliation is already
+     * in progress.
+     */
+    synchronized boolean awaitReconciliation(String resourcePoolLink, Runnable callback) {
+        PoolCapacity pool = pools.computeIfAbsent(resourcePoolLink, k -> new PoolCapacity());
+        boolean load = pool.reconciliationWaiters == null;
+        if (load) {
+            pool.reconciliationWaiters = new ArrayList<>();
+        }
+        if (callback != null) {
+            pool.reconciliationWaiters.add(callback);
+        }
+        return load;
+    }
+
+    /**
+     * Drops the callbacks waiting for the reconciliation of the given pool, after its hosts
+     * failed to load.
+     */
+    synchronized void cancelReconciliation(String resourcePoolLink) {
+        PoolCapacity pool = pools.get(resourcePoolLink);
+        if (pool != null) {
+            pool.reconciliationWaiters = null;
+        }
+    }
+
+    /**
+     * Recomputes the totals of the given pool from all of its hosts and publishes them.
+     */
+    void reconcile(String resourcePoolLink, Map<String, HostCapacity> hosts, long nowMicros) {
+        List<Runnable> waiters;
+        synchronized (this) {
+            PoolCapacity pool = pools.computeIfAbsent(resourcePoolLink, k -> new PoolCapacity());
+            pool.reset();
+            hosts.forEach(pool::put);
+            pool.reconciledTimeMicros = nowMicros;
+            waiters = pool.reconciliationWaiters;
+            pool.reconciliationWaiters = null;
+        }
+        publish(resourcePoolLink);
+        if (waiters != null) {
+            waiters.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Forgets the pools other than the given ones, e.g. after they were deleted.
+     */
+    synchronized void retainResourcePools(Collection<String> resourcePoolLinks) {
+        pools.keySet().retainAll(resourcePoolLinks);
+    }
+
+    private void publish(String resourcePoolLink) {
+        ResourcePoolState rpPatchState;
+        synchronized (this) {
+            PoolCapacity pool = pools.get(resourcePoolLink);
+            if (pool == null) {
+                return;
+            }
+            if (pool.publishing) {
+                pool.publishPending = true;
+                return;
+            }
+            pool.publishing = true;
+            pool.publishPending = false;
+            rpPatchState = pool.toPatchState(resourcePoolLink);
+        }
+        publisher.accept(rpPatchState, () -> onPublished(resourcePoolLink));
+    }
+
+    private void onPublished(String resourcePoolLink) {
+        boolean pending;
+        synchronized (this) {
+            PoolCapacity pool = pools.get(resourcePoolLink);
+            if (pool == null) {
+                return;
+            }
+            pool.publishing = false;
+            pending = pool.publishPending;
+        }
+        if (pending) {
+            publish(resourcePoolLink);
+        }
+    }
+}
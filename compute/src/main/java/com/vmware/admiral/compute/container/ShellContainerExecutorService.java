@@ -12,9 +12,13 @@
 package com.vmware.admiral.compute.container;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -26,13 +30,17 @@ import com.vmware.admiral.common.util.OperationUtil;
 import com.vmware.admiral.compute.ContainerHostUtil;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
+import com.vmware.admiral.compute.container.ShellExecSession.PendingCommand;
+import com.vmware.admiral.compute.container.ShellExecSession.ShellExecTranscript;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.xenon.common.LocalizableValidationException;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Operation.AuthorizationContext;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
 
 public class ShellContainerExecutorService extends StatelessService {
     public static final String SELF_LINK = ManagementUriParts.EXEC;
@@ -45,6 +53,29 @@ public class ShellContainerExecutorService extends StatelessService {
 
     public static final String COMMAND_ARGUMENTS_SEPARATOR = " , ";
 
+    /**
+     * Executes the command in the shell session of the user in the container, see
+     * {@link ShellExecSession}. The transcript of the session can be read with a GET with the
+     * same container link, from the given {@link #OFFSET_URI_PARAM} and optionally waiting for
+     * new output with {@link #FOLLOW_URI_PARAM}.
+     */
+    public static final String SESSION_URI_PARAM = "session";
+    public static final String OFFSET_URI_PARAM = "offset";
+    public static final String FOLLOW_URI_PARAM = "follow";
+
+    private static final int MAX_SESSIONS_PER_HOST = Integer.getInteger(
+            "com.vmware.admiral.compute.container.shell.max.sessions.per.host", 10);
+    private static final long SESSION_IDLE_TIMEOUT_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.shell.session.idle.timeout.micros",
+            TimeUnit.MINUTES.toMicros(10));
+    private static final int SESSION_MAX_BATCH_SIZE = Integer.getInteger(
+            "com.vmware.admiral.compute.container.shell.session.max.batch.size", 20);
+    private static final int SESSION_TRANSCRIPT_LENGTH = Integer.getInteger(
+            "com.vmware.admiral.compute.container.shell.session.transcript.length", 256 * 1024);
+    private static final long FOLLOW_TIMEOUT_SECONDS = 30;
+
+    private final Map<String, ShellExecSession> sessions = new ConcurrentHashMap<>();
+
     public static class ShellContainerExecutorState {
         public String[] command;
         public Boolean attachStdErr;
@@ -74,9 +105,45 @@ public class ShellContainerExecutorService extends StatelessService {
                             SystemContainerDescriptions.AGENT_CONTAINER_NAME, hostId);
         }
 
+        if (hostLink == null && Boolean.parseBoolean(params.get(SESSION_URI_PARAM))) {
+            executeInSession(post, containerLink);
+            return;
+        }
+
         execute(post, hostLink, containerLink);
     }
 
+    @Override
+    public void handleGet(Operation get) {
+        Map<String, String> params = UriUtils.parseUriQueryParams(get.getUri());
+
+        String containerLink = params.get(CONTAINER_LINK_URI_PARAM);
+        if (containerLink == null) {
+            get.fail(new LocalizableValidationException(String.format("%s is required",
+                    CONTAINER_LINK_URI_PARAM), "compute.shell.container.link.required",
+                    CONTAINER_LINK_URI_PARAM));
+            return;
+        }
+
+        ShellExecSession session = sessions.get(getSessionKey(get, containerLink));
+        if (session == null) {
+            get.fail(Operation.STATUS_CODE_NOT_FOUND);
+            return;
+        }
+
+        long offset;
+        try {
+            offset = params.containsKey(OFFSET_URI_PARAM)
+                    ? Long.parseLong(params.get(OFFSET_URI_PARAM)) : 0;
+        } catch (NumberFormatException e) {
+            get.fail(new LocalizableValidationException(String.format("Invalid %s",
+                    OFFSET_URI_PARAM), "compute.shell.offset.invalid", OFFSET_URI_PARAM));
+            return;
+        }
+
+        readTranscript(get, session, offset, Boolean.parseBoolean(params.get(FOLLOW_URI_PARAM)));
+    }
+
     private void execute(Operation post, String hostLink, String containerLink) {
         ShellContainerExecutorState body = post.getBody(ShellContainerExecutorState.class);
 
@@ -84,7 +151,15 @@ public class ShellContainerExecutorService extends StatelessService {
             if (e != null) {
                 post.fail(e);
             } else {
-                executeCommand(container, body, post);
+                executeCommand(container, body, (output, ex) -> {
+                    if (ex != null) {
+                        post.fail(ex);
+                        return;
+                    }
+                    post.setBody(output);
+                    post.setContentType(Operation.MEDIA_TYPE_TEXT_PLAIN);
+                    post.complete();
+                });
             }
         };
 
@@ -153,8 +228,170 @@ public class ShellContainerExecutorService extends StatelessService {
                         && ContainerState.CONTAINER_UNHEALTHY_STATUS.equals(containerState.status));
     }
 
+    private void executeInSession(Operation post, String containerLink) {
+        PendingCommand command = new PendingCommand(
+                post.getBody(ShellContainerExecutorState.class), post);
+        String key = getSessionKey(post, containerLink);
+
+        ShellExecSession session = sessions.get(key);
+        if (session != null && !session.isClosed()) {
+            enqueue(session, command);
+            return;
+        }
+
+        getContainerWhenAvailable(containerLink, RETRY_COUNT, (container, e) -> {
+            if (e != null) {
+                post.fail(e);
+                return;
+            }
+            ShellExecSession newSession;
+            try {
+                newSession = openSession(key, container);
+            } catch (LocalizableValidationException ex) {
+                post.fail(ex);
+                return;
+            }
+            enqueue(newSession, command);
+        });
+    }
+
+    private synchronized ShellExecSession openSession(String key, ContainerState container) {
+        ShellExecSession session = sessions.get(key);
+        if (session != null && !session.isClosed()) {
+            return session;
+        }
+
+        long hostSessions = sessions.values().stream()
+                .filter(s -> Objects.equals(s.container.parentLink, container.parentLink))
+                .count();
+        if (hostSessions >= MAX_SESSIONS_PER_HOST) {
+            throw new LocalizableValidationException(String.format(
+                    "Maximum number of shell sessions per host (%d) reached",
+                    MAX_SESSIONS_PER_HOST), "compute.shell.sessions.limit",
+                    MAX_SESSIONS_PER_HOST);
+        }
+
+        session = new ShellExecSession(key, container, SESSION_MAX_BATCH_SIZE,
+                SESSION_TRANSCRIPT_LENGTH);
+        sessions.put(key, session);
+        scheduleIdleCheck(session);
+        return session;
+    }
+
+    private void enqueue(ShellExecSession session, PendingCommand command) {
+        if (session.add(command)) {
+            runNextBatch(session);
+        } else if (session.isClosed()) {
+            command.op.fail(new IllegalStateException("Shell session closed"));
+        }
+    }
+
+    private void runNextBatch(ShellExecSession session) {
+        List<PendingCommand> batch = session.takeBatch();
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        if (batch.size() == 1) {
+            PendingCommand command = batch.get(0);
+            executeCommand(session.container, command.state, (output, e) -> {
+                onCommandExecuted(session, command, output, e);
+                runNextBatch(session);
+            });
+            return;
+        }
+
+        String marker = ShellExecSession.newMarker();
+        ShellContainerExecutorState batchState = new ShellContainerExecutorState();
+        batchState.command = ShellExecSession.buildBatchCommand(batch.stream()
+                .map(c -> c.state.command)
+                .collect(Collectors.toList()), marker);
+        batchState.attachStdErr = batch.get(0).state.attachStdErr;
+        batchState.attachStdOut = true;
+
+        executeCommand(session.container, batchState, (output, e) -> {
+            if (e != null || output == null || !output.contains(marker)) {
+                // the batch did not run any command, e.g. there is no shell in the container,
+                // the commands are executed one by one to fail or succeed on their own
+                logWarning("Shell batch of session %s failed, executing its commands one by one:"
+                        + " %s", session.key, e != null ? e.getMessage() : output);
+                session.disableBatching();
+                session.requeueUnbatched(batch).forEach(c -> c.op.fail(
+                        new IllegalStateException("Shell session closed")));
+                runNextBatch(session);
+                return;
+            }
+            List<String> outputs = ShellExecSession.splitBatchOutput(output, marker,
+                    batch.size());
+            for (int i = 0; i < outputs.size(); i++) {
+                onCommandExecuted(session, batch.get(i), outputs.get(i), null);
+            }
+            if (outputs.size() < batch.size()) {
+                // an interrupted command stopped the batch, the rest are executed one by one
+                List<PendingCommand> notExecuted = batch.subList(outputs.size(), batch.size());
+                logFine("Shell batch of session %s interrupted, %d commands queued again",
+                        session.key, notExecuted.size());
+                session.requeueUnbatched(notExecuted).forEach(c -> c.op.fail(
+                        new IllegalStateException("Shell session closed")));
+            }
+            runNextBatch(session);
+        });
+    }
+
+    private void onCommandExecuted(ShellExecSession session, PendingCommand command,
+            String output, Throwable e) {
+        if (e != null) {
+            // the container may be gone, the next commands open a new session
+            sessions.remove(session.key, session);
+            session.appendOutput(command.state.command, e.getMessage() + "\n");
+            command.op.fail(e);
+            return;
+        }
+        session.appendOutput(command.state.command, output);
+        command.op.setBody(output);
+        command.op.setContentType(Operation.MEDIA_TYPE_TEXT_PLAIN);
+        command.op.complete();
+    }
+
+    private void readTranscript(Operation get, ShellExecSession session, long offset,
+            boolean follow) {
+        Runnable follower = follow ? () -> readTranscript(get, session, offset, false) : null;
+        ShellExecTranscript transcript = session.read(offset, follower);
+        if (transcript == null) {
+            getHost().schedule(() -> {
+                if (session.removeFollower(follower)) {
+                    follower.run();
+                }
+            }, FOLLOW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return;
+        }
+        get.setBody(transcript);
+        get.complete();
+    }
+
+    private void scheduleIdleCheck(ShellExecSession session) {
+        getHost().schedule(() -> {
+            if (session.isIdleSince(Utils.getSystemNowMicrosUtc() - SESSION_IDLE_TIMEOUT_MICROS)) {
+                logFine("Closing idle shell session %s", session.key);
+                sessions.remove(session.key, session);
+                session.close().forEach(c -> c.op.fail(
+                        new IllegalStateException("Shell session closed")));
+            } else if (!session.isClosed()) {
+                scheduleIdleCheck(session);
+            }
+        }, SESSION_IDLE_TIMEOUT_MICROS, TimeUnit.MICROSECONDS);
+    }
+
+    private static String getSessionKey(Operation op, String containerLink) {
+        AuthorizationContext authContext = op.getAuthorizationContext();
+        String user = authContext != null && authContext.getClaims() != null
+                && authContext.getClaims().getSubject() != null
+                        ? authContext.getClaims().getSubject() : "";
+        return user + '|' + containerLink;
+    }
+
     private void executeCommand(ContainerState container, ShellContainerExecutorState execState,
-            Operation op) {
+            BiConsumer<String, Throwable> callback) {
 
         AdapterRequest adapterRequest = new AdapterRequest();
         // task callback not needed in case of exec, as it is direct, but needed for validation.
@@ -187,12 +424,10 @@ public class ShellContainerExecutorService extends StatelessService {
                 .setBody(adapterRequest)
                 .setCompletion((o, e) -> {
                     if (e != null) {
-                        op.fail(e);
+                        callback.accept(null, e);
                         return;
                     }
-                    op.setBody(o.getBody(String.class));
-                    op.setContentType(Operation.MEDIA_TYPE_TEXT_PLAIN);
-                    op.complete();
+                    callback.accept(o.getBody(String.class), null);
                 }));
     }
 
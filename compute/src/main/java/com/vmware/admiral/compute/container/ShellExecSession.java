@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ShellContainerExecutorService.ShellContainerExecutorState;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Shell session of a user in a container. The commands posted to the session are queued and
+ * executed one exec at a time: the commands queued while an exec is running are sent together as
+ * a single exec, so that interactive use does not create an exec per command.
+ *
+ * The output of the commands is appended to a bounded transcript, which can be followed by
+ * offset.
+ */
+class ShellExecSession {
+
+    /**
+     * A command waiting to be executed and the request to respond to.
+     */
+    static class PendingCommand {
+        final ShellContainerExecutorState state;
+        final Operation op;
+        /** Whether the command must be executed on its own. */
+        final boolean unbatched;
+
+        PendingCommand(ShellContainerExecutorState state, Operation op) {
+            this(state, op, false);
+        }
+
+        PendingCommand(ShellContainerExecutorState state, Operation op, boolean unbatched) {
+            this.state = state;
+            this.op = op;
+            this.unbatched = unbatched;
+        }
+    }
+
+    /**
+     * A range of the transcript of the session.
+     */
+    public static class ShellExecTranscript {
+        /** Offset of the first character of the output. */
+        public long offset;
+        /** Offset to read from next. */
+        public long nextOffset;
+        /** Whether output before the offset has been dropped. */
+        public boolean truncated;
+        /** Whether the session has been closed. */
+        public boolean closed;
+        public String output;
+    }
+
+    final String key;
+    final ContainerState container;
+    private final int maxBatchSize;
+    private final int maxTranscriptLength;
+    private final Deque<PendingCommand> pending = new ArrayDeque<>();
+    private final List<Runnable> followers = new ArrayList<>();
+    private final StringBuilder transcript = new StringBuilder();
+    private long transcriptStartOffset;
+    private boolean running;
+    private boolean closed;
+    private boolean batchingDisabled;
+    private long lastActivityMicros = Utils.getSystemNowMicrosUtc();
+
+    ShellExecSession(String key, ContainerState container, int maxBatchSize,
+            int maxTranscriptLength) {
+        this.key = key;
+        this.container = container;
+        this.maxBatchSize = maxBatchSize;
+        this.maxTranscriptLength = maxTranscriptLength;
+    }
+
+    /**
+     * Queues a command and returns whether the caller should start the next batch.
+     */
+    synchronized boolean add(PendingCommand command) {
+        if (closed) {
+            return false;
+        }
+        lastActivityMicros = Utils.getSystemNowMicrosUtc();
+        pending.add(command);
+        if (running) {
+            return false;
+        }
+        running = true;
+        return true;
+    }
+
+    /**
+     * Takes the next batch of commands to execute. The commands of a batch share the same output
+     * settings, and commands not attaching stdout are not batched, since the output of the batch
+     * is split by markers printed to stdout. Returns an empty list when there is nothing to run.
+     */
+    synchronized List<PendingCommand> takeBatch() {
+        List<PendingCommand> batch = new ArrayList<>();
+        PendingCommand first = pending.poll();
+        if (first == null) {
+            running = false;
+            return batch;
+        }
+        batch.add(first);
+        if (batchingDisabled || !isBatchable(first)) {
+            return batch;
+        }
+        while (batch.size() < maxBatchSize && !pending.isEmpty()
+                && isBatchable(pending.peek())
+                && Objects.equals(first.state.attachStdErr, pending.peek().state.attachStdErr)) {
+            batch.add(pending.poll());
+        }
+        return batch;
+    }
+
+    /**
+     * Queues again, before the other pending commands and each one to be executed on its own,
+     * the commands of a batch which were not executed because an earlier command of the batch
+     * was interrupted or the batch could not be started. Returns the commands which can't be
+     * queued because the session is closed.
+     */
+    synchronized List<PendingCommand> requeueUnbatched(List<PendingCommand> commands) {
+        if (closed) {
+            return commands;
+        }
+        for (int i = commands.size() - 1; i >= 0; i--) {
+            PendingCommand command = commands.get(i);
+            pending.addFirst(new PendingCommand(command.state, command.op, true));
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Closes the session and returns the commands which were not executed.
+     */
+    List<PendingCommand> close() {
+        List<PendingCommand> notExecuted;
+        List<Runnable> toRelease;
+        synchronized (this) {
+            closed = true;
+            notExecuted = new ArrayList<>(pending);
+            pending.clear();
+            toRelease = new ArrayList<>(followers);
+            followers.clear();
+        }
+        toRelease.forEach(Runnable::run);
+        return notExecuted;
+    }
+
+    /**
+     * Executes the next commands one by one, e.g. because the container has no shell to run the
+     * batches.
+     */
+    synchronized void disableBatching() {
+        batchingDisabled = true;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    synchronized boolean isIdleSince(long micros) {
+        return !running && pending.isEmpty() && lastActivityMicros < micros;
+    }
+
+    /**
+     * Appends the output of an executed command to the transcript and releases the followers.
+     */
+    void appendOutput(String[] command, String output) {
+        List<Runnable> toRelease;
+        synchronized (this) {
+            lastActivityMicros = Utils.getSystemNowMicrosUtc();
+            transcript.append("$ ").append(String.join(" ", command)).append('\n');
+            if (output != null) {
+                transcript.append(output);
+            }
+            int overflow = transcript.length() - maxTranscriptLength;
+            if (overflow > 0) {
+                transcript.delete(0, overflow);
+                transcriptStartOffset += overflow;
+            }
+            toRelease = new ArrayList<>(followers);
+            followers.clear();
+        }
+        toRelease.forEach(Runnable::run);
+    }
+
+    /**
+     * Reads the transcript from the given offset. If there is no output after the offset yet and
+     * a follower is given, the follower is registered to be run on the next output instead, and
+     * <code>null</code> is returned.
+     */
+    synchronized ShellExecTranscript read(long offset, Runnable follower) {
+        long endOffset = transcriptStartOffset + transcript.length();
+        if (offset >= endOffset && follower != null && !closed) {
+            followers.add(follower);
+            return null;
+        }
+        lastActivityMicros = Utils.getSystemNowMicrosUtc();
+        ShellExecTranscript result = new ShellExecTranscript();
+        long from = Math.min(Math.max(offset, transcriptStartOffset), endOffset);
+        result.offset = from;
+        result.nextOffset = endOffset;
+        result.truncated = offset < transcriptStartOffset;
+        result.closed = closed;
+        result.output = transcript.substring((int) (from - transcriptStartOffset));
+        return result;
+    }
+
+    synchronized boolean removeFollower(Runnable follower) {
+        return followers.remove(follower);
+    }
+
+    private static boolean isBatchable(PendingCommand command) {
+        return !command.unbatched
+                && (command.state.attachStdOut == null || command.state.attachStdOut);
+    }
+
+    static String newMarker() {
+        return "--admiral-exec-" + UUID.randomUUID() + "--";
+    }
+
+    /**
+     * Builds a single shell command executing the given commands in order, each one followed by
+     * the given marker on a separate line. Each command runs in its own subshell, so that e.g. a
+     * <code>cd</code> or an <code>exit</code> does not affect the commands after it, as if they
+     * were executed on their own.
+     */
+    static String[] buildBatchCommand(List<String[]> commands, String marker) {
+        StringBuilder script = new StringBuilder();
+        for (String[] command : commands) {
+            script.append("( ");
+            for (String arg : command) {
+                script.append(quote(arg)).append(' ');
+            }
+            script.append("); printf '\\n%s\\n' ").append(quote(marker)).append('\n');
+        }
+        return new String[] { "sh", "-c", script.toString() };
+    }
+
+    /**
+     * Splits the output of a batch command built by {@link #buildBatchCommand(List, String)}
+     * into the outputs of the given number of commands. If a marker is missing, e.g. because the
+     * shell exited, the rest of the output belongs to the interrupted command and the commands
+     * after it were not executed, so the returned list has fewer outputs than commands.
+     */
+    static List<String> splitBatchOutput(String output, String marker, int count) {
+        List<String> outputs = new ArrayList<>(count);
+        String separator = '\n' + marker + '\n';
+        String rest = output == null ? "" : output;
+        for (int i = 0; i < count; i++) {
+            int index = rest.indexOf(separator);
+            if (index < 0) {
+                // the rest belongs to the command interrupted before its marker
+                outputs.add(rest);
+                break;
+            }
+            outputs.add(rest.substring(0, index));
+            rest = rest.substring(index + separator.length());
+        }
+        return outputs;
+    }
+
+    private static String quote(String arg) {
+        return '\'' + arg.replace("'", "'\\''") + '\'';
+    }
+}
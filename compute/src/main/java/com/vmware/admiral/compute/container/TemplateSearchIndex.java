@@ -0,0 +1,664 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.admiral.common.util.HostScopedInstances;
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.compute.container.CompositeDescriptionService.CompositeDescription;
+import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.TemplateSpec.TemplateType;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.LocalizableValidationException;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+
+/**
+ * Node-wide in-memory search index of the templates ({@link CompositeDescription}s), so that
+ * catalog searches do not query and merge the composite and container descriptions on every
+ * request. The name of every template and the names and images of its components are tokenized
+ * and indexed; searches rank the matching templates by relevance.
+ *
+ * The index is loaded on start and kept up to date through continuous queries for composite and
+ * container descriptions, and through {@link #update(ServiceHost, String, ServiceDocument)} and
+ * {@link #remove(ServiceHost, String)} called by the local description services, so that local
+ * changes are visible to searches right away. It is fully reloaded from time to time in case a
+ * change notification is missed; see {@link #refresh()}.
+ */
+public class TemplateSearchIndex {
+
+    public static final boolean ENABLED = !Boolean.getBoolean(
+            "com.vmware.admiral.compute.template.search.index.disabled");
+
+    public static final long REFRESH_INTERVAL_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.template.search.index.refresh.micros",
+            TimeUnit.MINUTES.toMicros(30));
+
+    private static final String COMPOSITE_DESCRIPTIONS_QUERY_ID = "template-search-composites";
+    private static final String CONTAINER_DESCRIPTIONS_QUERY_ID = "template-search-containers";
+
+    // relevance of the indexed fields
+    private static final double WEIGHT_NAME = 3;
+    private static final double WEIGHT_COMPONENT = 2;
+
+    // relevance of a match of a query term with an indexed term
+    private static final double MATCH_EXACT = 1;
+    private static final double MATCH_PREFIX = 0.75;
+    private static final double MATCH_SUBSTRING = 0.5;
+
+    /**
+     * A search result: a template or an image with its relevance to the query.
+     */
+    public static class Hit {
+        public final double score;
+        public final String key;
+        public final String name;
+        private final Supplier<TemplateSpec> template;
+
+        public Hit(double score, String key, String name, Supplier<TemplateSpec> template) {
+            this.score = score;
+            this.key = key;
+            this.name = name != null ? name.toLowerCase(Locale.ROOT) : "";
+            this.template = template;
+        }
+
+        /**
+         * Returns the found template; templates are created only for the returned pages.
+         */
+        public TemplateSpec getTemplate() {
+            return template.get();
+        }
+    }
+
+    /**
+     * Orders hits by descending relevance, then by name and key, which makes the order total and
+     * stable for cursor based pagination.
+     */
+    public static final Comparator<Hit> HIT_ORDER = Comparator
+            .comparingDouble((Hit h) -> -h.score)
+            .thenComparing(h -> h.name)
+            .thenComparing(h -> h.key);
+
+    /**
+     * A page of hits with the cursor to pass to get the next page, <code>null</code> if this is
+     * the last page.
+     */
+    public static class Page {
+        public final List<Hit> hits;
+        public final String nextCursor;
+
+        Page(List<Hit> hits, String nextCursor) {
+            this.hits = hits;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    private static class Cursor {
+        double score;
+        String name;
+        String key;
+    }
+
+    private static class ComponentEntry {
+        final String name;
+        final String image;
+        final long version;
+        long generation;
+
+        ComponentEntry(ContainerDescription description, long generation) {
+            this.name = description.name;
+            this.image = description.image;
+            this.version = description.documentVersion;
+            this.generation = generation;
+        }
+    }
+
+    private static class TemplateEntry {
+        final CompositeDescription description;
+        final Map<String, Double> terms = new HashMap<>();
+        long generation;
+
+        TemplateEntry(CompositeDescription description, long generation) {
+            this.description = description;
+            this.generation = generation;
+        }
+    }
+
+    private final ServiceHost host;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, TemplateEntry> templates = new HashMap<>();
+    private final Map<String, ComponentEntry> components = new HashMap<>();
+    private final Map<String, Set<String>> templatesByComponent = new HashMap<>();
+    // indexed term -> template link -> weight of the field the term is found in
+    private final Map<String, Map<String, Double>> postings = new HashMap<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private long generation;
+    private volatile boolean ready;
+    private volatile long lastRefreshMicros;
+
+    public static TemplateSearchIndex getInstance(ServiceHost host) {
+        return HostScopedInstances.getOrCreate(host, TemplateSearchIndex.class,
+                TemplateSearchIndex::new);
+    }
+
+    /**
+     * Updates the indexed composite or container description on the host, if there is an index.
+     * The document is copied, so the caller may keep modifying it.
+     */
+    public static void update(ServiceHost host, String documentSelfLink,
+            ServiceDocument document) {
+        TemplateSearchIndex instance = HostScopedInstances.get(host, TemplateSearchIndex.class);
+        if (instance == null || document == null) {
+            return;
+        }
+        if (document instanceof CompositeDescription) {
+            instance.putTemplate(documentSelfLink, Utils.clone((CompositeDescription) document));
+        } else if (document instanceof ContainerDescription) {
+            instance.putComponent(documentSelfLink, (ContainerDescription) document);
+        }
+    }
+
+    /**
+     * Removes the indexed composite or container description from the index on the host, if
+     * there is an index.
+     */
+    public static void remove(ServiceHost host, String documentSelfLink) {
+        TemplateSearchIndex instance = HostScopedInstances.get(host, TemplateSearchIndex.class);
+        if (instance != null && documentSelfLink != null) {
+            instance.removeDocument(documentSelfLink);
+        }
+    }
+
+    private TemplateSearchIndex(ServiceHost host) {
+        this.host = host;
+        CommonContinuousQueries.subscribeTo(host, COMPOSITE_DESCRIPTIONS_QUERY_ID,
+                Query.Builder.create().addKindFieldClause(CompositeDescription.class).build(),
+                this::onNotification);
+        CommonContinuousQueries.subscribeTo(host, CONTAINER_DESCRIPTIONS_QUERY_ID,
+                Query.Builder.create().addKindFieldClause(ContainerDescription.class).build(),
+                this::onNotification);
+        refresh();
+    }
+
+    /**
+     * Constructor for tests, with no subscriptions.
+     */
+    TemplateSearchIndex() {
+        this.host = null;
+        this.ready = true;
+    }
+
+    /**
+     * Whether the index has been loaded and can serve searches.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Whether the index has not been reloaded for {@link #REFRESH_INTERVAL_MICROS}.
+     */
+    public boolean isStale() {
+        return Utils.getNowMicrosUtc() - lastRefreshMicros > REFRESH_INTERVAL_MICROS;
+    }
+
+    /**
+     * Reloads all composite and container descriptions. The index keeps serving searches while
+     * loading; the entries which are not found any more are dropped once the load completes.
+     */
+    public DeferredResult<Void> refresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return DeferredResult.completed(null);
+        }
+
+        long refreshGeneration;
+        lock.writeLock().lock();
+        try {
+            refreshGeneration = ++generation;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long startMicros = Utils.getNowMicrosUtc();
+        return loadAll(ContainerDescription.class)
+                .thenCompose(ignore -> loadAll(CompositeDescription.class))
+                .whenComplete((ignore, e) -> {
+                    refreshing.set(false);
+                    if (e != null) {
+                        host.log(Level.WARNING, "Failed to load the template search index: %s",
+                                Utils.toString(e));
+                        return;
+                    }
+                    dropOlderThan(refreshGeneration);
+                    lastRefreshMicros = startMicros;
+                    ready = true;
+                    logSize();
+                });
+    }
+
+    private <T extends ServiceDocument> DeferredResult<Void> loadAll(Class<T> type) {
+        DeferredResult<Void> result = new DeferredResult<>();
+        QueryTask queryTask = QueryUtil.buildQuery(type, false);
+        QueryUtil.addExpandOption(queryTask);
+        new ServiceDocumentQuery<>(host, type).query(queryTask, (r) -> {
+            if (r.hasException()) {
+                result.fail(r.getException());
+            } else if (r.hasResult()) {
+                onDocumentChange(r.getResult());
+            } else {
+                result.complete(null);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns all templates matching the query, ordered by {@link #HIT_ORDER}. Every term of the
+     * query (separated by whitespace, '*' wildcards are ignored) must be found in the template
+     * name or in the name or image of one of its components. If tenant links are given, only
+     * templates of these tenants are returned.
+     */
+    public List<Hit> search(String query, List<String> tenantLinks, boolean parentsOnly) {
+        List<String> queryTerms = toQueryTerms(query);
+
+        List<Hit> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Map<String, Double> scores = match(queryTerms);
+            for (Map.Entry<String, Double> score : scores.entrySet()) {
+                CompositeDescription description = templates.get(score.getKey()).description;
+                if (parentsOnly && description.parentDescriptionLink != null) {
+                    continue;
+                }
+                if (tenantLinks != null && !tenantLinks.isEmpty()
+                        && (description.tenantLinks == null
+                                || Collections.disjoint(tenantLinks, description.tenantLinks))) {
+                    continue;
+                }
+                hits.add(new Hit(score.getValue(), description.documentSelfLink,
+                        description.name, () -> createTemplate(description)));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        hits.sort(HIT_ORDER);
+        return hits;
+    }
+
+    /**
+     * Returns the relevance of the given fields of an item which is not indexed, e.g. a container
+     * image found in a registry, to the query; <code>0</code> if the item does not match.
+     */
+    public static double score(String query, String name, String description) {
+        Map<String, Double> terms = new HashMap<>();
+        addTerms(terms, name, WEIGHT_NAME);
+        addTerms(terms, description, WEIGHT_COMPONENT);
+
+        double total = 0;
+        for (String queryTerm : toQueryTerms(query)) {
+            double best = 0;
+            for (Map.Entry<String, Double> term : terms.entrySet()) {
+                best = Math.max(best, term.getValue() * matchStrength(term.getKey(), queryTerm));
+            }
+            if (best == 0) {
+                // found in a registry, but with a different text matching, still include it
+                best = MATCH_SUBSTRING;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the page of the ordered hits following the given cursor.
+     */
+    public static Page page(List<Hit> orderedHits, String cursor, int limit) {
+        if (limit <= 0) {
+            throw new LocalizableValidationException("'limit' must be positive",
+                    "compute.template.search.limit");
+        }
+
+        int start = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            Hit last = decodeCursor(cursor);
+            while (start < orderedHits.size()
+                    && HIT_ORDER.compare(orderedHits.get(start), last) <= 0) {
+                start++;
+            }
+        }
+
+        int end = Math.min(start + limit, orderedHits.size());
+        List<Hit> hits = new ArrayList<>(orderedHits.subList(start, end));
+        String nextCursor = end < orderedHits.size() ? encodeCursor(hits.get(hits.size() - 1))
+                : null;
+        return new Page(hits, nextCursor);
+    }
+
+    private static String encodeCursor(Hit hit) {
+        Cursor cursor = new Cursor();
+        cursor.score = hit.score;
+        cursor.name = hit.name;
+        cursor.key = hit.key;
+        return Base64.getUrlEncoder().encodeToString(
+                Utils.toJson(cursor).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Hit decodeCursor(String encoded) {
+        try {
+            Cursor cursor = Utils.fromJson(new String(Base64.getUrlDecoder().decode(encoded),
+                    StandardCharsets.UTF_8), Cursor.class);
+            return new Hit(cursor.score, cursor.key, cursor.name, null);
+        } catch (Exception e) {
+            throw new LocalizableValidationException("Invalid cursor: " + encoded,
+                    "compute.template.search.cursor", encoded);
+        }
+    }
+
+    private void logSize() {
+        lock.readLock().lock();
+        try {
+            host.log(Level.INFO, "Loaded the template search index: %d templates, %d "
+                    + "components, %d terms", templates.size(), components.size(),
+                    postings.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void onNotification(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+        for (Object document : queryTask.results.documents.values()) {
+            onDocumentChange(document);
+        }
+    }
+
+    private void onDocumentChange(Object document) {
+        ServiceDocument serviceDocument = Utils.fromJson(document,
+                ServiceDocument.class);
+        if (serviceDocument.documentSelfLink == null) {
+            return;
+        }
+        if (Action.DELETE.toString().equals(serviceDocument.documentUpdateAction)) {
+            removeDocument(serviceDocument.documentSelfLink);
+        } else if (serviceDocument.documentSelfLink
+                .startsWith(CompositeDescriptionFactoryService.SELF_LINK)) {
+            putTemplate(serviceDocument.documentSelfLink,
+                    Utils.fromJson(document, CompositeDescription.class));
+        } else if (serviceDocument.documentSelfLink
+                .startsWith(ContainerDescriptionService.FACTORY_LINK)) {
+            putComponent(serviceDocument.documentSelfLink,
+                    Utils.fromJson(document, ContainerDescription.class));
+        }
+    }
+
+    void putTemplate(String link, CompositeDescription description) {
+        description.documentSelfLink = link;
+        lock.writeLock().lock();
+        try {
+            TemplateEntry current = templates.get(link);
+            if (current != null
+                    && current.description.documentVersion > description.documentVersion) {
+                current.generation = generation;
+                return;
+            }
+            unindexTemplate(link);
+            TemplateEntry entry = new TemplateEntry(description, generation);
+            templates.put(link, entry);
+            if (description.descriptionLinks != null) {
+                for (String componentLink : description.descriptionLinks) {
+                    templatesByComponent.computeIfAbsent(componentLink, k -> new HashSet<>())
+                            .add(link);
+                }
+            }
+            indexTemplate(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putComponent(String link, ContainerDescription description) {
+        lock.writeLock().lock();
+        try {
+            ComponentEntry current = components.get(link);
+            if (current != null && current.version > description.documentVersion) {
+                current.generation = generation;
+                return;
+            }
+            components.put(link, new ComponentEntry(description, generation));
+            reindexTemplatesOf(link);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void removeDocument(String documentSelfLink) {
+        lock.writeLock().lock();
+        try {
+            if (templates.containsKey(documentSelfLink)) {
+                unindexTemplate(documentSelfLink);
+            } else if (components.remove(documentSelfLink) != null) {
+                reindexTemplatesOf(documentSelfLink);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void dropOlderThan(long refreshGeneration) {
+        lock.writeLock().lock();
+        try {
+            List<String> staleTemplates = new ArrayList<>();
+            templates.forEach((link, entry) -> {
+                if (entry.generation < refreshGeneration) {
+                    staleTemplates.add(link);
+                }
+            });
+            staleTemplates.forEach(this::unindexTemplate);
+
+            List<String> staleComponents = new ArrayList<>();
+            components.forEach((link, entry) -> {
+                if (entry.generation < refreshGeneration) {
+                    staleComponents.add(link);
+                }
+            });
+            for (String link : staleComponents) {
+                components.remove(link);
+                reindexTemplatesOf(link);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reindexTemplatesOf(String componentLink) {
+        Set<String> templateLinks = templatesByComponent.get(componentLink);
+        if (templateLinks == null) {
+            return;
+        }
+        for (String templateLink : templateLinks) {
+            TemplateEntry entry = templates.get(templateLink);
+            if (entry != null) {
+                removePostings(entry);
+                indexTemplate(entry);
+            }
+        }
+    }
+
+    private void indexTemplate(TemplateEntry entry) {
+        entry.terms.clear();
+        addTerms(entry.terms, entry.description.name, WEIGHT_NAME);
+        if (entry.description.descriptionLinks != null) {
+            for (String componentLink : entry.description.descriptionLinks) {
+                ComponentEntry component = components.get(componentLink);
+                if (component != null) {
+                    addTerms(entry.terms, component.name, WEIGHT_COMPONENT);
+                    addTerms(entry.terms, component.image, WEIGHT_COMPONENT);
+                }
+            }
+        }
+        String link = entry.description.documentSelfLink;
+        entry.terms.forEach((term, weight) -> postings
+                .computeIfAbsent(term, k -> new HashMap<>()).put(link, weight));
+    }
+
+    private void unindexTemplate(String templateLink) {
+        TemplateEntry entry = templates.remove(templateLink);
+        if (entry == null) {
+            return;
+        }
+        removePostings(entry);
+        if (entry.description.descriptionLinks != null) {
+            for (String componentLink : entry.description.descriptionLinks) {
+                Set<String> templateLinks = templatesByComponent.get(componentLink);
+                if (templateLinks != null) {
+                    templateLinks.remove(templateLink);
+                    if (templateLinks.isEmpty()) {
+                        templatesByComponent.remove(componentLink);
+                    }
+                }
+            }
+        }
+    }
+
+    private void removePostings(TemplateEntry entry) {
+        String link = entry.description.documentSelfLink;
+        for (String term : entry.terms.keySet()) {
+            Map<String, Double> templateLinks = postings.get(term);
+            if (templateLinks != null) {
+                templateLinks.remove(link);
+                if (templateLinks.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the score of every template matching all query terms. The terms of the index are
+     * scanned for every query term since the query terms may match in the middle of an indexed
+     * term; the number of distinct terms is much lower than the number of templates.
+     */
+    private Map<String, Double> match(List<String> queryTerms) {
+        if (queryTerms.isEmpty()) {
+            Map<String, Double> all = new HashMap<>();
+            templates.keySet().forEach(link -> all.put(link, 0.0));
+            return all;
+        }
+
+        Map<String, Double> scores = null;
+        for (String queryTerm : queryTerms) {
+            Map<String, Double> termScores = new HashMap<>();
+            for (Map.Entry<String, Map<String, Double>> posting : postings.entrySet()) {
+                double strength = matchStrength(posting.getKey(), queryTerm);
+                if (strength == 0) {
+                    continue;
+                }
+                posting.getValue().forEach((link, weight) -> termScores.merge(link,
+                        weight * strength, Math::max));
+            }
+
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                Map<String, Double> previous = scores;
+                scores = new HashMap<>();
+                for (Map.Entry<String, Double> termScore : termScores.entrySet()) {
+                    Double score = previous.get(termScore.getKey());
+                    if (score != null) {
+                        scores.put(termScore.getKey(), score + termScore.getValue());
+                    }
+                }
+            }
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+        return scores;
+    }
+
+    private static double matchStrength(String indexedTerm, String queryTerm) {
+        if (indexedTerm.equals(queryTerm)) {
+            return MATCH_EXACT;
+        } else if (indexedTerm.startsWith(queryTerm)) {
+            return MATCH_PREFIX;
+        } else if (indexedTerm.contains(queryTerm)) {
+            return MATCH_SUBSTRING;
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the whole value and its alphanumeric tokens, e.g. "library/mysql-5" is indexed as
+     * "library/mysql-5", "library", "mysql" and "5".
+     */
+    private static void addTerms(Map<String, Double> terms, String value, double weight) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        String lowerCaseValue = value.toLowerCase(Locale.ROOT);
+        terms.merge(lowerCaseValue, weight, Math::max);
+        for (String token : lowerCaseValue.split("[^\\p{Alnum}]+")) {
+            if (!token.isEmpty()) {
+                terms.merge(token, weight, Math::max);
+            }
+        }
+    }
+
+    private static List<String> toQueryTerms(String query) {
+        List<String> terms = new ArrayList<>();
+        if (query == null) {
+            return terms;
+        }
+        for (String term : query.toLowerCase(Locale.ROOT).split("\\s+")) {
+            term = term.replace("*", "");
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    private static TemplateSpec createTemplate(CompositeDescription description) {
+        TemplateSpec template = Utils.fromJson(Utils.toJson(description), TemplateSpec.class);
+        template.templateType = TemplateType.COMPOSITE_DESCRIPTION;
+        return template;
+    }
+}
@@ -34,6 +34,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import com.vmware.admiral.adapter.registry.service.RegistryAdapterService;
 import com.vmware.admiral.adapter.registry.service.RegistrySearchResponse;
@@ -47,6 +48,8 @@ import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.common.util.ServiceDocumentQuery.ServiceDocumentQueryElementResult;
 import com.vmware.admiral.compute.container.CompositeDescriptionService.CompositeDescription;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.TemplateSearchIndex.Hit;
+import com.vmware.admiral.compute.container.TemplateSearchIndex.Page;
 import com.vmware.admiral.compute.container.TemplateSpec.TemplateType;
 import com.vmware.admiral.image.service.ContainerImageService;
 import com.vmware.xenon.common.LocalizableValidationException;
@@ -74,15 +77,56 @@ public class TemplateSearchService extends StatelessService {
     public static final String IMAGES_ONLY_PARAM = "imagesOnly";
     public static final String CLOSURES_ONLY_PARAM = "closuresOnly";
 
+    public static final String LIMIT_PARAM = "limit";
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final String CURSOR_PARAM = "cursor";
+
     public static class Response {
         public Collection<TemplateSpec> results;
         public boolean isPartialResult;
+
+        /**
+         * Set when the results are paginated: the value of the {@link #CURSOR_PARAM} to get the
+         * next page with, <code>null</code> on the last page.
+         */
+        public String nextCursor;
+
+        /**
+         * Set when the results are paginated: the number of results of all pages.
+         */
+        public Integer totalCount;
     }
 
     public static class ClosuresResponse {
         public Collection<ClosureDescription> results;
     }
 
+    public TemplateSearchService() {
+        super();
+        super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+        super.setMaintenanceIntervalMicros(TemplateSearchIndex.REFRESH_INTERVAL_MICROS);
+    }
+
+    @Override
+    public void handleStart(Operation start) {
+        if (TemplateSearchIndex.ENABLED) {
+            // loads the index and subscribes for changes of the templates
+            TemplateSearchIndex.getInstance(getHost());
+        }
+        start.complete();
+    }
+
+    @Override
+    public void handlePeriodicMaintenance(Operation post) {
+        if (TemplateSearchIndex.ENABLED) {
+            TemplateSearchIndex index = TemplateSearchIndex.getInstance(getHost());
+            if (index.isStale()) {
+                index.refresh();
+            }
+        }
+        post.complete();
+    }
+
     @Override
     public void handleGet(Operation get) {
         Map<String, String> queryParams = UriUtils.parseUriQueryParams(get.getUri());
@@ -97,6 +141,8 @@ public class TemplateSearchService extends StatelessService {
         boolean templatesOnly = parseBooleanParam(queryParams.remove(TEMPLATES_ONLY_PARAM));
         boolean imagesOnly = parseBooleanParam(queryParams.remove(IMAGES_ONLY_PARAM));
         boolean closuresOnly = parseBooleanParam(queryParams.remove(CLOSURES_ONLY_PARAM));
+        String limit = queryParams.remove(LIMIT_PARAM);
+        String cursor = queryParams.remove(CURSOR_PARAM);
 
         if (closuresOnly) {
             queryClosures(get, queryParams, query);
@@ -106,6 +152,16 @@ public class TemplateSearchService extends StatelessService {
                         "compute.template.search.options");
             }
 
+            Integer pageLimit = parseLimit(limit);
+            TemplateSearchIndex index = TemplateSearchIndex.ENABLED
+                    ? TemplateSearchIndex.getInstance(getHost()) : null;
+            if (index != null && index.isReady()) {
+                searchIndex(get, index, query, queryParams, templatesOnly, imagesOnly,
+                        pageLimit, cursor);
+                return;
+            }
+            String rankingQuery = query;
+
             Set<TemplateSpec> results = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
             // shared callback called by individual queries as they finish (successfully or not)
@@ -123,6 +179,13 @@ public class TemplateSearchService extends StatelessService {
                             }
 
                             if (queriesCountdown.decrementAndGet() == 0) {
+                                if (pageLimit != null || cursor != null) {
+                                    // the index is not loaded yet, rank the query results
+                                    completeSearch(get, rank(rankingQuery, results),
+                                            Boolean.TRUE.equals(isPartialResult), pageLimit,
+                                            cursor);
+                                    return;
+                                }
                                 Response response = new Response();
                                 response.results = prependOfficialResults(new ArrayList<>(results));
                                 if (isPartialResult != null) {
@@ -146,6 +209,95 @@ public class TemplateSearchService extends StatelessService {
         }
     }
 
+    /**
+     * Searches the templates in the {@link TemplateSearchIndex} and the images in the registries,
+     * and returns them ranked by relevance, paginated if a limit or a cursor is given.
+     */
+    private void searchIndex(Operation get, TemplateSearchIndex index, String query,
+            Map<String, String> queryParams, boolean templatesOnly, boolean imagesOnly,
+            Integer limit, String cursor) {
+
+        String tenantLink = queryParams.get(GROUP_PARAM);
+        List<String> tenantLinks = null;
+        if (tenantLink != null) {
+            tenantLinks = Arrays.asList(tenantLink.split("\\s*,\\s*"));
+        }
+        boolean templatesParentOnly = parseBooleanParam(queryParams
+                .remove(TEMPLATES_PARENT_ONLY_PARAM));
+
+        List<Hit> hits = new ArrayList<>();
+        if (!imagesOnly) {
+            hits.addAll(index.search(query, tenantLinks, templatesParentOnly));
+        }
+        if (templatesOnly) {
+            completeSearch(get, hits, false, limit, cursor);
+            return;
+        }
+
+        String imageQuery = queryParams.get(QUERY_PARAM);
+        List<Hit> imageHits = new ArrayList<>();
+        executeImageQuery(queryParams, (r, isPartialResult) -> {
+            if (r.hasException()) {
+                Utils.logWarning("Query failure: %s", Utils.toString(r.getException()));
+            } else if (r.hasResult()) {
+                TemplateSpec image = r.getResult();
+                imageHits.add(new Hit(TemplateSearchIndex.score(imageQuery, image.name,
+                        image.description), image.registry + "/" + image.name, image.name,
+                        () -> image));
+                return;
+            }
+            hits.addAll(imageHits);
+            hits.sort(TemplateSearchIndex.HIT_ORDER);
+            completeSearch(get, hits, isPartialResult != null && isPartialResult, limit,
+                    cursor);
+        });
+    }
+
+    private void completeSearch(Operation get, List<Hit> orderedHits, boolean isPartialResult,
+            Integer limit, String cursor) {
+        Response response = new Response();
+        response.isPartialResult = isPartialResult;
+        if (limit == null && cursor == null) {
+            response.results = prependOfficialResults(orderedHits.stream()
+                    .map(Hit::getTemplate)
+                    .collect(Collectors.toList()));
+        } else {
+            Page page = TemplateSearchIndex.page(orderedHits, cursor,
+                    limit != null ? limit : DEFAULT_PAGE_SIZE);
+            response.results = page.hits.stream()
+                    .map(Hit::getTemplate)
+                    .collect(Collectors.toList());
+            response.nextCursor = page.nextCursor;
+            response.totalCount = orderedHits.size();
+        }
+        get.setBody(response);
+        get.complete();
+    }
+
+    private static List<Hit> rank(String query, Collection<TemplateSpec> templates) {
+        List<Hit> hits = new ArrayList<>(templates.size());
+        for (TemplateSpec template : templates) {
+            String key = template.templateType == TemplateType.CONTAINER_IMAGE_DESCRIPTION
+                    ? template.registry + "/" + template.name : template.documentSelfLink;
+            hits.add(new Hit(TemplateSearchIndex.score(query, template.name,
+                    template.description), key, template.name, () -> template));
+        }
+        hits.sort(TemplateSearchIndex.HIT_ORDER);
+        return hits;
+    }
+
+    private static Integer parseLimit(String limit) {
+        if (limit == null || limit.isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+            throw new LocalizableValidationException("Invalid limit: " + limit,
+                    "compute.template.search.limit");
+        }
+    }
+
     private void queryClosures(Operation get, Map<String, String> queryParams, String query) {
         AtomicInteger queriesCountdown = new AtomicInteger(2);
         queriesCountdown.decrementAndGet();
@@ -514,8 +666,10 @@ public class TemplateSearchService extends StatelessService {
                 String.format("Search for composite descriptions, container images and closure "
                                 + "descriptions. Specify the type you are searching with one of the boolean "
                                 + "URI queries \"%s\", \"%s\", \"%s\". Specify the name of the resource "
-                                + "you are searching for with URI query with key \"%s\"",
-                        TEMPLATES_ONLY_PARAM, IMAGES_ONLY_PARAM, CLOSURES_ONLY_PARAM, QUERY_PARAM),
+                                + "you are searching for with URI query with key \"%s\". Paginate "
+                                + "the results with URI queries \"%s\" and \"%s\"",
+                        TEMPLATES_ONLY_PARAM, IMAGES_ONLY_PARAM, CLOSURES_ONLY_PARAM, QUERY_PARAM,
+                        LIMIT_PARAM, CURSOR_PARAM),
                 null);
         return d;
     }
@@ -13,6 +13,7 @@ package com.vmware.admiral.compute.container.util;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -31,6 +32,14 @@ import com.vmware.xenon.common.Utils;
 
 public class CompositeComponentNotifier {
 
+    /**
+     * Pragma of a component delete operation which doesn't notify the composite component of the
+     * deleted component. The sender of the operation is expected to notify the composite
+     * component with {@link #notifyCompositionComponentRemoval(Service, String, Collection)}.
+     */
+    public static final String PRAGMA_DIRECTIVE_SKIP_COMPOSITE_NOTIFICATION =
+            "x-admiral-skip-composite-notification";
+
     public static void notifyCompositionComponents(Service service,
             List<String> compositeComponentLinks, Action action) {
         if (compositeComponentLinks == null || compositeComponentLinks.isEmpty()) {
@@ -90,6 +99,41 @@ public class CompositeComponentNotifier {
                 }));
     }
 
+    /**
+     * Notifies the composite component of the removal of several of its components at once.
+     */
+    public static void notifyCompositionComponentRemoval(Service service,
+            String compositeComponentLink, Collection<String> componentLinks) {
+        if (compositeComponentLink == null || compositeComponentLink.isEmpty()
+                || componentLinks == null || componentLinks.isEmpty()) {
+            return;
+        }
+
+        CompositeComponent body = new CompositeComponent();
+        body.documentSelfLink = compositeComponentLink;
+        body.componentLinks = new ArrayList<>(componentLinks);
+
+        URI uri = UriUtils.extendUriWithQuery(
+                UriUtils.buildUri(service.getHost(), compositeComponentLink),
+                UriUtils.URI_PARAM_INCLUDE_DELETED, Boolean.TRUE.toString());
+
+        service.sendRequest(Operation.createPatch(uri)
+                .setBody(body)
+                .setCompletion((op, ex) -> {
+                    if (op.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND) {
+                        Utils.log(service.getClass(), service.getUri().toString(), Level.FINE,
+                                "CompositeComponent not found %s", compositeComponentLink);
+                        return;
+                    }
+                    if (ex != null) {
+                        Utils.log(service.getClass(), service.getUri().toString(), Level.WARNING,
+                                "Error notifying CompositeContainer: %s. Exception: %s",
+                                compositeComponentLink, ex instanceof CancellationException
+                                        ? "CancellationException" : Utils.toString(ex));
+                    }
+                }));
+    }
+
     public static void notifyCompositionComponentsOnChange(StatefulService service, Action action,
             List<String> newCompositeComponentLinks, List<String> currentCompositeComponentLink) {
 
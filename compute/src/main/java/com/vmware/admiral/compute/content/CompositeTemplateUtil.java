@@ -100,6 +100,11 @@ public class CompositeTemplateUtil {
      */
     public static YamlType getYamlType(String yaml) throws IOException {
         assertNotEmpty(yaml, "yaml");
+        return ParsedTemplateCache.getInstance().get(YamlType.class, yaml,
+                CompositeTemplateUtil::parseYamlType);
+    }
+
+    private static YamlType parseYamlType(String yaml) throws IOException {
         boolean isMultiYaml = YamlMapper.isMultiYaml(yaml);
         if (isMultiYaml) {
             List<String> yamls = YamlMapper.splitYaml(yaml);
@@ -138,6 +143,11 @@ public class CompositeTemplateUtil {
 
     public static DockerCompose deserializeDockerCompose(String yaml) throws IOException {
         assertNotEmpty(yaml, "yaml");
+        return ParsedTemplateCache.getInstance().get(DockerCompose.class, yaml,
+                CompositeTemplateUtil::parseDockerCompose);
+    }
+
+    private static DockerCompose parseDockerCompose(String yaml) throws IOException {
         DockerCompose entity;
         try {
             entity = YamlMapper.objectMapper().readValue(yaml.trim(),
@@ -170,9 +180,14 @@ public class CompositeTemplateUtil {
         }
     }
 
-    @SuppressWarnings("unchecked")
     public static CompositeTemplate deserializeCompositeTemplate(String yaml) throws IOException {
         assertNotEmpty(yaml, "yaml");
+        return ParsedTemplateCache.getInstance().get(CompositeTemplate.class, yaml,
+                CompositeTemplateUtil::parseCompositeTemplate);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CompositeTemplate parseCompositeTemplate(String yaml) throws IOException {
         CompositeTemplate entity;
         try {
             Map<String, Object> deserialized = YamlMapper.objectMapper().readValue(yaml.trim(),
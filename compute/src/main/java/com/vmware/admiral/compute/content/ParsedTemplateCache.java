@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.content;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Bounded LRU cache of parsed templates, keyed by the parsed type and a digest of the content.
+ * The same YAML content is often parsed many times, e.g. when a template is imported and later
+ * provisioned, and the parsing dominates the cost of these operations for large templates.
+ *
+ * The cached entities are never handed out: every hit returns a deep copy, since the callers
+ * modify the parsed entities (e.g. when evaluating the bindings). Failures are not cached.
+ */
+class ParsedTemplateCache {
+
+    static final int DEFAULT_SIZE = Integer.getInteger(
+            "com.vmware.admiral.compute.template.parsed.cache.size", 100);
+
+    private static final ParsedTemplateCache INSTANCE = new ParsedTemplateCache(DEFAULT_SIZE);
+
+    @FunctionalInterface
+    interface Parser<T> {
+        T parse(String content) throws IOException;
+    }
+
+    private final int size;
+    private final Map<String, Object> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    ParsedTemplateCache(int size) {
+        this.size = size;
+        this.entries = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                return size() > ParsedTemplateCache.this.size;
+            }
+        };
+    }
+
+    static ParsedTemplateCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a copy of the cached entity parsed from the given content, parsing and caching it
+     * if not cached yet.
+     */
+    <T> T get(Class<T> type, String content, Parser<T> parser) throws IOException {
+        if (size <= 0) {
+            return parser.parse(content);
+        }
+
+        String key = type.getName() + ':' + digest(content);
+        Object cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            return copy(type.cast(cached));
+        }
+
+        misses.incrementAndGet();
+        T parsed = parser.parse(content);
+        if (parsed != null) {
+            synchronized (entries) {
+                entries.put(key, copy(parsed));
+            }
+        }
+        return parsed;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static <T> T copy(T entity) {
+        // enum constants and strings are immutable
+        if (entity instanceof Enum || entity instanceof String) {
+            return entity;
+        }
+        return Utils.clone(entity);
+    }
+
+    private static String digest(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(
+                    digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -13,14 +13,22 @@ package com.vmware.admiral.compute.kubernetes.service;
 
 import static com.vmware.admiral.common.util.ServiceUtils.addServiceRequestRoute;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import com.vmware.admiral.adapter.common.AdapterRequest;
 import com.vmware.admiral.adapter.common.KubernetesOperationType;
 import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.LogBuffer;
 import com.vmware.admiral.compute.content.kubernetes.KubernetesUtil;
 import com.vmware.admiral.compute.kubernetes.entities.pods.Container;
 import com.vmware.admiral.compute.kubernetes.service.PodService.PodState;
@@ -33,9 +41,108 @@ import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 
+/**
+ * Serves the logs of the containers of a pod.
+ *
+ * The logs are fetched incrementally by the kubernetes adapter: every fetch only asks for the
+ * lines after the last one fetched so far, and the adapter sends the new lines back with a
+ * {@link PodLogUpdate} PATCH request. The lines are kept in a bounded in-memory buffer per
+ * container, so a log is neither downloaded nor persisted as a whole again. Reading the logs
+ * triggers the next fetch; concurrent reads of the same pod share a single fetch.
+ *
+ * A GET request with only the pod id returns the buffered logs of all containers of the pod. A
+ * GET request for a single container with {@link #LOG_OFFSET_QUERY_PARAM} or
+ * {@link #LOG_TAIL_QUERY_PARAM} returns only the requested range of its log, so that clients can
+ * poll for the new lines, optionally waiting for them with {@link #LOG_FOLLOW_QUERY_PARAM}.
+ */
 public class PodLogService extends StatelessService {
     public static final String SELF_LINK = ManagementUriParts.KUBERNETES_POD_LOGS;
     public static final String POD_ID_QUERY_PARAM = "id";
+    /** Read the log of the given container of the pod only. */
+    public static final String CONTAINER_QUERY_PARAM = "container";
+    /** Read the container log starting from the given offset. */
+    public static final String LOG_OFFSET_QUERY_PARAM = "offset";
+    /** Read the given number of bytes from the end of the container log. */
+    public static final String LOG_TAIL_QUERY_PARAM = "tail";
+    /** Wait for new log lines if there are none at the requested offset. */
+    public static final String LOG_FOLLOW_QUERY_PARAM = "follow";
+
+    /**
+     * Prefix of the custom properties of the adapter request with the timestamp of the last
+     * fetched log line of a container, followed by the container name.
+     */
+    public static final String SINCE_TIME_PROP_NAME_PREFIX = "__podLogSinceTime.";
+
+    private static final int MAX_LOG_BUFFER_SIZE_BYTES = Integer.getInteger(
+            "com.vmware.admiral.compute.kubernetes.pod.log.buffer.size.bytes", 256 * 1024);
+
+    private static final int MAX_BUFFERED_PODS = Integer.getInteger(
+            "com.vmware.admiral.compute.kubernetes.pod.log.max.buffered.pods", 128);
+
+    private static final long LOG_FETCH_TIMEOUT_MICROS = TimeUnit.SECONDS.toMicros(
+            Long.getLong("com.vmware.admiral.compute.kubernetes.pod.log.fetch.timeout.seconds",
+                    30));
+
+    private static final int LOG_FOLLOW_TIMEOUT_SECONDS = Integer.getInteger(
+            "com.vmware.admiral.compute.kubernetes.pod.log.follow.timeout.seconds", 30);
+
+    private static final int MAX_LOG_READ_BYTES = 64 * 1024;
+
+    /**
+     * New log lines of the containers of a pod, sent by the adapter.
+     */
+    public static class PodLogUpdate {
+        public String podLink;
+
+        /** The new log lines by container name. */
+        public Map<String, String> logs;
+
+        /** The timestamp of the last fetched log line by container name. */
+        public Map<String, String> sinceTimes;
+    }
+
+    /**
+     * A range of the log of a container.
+     */
+    public static class ContainerLogs {
+        /** Offset of the returned log data. */
+        public long offset;
+
+        /** Offset to read the log from next. */
+        public long nextOffset;
+
+        /** Whether the log data before the requested offset is no longer available. */
+        public boolean truncated;
+
+        public byte[] logs;
+    }
+
+    private static class ContainerLogBuffer {
+        final LogBuffer buffer = new LogBuffer(MAX_LOG_BUFFER_SIZE_BYTES);
+        String sinceTime;
+    }
+
+    private static class PodLogs {
+        final Map<String, ContainerLogBuffer> containers = new HashMap<>();
+        final List<Runnable> followers = new ArrayList<>();
+        // start of the fetch in progress, 0 if none
+        long fetchStartMicros;
+
+        ContainerLogBuffer getContainer(String containerName) {
+            return containers.computeIfAbsent(containerName, k -> new ContainerLogBuffer());
+        }
+    }
+
+    // the buffered logs by pod link, the least recently used pods are dropped
+    private final Map<String, PodLogs> pods = new LinkedHashMap<String, PodLogs>(16, 0.75f,
+            true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PodLogs> eldest) {
+            return size() > MAX_BUFFERED_PODS;
+        }
+    };
 
     @Override
     public void handleGet(Operation get) {
@@ -56,48 +163,192 @@ public class PodLogService extends StatelessService {
                         get.fail(ex);
                     } else {
                         PodState podState = o.getBody(PodState.class);
-                        processPodState(get, podState);
+                        String containerName = params.get(CONTAINER_QUERY_PARAM);
+                        if (containerName == null) {
+                            processPodState(get, podState);
+                        } else {
+                            processContainerLogs(get, podState, containerName, params);
+                        }
                     }
                 }));
     }
 
+    @Override
+    public void handlePatch(Operation patch) {
+        PodLogUpdate update = patch.getBody(PodLogUpdate.class);
+        if (update.podLink == null) {
+            patch.fail(new IllegalArgumentException("'podLink' is required"));
+            return;
+        }
+
+        List<Runnable> followers;
+        synchronized (pods) {
+            PodLogs podLogs = pods.computeIfAbsent(update.podLink, k -> new PodLogs());
+            if (update.logs != null) {
+                update.logs.forEach((containerName, log) -> podLogs.getContainer(containerName)
+                        .buffer.append(log.getBytes(StandardCharsets.UTF_8)));
+            }
+            if (update.sinceTimes != null) {
+                update.sinceTimes.forEach((containerName, sinceTime) -> podLogs
+                        .getContainer(containerName).sinceTime = sinceTime);
+            }
+            podLogs.fetchStartMicros = 0;
+            followers = new ArrayList<>(podLogs.followers);
+            podLogs.followers.clear();
+        }
+        followers.forEach(Runnable::run);
+
+        patch.complete();
+    }
+
     private void processPodState(Operation get, PodState podState) {
         Map<String, LogServiceState> resultLogs = new ConcurrentHashMap<>();
-        logInfo("Getting logs for following containers: %s",
+        logFine("Getting logs for following containers: %s",
                 podState.pod.spec.containers.stream()
                         .map(c -> c.name).collect(Collectors.toList()));
-        AtomicInteger counter = new AtomicInteger(podState.pod.spec.containers.size());
 
+        PodLogs podLogs;
+        synchronized (pods) {
+            podLogs = pods.get(podState.documentSelfLink);
+            if (podLogs != null) {
+                for (Container container : podState.pod.spec.containers) {
+                    ContainerLogBuffer containerLogs = podLogs.containers.get(container.name);
+                    LogServiceState log = new LogServiceState();
+                    log.logs = containerLogs == null || containerLogs.buffer.isEmpty()
+                            ? "--".getBytes()
+                            : containerLogs.buffer.tail(MAX_LOG_BUFFER_SIZE_BYTES);
+                    log.tenantLinks = podState.tenantLinks;
+                    resultLogs.put(container.name, log);
+                }
+            }
+        }
+
+        if (podLogs != null) {
+            get.setBody(resultLogs);
+            get.complete();
+            fetchLogs(podState);
+            return;
+        }
+
+        // the logs of the pod have not been fetched yet, serve the persisted ones, if any
+        AtomicInteger counter = new AtomicInteger(podState.pod.spec.containers.size());
         for (Container container : podState.pod.spec.containers) {
             String podLogLink = KubernetesUtil.buildLogUriPath(podState, container.name);
 
             sendRequest(Operation.createGet(this, podLogLink)
                     .setCompletion((o, ex) -> {
+                        LogServiceState log;
                         if (ex != null) {
-                            logWarning("Couldn't get logs for container: %s, reason: %s",
-                                    podLogLink, Utils.toString(ex));
-                            LogServiceState log = new LogServiceState();
+                            log = new LogServiceState();
                             log.logs = "--".getBytes();
                             log.tenantLinks = podState.tenantLinks;
-                            resultLogs.put(container.name, log);
                         } else {
-                            LogServiceState log = o.getBody(LogServiceState.class);
-                            logInfo("Fetched log for container: %s, log: %s",
-                                    container.name, new String(log.logs));
-                            resultLogs.put(container.name, log);
+                            log = o.getBody(LogServiceState.class);
                         }
+                        resultLogs.put(container.name, log);
                         if (counter.decrementAndGet() == 0) {
                             get.setBody(resultLogs);
                             get.complete();
-                            createAdapterRequest(podState);
+                            fetchLogs(podState);
                         }
                     }));
         }
+    }
 
+    private void processContainerLogs(Operation get, PodState podState, String containerName,
+            Map<String, String> params) {
+        if (podState.pod.spec.containers.stream().noneMatch(c -> containerName.equals(c.name))) {
+            get.fail(new IllegalArgumentException(String.format(
+                    "Pod %s has no container %s", podState.documentSelfLink, containerName)));
+            return;
+        }
+
+        long offset;
+        try {
+            if (params.containsKey(LOG_TAIL_QUERY_PARAM)) {
+                long tail = Long.parseLong(params.get(LOG_TAIL_QUERY_PARAM));
+                synchronized (pods) {
+                    offset = Math.max(0, getContainerLogs(podState, containerName)
+                            .buffer.getEndOffset() - tail);
+                }
+            } else {
+                offset = Long.parseLong(params.getOrDefault(LOG_OFFSET_QUERY_PARAM, "0"));
+            }
+        } catch (NumberFormatException e) {
+            get.fail(new IllegalArgumentException("Invalid log offset: " + e.getMessage()));
+            return;
+        }
+
+        boolean follow = Boolean.parseBoolean(params.get(LOG_FOLLOW_QUERY_PARAM));
+        readLogs(get, podState, containerName, offset, follow);
+        fetchLogs(podState);
     }
 
-    private void createAdapterRequest(PodState pod) {
+    private void readLogs(Operation get, PodState podState, String containerName, long offset,
+            boolean follow) {
+        LogBuffer.Chunk chunk;
+        synchronized (pods) {
+            chunk = getContainerLogs(podState, containerName).buffer.read(offset,
+                    MAX_LOG_READ_BYTES);
+            if (chunk.data.length == 0 && follow) {
+                // wait for the fetch triggered by the request to complete or for the timeout
+                AtomicBoolean resumed = new AtomicBoolean();
+                Runnable resume = () -> {
+                    if (resumed.compareAndSet(false, true)) {
+                        readLogs(get, podState, containerName, offset, false);
+                    }
+                };
+                List<Runnable> followers = pods.get(podState.documentSelfLink).followers;
+                followers.add(resume);
+                getHost().schedule(() -> {
+                    synchronized (pods) {
+                        followers.remove(resume);
+                    }
+                    resume.run();
+                }, LOG_FOLLOW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                return;
+            }
+        }
+
+        ContainerLogs logs = new ContainerLogs();
+        logs.offset = chunk.offset;
+        logs.nextOffset = chunk.nextOffset;
+        logs.truncated = chunk.truncated;
+        logs.logs = chunk.data;
+        get.setBody(logs).complete();
+    }
+
+    /**
+     * Returns the buffered log of the given container. Must be called holding the pods lock.
+     */
+    private ContainerLogBuffer getContainerLogs(PodState podState, String containerName) {
+        return pods.computeIfAbsent(podState.documentSelfLink, k -> new PodLogs())
+                .getContainer(containerName);
+    }
+
+    /**
+     * Asks the adapter for the log lines of the pod after the ones fetched so far, unless such a
+     * fetch is already in progress.
+     */
+    private void fetchLogs(PodState pod) {
         AdapterRequest request = new AdapterRequest();
+        request.customProperties = new HashMap<>();
+        synchronized (pods) {
+            PodLogs podLogs = pods.computeIfAbsent(pod.documentSelfLink, k -> new PodLogs());
+            long now = Utils.getSystemNowMicrosUtc();
+            if (podLogs.fetchStartMicros > 0
+                    && podLogs.fetchStartMicros + LOG_FETCH_TIMEOUT_MICROS > now) {
+                return;
+            }
+            podLogs.fetchStartMicros = now;
+            podLogs.containers.forEach((containerName, containerLogs) -> {
+                if (containerLogs.sinceTime != null) {
+                    request.customProperties.put(SINCE_TIME_PROP_NAME_PREFIX + containerName,
+                            containerLogs.sinceTime);
+                }
+            });
+        }
+
         request.resourceReference = UriUtils.buildPublicUri(getHost(), pod.documentSelfLink);
         request.operationTypeId = KubernetesOperationType.FETCH_LOGS.id;
         request.serviceTaskCallback = ServiceTaskCallback.createEmpty();
@@ -108,6 +359,12 @@ public class PodLogService extends StatelessService {
                     if (ex != null) {
                         logWarning("Adapter request for container logs %s failed. Error: %s",
                                 pod.documentSelfLink, Utils.toString(ex));
+                        synchronized (pods) {
+                            PodLogs podLogs = pods.get(pod.documentSelfLink);
+                            if (podLogs != null) {
+                                podLogs.fetchStartMicros = 0;
+                            }
+                        }
                     }
                 }));
     }
@@ -119,9 +376,18 @@ public class PodLogService extends StatelessService {
                 String.format("Get container logs for all containers in a pod. Provide the "
                                 + "PodState id in URI query parameter with key \"%s\". The response body "
                                 + "is map where the key is string containing the container name "
-                                + "and the value is LogServiceState object.",
-                        POD_ID_QUERY_PARAM),
+                                + "and the value is LogServiceState object. To read only a range "
+                                + "of the log of a container, provide its name with key \"%s\" "
+                                + "and the offset to read from with key \"%s\" or the number of "
+                                + "bytes to read from the end with key \"%s\". The response body "
+                                + "is then a ContainerLogs object with the offset to read the new "
+                                + "log lines from next. Set \"%s\" to true to wait for new lines.",
+                        POD_ID_QUERY_PARAM, CONTAINER_QUERY_PARAM, LOG_OFFSET_QUERY_PARAM,
+                        LOG_TAIL_QUERY_PARAM, LOG_FOLLOW_QUERY_PARAM),
                 Map.class);
+        addServiceRequestRoute(d, Action.PATCH,
+                "Append the new log lines of the containers of a pod fetched by the adapter.",
+                null);
         return d;
     }
 }
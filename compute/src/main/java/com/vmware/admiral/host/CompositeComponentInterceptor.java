@@ -104,6 +104,10 @@ public class CompositeComponentInterceptor {
                         compositeComponentLink, op.getAction());
             });
         } else if (op.getAction() == Action.DELETE) {
+            if (op.hasPragmaDirective(
+                    CompositeComponentNotifier.PRAGMA_DIRECTIVE_SKIP_COMPOSITE_NOTIFICATION)) {
+                return null;
+            }
             ResourceState state = service.getState(op);
             String compositeComponentLink = retrieveLink(state);
             CompositeComponentNotifier.notifyCompositionComponent(service, state,
@@ -18,6 +18,7 @@ import com.vmware.admiral.closures.services.closuredescription.ClosureDescriptio
 import com.vmware.admiral.closures.services.closuredescription.ClosureDescriptionFactoryService;
 import com.vmware.admiral.compute.ComputeSearchService;
 import com.vmware.admiral.compute.ConfigureHostOverSshTaskService;
+import com.vmware.admiral.compute.ContainerHostOnboardingTaskService;
 import com.vmware.admiral.compute.ContainerHostService;
 import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService;
 import com.vmware.admiral.compute.ElasticPlacementZoneService;
@@ -157,6 +158,7 @@ public class HostInitComputeServicesConfig extends HostInitServiceHelper {
                 ElasticPlacementZoneService.class,
                 EpzComputeEnumerationTaskService.class,
                 PlacementCapacityUpdateTaskService.class,
+                ContainerHostOnboardingTaskService.class,
                 KubernetesDescriptionService.class,
                 EndpointHealthCheckTaskService.class,
                 PodService.class,
@@ -21,6 +21,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import com.vmware.admiral.adapter.common.AdapterRequest;
@@ -38,9 +41,9 @@ import com.vmware.admiral.log.EventLogService;
 import com.vmware.admiral.log.EventLogService.EventLogState;
 import com.vmware.admiral.log.EventLogService.EventLogState.EventLogType;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
+import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.LocalizableValidationException;
 import com.vmware.xenon.common.Operation;
-import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
@@ -54,6 +57,13 @@ public class ContainerImageService extends StatelessService {
 
     public static final String TENANT_LINKS_PARAM_NAME = "tenantLinks";
 
+    /**
+     * Time after which the search completes with the results of the registries which responded,
+     * without waiting for the rest.
+     */
+    private static final long SEARCH_LATENCY_BUDGET_MILLIS = Long.getLong(
+            "com.vmware.admiral.image.search.latency.budget.millis", 10000);
+
     @Override
     public void handleRequest(Operation op) {
         if (op.getAction() != Action.GET) {
@@ -148,60 +158,97 @@ public class ContainerImageService extends StatelessService {
 
         final int limit = parsedLimit != null ? parsedLimit : 0;
 
-        List<Operation> searchOperations = new ArrayList<Operation>(searchRegistryLinks.size());
-        for (String registryLink : searchRegistryLinks) {
-            Operation searchOp = createSearchOperation(registryAdapterUri, queryParams,
-                    registryLink);
+        RegistryResponseCache cache = RegistryResponseCache.getInstance(getHost());
+        List<RegistrySearchResponse> responses = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        AtomicInteger remaining = new AtomicInteger(searchRegistryLinks.size());
+        AtomicBoolean completed = new AtomicBoolean();
 
-            searchOperations.add(searchOp);
-        }
+        Runnable completion = () -> {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            int pending = remaining.get();
+            if (pending > 0) {
+                logWarning("%d registries did not respond to search within %d ms, returning"
+                        + " partial results", pending, SEARCH_LATENCY_BUDGET_MILLIS);
+            }
+            synchronized (responses) {
+                completeSearch(op, new ArrayList<>(responses), new ArrayList<>(failures),
+                        pending > 0, limit, tenantLink);
+            }
+        };
 
-        OperationJoin join = OperationJoin.create(searchOperations
-                .toArray(new Operation[searchOperations.size()]));
+        for (String registryLink : searchRegistryLinks) {
+            String key = RegistryResponseCache.buildKey(ImageOperationType.SEARCH.id,
+                    registryLink, queryParams);
+            cache.get(key, () -> searchRegistry(registryAdapterUri, queryParams, registryLink))
+                    .whenComplete((response, e) -> {
+                        synchronized (responses) {
+                            if (e != null) {
+                                failures.add(e);
+                            } else {
+                                responses.add(response);
+                            }
+                        }
+                        if (remaining.decrementAndGet() == 0) {
+                            completion.run();
+                        }
+                    });
+        }
 
-        join.setCompletion((searchOps, failures) -> {
-            // failures are ignored, so search results will be returned even if only some of the
-            // requests were successful
-            RegistrySearchResponse mergedResponse = new RegistrySearchResponse();
-            for (Operation searchOp : searchOps.values()) {
-                if (searchOp.hasBody()) {
-                    RegistrySearchResponse registryResponse = searchOp
-                            .getBody(RegistrySearchResponse.class);
+        // a slow registry does not hold back the results of the others
+        if (!completed.get()) {
+            getHost().schedule(completion, SEARCH_LATENCY_BUDGET_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
 
-                    if (registryResponse.results == null) {
-                        continue;
+    private DeferredResult<RegistrySearchResponse> searchRegistry(URI registryAdapterUri,
+            Map<String, String> queryParams, String registryLink) {
+        return sendWithDeferredResult(
+                createSearchOperation(registryAdapterUri, queryParams, registryLink),
+                RegistrySearchResponse.class)
+                .thenApply((registryResponse) -> {
+                    if (registryResponse.results != null) {
+                        for (Result result : registryResponse.results) {
+                            result.name = UriUtilsExtended.extractHostAndPort(result.registry)
+                                    + "/" + result.name;
+                        }
                     }
+                    return registryResponse;
+                });
+    }
 
-                    for (Result result : registryResponse.results) {
-                        result.name = UriUtilsExtended.extractHostAndPort(result.registry) + "/"
-                                + result.name;
-                    }
-                    mergedResponse.merge(registryResponse);
-                }
+    private void completeSearch(Operation op, List<RegistrySearchResponse> responses,
+            List<Throwable> failures, boolean timedOut, int limit, String tenantLink) {
+        // failures are ignored, so search results will be returned even if only some of the
+        // requests were successful
+        RegistrySearchResponse mergedResponse = new RegistrySearchResponse();
+        for (RegistrySearchResponse registryResponse : responses) {
+            if (registryResponse.results != null) {
+                mergedResponse.merge(registryResponse);
             }
+        }
 
-            logFailures(failures, tenantLink);
-
-            if (failures != null && !failures.isEmpty()) {
-                mergedResponse.isPartialResult = true;
-            }
+        logFailures(failures, tenantLink);
 
-            if (limit > 0) {
-                mergedResponse.limit(limit);
-            }
+        if (!failures.isEmpty() || timedOut) {
+            mergedResponse.isPartialResult = true;
+        }
 
-            // pagination doesn't make sense when querying over multiple registries
-            mergedResponse.page = -1;
-            mergedResponse.pageSize = -1;
-            mergedResponse.numPages = -1;
-            op.setBody(mergedResponse);
+        if (limit > 0 && mergedResponse.results != null) {
+            mergedResponse.limit(limit);
+        }
 
-            logFine("Search result: %s", Utils.toJsonHtml(mergedResponse));
+        // pagination doesn't make sense when querying over multiple registries
+        mergedResponse.page = -1;
+        mergedResponse.pageSize = -1;
+        mergedResponse.numPages = -1;
+        op.setBody(mergedResponse);
 
-            op.complete();
-        });
+        logFine("Search result: %s", Utils.toJsonHtml(mergedResponse));
 
-        join.sendWith(this);
+        op.complete();
     }
 
     private Operation createSearchOperation(URI registryAdapterUri,
@@ -220,13 +267,13 @@ public class ContainerImageService extends StatelessService {
         return adapterOp;
     }
 
-    private void logFailures(Map<Long, Throwable> failures, String tenantLink) {
-        if (failures == null || failures.isEmpty()) {
+    private void logFailures(List<Throwable> failures, String tenantLink) {
+        if (failures.isEmpty()) {
             return;
         }
 
-        List<String> errors = new ArrayList<>(failures.values().size());
-        for (Throwable t: failures.values()) {
+        List<String> errors = new ArrayList<>(failures.size());
+        for (Throwable t: failures) {
             logWarning("Failed to perform registry search: %s", t.getMessage());
             errors.add(t.getMessage());
         }
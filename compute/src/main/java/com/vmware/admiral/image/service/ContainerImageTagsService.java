@@ -109,19 +109,21 @@ public class ContainerImageTagsService extends StatelessService {
         listTagsRequest.customProperties = Collections.singletonMap(SEARCH_QUERY_PROP_NAME,
                 imageName);
 
-        Operation adapterOp = Operation.createPatch(registryAdapterUri)
-                .setBody(listTagsRequest)
-                .setCompletion((o, e) -> {
+        String key = RegistryResponseCache.buildKey(ImageOperationType.LIST_TAGS.id,
+                registryLink, listTagsRequest.customProperties);
+        RegistryResponseCache.getInstance(getHost())
+                .get(key, () -> sendWithDeferredResult(Operation.createPatch(registryAdapterUri)
+                        .setBody(listTagsRequest))
+                        .thenApply(Operation::getBodyRaw))
+                .whenComplete((tags, e) -> {
                     if (e != null) {
                         op.fail(e);
                         return;
                     }
 
-                    op.setBody(o.getBodyRaw());
+                    op.setBody(tags);
                     op.complete();
                 });
-
-        sendRequest(adapterOp);;
     }
 
     @Override
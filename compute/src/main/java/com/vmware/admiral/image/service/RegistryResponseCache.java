@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.image.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.vmware.admiral.common.util.HostScopedInstances;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Node-wide cache of registry adapter responses (image searches, tag lists), so that the
+ * identical requests produced by typeahead and template import do not hit the registries again
+ * within a few seconds. Entries are keyed by registry and request parameters. The tenant does not
+ * need to be part of the key, it only determines which registries are searched. Concurrent
+ * identical requests share a single adapter request and failures are not cached.
+ */
+public class RegistryResponseCache {
+
+    private static final long ENTRY_EXPIRATION_MICROS = Long.getLong(
+            "com.vmware.admiral.image.registry.response.cache.expiration.micros",
+            TimeUnit.SECONDS.toMicros(30));
+
+    private static final int MAX_ENTRIES = Integer.getInteger(
+            "com.vmware.admiral.image.registry.response.cache.max.entries", 1000);
+
+    private static class CacheEntry {
+        final DeferredResult<?> response;
+        final long expirationMicros;
+
+        CacheEntry(DeferredResult<?> response, long expirationMicros) {
+            this.response = response;
+            this.expirationMicros = expirationMicros;
+        }
+    }
+
+    private final long expirationMicros;
+    private final int maxEntries;
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    public static RegistryResponseCache getInstance(ServiceHost host) {
+        return HostScopedInstances.getOrCreate(host, RegistryResponseCache.class,
+                (h) -> new RegistryResponseCache(ENTRY_EXPIRATION_MICROS, MAX_ENTRIES));
+    }
+
+    /**
+     * Builds the cache key of a request to the given registry with the given parameters.
+     */
+    public static String buildKey(String operation, String registryLink,
+            Map<String, String> params) {
+        return operation + ":" + registryLink + ":" + new TreeMap<>(params);
+    }
+
+    RegistryResponseCache(long expirationMicros, int maxEntries) {
+        this.expirationMicros = expirationMicros;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the cached response for the given key, or the one being loaded by a concurrent
+     * caller, or starts loading it with the given loader.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> DeferredResult<T> get(String key, Supplier<DeferredResult<T>> loader) {
+        long now = Utils.getSystemNowMicrosUtc();
+        DeferredResult<T> response = new DeferredResult<>();
+        CacheEntry newEntry = new CacheEntry(response, now + expirationMicros);
+        CacheEntry entry = cache.compute(key,
+                (k, v) -> v != null && v.expirationMicros > now ? v : newEntry);
+        if (entry != newEntry) {
+            return (DeferredResult<T>) entry.response;
+        }
+
+        if (cache.size() > maxEntries) {
+            evictExpired(now);
+        }
+
+        DeferredResult<T> loaded;
+        try {
+            loaded = loader.get();
+        } catch (Throwable e) {
+            loaded = DeferredResult.failed(e);
+        }
+        loaded.whenComplete((r, e) -> {
+            if (e != null) {
+                // do not cache failures
+                cache.remove(key, newEntry);
+                response.fail(e instanceof CompletionException && e.getCause() != null
+                        ? e.getCause() : e);
+            } else {
+                response.complete(r);
+            }
+        });
+        return response;
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    private void evictExpired(long now) {
+        cache.values().removeIf((e) -> e.expirationMicros <= now);
+        if (cache.size() > maxEntries) {
+            // many distinct requests within the expiration time, start over
+            cache.clear();
+        }
+    }
+}
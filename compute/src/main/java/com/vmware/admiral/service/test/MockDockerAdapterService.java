@@ -474,6 +474,18 @@ public class MockDockerAdapterService extends BaseMockAdapterService {
         CONTAINER_IDS.get(hostId).put(containerId, containerReference);
     }
 
+    public static synchronized void removeContainerId(String hostId, String containerId) {
+        if (CONTAINER_IDS.containsKey(hostId)) {
+            CONTAINER_IDS.get(hostId).remove(containerId);
+        }
+        if (CONTAINER_IDS_AND_NAMES.containsKey(hostId)) {
+            CONTAINER_IDS_AND_NAMES.get(hostId).remove(containerId);
+        }
+        if (CONTAINER_IDS_AND_IMAGE.containsKey(hostId)) {
+            CONTAINER_IDS_AND_IMAGE.get(hostId).remove(containerId);
+        }
+    }
+
     public static synchronized Set<String> getContainerIds() {
         Set<String> containerIds = new HashSet<>();
         for (Map<String, String> containerIdsByHost : CONTAINER_IDS.values()) {
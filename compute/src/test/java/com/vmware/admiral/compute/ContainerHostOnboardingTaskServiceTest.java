@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.ContainerHostOnboardingTaskService.ContainerHostOnboardingTaskState;
+import com.vmware.admiral.compute.ContainerHostOnboardingTaskService.ContainerHostOnboardingTaskState.HostOnboardingStage;
+import com.vmware.admiral.compute.ContainerHostOnboardingTaskService.ContainerHostOnboardingTaskState.HostOnboardingStatus;
+import com.vmware.admiral.compute.ContainerHostService.ContainerHostSpec;
+import com.vmware.admiral.compute.container.ComputeBaseTest;
+import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.service.test.MockDockerHostAdapterService;
+import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.UriUtils;
+
+public class ContainerHostOnboardingTaskServiceTest extends ComputeBaseTest {
+
+    @Before
+    public void setUp() throws Throwable {
+        waitForServiceAvailability(ContainerHostService.SELF_LINK);
+        waitForServiceAvailability(ContainerHostOnboardingTaskService.FACTORY_LINK);
+
+        host.startService(Operation.createPost(UriUtils.buildUri(host,
+                MockDockerHostAdapterService.class)), new MockDockerHostAdapterService());
+        waitForServiceAvailability(MockDockerHostAdapterService.SELF_LINK);
+
+        doPost(ContainerHostServiceTest.createResourcePoolState(),
+                ResourcePoolService.FACTORY_LINK);
+    }
+
+    @Test
+    public void testAddsHosts() throws Throwable {
+        ContainerHostOnboardingTaskState task = new ContainerHostOnboardingTaskState();
+        task.hostSpecs = Arrays.asList(createHostSpec("host1"), createHostSpec("host2"));
+        task = doPost(task, ContainerHostOnboardingTaskService.FACTORY_LINK);
+
+        task = waitForTaskSuccess(task.documentSelfLink, ContainerHostOnboardingTaskState.class);
+        assertEquals(2, task.hostStatuses.size());
+        for (HostOnboardingStatus status : task.hostStatuses.values()) {
+            assertEquals(HostOnboardingStage.ADDED, status.stage);
+            assertNotNull(getDocument(ComputeState.class, status.hostLink));
+        }
+    }
+
+    @Test
+    public void testFailedHostDoesNotBlockOthers() throws Throwable {
+        // the first host already exists
+        ContainerHostSpec existing = createHostSpec("host1");
+        doPost(existing.hostState, ComputeService.FACTORY_LINK);
+
+        ContainerHostOnboardingTaskState task = new ContainerHostOnboardingTaskState();
+        task.hostSpecs = Arrays.asList(createHostSpec("host1"), createHostSpec("host2"));
+        task = doPost(task, ContainerHostOnboardingTaskService.FACTORY_LINK);
+
+        task = waitForTaskError(task.documentSelfLink, ContainerHostOnboardingTaskState.class);
+        HostOnboardingStatus failed = task.hostStatuses.get("host1");
+        assertEquals(HostOnboardingStage.FAILED, failed.stage);
+        assertNull(failed.hostLink);
+        assertNotNull(failed.failureMessage);
+
+        HostOnboardingStatus added = task.hostStatuses.get("host2");
+        assertEquals(HostOnboardingStage.ADDED, added.stage);
+        assertNotNull(getDocument(ComputeState.class, added.hostLink));
+    }
+
+    @Test
+    public void testRejectsDuplicateAddresses() throws Throwable {
+        ContainerHostOnboardingTaskState task = new ContainerHostOnboardingTaskState();
+        task.hostSpecs = Arrays.asList(createHostSpec("host1"), createHostSpec("host1"));
+        doOperation(task, UriUtils.buildUri(host, ContainerHostOnboardingTaskService.FACTORY_LINK),
+                true, Action.POST);
+    }
+
+    private static ContainerHostSpec createHostSpec(String address) throws Throwable {
+        ContainerHostSpec hostSpec = ContainerHostServiceTest.createContainerHostSpec(
+                new ArrayList<>(),
+                ContainerHostServiceTest.SECOND_COMPUTE_DESC_ID);
+        hostSpec.hostState.address = address;
+        hostSpec.hostState.customProperties.put(ComputeConstants.DOCKER_URI_PROP_NAME,
+                ContainerDescription.getDockerHostUri(hostSpec.hostState).toString());
+        return hostSpec;
+    }
+}
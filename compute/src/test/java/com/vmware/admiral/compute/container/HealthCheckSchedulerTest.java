@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HealthCheckSchedulerTest {
+
+    private ScheduledExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testScheduleCoalescesPendingChecks() throws Throwable {
+        HealthCheckScheduler scheduler = new HealthCheckScheduler(executor, 10, 10, 10);
+        CountDownLatch latch = new CountDownLatch(1);
+        List<Runnable> pending = new CopyOnWriteArrayList<>();
+
+        assertTrue(scheduler.schedule("container-1", "host-1", 0, (done) -> {
+            pending.add(done);
+            latch.countDown();
+        }));
+        assertFalse(scheduler.schedule("container-1", "host-1", 0, (done) -> done.run()));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        // the check is still running, so no new one is accepted
+        assertFalse(scheduler.schedule("container-1", "host-1", 0, (done) -> done.run()));
+        assertEquals(1, scheduler.getRunningCount());
+
+        pending.get(0).run();
+        assertEquals(0, scheduler.getRunningCount());
+        assertEquals(0, scheduler.getScheduledCount());
+        assertTrue(scheduler.schedule("container-1", "host-1", 0, (done) -> done.run()));
+    }
+
+    @Test
+    public void testConcurrencyLimitPerHost() throws Throwable {
+        HealthCheckScheduler scheduler = new HealthCheckScheduler(executor, 10, 10, 2);
+        List<Runnable> pending = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(3);
+
+        for (int i = 0; i < 4; i++) {
+            String hostKey = i < 3 ? "host-1" : "host-2";
+            scheduler.schedule("container-" + i, hostKey, 0, (done) -> {
+                pending.add(done);
+                started.countDown();
+            });
+        }
+
+        // two checks on host-1 and one on host-2 can run at the same time
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(3, pending.size());
+        assertEquals(3, scheduler.getRunningCount());
+        assertEquals(4, scheduler.getScheduledCount());
+
+        // host-2 still has a free slot, so a new check on it starts right away
+        CountDownLatch host2Started = new CountDownLatch(1);
+        scheduler.schedule("container-5", "host-2", 0, (done) -> host2Started.countDown());
+        pending.get(0).run();
+
+        // the deferred host-1 check (container-2) starts once a host-1 slot is released
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (pending.size() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(4, pending.size());
+        assertTrue(host2Started.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testGlobalConcurrencyLimit() throws Throwable {
+        HealthCheckScheduler scheduler = new HealthCheckScheduler(executor, 10, 1, 10);
+        List<Runnable> pending = new CopyOnWriteArrayList<>();
+
+        scheduler.schedule("container-1", "host-1", 0, pending::add);
+        scheduler.schedule("container-2", "host-2", 0, pending::add);
+
+        Thread.sleep(200);
+        assertEquals(1, pending.size());
+
+        pending.get(0).run();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (pending.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, pending.size());
+    }
+
+    @Test
+    public void testSpreadDelay() {
+        long delay = HealthCheckScheduler.spreadDelay("/resources/containers/test", 1000);
+        assertTrue(delay >= 0 && delay < 1000);
+        assertEquals(delay, HealthCheckScheduler.spreadDelay("/resources/containers/test", 1000));
+        assertEquals(0, HealthCheckScheduler.spreadDelay("/resources/containers/test", 0));
+    }
+}
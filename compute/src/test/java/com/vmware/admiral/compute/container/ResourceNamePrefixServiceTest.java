@@ -17,12 +17,15 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import com.vmware.admiral.service.common.ResourceNamePrefixService;
+import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixLease;
 import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixRequest;
 import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixResponse;
 import com.vmware.admiral.service.common.ResourceNamePrefixService.ResourceNamePrefixState;
@@ -210,6 +213,60 @@ public class ResourceNamePrefixServiceTest extends ComputeBaseTest {
         }
     }
 
+    @Test
+    public void testLeaseResourceNamePrefixes() throws Throwable {
+        ResourceNamePrefixState state = createValidResourceNamePrefixState();
+        state.addRandomToken = false;
+        state = doPost(state, ResourceNamePrefixService.FACTORY_LINK);
+
+        NamePrefixRequest request = new NamePrefixRequest();
+        request.resourceCount = 2;
+        request.leaseCount = 1000;
+        NamePrefixLease lease = lease(state, request);
+
+        assertEquals(state.prefix, lease.prefix);
+        assertEquals(state.nextNumber, lease.firstNumber);
+        // bounded by the range of the prefix
+        assertEquals(state.getRange() / 100, lease.count);
+
+        // the counter is advanced past the leased numbers
+        request = new NamePrefixRequest();
+        request.resourceCount = 1;
+        NamePrefixResponse response = patch(state, request);
+        assertEquals(state.prefix + (state.nextNumber + lease.count),
+                response.resourceNamePrefixes.get(0));
+    }
+
+    @Test
+    public void testLeaseResourceNamePrefixesWrapsAround() throws Throwable {
+        ResourceNamePrefixState state = createValidResourceNamePrefixState();
+        state.nextNumber = 994;
+        state = doPost(state, ResourceNamePrefixService.FACTORY_LINK);
+
+        NamePrefixRequest request = new NamePrefixRequest();
+        request.resourceCount = 4;
+        request.leaseCount = 1000;
+        NamePrefixLease lease = lease(state, request);
+        assertEquals(4, lease.count);
+        assertEquals(994, lease.getNumber(0));
+        assertEquals(997, lease.getNumber(3));
+
+        request.resourceCount = 3;
+        lease = lease(state, request);
+        assertEquals(998, lease.getNumber(0));
+        assertEquals(999, lease.getNumber(1));
+        // back to nextNumber
+        assertEquals(994, lease.getNumber(2));
+    }
+
+    private NamePrefixLease lease(ResourceNamePrefixState state, NamePrefixRequest request)
+            throws Throwable {
+        Operation patch = Operation.createPatch(host, state.documentSelfLink).setBody(request);
+        return ((CompletableFuture<NamePrefixLease>) host
+                .sendWithDeferredResult(patch, NamePrefixLease.class)
+                .toCompletionStage()).get(60, TimeUnit.SECONDS);
+    }
+
     private void validateIllegalArgument(ResourceNamePrefixState state, String expecation)
             throws Throwable {
         validateLocalizableException(() -> {
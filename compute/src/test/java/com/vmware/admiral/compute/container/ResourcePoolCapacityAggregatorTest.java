@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.container.ResourcePoolCapacityAggregator.HostCapacity;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+
+public class ResourcePoolCapacityAggregatorTest {
+    private static final String RP_LINK = "/resources/pools/rp";
+
+    private final List<ResourcePoolState> published = new ArrayList<>();
+    private final List<Runnable> inFlight = new ArrayList<>();
+    private ResourcePoolCapacityAggregator aggregator;
+
+    @Before
+    public void setUp() {
+        aggregator = new ResourcePoolCapacityAggregator(100, (state, done) -> {
+            published.add(state);
+            inFlight.add(done);
+        });
+    }
+
+    @Test
+    public void testAppliesHostDeltas() {
+        assertFalse(aggregator.updateHost(RP_LINK, "h1", capacity(100, 50, 0.5)));
+        assertTrue(published.isEmpty());
+
+        Map<String, HostCapacity> hosts = new HashMap<>();
+        hosts.put("h1", capacity(100, 50, 0.5));
+        hosts.put("h2", capacity(200, 100, 0.0));
+        aggregator.reconcile(RP_LINK, hosts, 10);
+        assertPublished(300, 150, 0.25);
+        completePublish();
+
+        // unchanged stats are not published
+        assertTrue(aggregator.updateHost(RP_LINK, "h1", capacity(100, 50, 0.5)));
+        assertEquals(1, published.size());
+
+        assertTrue(aggregator.updateHost(RP_LINK, "h2", capacity(200, 20, 1.0)));
+        assertPublished(300, 70, 0.75);
+        completePublish();
+
+        assertTrue(aggregator.updateHost(RP_LINK, "h1", null));
+        assertPublished(200, 20, 1.0);
+    }
+
+    @Test
+    public void testRemovesHostsMissingFromPool() {
+        Map<String, HostCapacity> hosts = new HashMap<>();
+        assertFalse(aggregator.updateHosts(RP_LINK, hosts));
+
+        hosts.put("h1", capacity(100, 50, 0.5));
+        hosts.put("h2", capacity(200, 100, 0.0));
+        aggregator.reconcile(RP_LINK, hosts, 10);
+        assertPublished(300, 150, 0.25);
+        completePublish();
+
+        // unchanged hosts are not published
+        assertTrue(aggregator.updateHosts(RP_LINK, hosts));
+        assertEquals(1, published.size());
+
+        // h1 left the pool and h3 joined it
+        hosts.remove("h1");
+        hosts.put("h3", capacity(50, 50, 1.0));
+        assertTrue(aggregator.updateHosts(RP_LINK, hosts));
+        assertEquals(2, published.size());
+        assertPublished(250, 150, 0.5);
+        completePublish();
+
+        assertTrue(aggregator.updateHosts(RP_LINK, new HashMap<>()));
+        assertPublished(0, 0, 0.0);
+    }
+
+    @Test
+    public void testCoalescesUpdatesInFlight() {
+        aggregator.reconcile(RP_LINK, new HashMap<>(), 10);
+        assertEquals(1, published.size());
+
+        aggregator.updateHost(RP_LINK, "h1", capacity(100, 100, 0.0));
+        aggregator.updateHost(RP_LINK, "h2", capacity(100, 100, 0.0));
+        aggregator.updateHost(RP_LINK, "h3", capacity(100, 100, 0.0));
+        assertEquals(1, published.size());
+
+        // the latest totals are published once the update in flight completes
+        completePublish();
+        assertPublished(300, 300, 0.0);
+        completePublish();
+        assertEquals(2, published.size());
+    }
+
+    @Test
+    public void testReconcilesOnce() {
+        AtomicInteger applied = new AtomicInteger();
+        assertTrue(aggregator.awaitReconciliation(RP_LINK, applied::incrementAndGet));
+        assertFalse(aggregator.awaitReconciliation(RP_LINK, applied::incrementAndGet));
+        assertTrue(aggregator.isReconciliationDue(RP_LINK, 0));
+
+        aggregator.reconcile(RP_LINK, new HashMap<>(), 10);
+        assertEquals(2, applied.get());
+        assertFalse(aggregator.isReconciliationDue(RP_LINK, 50));
+        assertTrue(aggregator.isReconciliationDue(RP_LINK, 110));
+    }
+
+    @Test
+    public void testUnknownHostMemoryMakesPoolUnlimited() {
+        Map<String, HostCapacity> hosts = new HashMap<>();
+        hosts.put("h1", capacity(100, 50, 0.0));
+        hosts.put("h2", new HostCapacity(Long.MAX_VALUE, 0, 1, 0.0));
+        aggregator.reconcile(RP_LINK, hosts, 10);
+        assertEquals(Long.MAX_VALUE, (long) published.get(0).maxMemoryBytes);
+        completePublish();
+
+        aggregator.updateHost(RP_LINK, "h2", null);
+        assertPublished(100, 50, 0.0);
+    }
+
+    private void completePublish() {
+        inFlight.remove(0).run();
+    }
+
+    private void assertPublished(long maxMemory, long availableMemory, double cpuUsage) {
+        ResourcePoolState state = published.get(published.size() - 1);
+        assertEquals(RP_LINK, state.documentSelfLink);
+        assertEquals(maxMemory, (long) state.maxMemoryBytes);
+        assertEquals(Long.toString(availableMemory), state.customProperties.get(
+                ContainerHostDataCollectionService.RESOURCE_POOL_AVAILABLE_MEMORY_CUSTOM_PROP));
+        assertEquals(cpuUsage, Double.parseDouble(state.customProperties.get(
+                ContainerHostDataCollectionService.RESOURCE_POOL_CPU_USAGE_CUSTOM_PROP)), 0.001);
+    }
+
+    private static HostCapacity capacity(long totalMemory, long availableMemory,
+            double cpuUsage) {
+        return new HostCapacity(totalMemory, availableMemory, 1, cpuUsage);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.vmware.admiral.compute.container.ShellContainerExecutorService.ShellContainerExecutorState;
+import com.vmware.admiral.compute.container.ShellExecSession.PendingCommand;
+import com.vmware.admiral.compute.container.ShellExecSession.ShellExecTranscript;
+
+public class ShellExecSessionTest {
+
+    @Test
+    public void testBuildsAndSplitsBatchCommand() {
+        String[] batch = ShellExecSession.buildBatchCommand(Arrays.asList(
+                new String[] { "echo", "it's" }, new String[] { "ls" }), "--m--");
+
+        assertArrayEquals(new String[] { "sh", "-c",
+                "( 'echo' 'it'\\''s' ); printf '\\n%s\\n' '--m--'\n"
+                        + "( 'ls' ); printf '\\n%s\\n' '--m--'\n" }, batch);
+
+        List<String> outputs = ShellExecSession.splitBatchOutput(
+                "it's\n\n--m--\na\nb\n\n--m--\n", "--m--", 2);
+        assertEquals(Arrays.asList("it's\n", "a\nb\n"), outputs);
+
+        // the shell exited during the first command, the second one was not executed
+        outputs = ShellExecSession.splitBatchOutput("partial", "--m--", 2);
+        assertEquals(Arrays.asList("partial"), outputs);
+
+        outputs = ShellExecSession.splitBatchOutput("a\n\n--m--\nb", "--m--", 3);
+        assertEquals(Arrays.asList("a\n", "b"), outputs);
+    }
+
+    @Test
+    public void testBatchedCommandsDoNotAffectEachOther() throws Exception {
+        File dir = Files.createTempDirectory("shell-exec-session").toFile().getCanonicalFile();
+        try {
+            String[] batch = ShellExecSession.buildBatchCommand(Arrays.asList(
+                    new String[] { "cd", "/" }, new String[] { "pwd" },
+                    new String[] { "sh", "-c", "exit 1" }, new String[] { "echo", "done" }),
+                    "--m--");
+            Process process = new ProcessBuilder(batch).directory(dir).start();
+            String output;
+            try (Scanner scanner = new Scanner(process.getInputStream(), "UTF-8")) {
+                output = scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+            }
+            process.waitFor();
+
+            // the cd of the first command does not change the directory of the second one
+            assertEquals(Arrays.asList("", dir.getPath() + "\n", "", "done\n"),
+                    ShellExecSession.splitBatchOutput(output, "--m--", 4));
+        } finally {
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testRequeuesNotExecutedCommandsUnbatched() {
+        ShellExecSession session = new ShellExecSession("key", null, 3, 100);
+
+        assertTrue(session.add(command(null)));
+        assertFalse(session.add(command(null)));
+        assertFalse(session.add(command(null)));
+        assertFalse(session.add(command(null)));
+        assertFalse(session.add(command(null)));
+        List<PendingCommand> batch = session.takeBatch();
+        assertEquals(3, batch.size());
+
+        // the first command of the batch was interrupted
+        assertTrue(session.requeueUnbatched(batch.subList(1, 3)).isEmpty());
+        List<PendingCommand> next = session.takeBatch();
+        assertEquals(1, next.size());
+        assertSame(batch.get(1).state, next.get(0).state);
+        next = session.takeBatch();
+        assertEquals(1, next.size());
+        assertSame(batch.get(2).state, next.get(0).state);
+        // the commands queued after the batch are still batched
+        assertEquals(2, session.takeBatch().size());
+        assertTrue(session.takeBatch().isEmpty());
+
+        session.close();
+        assertEquals(2, session.requeueUnbatched(batch.subList(1, 3)).size());
+    }
+
+    @Test
+    public void testExecutesCommandsOneByOneWhenBatchingDisabled() {
+        ShellExecSession session = new ShellExecSession("key", null, 3, 100);
+
+        assertTrue(session.add(command(null)));
+        assertFalse(session.add(command(null)));
+        assertFalse(session.add(command(null)));
+
+        // the batch could not be started, e.g. there is no shell in the container
+        List<PendingCommand> batch = session.takeBatch();
+        assertEquals(3, batch.size());
+        session.disableBatching();
+        assertTrue(session.requeueUnbatched(batch).isEmpty());
+        assertFalse(session.add(command(null)));
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(1, session.takeBatch().size());
+        }
+        assertTrue(session.takeBatch().isEmpty());
+    }
+
+    @Test
+    public void testBatchesQueuedCommands() {
+        ShellExecSession session = new ShellExecSession("key", null, 2, 100);
+
+        assertTrue(session.add(command(null)));
+        assertFalse(session.add(command(null)));
+        assertFalse(session.add(command(null)));
+        assertFalse(session.add(command(false)));
+
+        assertEquals(2, session.takeBatch().size());
+        assertEquals(1, session.takeBatch().size());
+        // commands not attaching stdout run alone
+        assertEquals(1, session.takeBatch().size());
+        assertTrue(session.takeBatch().isEmpty());
+
+        // the next command starts a new batch
+        assertTrue(session.add(command(null)));
+    }
+
+    @Test
+    public void testFollowsTranscript() {
+        ShellExecSession session = new ShellExecSession("key", null, 2, 12);
+        AtomicBoolean released = new AtomicBoolean();
+
+        assertNull(session.read(0, () -> released.set(true)));
+        session.appendOutput(new String[] { "ls" }, "a\n");
+        assertTrue(released.get());
+
+        ShellExecTranscript transcript = session.read(0, null);
+        assertEquals("$ ls\na\n", transcript.output);
+        assertEquals(7, transcript.nextOffset);
+        assertFalse(transcript.truncated);
+
+        // the oldest output is dropped
+        session.appendOutput(new String[] { "pwd" }, "/root\n");
+        transcript = session.read(0, null);
+        assertTrue(transcript.truncated);
+        assertEquals(7, transcript.offset);
+        assertEquals("$ pwd\n/root\n", transcript.output);
+        assertEquals(19, transcript.nextOffset);
+    }
+
+    private static PendingCommand command(Boolean attachStdOut) {
+        ShellContainerExecutorState state = new ShellContainerExecutorState();
+        state.command = new String[] { "ls" };
+        state.attachStdOut = attachStdOut;
+        return new PendingCommand(state, null);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.container.CompositeDescriptionService.CompositeDescription;
+import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.TemplateSearchIndex.Hit;
+import com.vmware.admiral.compute.container.TemplateSearchIndex.Page;
+import com.vmware.admiral.compute.container.TemplateSpec.TemplateType;
+import com.vmware.xenon.common.UriUtils;
+
+public class TemplateSearchIndexTest {
+
+    private TemplateSearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new TemplateSearchIndex();
+        putComponent("mysql", "mysql", "library/mysql:5.7");
+        putComponent("wordpress", "wordpress", "library/wordpress");
+        putComponent("nginx", "proxy", "library/nginx");
+
+        putTemplate("wordpress-app", "WordPress with MySQL", null, null, "wordpress", "mysql");
+        putTemplate("mysql-app", "mysql", null, null, "mysql");
+        putTemplate("proxy-app", "Proxy", "/tenants/qe", null, "nginx");
+    }
+
+    @Test
+    public void testRanksNameMatchesFirst() {
+        List<Hit> hits = index.search("mysql", null, false);
+
+        assertEquals(Arrays.asList(templateLink("mysql-app"), templateLink("wordpress-app")),
+                links(hits));
+        assertEquals(TemplateType.COMPOSITE_DESCRIPTION, hits.get(0).getTemplate().templateType);
+        assertEquals("mysql", hits.get(0).getTemplate().name);
+    }
+
+    @Test
+    public void testMatchesComponentImagesAndSubstrings() {
+        assertEquals(Collections.singletonList(templateLink("proxy-app")),
+                links(index.search("*nginx*", null, false)));
+        assertEquals(Collections.singletonList(templateLink("wordpress-app")),
+                links(index.search("press", null, false)));
+        assertEquals(Collections.singletonList(templateLink("wordpress-app")),
+                links(index.search("wordpress mysql", null, false)));
+        assertEquals(0, index.search("gibberish", null, false).size());
+    }
+
+    @Test
+    public void testFiltersByTenantAndParent() {
+        putTemplate("proxy-app-clone", "Proxy", "/tenants/qe", templateLink("proxy-app"),
+                "nginx");
+
+        assertEquals(Arrays.asList(templateLink("proxy-app"), templateLink("proxy-app-clone")),
+                links(index.search("proxy", Collections.singletonList("/tenants/qe"), false)));
+        assertEquals(Collections.singletonList(templateLink("proxy-app")),
+                links(index.search("proxy", Collections.singletonList("/tenants/qe"), true)));
+        assertEquals(0, index.search("proxy", Collections.singletonList("/tenants/dev"),
+                false).size());
+    }
+
+    @Test
+    public void testReindexesOnComponentChanges() {
+        putComponent("nginx", "proxy", "library/haproxy");
+        assertEquals(0, index.search("nginx", null, false).size());
+        assertEquals(1, index.search("haproxy", null, false).size());
+
+        index.removeDocument(UriUtils.buildUriPath(ContainerDescriptionService.FACTORY_LINK,
+                "nginx"));
+        assertEquals(0, index.search("haproxy", null, false).size());
+
+        index.removeDocument(templateLink("mysql-app"));
+        assertEquals(Collections.singletonList(templateLink("wordpress-app")),
+                links(index.search("mysql", null, false)));
+    }
+
+    @Test
+    public void testPaginatesWithCursor() {
+        for (int i = 0; i < 25; i++) {
+            putTemplate("app-" + i, "app " + i, null, null);
+        }
+        List<Hit> hits = index.search("app", null, false);
+        assertEquals(25, hits.size());
+
+        List<String> paged = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            Page page = TemplateSearchIndex.page(hits, cursor, 10);
+            paged.addAll(links(page.hits));
+            cursor = page.nextCursor;
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(links(hits), paged);
+
+        Page last = TemplateSearchIndex.page(hits, null, 100);
+        assertNull(last.nextCursor);
+        assertNotNull(last.hits);
+        assertEquals(25, last.hits.size());
+    }
+
+    private void putComponent(String id, String name, String image) {
+        ContainerDescription description = new ContainerDescription();
+        description.name = name;
+        description.image = image;
+        index.putComponent(UriUtils.buildUriPath(ContainerDescriptionService.FACTORY_LINK, id),
+                description);
+    }
+
+    private void putTemplate(String id, String name, String tenantLink,
+            String parentDescriptionLink, String... componentIds) {
+        CompositeDescription description = new CompositeDescription();
+        description.name = name;
+        description.parentDescriptionLink = parentDescriptionLink;
+        if (tenantLink != null) {
+            description.tenantLinks = Collections.singletonList(tenantLink);
+        }
+        description.descriptionLinks = Arrays.stream(componentIds)
+                .map(c -> UriUtils.buildUriPath(ContainerDescriptionService.FACTORY_LINK, c))
+                .collect(Collectors.toList());
+        index.putTemplate(templateLink(id), description);
+    }
+
+    private static String templateLink(String id) {
+        return UriUtils.buildUriPath(CompositeDescriptionFactoryService.SELF_LINK, id);
+    }
+
+    private static List<String> links(List<Hit> hits) {
+        return hits.stream().map(h -> h.key).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ParsedTemplateCacheTest {
+
+    public static class Parsed {
+        public String content;
+        public List<String> values = new ArrayList<>();
+    }
+
+    private final AtomicInteger parseCount = new AtomicInteger();
+
+    @Test
+    public void testReturnsCopiesOfCachedEntities() throws IOException {
+        ParsedTemplateCache cache = new ParsedTemplateCache(10);
+
+        Parsed first = cache.get(Parsed.class, "a", this::parse);
+        first.values.add("modified");
+        Parsed second = cache.get(Parsed.class, "a", this::parse);
+        Parsed third = cache.get(Parsed.class, "a", this::parse);
+
+        assertEquals(1, parseCount.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+        assertNotSame(second, third);
+        assertEquals("a", second.content);
+        assertEquals(1, second.values.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        ParsedTemplateCache cache = new ParsedTemplateCache(2);
+
+        cache.get(Parsed.class, "a", this::parse);
+        cache.get(Parsed.class, "b", this::parse);
+        cache.get(Parsed.class, "a", this::parse);
+        cache.get(Parsed.class, "c", this::parse);
+        assertEquals(3, parseCount.get());
+
+        // "b" was evicted, "a" was not
+        cache.get(Parsed.class, "a", this::parse);
+        assertEquals(3, parseCount.get());
+        cache.get(Parsed.class, "b", this::parse);
+        assertEquals(4, parseCount.get());
+    }
+
+    @Test
+    public void testDoesNotCacheFailures() throws IOException {
+        ParsedTemplateCache cache = new ParsedTemplateCache(10);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get(Parsed.class, "invalid", (content) -> {
+                    parseCount.incrementAndGet();
+                    throw new IOException("invalid content");
+                });
+                fail("expected to fail");
+            } catch (IOException e) {
+                assertEquals("invalid content", e.getMessage());
+            }
+        }
+        assertEquals(2, parseCount.get());
+    }
+
+    private Parsed parse(String content) {
+        parseCount.incrementAndGet();
+        Parsed parsed = new Parsed();
+        parsed.content = content;
+        parsed.values.add(content);
+        return parsed;
+    }
+}
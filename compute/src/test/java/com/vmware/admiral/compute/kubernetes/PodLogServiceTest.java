@@ -12,40 +12,83 @@
 package com.vmware.admiral.compute.kubernetes;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.vmware.admiral.adapter.common.AdapterRequest;
+import com.vmware.admiral.adapter.common.KubernetesOperationType;
+import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.compute.container.ComputeBaseTest;
 import com.vmware.admiral.compute.kubernetes.entities.common.ObjectMeta;
 import com.vmware.admiral.compute.kubernetes.entities.pods.Container;
 import com.vmware.admiral.compute.kubernetes.entities.pods.Pod;
 import com.vmware.admiral.compute.kubernetes.entities.pods.PodSpec;
 import com.vmware.admiral.compute.kubernetes.service.PodLogService;
+import com.vmware.admiral.compute.kubernetes.service.PodLogService.ContainerLogs;
+import com.vmware.admiral.compute.kubernetes.service.PodLogService.PodLogUpdate;
 import com.vmware.admiral.compute.kubernetes.service.PodService;
 import com.vmware.admiral.compute.kubernetes.service.PodService.PodState;
 import com.vmware.admiral.service.common.LogService;
 import com.vmware.admiral.service.common.LogService.LogServiceState;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 
 public class PodLogServiceTest extends ComputeBaseTest {
 
+    private static final String CONTAINER = "container1";
+
+    private MockKubernetesAdapter adapter;
+
+    /**
+     * Counts the log fetch requests of the pod log service, the new log lines are sent by the
+     * tests instead.
+     */
+    private static class MockKubernetesAdapter extends StatelessService {
+        final AtomicInteger fetches = new AtomicInteger();
+
+        MockKubernetesAdapter() {
+            super(ServiceDocument.class);
+        }
+
+        @Override
+        public void handlePatch(Operation patch) {
+            AdapterRequest request = patch.getBody(AdapterRequest.class);
+            if (KubernetesOperationType.FETCH_LOGS.id.equals(request.operationTypeId)) {
+                fetches.incrementAndGet();
+            }
+            patch.complete();
+        }
+    }
+
     @Before
     public void setUp() throws Throwable {
         waitForServiceAvailability(LogService.FACTORY_LINK);
         waitForServiceAvailability(PodService.FACTORY_LINK);
         waitForServiceAvailability(PodLogService.SELF_LINK);
 
+        adapter = new MockKubernetesAdapter();
+        host.startServiceAndWait(adapter, ManagementUriParts.ADAPTER_KUBERNETES, null);
     }
 
     @Test
@@ -79,6 +122,153 @@ public class PodLogServiceTest extends ComputeBaseTest {
         }
     }
 
+    @Test
+    public void testContainerLogRange() throws Throwable {
+        PodState podState = createPodState();
+        sendLogUpdate(podState, "line1\nline2\n");
+
+        ContainerLogs logs = getContainerLogs(podState, PodLogService.LOG_OFFSET_QUERY_PARAM,
+                "0");
+        assertEquals(0, logs.offset);
+        assertEquals(12, logs.nextOffset);
+        assertFalse(logs.truncated);
+        assertEquals("line1\nline2\n", new String(logs.logs, StandardCharsets.UTF_8));
+
+        logs = getContainerLogs(podState, PodLogService.LOG_TAIL_QUERY_PARAM, "6");
+        assertEquals(6, logs.offset);
+        assertEquals(12, logs.nextOffset);
+        assertEquals("line2\n", new String(logs.logs, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testContainerLogTruncatedAfterBufferWraps() throws Throwable {
+        int bufferSize = getPrivateField(PodLogService.class
+                .getDeclaredField("MAX_LOG_BUFFER_SIZE_BYTES"), null);
+        PodState podState = createPodState();
+
+        // two updates which together do not fit in the buffer
+        char[] lines = new char[bufferSize * 3 / 4];
+        Arrays.fill(lines, 'a');
+        sendLogUpdate(podState, new String(lines));
+        Arrays.fill(lines, 'b');
+        sendLogUpdate(podState, new String(lines));
+
+        long size = 2L * lines.length;
+        ContainerLogs logs = getContainerLogs(podState, PodLogService.LOG_OFFSET_QUERY_PARAM,
+                "0");
+        assertTrue(logs.truncated);
+        assertEquals(size - bufferSize, logs.offset);
+        assertEquals('a', logs.logs[0]);
+
+        logs = getContainerLogs(podState, PodLogService.LOG_TAIL_QUERY_PARAM, "1");
+        assertFalse(logs.truncated);
+        assertEquals(size, logs.nextOffset);
+        assertEquals("b", new String(logs.logs, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFollowIsReleasedByAdapterUpdate() throws Throwable {
+        PodState podState = createPodState();
+        sendLogUpdate(podState, "line1\n");
+
+        // nothing to read after the end of the log yet, the request waits for the fetch
+        CompletableFuture<ContainerLogs> followed = followContainerLogs(podState, 6);
+        waitFor("Log fetch not requested", () -> adapter.fetches.get() > 0);
+        Thread.sleep(500);
+        assertFalse(followed.isDone());
+
+        sendLogUpdate(podState, "line2\n");
+
+        ContainerLogs logs = followed.get(10, TimeUnit.SECONDS);
+        assertEquals(6, logs.offset);
+        assertEquals(12, logs.nextOffset);
+        assertEquals("line2\n", new String(logs.logs, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFollowIsReleasedByTimeout() throws Throwable {
+        Field timeout = PodLogService.class.getDeclaredField("LOG_FOLLOW_TIMEOUT_SECONDS");
+        Object defaultTimeout = getPrivateField(timeout, null);
+        setFinalStatic(timeout, 1);
+        try {
+            PodState podState = createPodState();
+            sendLogUpdate(podState, "line1\n");
+
+            // no new lines are fetched, the request returns nothing to read after the timeout
+            ContainerLogs logs = followContainerLogs(podState, 6).get(10, TimeUnit.SECONDS);
+            assertEquals(6, logs.offset);
+            assertEquals(6, logs.nextOffset);
+            assertEquals(0, logs.logs.length);
+        } finally {
+            setFinalStatic(timeout, defaultTimeout);
+        }
+    }
+
+    @Test
+    public void testConcurrentReadsShareOneFetch() throws Throwable {
+        PodState podState = createPodState();
+
+        // the adapter does not send the fetched lines yet, so the fetch is still in progress
+        List<CompletableFuture<ContainerLogs>> reads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            reads.add(readContainerLogs(podState, PodLogService.LOG_OFFSET_QUERY_PARAM, "0"));
+        }
+        for (CompletableFuture<ContainerLogs> read : reads) {
+            read.get(10, TimeUnit.SECONDS);
+        }
+        waitFor("Log fetch not requested", () -> adapter.fetches.get() > 0);
+        Thread.sleep(500);
+        assertEquals(1, adapter.fetches.get());
+
+        // the lines of the fetch are sent, the next read starts a new fetch
+        sendLogUpdate(podState, "line1\n");
+        getContainerLogs(podState, PodLogService.LOG_OFFSET_QUERY_PARAM, "0");
+        waitFor("Log fetch not requested", () -> adapter.fetches.get() == 2);
+    }
+
+    private void sendLogUpdate(PodState podState, String lines) {
+        PodLogUpdate update = new PodLogUpdate();
+        update.podLink = podState.documentSelfLink;
+        update.logs = Collections.singletonMap(CONTAINER, lines);
+        host.testStart(1);
+        host.send(Operation.createPatch(host, PodLogService.SELF_LINK)
+                .setBody(update)
+                .setCompletion(host.getCompletion()));
+        host.testWait();
+    }
+
+    private ContainerLogs getContainerLogs(PodState podState, String param, String value)
+            throws Throwable {
+        return readContainerLogs(podState, param, value).get(10, TimeUnit.SECONDS);
+    }
+
+    private CompletableFuture<ContainerLogs> followContainerLogs(PodState podState,
+            long offset) {
+        return readContainerLogs(podState, PodLogService.LOG_OFFSET_QUERY_PARAM,
+                Long.toString(offset), PodLogService.LOG_FOLLOW_QUERY_PARAM,
+                Boolean.TRUE.toString());
+    }
+
+    private CompletableFuture<ContainerLogs> readContainerLogs(PodState podState,
+            String... params) {
+        List<String> query = new ArrayList<>(Arrays.asList(
+                PodLogService.POD_ID_QUERY_PARAM, extractId(podState.documentSelfLink),
+                PodLogService.CONTAINER_QUERY_PARAM, CONTAINER));
+        query.addAll(Arrays.asList(params));
+        CompletableFuture<ContainerLogs> result = new CompletableFuture<>();
+        host.send(Operation.createGet(UriUtils.extendUriWithQuery(
+                UriUtils.buildUri(host, PodLogService.SELF_LINK),
+                query.toArray(new String[query.size()])))
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else {
+                        result.complete(o.getBody(ContainerLogs.class));
+                    }
+                }));
+        return result;
+    }
+
     @SuppressWarnings("unchecked")
     private Map<String, LogServiceState> getPodLogs(PodState podState) throws Throwable {
         Map<String, LogServiceState> logsMap = new HashMap<>();
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.image.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.vmware.xenon.common.DeferredResult;
+
+public class RegistryResponseCacheTest {
+
+    @Test
+    public void testConcurrentRequestsShareSingleLoad() {
+        RegistryResponseCache cache = new RegistryResponseCache(TimeUnit.MINUTES.toMicros(1),
+                100);
+        AtomicInteger loads = new AtomicInteger();
+        DeferredResult<String> pending = new DeferredResult<>();
+
+        DeferredResult<String> first = cache.get("key", () -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+        DeferredResult<String> second = cache.get("key", () -> {
+            loads.incrementAndGet();
+            return DeferredResult.completed("other");
+        });
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+
+        pending.complete("result");
+        assertEquals("result", second.toCompletionStage().toCompletableFuture().join());
+
+        // completed responses are served from the cache
+        DeferredResult<String> third = cache.get("key", () -> {
+            loads.incrementAndGet();
+            return DeferredResult.completed("other");
+        });
+        assertEquals("result", third.toCompletionStage().toCompletableFuture().join());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        RegistryResponseCache cache = new RegistryResponseCache(TimeUnit.MINUTES.toMicros(1),
+                100);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        cache.get("key", () -> DeferredResult.<String> failed(new IllegalStateException("down")))
+                .whenComplete((r, e) -> failure.set(e));
+        assertTrue(failure.get() instanceof IllegalStateException);
+        assertEquals(0, cache.size());
+
+        AtomicReference<String> result = new AtomicReference<>();
+        cache.get("key", () -> DeferredResult.completed("up"))
+                .whenComplete((r, e) -> result.set(r));
+        assertEquals("up", result.get());
+    }
+
+    @Test
+    public void testExpiredEntriesAreReloaded() {
+        RegistryResponseCache cache = new RegistryResponseCache(0, 100);
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            cache.get("key", () -> DeferredResult.completed(loads.incrementAndGet()));
+        }
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testBuildKeyIgnoresParameterOrder() {
+        Map<String, String> params1 = new HashMap<>();
+        params1.put("q", "busybox");
+        params1.put("limit", "10");
+        Map<String, String> params2 = new HashMap<>();
+        params2.put("limit", "10");
+        params2.put("q", "busybox");
+
+        assertEquals(RegistryResponseCache.buildKey("search", "/registries/r1", params1),
+                RegistryResponseCache.buildKey("search", "/registries/r1", params2));
+        assertNotEquals(RegistryResponseCache.buildKey("search", "/registries/r1", params1),
+                RegistryResponseCache.buildKey("search", "/registries/r2", params1));
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.host;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import com.vmware.xenon.common.ServiceHost;
+
+/**
+ * Starts the service groups of a {@link ManagementHost} concurrently, honoring the declared
+ * dependencies between them: a group is started once all groups it depends on have been started.
+ * Groups without dependencies between them are started in parallel on a small thread pool. Every
+ * worker thread runs with the system authorization context, as the main boot thread does.
+ *
+ * A group can only depend on groups added before it, so there can't be dependency cycles. Any
+ * ordering between groups has to be declared as a dependency, including side effects of starting a
+ * group on shared state, e.g. enabling the test mode.
+ *
+ * The start offset and duration of every group are recorded, see {@link #getTimeline()}, and
+ * logged once the boot completes to help tuning the cold start time.
+ */
+public class HostBootOrchestrator {
+
+    static final int DEFAULT_PARALLELISM = Integer.getInteger(
+            "com.vmware.admiral.host.boot.parallelism",
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    static final long DEFAULT_TIMEOUT_SECONDS = Long.getLong(
+            "com.vmware.admiral.host.boot.timeout.seconds", TimeUnit.MINUTES.toSeconds(10));
+
+    /**
+     * Starts a group of services. May block, e.g. to wait for availability of a service that the
+     * dependent groups need.
+     */
+    @FunctionalInterface
+    public interface BootStep {
+        void run() throws Throwable;
+    }
+
+    /**
+     * Start offset and duration of a group, relative to the start of the boot.
+     */
+    public static class BootGroupTiming {
+        public String name;
+        public List<String> dependencies;
+        public String thread;
+        public long startOffsetMillis;
+        public long durationMillis;
+
+        @Override
+        public String toString() {
+            return String.format("%-20s start +%6d ms, took %6d ms on %s, after %s", name,
+                    startOffsetMillis, durationMillis, thread, dependencies);
+        }
+    }
+
+    private static class BootGroup {
+        final String name;
+        final BootStep step;
+        final List<String> dependencies;
+
+        BootGroup(String name, BootStep step, List<String> dependencies) {
+            this.name = name;
+            this.step = step;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private final ServiceHost host;
+    private final int parallelism;
+    private final Runnable threadSetUp;
+    private final Runnable threadTearDown;
+    private final Map<String, BootGroup> groups = new LinkedHashMap<>();
+    private final List<BootGroupTiming> timeline = Collections.synchronizedList(
+            new ArrayList<>());
+    private long bootStartNanos;
+
+    public HostBootOrchestrator(ManagementHost host) {
+        this(host, DEFAULT_PARALLELISM);
+    }
+
+    public HostBootOrchestrator(ManagementHost host, int parallelism) {
+        // the authorization context is thread local
+        this(host, parallelism,
+                () -> host.setAuthorizationContext(host.getSystemAuthorizationContext()),
+                () -> host.setAuthorizationContext(null));
+    }
+
+    HostBootOrchestrator(ServiceHost host, int parallelism, Runnable threadSetUp,
+            Runnable threadTearDown) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("'parallelism' must be positive");
+        }
+        this.host = host;
+        this.parallelism = parallelism;
+        this.threadSetUp = threadSetUp;
+        this.threadTearDown = threadTearDown;
+    }
+
+    /**
+     * Adds a group to be started after the given groups, which must be already added. A group
+     * can't depend on itself or on a group added later, which rules out cycles.
+     */
+    public HostBootOrchestrator addGroup(String name, BootStep step, String... dependencies) {
+        if (groups.containsKey(name)) {
+            throw new IllegalArgumentException("Boot group already added: " + name);
+        }
+        for (String dependency : dependencies) {
+            if (!groups.containsKey(dependency)) {
+                throw new IllegalArgumentException(String.format(
+                        "Boot group %s depends on unknown group %s", name, dependency));
+            }
+        }
+        groups.put(name, new BootGroup(name, step, Arrays.asList(dependencies)));
+        return this;
+    }
+
+    /**
+     * Starts all groups and waits for them to complete. Fails with the failure of the first group
+     * that failed, in which case the groups depending on it are not started.
+     */
+    public void run() throws Throwable {
+        run(DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void run(long timeout, TimeUnit unit) throws Throwable {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "boot-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        bootStartNanos = System.nanoTime();
+        try {
+            // dependencies are always added before their dependents, so the futures can be
+            // chained in insertion order
+            Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+            for (BootGroup group : groups.values()) {
+                CompletableFuture<?>[] dependencies = group.dependencies.stream()
+                        .map(futures::get)
+                        .toArray(CompletableFuture<?>[]::new);
+                futures.put(group.name, CompletableFuture.allOf(dependencies)
+                        .thenRunAsync(() -> runGroup(group), executor));
+            }
+
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                    .get(timeout, unit);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            throw cause;
+        } catch (TimeoutException e) {
+            throw new TimeoutException(String.format(
+                    "Starting the host services did not complete in %d %s, started groups: %s",
+                    timeout, unit, getTimeline()));
+        } finally {
+            executor.shutdownNow();
+            logTimeline();
+        }
+    }
+
+    /**
+     * Returns the timings of the started groups, ordered by start offset.
+     */
+    public List<BootGroupTiming> getTimeline() {
+        List<BootGroupTiming> result;
+        synchronized (timeline) {
+            result = new ArrayList<>(timeline);
+        }
+        result.sort(Comparator.comparingLong((BootGroupTiming t) -> t.startOffsetMillis));
+        return result;
+    }
+
+    private void runGroup(BootGroup group) {
+        BootGroupTiming timing = new BootGroupTiming();
+        timing.name = group.name;
+        timing.dependencies = group.dependencies;
+        timing.thread = Thread.currentThread().getName();
+
+        long start = System.nanoTime();
+        timing.startOffsetMillis = TimeUnit.NANOSECONDS.toMillis(start - bootStartNanos);
+        threadSetUp.run();
+        try {
+            group.step.run();
+        } catch (Throwable e) {
+            host.log(Level.SEVERE, "Failed to start boot group %s: %s", group.name, e);
+            throw new CompletionException(e);
+        } finally {
+            threadTearDown.run();
+            timing.durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            timeline.add(timing);
+        }
+    }
+
+    private void logTimeline() {
+        StringBuilder sb = new StringBuilder();
+        long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - bootStartNanos);
+        sb.append(String.format("Boot timeline (%d groups on %d threads, %d ms):",
+                groups.size(), parallelism, totalMillis));
+        for (BootGroupTiming timing : getTimeline()) {
+            sb.append("\n  ").append(timing);
+        }
+        host.log(Level.INFO, "%s", sb);
+    }
+}
@@ -14,7 +14,9 @@ package com.vmware.admiral.host;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.logging.Level;
 
 import javax.net.ssl.SSLContext;
@@ -24,9 +26,11 @@ import io.swagger.models.Info;
 import com.vmware.admiral.auth.idm.AuthConfigProvider;
 import com.vmware.admiral.auth.idm.SessionService;
 import com.vmware.admiral.auth.util.AuthUtil;
+import com.vmware.admiral.common.DeploymentProfileConfig;
 import com.vmware.admiral.common.util.ConfigurationUtil;
 import com.vmware.admiral.common.util.ServerX509TrustManager;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService;
+import com.vmware.admiral.host.HostBootOrchestrator.BootGroupTiming;
 import com.vmware.admiral.host.interceptor.AuthCredentialsInterceptor;
 import com.vmware.admiral.host.interceptor.ComputePlacementZoneInterceptor;
 import com.vmware.admiral.host.interceptor.EndpointInterceptor;
@@ -111,8 +115,14 @@ public class ManagementHost extends ServiceHost implements IExtensibilityRegistr
      */
     public Path certificateFile;
 
+    private static final String BOOT_GROUP_FABRIC = "fabric";
+    private static final String BOOT_GROUP_COMPUTE = "compute";
+    private static final String BOOT_GROUP_CLOSURES = "closures";
+
     private ExtensibilitySubscriptionManager extensibilityRegistry;
 
+    private volatile List<BootGroupTiming> bootTimeline = Collections.emptyList();
+
     private OperationInterceptorRegistry interceptors = new OperationInterceptorRegistry();
 
     public static void main(String[] args) throws Throwable {
@@ -159,9 +169,17 @@ public class ManagementHost extends ServiceHost implements IExtensibilityRegistr
 
         log(Level.INFO, "**** Management host starting ... ****");
 
-        startFabricServices();
-        startManagementServices();
-        startClosureServices(this, startMockHostAdapterInstance);
+        enableTestModeIfMocked();
+
+        HostBootOrchestrator boot = new HostBootOrchestrator(this);
+        boot.addGroup(BOOT_GROUP_FABRIC, this::startFabricServices);
+        addManagementServiceGroups(boot, BOOT_GROUP_FABRIC);
+        boot.addGroup(BOOT_GROUP_CLOSURES,
+                () -> startClosureServices(this, startMockHostAdapterInstance),
+                BOOT_GROUP_FABRIC);
+        boot.run();
+        bootTimeline = boot.getTimeline();
+
         startSwaggerService();
 
         log(Level.INFO, "**** Management host started. ****");
@@ -239,21 +257,67 @@ public class ManagementHost extends ServiceHost implements IExtensibilityRegistr
     protected void startManagementServices() throws Throwable {
         this.log(Level.INFO, "Management service starting ...");
 
-        registerForServiceAvailability(CaSigningCertService.startTask(this), true,
-                CaSigningCertService.FACTORY_LINK);
+        enableTestModeIfMocked();
 
-        HostInitComputeServicesConfig.startServices(this, false);
-        HostInitComputeBackgroundServicesConfig.startServices(this);
-        HostInitRequestServicesConfig.startServices(this);
-        HostInitImageServicesConfig.startServices(this);
-        HostInitUiServicesConfig.startServices(this);
-        HostInitDockerAdapterServiceConfig.startServices(this, startMockHostAdapterInstance);
-        HostInitKubernetesAdapterServiceConfig.startServices(this, startMockHostAdapterInstance);
-        HostInitRegistryAdapterServiceConfig.startServices(this);
+        HostBootOrchestrator boot = new HostBootOrchestrator(this);
+        addManagementServiceGroups(boot);
+        boot.run();
 
         this.log(Level.INFO, "Management services started.");
     }
 
+    /**
+     * The mock docker adapter enables the test mode, which the services of the other groups read
+     * when they start. It is enabled before starting the groups, instead of by the docker adapter
+     * group which runs concurrently with them.
+     */
+    private void enableTestModeIfMocked() {
+        if (startMockHostAdapterInstance) {
+            DeploymentProfileConfig.getInstance().setTest(true);
+        }
+    }
+
+    /**
+     * Adds the groups of services required to support management of infrastructure and
+     * applications to the given boot orchestrator. The groups which work with photon model
+     * resources are started after the given groups (the fabric services, which also register the
+     * JSON mapping of the resources). The request and the background compute services are started
+     * after the compute services, whose registries and factories they use. The CA signing
+     * certificate and the UI services do not depend on any other group.
+     */
+    protected void addManagementServiceGroups(HostBootOrchestrator boot,
+            String... fabricDependencies) {
+        boot.addGroup("ca-signing-cert",
+                () -> registerForServiceAvailability(CaSigningCertService.startTask(this), true,
+                        CaSigningCertService.FACTORY_LINK));
+        boot.addGroup(BOOT_GROUP_COMPUTE,
+                () -> HostInitComputeServicesConfig.startServices(this, false),
+                fabricDependencies);
+        boot.addGroup("compute-background",
+                () -> HostInitComputeBackgroundServicesConfig.startServices(this),
+                BOOT_GROUP_COMPUTE);
+        boot.addGroup("request", () -> HostInitRequestServicesConfig.startServices(this),
+                BOOT_GROUP_COMPUTE);
+        boot.addGroup("image", () -> HostInitImageServicesConfig.startServices(this),
+                fabricDependencies);
+        boot.addGroup("ui", () -> HostInitUiServicesConfig.startServices(this));
+        boot.addGroup("docker-adapter", () -> HostInitDockerAdapterServiceConfig
+                .startServices(this, startMockHostAdapterInstance), fabricDependencies);
+        boot.addGroup("kubernetes-adapter", () -> HostInitKubernetesAdapterServiceConfig
+                .startServices(this, startMockHostAdapterInstance), fabricDependencies);
+        boot.addGroup("registry-adapter",
+                () -> HostInitRegistryAdapterServiceConfig.startServices(this),
+                fabricDependencies);
+    }
+
+    /**
+     * Returns the start offsets and durations of the service groups started by
+     * {@link #initializeHostAndServices(String[])}.
+     */
+    public List<BootGroupTiming> getBootTimeline() {
+        return bootTimeline;
+    }
+
     /**
      * Start Swagger service.
      */
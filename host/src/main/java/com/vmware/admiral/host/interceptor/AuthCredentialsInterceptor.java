@@ -11,11 +11,14 @@
 
 package com.vmware.admiral.host.interceptor;
 
+import java.util.Collections;
 import java.util.logging.Level;
 
 import com.vmware.admiral.auth.idm.AuthConfigProvider;
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.compute.ComputeConstants;
+import com.vmware.admiral.host.interceptor.ReferenceCountIndex.Reference;
+import com.vmware.photon.controller.model.resources.ComputeService;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.photon.controller.model.security.util.EncryptionUtils;
 import com.vmware.xenon.common.DeferredResult;
@@ -43,6 +46,11 @@ public class AuthCredentialsInterceptor {
     public static final String CREDENTIALS_IN_USE_MESSAGE = "Credentials are in use";
     public static final String CREDENTIALS_IN_USE_MESSAGE_CODE = "host.credentials.in.use";
 
+    public static final Reference<ComputeState> COMPUTE_CREDENTIALS = Reference.of(
+            "compute-credentials", ComputeService.class, ComputeState.class,
+            c -> c.customProperties == null ? null : Collections.singleton(
+                    c.customProperties.get(ComputeConstants.HOST_AUTH_CREDENTIALS_PROP_NAME)));
+
     public static void register(OperationInterceptorRegistry registry) {
         registry.addFactoryServiceInterceptor(
                 AuthCredentialsService.class, Action.POST, AuthCredentialsInterceptor::handlePatchPostPut);
@@ -55,6 +63,7 @@ public class AuthCredentialsInterceptor {
                 AuthCredentialsService.class, Action.PATCH, AuthCredentialsInterceptor::handlePatchPostPut);
         registry.addServiceInterceptor(
                 AuthCredentialsService.class, Action.DELETE, AuthCredentialsInterceptor::handleDelete);
+        ReferenceCountIndex.register(registry, COMPUTE_CREDENTIALS);
     }
 
     public static DeferredResult<Void> handlePatchPostPut(Service service, Operation op) {
@@ -74,6 +83,15 @@ public class AuthCredentialsInterceptor {
     }
 
     public static DeferredResult<Void> handleDelete(Service service, Operation op) {
+        ReferenceCountIndex index = ReferenceCountIndex.getInstance(service.getHost());
+        if (index.isReady(COMPUTE_CREDENTIALS)) {
+            if (index.getCount(COMPUTE_CREDENTIALS, service.getSelfLink()) != 0) {
+                return DeferredResult.failed(new LocalizableValidationException(
+                        CREDENTIALS_IN_USE_MESSAGE, CREDENTIALS_IN_USE_MESSAGE_CODE));
+            }
+            return null;
+        }
+
         DeferredResult<Void> dr = new DeferredResult<>();
         service.sendRequest(Operation.createPost(service, ServiceUriPaths.CORE_QUERY_TASKS)
                 .setBody(QueryUtil.addCountOption(QueryUtil.buildPropertyQuery(ComputeState.class,
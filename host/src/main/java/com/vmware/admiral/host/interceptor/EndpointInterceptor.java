@@ -12,11 +12,15 @@
 package com.vmware.admiral.host.interceptor;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
+import com.vmware.admiral.compute.profile.ProfileService;
 import com.vmware.admiral.compute.profile.ProfileService.ProfileState;
+import com.vmware.admiral.host.interceptor.ReferenceCountIndex.Reference;
 import com.vmware.photon.controller.model.query.QueryUtils;
 import com.vmware.photon.controller.model.resources.EndpointService;
 import com.vmware.photon.controller.model.resources.EndpointService.EndpointState;
@@ -35,11 +39,17 @@ public class EndpointInterceptor {
     public static final String ENDPOINT_NAME_EXISTS_MESSAGE = "Endpoint name must be unique";
     public static final String ENDPOINT_NAME_EXISTS_MESSAGE_CODE = "endpoint.name.exists";
 
+    public static final Reference<ProfileState> PROFILE_ENDPOINT = Reference.of(
+            "profile-endpoint", ProfileService.class, ProfileState.class,
+            p -> Collections.singleton(p.endpointLink))
+            .withTenantLinks(p -> p.tenantLinks);
+
     public static void register(OperationInterceptorRegistry registry) {
         registry.addFactoryServiceInterceptor(
                 EndpointService.class, Action.POST, EndpointInterceptor::interceptCreate);
         registry.addServiceInterceptor(
                 EndpointService.class, Action.DELETE, EndpointInterceptor::interceptDelete);
+        ReferenceCountIndex.register(registry, PROFILE_ENDPOINT);
     }
 
     /**
@@ -79,6 +89,13 @@ public class EndpointInterceptor {
         service.getHost().log(Level.FINE, "Endpoint %s being deleted, deleting associated profiles",
                 endpoint.documentSelfLink);
 
+        ReferenceCountIndex index = ReferenceCountIndex.getInstance(service.getHost());
+        if (index.isReady(PROFILE_ENDPOINT)) {
+            return deleteProfiles(service,
+                    index.getReferrers(PROFILE_ENDPOINT, endpoint.documentSelfLink,
+                            endpoint.tenantLinks));
+        }
+
         Query profilesQuery = Query.Builder.create()
                 .addKindFieldClause(ProfileState.class)
                 .addFieldClause(ProfileState.FIELD_NAME_ENDPOINT_LINK, endpoint.documentSelfLink)
@@ -87,12 +104,16 @@ public class EndpointInterceptor {
                 service.getHost(), profilesQuery, ProfileState.class, endpoint.tenantLinks);
         List<String> profileLinks = new ArrayList<>();
         return queryHelper.queryLinks(link -> profileLinks.add(link))
-                .thenCompose(ignore -> {
-                    return DeferredResult.allOf(profileLinks.stream()
-                            .map(link -> Operation.createDelete(service.getHost(), link)
-                                    .setReferer(service.getUri()))
-                            .map(op -> service.getHost().sendWithDeferredResult(op))
-                            .collect(Collectors.toList()));
-                }).thenApply((ops) -> (Void)null);
+                .thenCompose(ignore -> deleteProfiles(service, profileLinks));
+    }
+
+    private static DeferredResult<Void> deleteProfiles(Service service,
+            Collection<String> profileLinks) {
+        return DeferredResult.allOf(profileLinks.stream()
+                .map(link -> Operation.createDelete(service.getHost(), link)
+                        .setReferer(service.getUri()))
+                .map(op -> service.getHost().sendWithDeferredResult(op))
+                .collect(Collectors.toList()))
+                .thenApply((ops) -> (Void)null);
     }
 }
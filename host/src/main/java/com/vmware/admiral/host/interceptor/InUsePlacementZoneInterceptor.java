@@ -11,11 +11,16 @@
 
 package com.vmware.admiral.host.interceptor;
 
+import java.util.Collections;
+
 import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.host.interceptor.ReferenceCountIndex.Reference;
 import com.vmware.photon.controller.model.query.QueryUtils;
+import com.vmware.photon.controller.model.resources.ComputeService;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.photon.controller.model.resources.ResourcePoolService;
 import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState.ResourcePoolProperty;
 import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.LocalizableValidationException;
 import com.vmware.xenon.common.Operation;
@@ -31,14 +36,33 @@ public class InUsePlacementZoneInterceptor {
     public static final String PLACEMENT_ZONE_IN_USE_MESSAGE = "Placement zone is in use";
     public static final String PLACEMENT_ZONE_IN_USE_MESSAGE_CODE = "host.resource-pool.in.use";
 
+    public static final Reference<ComputeState> COMPUTE_PLACEMENT_ZONE = Reference.of(
+            "compute-placement-zone", ComputeService.class, ComputeState.class,
+            c -> Collections.singleton(c.resourcePoolLink));
+
     public static void register(OperationInterceptorRegistry registry) {
         registry.addServiceInterceptor(
                 ResourcePoolService.class, Action.DELETE, InUsePlacementZoneInterceptor::handleDelete);
+        ReferenceCountIndex.register(registry, COMPUTE_PLACEMENT_ZONE);
     }
 
     public static DeferredResult<Void> handleDelete(Service service, Operation op) {
         ResourcePoolState currentState = service.getState(op);
 
+        // the computes of elastic placement zones are matched by a query and are not indexed
+        boolean elastic = currentState.properties != null
+                && currentState.properties.contains(ResourcePoolProperty.ELASTIC);
+        ReferenceCountIndex index = ReferenceCountIndex.getInstance(service.getHost());
+        if (!elastic && currentState.documentSelfLink != null
+                && index.isReady(COMPUTE_PLACEMENT_ZONE)) {
+            if (index.getCount(COMPUTE_PLACEMENT_ZONE, currentState.documentSelfLink) != 0) {
+                return DeferredResult.failed(new LocalizableValidationException(
+                        PLACEMENT_ZONE_IN_USE_MESSAGE,
+                        PLACEMENT_ZONE_IN_USE_MESSAGE_CODE));
+            }
+            return null;
+        }
+
         QueryTask queryTask;
         if (currentState.query != null) {
             queryTask = QueryTask.Builder.createDirectTask().setQuery(currentState.query).build();
@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.host.interceptor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.admiral.common.util.HostScopedInstances;
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+
+/**
+ * In-memory index of the references from documents to other documents, declared as
+ * {@link Reference}s, so that the delete protection interceptors can find out whether a document
+ * is in use without a query.
+ *
+ * The index is updated on completion of the create, update and delete operations of the referring
+ * documents processed on the host, see {@link #register(OperationInterceptorRegistry, Reference)},
+ * and from continuous queries for the changes processed on other hosts. A background verifier
+ * reloads the referring documents periodically, and logs and fixes any drift of the index.
+ */
+public class ReferenceCountIndex {
+
+    public static final long VERIFY_INTERVAL_MICROS = Long.getLong(
+            "com.vmware.admiral.host.reference.index.verify.interval.micros",
+            TimeUnit.MINUTES.toMicros(10));
+
+    public static final boolean DISABLED = Boolean.getBoolean(
+            "com.vmware.admiral.host.reference.index.disabled");
+
+    private static final String QUERY_ID_PREFIX = "reference-index-";
+
+    /**
+     * A declared reference from a document type to other documents.
+     */
+    public static final class Reference<T extends ServiceDocument> {
+        final String name;
+        final Class<? extends Service> serviceType;
+        final Class<T> documentType;
+        final Function<T, Collection<String>> links;
+        final Function<T, Collection<String>> tenantLinks;
+
+        private Reference(String name, Class<? extends Service> serviceType,
+                Class<T> documentType, Function<T, Collection<String>> links,
+                Function<T, Collection<String>> tenantLinks) {
+            this.name = name;
+            this.serviceType = serviceType;
+            this.documentType = documentType;
+            this.links = links;
+            this.tenantLinks = tenantLinks;
+        }
+
+        /**
+         * Declares a reference from the documents of the given type, of the given service type,
+         * to the documents with the links returned by the given function.
+         */
+        public static <T extends ServiceDocument> Reference<T> of(String name,
+                Class<? extends Service> serviceType, Class<T> documentType,
+                Function<T, Collection<String>> links) {
+            return new Reference<>(name, serviceType, documentType, links, null);
+        }
+
+        /**
+         * Returns a reference which also indexes the tenant links of the referring documents, so
+         * that the referrers can be filtered by tenant, see
+         * {@link ReferenceCountIndex#getCount(Reference, String, Collection)}.
+         */
+        public Reference<T> withTenantLinks(Function<T, Collection<String>> tenantLinks) {
+            return new Reference<>(name, serviceType, documentType, links, tenantLinks);
+        }
+
+        Set<String> getLinks(Object document) {
+            return toSet(links.apply(Utils.fromJson(document, documentType)));
+        }
+
+        Set<String> getTenantLinks(Object document) {
+            if (tenantLinks == null) {
+                return Collections.emptySet();
+            }
+            return toSet(tenantLinks.apply(Utils.fromJson(document, documentType)));
+        }
+
+        private static Set<String> toSet(Collection<String> links) {
+            if (links == null || links.isEmpty()) {
+                return Collections.emptySet();
+            }
+            return links.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        }
+    }
+
+    /**
+     * The references of a {@link Reference} type.
+     */
+    static class References {
+        final Reference<?> reference;
+        // referring document link -> referenced links
+        final Map<String, Set<String>> links = new HashMap<>();
+        // referring document link -> tenant links, if indexed
+        final Map<String, Set<String>> tenantLinks = new HashMap<>();
+        // referring document link -> generation of the last update, kept for deleted documents
+        // until the next verification, so that it does not add them back
+        final Map<String, Long> generations = new HashMap<>();
+        // referenced link -> referring document links
+        final Map<String, Set<String>> referrers = new HashMap<>();
+        final AtomicBoolean verifying = new AtomicBoolean();
+        long generation;
+        volatile boolean ready;
+
+        References(Reference<?> reference) {
+            this.reference = reference;
+        }
+
+        synchronized boolean put(String referrer, Set<String> newLinks) {
+            return put(referrer, newLinks, Collections.emptySet());
+        }
+
+        /**
+         * Updates the links of the referring document and returns whether they have changed.
+         */
+        synchronized boolean put(String referrer, Set<String> newLinks,
+                Set<String> newTenantLinks) {
+            generations.put(referrer, generation);
+            Set<String> oldTenantLinks = newTenantLinks.isEmpty() ? tenantLinks.remove(referrer)
+                    : tenantLinks.put(referrer, newTenantLinks);
+            boolean tenantLinksChanged = !Objects.equals(oldTenantLinks,
+                    newTenantLinks.isEmpty() ? null : newTenantLinks);
+            Set<String> oldLinks = newLinks.isEmpty() ? links.remove(referrer)
+                    : links.put(referrer, newLinks);
+            if (Objects.equals(oldLinks, newLinks.isEmpty() ? null : newLinks)) {
+                return tenantLinksChanged;
+            }
+            if (oldLinks != null) {
+                for (String link : oldLinks) {
+                    Set<String> linkReferrers = referrers.get(link);
+                    linkReferrers.remove(referrer);
+                    if (linkReferrers.isEmpty()) {
+                        referrers.remove(link);
+                    }
+                }
+            }
+            for (String link : newLinks) {
+                referrers.computeIfAbsent(link, l -> new HashSet<>()).add(referrer);
+            }
+            return true;
+        }
+
+        /**
+         * Removes the links of the deleted referring document, keeping the generation of the
+         * delete.
+         */
+        synchronized boolean remove(String referrer) {
+            return put(referrer, Collections.emptySet());
+        }
+
+        synchronized Set<String> getReferrers(String link) {
+            Set<String> linkReferrers = referrers.get(link);
+            return linkReferrers == null ? Collections.emptySet() : new HashSet<>(linkReferrers);
+        }
+
+        /**
+         * Returns the referring documents of the given link with any of the given tenant links,
+         * or all of them if no tenant links are given.
+         */
+        synchronized Set<String> getReferrers(String link, Collection<String> filterTenantLinks) {
+            if (filterTenantLinks == null || filterTenantLinks.isEmpty()) {
+                return getReferrers(link);
+            }
+            return getReferrers(link).stream()
+                    .filter(r -> !Collections.disjoint(filterTenantLinks,
+                            tenantLinks.getOrDefault(r, Collections.emptySet())))
+                    .collect(Collectors.toSet());
+        }
+
+        synchronized long nextGeneration() {
+            return ++generation;
+        }
+
+        /**
+         * Removes the referring documents not updated since the given generation, and returns
+         * their number. The generations of the documents deleted before are dropped too.
+         */
+        synchronized int removeOlderThan(long generation) {
+            List<String> stale = generations.entrySet().stream()
+                    .filter(e -> e.getValue() < generation)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+            int removed = 0;
+            for (String referrer : stale) {
+                if (remove(referrer)) {
+                    removed++;
+                }
+                generations.remove(referrer);
+            }
+            return removed;
+        }
+
+        synchronized boolean isUpdatedSince(String referrer, long generation) {
+            Long referrerGeneration = generations.get(referrer);
+            return referrerGeneration != null && referrerGeneration >= generation;
+        }
+    }
+
+    private final ServiceHost host;
+    private final Map<String, References> references = new ConcurrentHashMap<>();
+
+    ReferenceCountIndex(ServiceHost host) {
+        this.host = host;
+        scheduleVerify();
+    }
+
+    public static ReferenceCountIndex getInstance(ServiceHost host) {
+        return HostScopedInstances.getOrCreate(host, ReferenceCountIndex.class,
+                ReferenceCountIndex::new);
+    }
+
+    /**
+     * Registers interceptors keeping the index of the given reference up to date on the changes of
+     * the referring documents.
+     */
+    public static void register(OperationInterceptorRegistry registry, Reference<?> reference) {
+        if (DISABLED) {
+            return;
+        }
+        registry.addFactoryServiceInterceptor(reference.serviceType, Action.POST,
+                (service, op) -> onCompletion(service, op, reference));
+        registry.addServiceInterceptor(reference.serviceType, Action.PUT,
+                (service, op) -> onCompletion(service, op, reference));
+        registry.addServiceInterceptor(reference.serviceType, Action.PATCH,
+                (service, op) -> onCompletion(service, op, reference));
+        registry.addServiceInterceptor(reference.serviceType, Action.DELETE,
+                (service, op) -> onCompletion(service, op, reference));
+    }
+
+    private static DeferredResult<Void> onCompletion(Service service, Operation op,
+            Reference<?> reference) {
+        ReferenceCountIndex index = getInstance(service.getHost());
+        String selfLink = service.getSelfLink();
+        op.nestCompletion((o, e) -> {
+            if (e != null) {
+                o.fail(e);
+                return;
+            }
+            try {
+                if (o.getAction() == Action.DELETE) {
+                    // a stop of the service does not delete the document
+                    if (!o.hasPragmaDirective(Operation.PRAGMA_DIRECTIVE_NO_INDEX_UPDATE)) {
+                        index.getReferences(reference).remove(selfLink);
+                    }
+                } else {
+                    Object document = o.getAction() == Action.POST ? o.getBodyRaw()
+                            : service.getState(o);
+                    if (document != null) {
+                        index.update(reference, document);
+                    }
+                }
+            } catch (Throwable t) {
+                service.getHost().log(Level.WARNING, "Failed to update reference index %s: %s",
+                        reference.name, Utils.toString(t));
+            }
+            o.complete();
+        });
+        return null;
+    }
+
+    /**
+     * Whether the references of the given type have been loaded, i.e. the index can be used
+     * instead of a query.
+     */
+    public boolean isReady(Reference<?> reference) {
+        return !DISABLED && getReferences(reference).ready;
+    }
+
+    /**
+     * Returns the number of documents referring to the given link.
+     */
+    public int getCount(Reference<?> reference, String link) {
+        return getReferences(reference).getReferrers(link).size();
+    }
+
+    /**
+     * Returns the number of documents referring to the given link with any of the given tenant
+     * links, as a query with the same tenant links would, or of all of them if no tenant links
+     * are given. The tenant links must be indexed, see {@link Reference#withTenantLinks}.
+     */
+    public int getCount(Reference<?> reference, String link, Collection<String> tenantLinks) {
+        if (reference.tenantLinks == null) {
+            throw new IllegalArgumentException(
+                    "Tenant links are not indexed for reference " + reference.name);
+        }
+        return getReferences(reference).getReferrers(link, tenantLinks).size();
+    }
+
+    /**
+     * Returns the links of the documents referring to the given link.
+     */
+    public Set<String> getReferrers(Reference<?> reference, String link) {
+        return getReferences(reference).getReferrers(link);
+    }
+
+    /**
+     * Returns the links of the documents referring to the given link with any of the given
+     * tenant links, or of all of them if no tenant links are given. The tenant links must be
+     * indexed, see {@link Reference#withTenantLinks}.
+     */
+    public Set<String> getReferrers(Reference<?> reference, String link,
+            Collection<String> tenantLinks) {
+        if (reference.tenantLinks == null) {
+            throw new IllegalArgumentException(
+                    "Tenant links are not indexed for reference " + reference.name);
+        }
+        return getReferences(reference).getReferrers(link, tenantLinks);
+    }
+
+    /**
+     * Reloads the referring documents of all references, fixing the index where it differs.
+     */
+    public DeferredResult<Void> verify() {
+        return DeferredResult.allOf(references.values().stream()
+                .map(this::verify)
+                .collect(Collectors.toList()))
+                .thenApply(ignore -> null);
+    }
+
+    private References getReferences(Reference<?> reference) {
+        References refs = references.get(reference.name);
+        if (refs != null) {
+            return refs;
+        }
+        boolean[] created = new boolean[1];
+        refs = references.computeIfAbsent(reference.name, n -> {
+            created[0] = true;
+            return new References(reference);
+        });
+        if (created[0] && host != null) {
+            CommonContinuousQueries.subscribeTo(host, QUERY_ID_PREFIX + reference.name,
+                    Query.Builder.create().addKindFieldClause(reference.documentType).build(),
+                    op -> onNotification(reference, op));
+            verify(refs);
+        }
+        return refs;
+    }
+
+    void update(Reference<?> reference, Object document) {
+        ServiceDocument serviceDocument = Utils.fromJson(document, ServiceDocument.class);
+        if (serviceDocument.documentSelfLink == null) {
+            return;
+        }
+        References refs = getReferences(reference);
+        if (Action.DELETE.toString().equals(serviceDocument.documentUpdateAction)) {
+            refs.remove(serviceDocument.documentSelfLink);
+        } else {
+            refs.put(serviceDocument.documentSelfLink, reference.getLinks(document),
+                    reference.getTenantLinks(document));
+        }
+    }
+
+    private void onNotification(Reference<?> reference, Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+        for (Object document : queryTask.results.documents.values()) {
+            update(reference, document);
+        }
+    }
+
+    private DeferredResult<Void> verify(References refs) {
+        if (!refs.verifying.compareAndSet(false, true)) {
+            return DeferredResult.completed(null);
+        }
+
+        Reference<?> reference = refs.reference;
+        long generation = refs.nextGeneration();
+        int[] drift = new int[1];
+        DeferredResult<Void> result = new DeferredResult<>();
+        QueryTask queryTask = QueryUtil.buildQuery(reference.documentType, false);
+        QueryUtil.addExpandOption(queryTask);
+        new ServiceDocumentQuery<>(host, reference.documentType).query(queryTask, (r) -> {
+            if (r.hasException()) {
+                refs.verifying.set(false);
+                host.log(Level.WARNING, "Failed to load reference index %s: %s",
+                        reference.name, Utils.toString(r.getException()));
+                result.complete(null);
+            } else if (r.hasResult()) {
+                ServiceDocument document = r.getResult();
+                // documents updated or deleted since the verification started are up to date
+                if (!refs.isUpdatedSince(document.documentSelfLink, generation)
+                        && refs.put(document.documentSelfLink, reference.getLinks(document),
+                                reference.getTenantLinks(document))
+                        && refs.ready) {
+                    drift[0]++;
+                }
+            } else {
+                int removed = refs.removeOlderThan(generation);
+                if (refs.ready && drift[0] + removed > 0) {
+                    host.log(Level.WARNING, "Fixed %d drifted references of reference index %s",
+                            drift[0] + removed, reference.name);
+                }
+                refs.ready = true;
+                refs.verifying.set(false);
+                result.complete(null);
+            }
+        });
+        return result;
+    }
+
+    private void scheduleVerify() {
+        if (host == null || DISABLED) {
+            return;
+        }
+        host.schedule(() -> {
+            if (host.isStopping()) {
+                return;
+            }
+            verify().whenComplete((ignore, e) -> scheduleVerify());
+        }, VERIFY_INTERVAL_MICROS, TimeUnit.MICROSECONDS);
+    }
+}
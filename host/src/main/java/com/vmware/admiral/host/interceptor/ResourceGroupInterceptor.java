@@ -16,12 +16,16 @@ import java.util.stream.Collectors;
 
 import com.vmware.admiral.auth.util.ProjectUtil;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
+import com.vmware.admiral.compute.network.ComputeNetworkService;
 import com.vmware.admiral.compute.network.ComputeNetworkService.ComputeNetwork;
+import com.vmware.admiral.host.interceptor.ReferenceCountIndex.Reference;
 import com.vmware.photon.controller.model.query.QueryUtils;
 import com.vmware.photon.controller.model.resources.ResourceGroupService;
 import com.vmware.photon.controller.model.resources.ResourceGroupService.ResourceGroupState;
 import com.vmware.photon.controller.model.resources.ResourceState;
+import com.vmware.photon.controller.model.resources.SecurityGroupService;
 import com.vmware.photon.controller.model.resources.SecurityGroupService.SecurityGroupState;
+import com.vmware.photon.controller.model.resources.SubnetService;
 import com.vmware.photon.controller.model.resources.SubnetService.SubnetState;
 import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.LocalizableValidationException;
@@ -37,9 +41,25 @@ import com.vmware.xenon.services.common.QueryTask.Query.Builder;
  */
 public class ResourceGroupInterceptor {
 
+    public static final Reference<ComputeNetwork> NETWORK_RESOURCE_GROUP = Reference.of(
+            "network-resource-group", ComputeNetworkService.class, ComputeNetwork.class,
+            n -> n.groupLinks).withTenantLinks(n -> n.tenantLinks);
+
+    public static final Reference<SubnetState> SUBNET_RESOURCE_GROUP = Reference.of(
+            "subnet-resource-group", SubnetService.class, SubnetState.class,
+            s -> s.groupLinks).withTenantLinks(s -> s.tenantLinks);
+
+    public static final Reference<SecurityGroupState> SECURITY_GROUP_RESOURCE_GROUP =
+            Reference.of("security-group-resource-group", SecurityGroupService.class,
+                    SecurityGroupState.class, s -> s.groupLinks)
+                    .withTenantLinks(s -> s.tenantLinks);
+
     public static void register(OperationInterceptorRegistry registry) {
         registry.addServiceInterceptor(
                 ResourceGroupService.class, Action.DELETE, ResourceGroupInterceptor::interceptDelete);
+        ReferenceCountIndex.register(registry, NETWORK_RESOURCE_GROUP);
+        ReferenceCountIndex.register(registry, SUBNET_RESOURCE_GROUP);
+        ReferenceCountIndex.register(registry, SECURITY_GROUP_RESOURCE_GROUP);
     }
 
     public static DeferredResult<Void> interceptDelete(Service service, Operation op) {
@@ -72,7 +92,8 @@ public class ResourceGroupInterceptor {
     private static DeferredResult<Void> queryForLinkedNetworks(Service service,
             ResourceGroupState currentState) {
 
-        return queryForLinkedResources(service, currentState, ComputeNetwork.class)
+        return queryForLinkedResources(service, currentState, ComputeNetwork.class,
+                NETWORK_RESOURCE_GROUP)
                 .thenAccept(count -> {
                     if (count != 0) {
                         throw new LocalizableValidationException(
@@ -87,7 +108,8 @@ public class ResourceGroupInterceptor {
     private static DeferredResult<Void> queryForLinkedSubnets(Service service,
             ResourceGroupState currentState) {
 
-        return queryForLinkedResources(service, currentState, SubnetState.class)
+        return queryForLinkedResources(service, currentState, SubnetState.class,
+                SUBNET_RESOURCE_GROUP)
                 .thenAccept(count -> {
                     if (count != 0) {
                         throw new LocalizableValidationException(
@@ -102,7 +124,8 @@ public class ResourceGroupInterceptor {
     private static DeferredResult<Void> queryForLinkedSecurityGroups(Service service,
             ResourceGroupState currentState) {
 
-        return queryForLinkedResources(service, currentState, SecurityGroupState.class)
+        return queryForLinkedResources(service, currentState, SecurityGroupState.class,
+                SECURITY_GROUP_RESOURCE_GROUP)
                 .thenAccept(count -> {
                     if (count != 0) {
                         throw new LocalizableValidationException(
@@ -115,7 +138,15 @@ public class ResourceGroupInterceptor {
     }
 
     private static <T extends ResourceState>DeferredResult<Integer> queryForLinkedResources(
-            Service service, ResourceGroupState currentState, Class<T> resourceClass) {
+            Service service, ResourceGroupState currentState, Class<T> resourceClass,
+            Reference<T> reference) {
+
+        // the index filters the resources by the tenant links of the group as the query does
+        ReferenceCountIndex index = ReferenceCountIndex.getInstance(service.getHost());
+        if (index.isReady(reference)) {
+            return DeferredResult.completed(index.getCount(reference,
+                    currentState.documentSelfLink, currentState.tenantLinks));
+        }
 
         Builder builder = Builder.create()
                 .addKindFieldClause(resourceClass)
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.host;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.host.HostBootOrchestrator.BootGroupTiming;
+import com.vmware.xenon.common.test.VerificationHost;
+
+public class HostBootOrchestratorTest {
+
+    private VerificationHost host;
+    private final List<String> events = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Throwable {
+        host = VerificationHost.create();
+        VerificationHost.initialize(host, VerificationHost.buildDefaultServiceHostArguments(0));
+        host.start();
+    }
+
+    @After
+    public void tearDown() {
+        host.tearDown();
+    }
+
+    @Test
+    public void testStartsGroupsAfterTheirDependencies() throws Throwable {
+        HostBootOrchestrator boot = createOrchestrator(4);
+        boot.addGroup("a", step("a"));
+        boot.addGroup("b", step("b"), "a");
+        boot.addGroup("c", step("c"), "a");
+        boot.addGroup("d", step("d"), "b", "c");
+        boot.run(10, TimeUnit.SECONDS);
+
+        assertBefore("a.end", "b.start");
+        assertBefore("a.end", "c.start");
+        assertBefore("b.end", "d.start");
+        assertBefore("c.end", "d.start");
+
+        List<String> started = boot.getTimeline().stream().map(t -> t.name)
+                .collect(Collectors.toList());
+        assertEquals(4, started.size());
+        assertEquals("a", started.get(0));
+        assertEquals("d", started.get(3));
+    }
+
+    @Test
+    public void testStartsIndependentGroupsConcurrently() throws Throwable {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        HostBootOrchestrator boot = createOrchestrator(2);
+        // each group waits for the other one, which only completes if they run in parallel
+        HostBootOrchestrator.BootStep step = () -> {
+            bothStarted.countDown();
+            assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+        };
+        boot.addGroup("a", step);
+        boot.addGroup("b", step);
+        boot.run(10, TimeUnit.SECONDS);
+
+        List<BootGroupTiming> timeline = boot.getTimeline();
+        assertEquals(2, timeline.size());
+        assertFalse(timeline.get(0).thread.equals(timeline.get(1).thread));
+    }
+
+    @Test
+    public void testFailureSkipsDependentGroups() throws Throwable {
+        IllegalStateException failure = new IllegalStateException("expected");
+        HostBootOrchestrator boot = createOrchestrator(2);
+        boot.addGroup("a", () -> {
+            throw failure;
+        });
+        boot.addGroup("b", step("b"), "a");
+        boot.addGroup("c", step("c"));
+
+        try {
+            boot.run(10, TimeUnit.SECONDS);
+            fail("Boot should have failed");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        assertFalse(events.contains("b.start"));
+        assertTrue(events.contains("c.end"));
+    }
+
+    @Test
+    public void testFailsOnTimeout() throws Throwable {
+        HostBootOrchestrator boot = createOrchestrator(1);
+        boot.addGroup("slow", () -> Thread.sleep(TimeUnit.SECONDS.toMillis(10)));
+        try {
+            boot.run(100, TimeUnit.MILLISECONDS);
+            fail("Boot should have timed out");
+        } catch (TimeoutException e) {
+            assertTrue(e.getMessage().contains("did not complete"));
+        }
+    }
+
+    @Test
+    public void testRejectsCyclicAndUnknownDependencies() {
+        HostBootOrchestrator boot = createOrchestrator(1);
+        boot.addGroup("a", step("a"));
+
+        // depending on itself or on a group added later is what would make a cycle
+        assertRejected(() -> boot.addGroup("b", step("b"), "b"));
+        assertRejected(() -> boot.addGroup("b", step("b"), "c"));
+        assertRejected(() -> boot.addGroup("a", step("a")));
+        boot.addGroup("b", step("b"), "a");
+    }
+
+    private HostBootOrchestrator createOrchestrator(int parallelism) {
+        return new HostBootOrchestrator(host, parallelism, () -> {
+        }, () -> {
+        });
+    }
+
+    private HostBootOrchestrator.BootStep step(String name) {
+        return () -> {
+            events.add(name + ".start");
+            Thread.sleep(20);
+            events.add(name + ".end");
+        };
+    }
+
+    private void assertBefore(String first, String second) {
+        assertTrue(events.contains(first));
+        assertTrue(String.format("%s should be before %s: %s", first, second, events),
+                events.indexOf(first) < events.indexOf(second));
+    }
+
+    private static void assertRejected(Runnable runnable) {
+        try {
+            runnable.run();
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.host.interceptor;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.common.test.BaseTestCase;
+import com.vmware.admiral.compute.profile.ProfileService;
+import com.vmware.admiral.compute.profile.ProfileService.ProfileState;
+import com.vmware.admiral.host.HostInitComputeServicesConfig;
+import com.vmware.admiral.host.HostInitPhotonModelServiceConfig;
+import com.vmware.photon.controller.model.constants.PhotonModelConstants.EndpointType;
+import com.vmware.photon.controller.model.resources.EndpointService;
+import com.vmware.photon.controller.model.resources.EndpointService.EndpointState;
+import com.vmware.xenon.common.UriUtils;
+
+public class EndpointInterceptorTest extends BaseTestCase {
+
+    private static final String TENANT_A = "/tenants/a";
+    private static final String TENANT_B = "/tenants/b";
+
+    @Before
+    public void setUp() throws Throwable {
+        HostInitPhotonModelServiceConfig.startServices(host);
+        HostInitComputeServicesConfig.startServices(host, true);
+
+        waitForServiceAvailability(EndpointService.FACTORY_LINK);
+        waitForServiceAvailability(ProfileService.FACTORY_LINK);
+    }
+
+    @Override
+    protected void registerInterceptors(OperationInterceptorRegistry registry) {
+        EndpointInterceptor.register(registry);
+    }
+
+    @Test
+    public void testDeleteEndpointDeletesProfilesOfItsTenantOnly() throws Throwable {
+        EndpointState endpoint = createEndpoint("endpoint-a", TENANT_A);
+        ProfileState profileA = createProfile("profile-a", endpoint.documentSelfLink, TENANT_A);
+        ProfileState profileB = createProfile("profile-b", endpoint.documentSelfLink, TENANT_B);
+
+        // the profiles of both tenants refer to the endpoint, the delete must use the index
+        ReferenceCountIndex index = ReferenceCountIndex.getInstance(host);
+        waitFor("Index not loaded", () -> index.isReady(EndpointInterceptor.PROFILE_ENDPOINT)
+                && index.getCount(EndpointInterceptor.PROFILE_ENDPOINT,
+                        endpoint.documentSelfLink) == 2);
+
+        doDelete(UriUtils.buildUri(host, endpoint.documentSelfLink), false);
+
+        assertNull(getDocumentNoWait(ProfileState.class, profileA.documentSelfLink));
+        assertNotNull(getDocumentNoWait(ProfileState.class, profileB.documentSelfLink));
+    }
+
+    private EndpointState createEndpoint(String name, String tenantLink) throws Throwable {
+        EndpointState endpoint = new EndpointState();
+        endpoint.name = name;
+        endpoint.endpointType = EndpointType.vsphere.name();
+        endpoint.tenantLinks = Collections.singletonList(tenantLink);
+        return doPost(endpoint, EndpointService.FACTORY_LINK);
+    }
+
+    private ProfileState createProfile(String name, String endpointLink, String tenantLink)
+            throws Throwable {
+        ProfileState profile = new ProfileState();
+        profile.name = name;
+        profile.endpointLink = endpointLink;
+        profile.tenantLinks = Collections.singletonList(tenantLink);
+        return doPost(profile, ProfileService.FACTORY_LINK);
+    }
+}
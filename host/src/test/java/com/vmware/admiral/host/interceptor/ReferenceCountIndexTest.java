@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.host.interceptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.host.interceptor.ReferenceCountIndex.Reference;
+import com.vmware.admiral.host.interceptor.ReferenceCountIndex.References;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.test.TestContext;
+import com.vmware.xenon.common.test.VerificationHost;
+import com.vmware.xenon.services.common.ExampleService;
+import com.vmware.xenon.services.common.ExampleService.ExampleServiceState;
+
+public class ReferenceCountIndexTest {
+
+    private static final String GROUP_A = "/groups/a";
+    private static final String GROUP_B = "/groups/b";
+
+    // the tags of the examples are the referenced links and the values their tenant links
+    private static final Reference<ExampleServiceState> EXAMPLE_GROUPS = Reference.of(
+            "example-groups", ExampleService.class, ExampleServiceState.class, e -> e.tags)
+            .withTenantLinks(e -> e.keyValues == null ? null : e.keyValues.values());
+
+    private VerificationHost host;
+    private ReferenceCountIndex index;
+
+    @Before
+    public void setUp() throws Throwable {
+        host = VerificationHost.create();
+        VerificationHost.initialize(host, VerificationHost.buildDefaultServiceHostArguments(0));
+        host.start();
+        host.waitForServiceAvailable(ExampleService.FACTORY_LINK);
+        index = new ReferenceCountIndex(host);
+    }
+
+    @After
+    public void tearDown() {
+        host.tearDown();
+    }
+
+    @Test
+    public void testIndexFollowsDocumentChanges() throws Throwable {
+        ExampleServiceState example = create("example-1", GROUP_A);
+        create("example-2", GROUP_A);
+
+        // the index is loaded on first use, until then the callers query
+        assertFalse(index.isReady(EXAMPLE_GROUPS));
+        host.waitFor("Index not loaded", () -> index.isReady(EXAMPLE_GROUPS));
+        assertEquals(2, index.getCount(EXAMPLE_GROUPS, GROUP_A));
+
+        example.tags = new HashSet<>(Arrays.asList(GROUP_B));
+        send(Operation.createPut(host, example.documentSelfLink).setBody(example));
+        host.waitFor("Update not indexed",
+                () -> index.getCount(EXAMPLE_GROUPS, GROUP_A) == 1
+                        && index.getCount(EXAMPLE_GROUPS, GROUP_B) == 1);
+        assertEquals(Collections.singleton(example.documentSelfLink),
+                index.getReferrers(EXAMPLE_GROUPS, GROUP_B));
+
+        send(Operation.createDelete(host, example.documentSelfLink));
+        host.waitFor("Delete not indexed", () -> index.getCount(EXAMPLE_GROUPS, GROUP_B) == 0);
+        assertEquals(1, index.getCount(EXAMPLE_GROUPS, GROUP_A));
+    }
+
+    @Test
+    public void testVerifyFixesDrift() throws Throwable {
+        ExampleServiceState example = create("example-1", GROUP_A);
+        host.waitFor("Index not loaded", () -> index.isReady(EXAMPLE_GROUPS)
+                && index.getCount(EXAMPLE_GROUPS, GROUP_A) == 1);
+
+        // a missed delete of the example and a missed create of another one
+        example.documentUpdateAction = Action.DELETE.toString();
+        index.update(EXAMPLE_GROUPS, example);
+        ExampleServiceState phantom = new ExampleServiceState();
+        phantom.documentSelfLink = UriUtils.buildUriPath(ExampleService.FACTORY_LINK, "phantom");
+        phantom.tags = new HashSet<>(Arrays.asList(GROUP_B));
+        index.update(EXAMPLE_GROUPS, phantom);
+        assertEquals(0, index.getCount(EXAMPLE_GROUPS, GROUP_A));
+        assertEquals(1, index.getCount(EXAMPLE_GROUPS, GROUP_B));
+
+        index.verify().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, index.getCount(EXAMPLE_GROUPS, GROUP_A));
+        assertEquals(0, index.getCount(EXAMPLE_GROUPS, GROUP_B));
+    }
+
+    @Test
+    public void testCountsAreFilteredByTenant() {
+        References refs = new References(EXAMPLE_GROUPS);
+        refs.put("/examples/1", set(GROUP_A), set("/tenants/1"));
+        refs.put("/examples/2", set(GROUP_A), set("/tenants/2"));
+        refs.put("/examples/3", set(GROUP_A), Collections.emptySet());
+
+        assertEquals(3, refs.getReferrers(GROUP_A, null).size());
+        assertEquals(set("/examples/1"), refs.getReferrers(GROUP_A, set("/tenants/1")));
+        assertEquals(set("/examples/1", "/examples/2"),
+                refs.getReferrers(GROUP_A, set("/tenants/1", "/tenants/2")));
+        assertEquals(0, refs.getReferrers(GROUP_A, set("/tenants/3")).size());
+    }
+
+    @Test
+    public void testDeletedReferrerIsNotAddedBackByVerify() {
+        References refs = new References(EXAMPLE_GROUPS);
+        assertTrue(refs.put("/examples/1", set(GROUP_A)));
+
+        // the referrer is deleted while a verification loads the referrers
+        long generation = refs.nextGeneration();
+        assertTrue(refs.remove("/examples/1"));
+        assertTrue(refs.getReferrers(GROUP_A).isEmpty());
+        assertTrue(refs.isUpdatedSince("/examples/1", generation));
+
+        // the next verification drops the deleted referrer
+        assertEquals(0, refs.removeOlderThan(refs.nextGeneration()));
+        assertFalse(refs.isUpdatedSince("/examples/1", 0));
+        assertTrue(refs.generations.isEmpty());
+    }
+
+    private ExampleServiceState create(String name, String groupLink) {
+        ExampleServiceState state = new ExampleServiceState();
+        state.name = name;
+        state.tags = new HashSet<>(Arrays.asList(groupLink));
+        state.keyValues = new HashMap<>();
+        ExampleServiceState[] result = new ExampleServiceState[1];
+        TestContext ctx = host.testCreate(1);
+        host.send(Operation.createPost(host, ExampleService.FACTORY_LINK)
+                .setBody(state)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        ctx.failIteration(e);
+                        return;
+                    }
+                    result[0] = o.getBody(ExampleServiceState.class);
+                    ctx.completeIteration();
+                }));
+        host.testWait(ctx);
+        return result[0];
+    }
+
+    private void send(Operation op) {
+        TestContext ctx = host.testCreate(1);
+        host.send(op.setCompletion(ctx.getCompletion()));
+        host.testWait(ctx);
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
@@ -15,12 +15,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import com.vmware.admiral.common.DeploymentProfileConfig;
 import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.CommonContinuousQueries;
 import com.vmware.admiral.common.util.PropertyUtils;
+import com.vmware.admiral.common.util.RateLimitedWorkQueue;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.HealthChecker.HealthConfig;
@@ -36,11 +39,20 @@ import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.StatefulService;
 import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.QueryTask.Query.Builder;
 import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
 
 /**
  * Enforces the actual state as close as possible to desired state.
+ *
+ * Container descriptions are reconciled incrementally: changes of containers and of container
+ * descriptions mark the affected description as dirty and only dirty descriptions are inspected.
+ * A full pass over all descriptions with auto redeployment enabled is still done on the
+ * periodic maintenance or when the service is patched. Unlike the full pass, the incremental
+ * reconciliation also runs in test mode, since it only touches descriptions which have opted in
+ * to auto redeployment.
  */
 public class ContainerControlLoopService extends StatefulService {
     public static final String FACTORY_LINK = ManagementUriParts.CONTAINER_CONTROL_LOOP;
@@ -52,8 +64,39 @@ public class ContainerControlLoopService extends StatefulService {
     private static final long MAINTENANCE_INTERVAL_MICROS = Long
             .getLong("com.vmware.admiral.request.container.maintenance.interval.micros",
                     TimeUnit.MINUTES.toMicros(5));
+
+    /**
+     * Minimal interval between two reconciliations of the same container description.
+     */
+    private static final long RECONCILE_MIN_INTERVAL_MICROS = Long
+            .getLong("com.vmware.admiral.request.container.reconcile.min.interval.micros",
+                    TimeUnit.SECONDS.toMicros(30));
+
+    /**
+     * Delay before processing newly dirty descriptions, so that bursts of changes are coalesced.
+     */
+    private static final long RECONCILE_DELAY_MICROS = Long
+            .getLong("com.vmware.admiral.request.container.reconcile.delay.micros",
+                    TimeUnit.SECONDS.toMicros(2));
+
+    private static final int RECONCILE_BATCH_SIZE = Integer
+            .getInteger("com.vmware.admiral.request.container.reconcile.batch.size", 20);
+
+    private static final String CONTAINERS_QUERY_ID = "control-loop-containers";
+    private static final String CONTAINER_DESCRIPTIONS_QUERY_ID = "control-loop-descriptions";
+
+    public static final String STAT_NAME_RECONCILE_QUEUE_LENGTH = "reconcileQueueLength";
+    public static final String STAT_NAME_RECONCILE_QUEUE_LAG_MICROS = "reconcileQueueLagMicros";
+    public static final String STAT_NAME_RECONCILED_DESCRIPTIONS = "reconciledDescriptions";
+    public static final String STAT_NAME_RECONCILE_DURATION_MICROS = "reconcileDurationMicros";
+    public static final String STAT_NAME_FULL_RESYNCS = "fullResyncs";
+
     protected volatile AtomicInteger containerDescriptionsToBeProcessed = new AtomicInteger(0);
 
+    private final RateLimitedWorkQueue<String> dirtyDescriptions = new RateLimitedWorkQueue<>(
+            RECONCILE_MIN_INTERVAL_MICROS);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
     public static class ContainerControlLoopState extends com.vmware.xenon.common.ServiceDocument {
     }
 
@@ -73,6 +116,24 @@ public class ContainerControlLoopService extends StatefulService {
         return state;
     }
 
+    @Override
+    public void handleStart(Operation startPost) {
+        startPost.complete();
+
+        CommonContinuousQueries.subscribeTo(getHost(), CONTAINERS_QUERY_ID,
+                Builder.create()
+                        .addKindFieldClause(ContainerState.class)
+                        .addFieldClause(ContainerState.FIELD_NAME_POWER_STATE,
+                                ContainerState.PowerState.RUNNING.name(),
+                                Occurance.MUST_NOT_OCCUR)
+                        .build(),
+                this::onContainerChange);
+
+        CommonContinuousQueries.subscribeTo(getHost(), CONTAINER_DESCRIPTIONS_QUERY_ID,
+                buildAutoredeployDescriptionsQuery().build(),
+                this::onContainerDescriptionChange);
+    }
+
     @Override
     public void handlePost(Operation post) {
         if (!post.hasBody()) {
@@ -147,6 +208,7 @@ public class ContainerControlLoopService extends StatefulService {
     }
 
     private void performMaintenance() {
+        adjustStat(STAT_NAME_FULL_RESYNCS, 1);
         retrieveContainerDescriptions().whenComplete((containerDescriptions, e) -> {
             if (e != null) {
                 logSevere("Failed to retrieve container descriptions");
@@ -160,38 +222,142 @@ public class ContainerControlLoopService extends StatefulService {
 
             containerDescriptionsToBeProcessed.set(containerDescriptions.size());
 
+            long now = Utils.getNowMicrosUtc();
             for (ContainerDescription containerDescription : containerDescriptions) {
                 containerDescriptionsToBeProcessed.decrementAndGet();
 
-                retrieveContainerStates(containerDescription).thenApply
-                        (containers -> filterContainersWithContextId(containers)).whenComplete(
-                            (containers, ex) -> {
-
-                                if (ex != null) {
-                                    logSevere("Failed to retrieve containers");
-                                    return;
-                                }
-
-                                if (containers.isEmpty()) {
-                                    logFine("No containers from description: %s",
-                                            containerDescription.documentSelfLink);
-                                    return;
-                                }
-
-                                List<ContainerState> containersToBeRemoved = ContainerDiff
-                                        .inspect(containerDescription, containers)
-                                        .stream()
-                                        .filter(diff ->
-                                                Recommendation.REDEPLOY == ContainerRecommendation
-                                                        .recommend(diff))
-                                        .map(container -> container.currentState)
-                                        .collect(Collectors.toList());
-                                redeployContainers(containerDescription, containersToBeRemoved);
-                            });
+                // the full pass and the incremental reconciliation share the rate limit of a
+                // description, so that a description is not redeployed twice in a row
+                if (!dirtyDescriptions.markProcessed(containerDescription.documentSelfLink,
+                        now)) {
+                    logFine("Skipping recently reconciled container description %s",
+                            containerDescription.documentSelfLink);
+                    continue;
+                }
+
+                reconcile(containerDescription);
             }
         });
     }
 
+    private DeferredResult<Void> reconcile(ContainerDescription containerDescription) {
+        return retrieveContainerStates(containerDescription).thenApply
+                (containers -> filterContainersWithContextId(containers)).handle(
+                    (containers, ex) -> {
+
+                        if (ex != null) {
+                            logSevere("Failed to retrieve containers");
+                            return null;
+                        }
+
+                        if (containers.isEmpty()) {
+                            logFine("No containers from description: %s",
+                                    containerDescription.documentSelfLink);
+                            return null;
+                        }
+
+                        List<ContainerState> containersToBeRemoved = ContainerDiff
+                                .inspect(containerDescription, containers)
+                                .stream()
+                                .filter(diff ->
+                                        Recommendation.REDEPLOY == ContainerRecommendation
+                                                .recommend(diff))
+                                .map(container -> container.currentState)
+                                .collect(Collectors.toList());
+                        redeployContainers(containerDescription, containersToBeRemoved);
+                        return null;
+                    });
+    }
+
+    private void onContainerChange(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+
+        for (Object document : queryTask.results.documents.values()) {
+            ContainerState container = Utils.fromJson(document, ContainerState.class);
+            if (container.descriptionLink != null && container.customProperties != null
+                    && container.customProperties
+                            .get(RequestUtils.FIELD_NAME_CONTEXT_ID_KEY) != null) {
+                markDirty(container.descriptionLink);
+            }
+        }
+    }
+
+    private void onContainerDescriptionChange(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documentLinks == null) {
+            return;
+        }
+
+        queryTask.results.documentLinks.forEach(this::markDirty);
+    }
+
+    private void markDirty(String containerDescriptionLink) {
+        if (dirtyDescriptions.add(containerDescriptionLink, Utils.getNowMicrosUtc())) {
+            scheduleDrain(RECONCILE_DELAY_MICROS);
+        }
+    }
+
+    private void scheduleDrain(long delayMicros) {
+        if (drainScheduled.compareAndSet(false, true)) {
+            getHost().schedule(this::drainDirtyDescriptions, delayMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * Reconciles the dirty container descriptions which are not rate limited. Only the owner of
+     * the control loop document reconciles, the other nodes drop their dirty descriptions since
+     * the owner receives the same notifications.
+     */
+    private void drainDirtyDescriptions() {
+        drainScheduled.set(false);
+        if (getProcessingStage() != ProcessingStage.AVAILABLE) {
+            return;
+        }
+
+        long now = Utils.getNowMicrosUtc();
+        setStat(STAT_NAME_RECONCILE_QUEUE_LENGTH, dirtyDescriptions.size());
+        setStat(STAT_NAME_RECONCILE_QUEUE_LAG_MICROS, dirtyDescriptions.getLagMicros(now));
+
+        List<String> descriptionLinks = dirtyDescriptions.poll(now, RECONCILE_BATCH_SIZE);
+        if (!descriptionLinks.isEmpty() && hasOption(ServiceOption.DOCUMENT_OWNER)) {
+            reconcileDescriptions(descriptionLinks);
+        }
+
+        long nextDelay = dirtyDescriptions.getNextReadyDelayMicros(Utils.getNowMicrosUtc());
+        if (nextDelay >= 0) {
+            scheduleDrain(Math.max(nextDelay, RECONCILE_DELAY_MICROS));
+        }
+    }
+
+    private void reconcileDescriptions(List<String> descriptionLinks) {
+        logFine("Reconciling %d container descriptions", descriptionLinks.size());
+        long start = Utils.getNowMicrosUtc();
+
+        Builder builder = buildAutoredeployDescriptionsQuery()
+                .addInClause(ContainerDescription.FIELD_NAME_SELF_LINK, descriptionLinks);
+
+        new QueryByPages<>(getHost(), builder.build(), ContainerDescription.class, null)
+                .collectDocuments(Collectors.toList())
+                .thenCompose(descriptions -> DeferredResult.allOf(descriptions.stream()
+                        .map(this::reconcile)
+                        .collect(Collectors.toList())))
+                .whenComplete((r, e) -> {
+                    if (e != null) {
+                        logWarning("Failed to reconcile container descriptions %s: %s",
+                                descriptionLinks, Utils.toString(e));
+                        return;
+                    }
+                    adjustStat(STAT_NAME_RECONCILED_DESCRIPTIONS, descriptionLinks.size());
+                    setStat(STAT_NAME_RECONCILE_DURATION_MICROS,
+                            Utils.getNowMicrosUtc() - start);
+                });
+    }
+
     private List<ContainerState> filterContainersWithContextId(List<ContainerState> containers) {
         return containers.stream().filter(state -> state.customProperties.get(RequestUtils
                 .FIELD_NAME_CONTEXT_ID_KEY) != null).collect(Collectors.toList());
@@ -201,7 +367,14 @@ public class ContainerControlLoopService extends StatefulService {
         logFine("Retrieve all container descriptions which have autoredeploy option enabled."
                 + "System container is excluded.");
 
-        Builder builder = Builder.create()
+        QueryByPages<ContainerDescription> query = new QueryByPages<>(getHost(),
+                buildAutoredeployDescriptionsQuery().build(), ContainerDescription.class, null);
+
+        return query.collectDocuments(Collectors.toList());
+    }
+
+    private static Builder buildAutoredeployDescriptionsQuery() {
+        return Builder.create()
                 .addKindFieldClause(ContainerDescription.class)
                 .addFieldClause(ContainerDescription.FIELD_NAME_SELF_LINK,
                         SystemContainerDescriptions.AGENT_CONTAINER_DESCRIPTION_LINK,
@@ -209,11 +382,6 @@ public class ContainerControlLoopService extends StatefulService {
                 .addCompositeFieldClause(ContainerDescription.FIELD_NAME_HEALTH_CONFIG,
                         HealthConfig.FIELD_NAME_AUTOREDEPLOY, Boolean.TRUE.toString(), Occurance
                                 .MUST_OCCUR);
-
-        QueryByPages<ContainerDescription> query = new QueryByPages<>(getHost(), builder.build(),
-                ContainerDescription.class, null);
-
-        return query.collectDocuments(Collectors.toList());
     }
 
     private DeferredResult<List<ContainerState>> retrieveContainerStates(
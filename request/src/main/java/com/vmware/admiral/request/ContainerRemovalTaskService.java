@@ -24,12 +24,15 @@ import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOp
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.vmware.admiral.adapter.common.AdapterRequest;
 import com.vmware.admiral.adapter.common.ContainerOperationType;
@@ -42,6 +45,7 @@ import com.vmware.admiral.compute.container.ContainerHostDataCollectionService;
 import com.vmware.admiral.compute.container.ContainerHostDataCollectionService.ContainerHostDataCollectionState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.HostPortProfileService;
+import com.vmware.admiral.compute.container.util.CompositeComponentNotifier;
 import com.vmware.admiral.request.ContainerRemovalTaskService.ContainerRemovalTaskState.SubStage;
 import com.vmware.admiral.request.ReservationRemovalTaskService.ReservationRemovalTaskState;
 import com.vmware.admiral.service.common.AbstractTaskStatefulService;
@@ -68,6 +72,12 @@ public class ContainerRemovalTaskService
 
     public static final String DISPLAY_NAME = "Container Removal";
 
+    /**
+     * Maximum number of container state updates and deletions sent at the same time.
+     */
+    private static final int STATE_UPDATE_BATCH_SIZE = Integer.getInteger(
+            "com.vmware.admiral.request.container.removal.batch.size", 64);
+
     public static class ContainerRemovalTaskState extends
             com.vmware.admiral.service.common.TaskServiceDocument<ContainerRemovalTaskState.SubStage> {
 
@@ -125,7 +135,7 @@ public class ContainerRemovalTaskService
         case INSTANCES_REMOVING:
             break;// just patch with the links
         case INSTANCES_REMOVED:
-            removeResources(state, null);
+            removeResources(state);
             break;
         case REMOVING_RESOURCE_STATES:
             break;
@@ -178,7 +188,7 @@ public class ContainerRemovalTaskService
         QueryTask computeQuery = createResourcesQuery(ContainerState.class, state.resourceLinks);
         ServiceDocumentQuery<ContainerState> query = new ServiceDocumentQuery<>(getHost(),
                 ContainerState.class);
-        List<String> containerLinks = new ArrayList<>();
+        List<ContainerState> containers = new ArrayList<>();
         state.containersParentLinks = new HashSet<>();
         QueryUtil.addBroadcastOption(computeQuery);
         QueryUtil.addExpandOption(computeQuery);
@@ -186,10 +196,10 @@ public class ContainerRemovalTaskService
             if (r.hasException()) {
                 failTask("Failure retrieving query results", r.getException());
             } else if (r.hasResult()) {
-                containerLinks.add(r.getDocumentSelfLink());
+                containers.add(r.getResult());
                 state.containersParentLinks.add(r.getResult().parentLink);
             } else {
-                if (containerLinks.isEmpty()) {
+                if (containers.isEmpty()) {
                     logWarning("No available resources found to be removed with links: %s",
                             state.resourceLinks);
                     proceedTo(SubStage.COMPLETED);
@@ -198,7 +208,7 @@ public class ContainerRemovalTaskService
                         s.containersParentLinks = state.containersParentLinks;
                     });
 
-                    deleteResourceInstances(state, containerLinks, null);
+                    deleteResourceInstances(state, containers, null);
                 }
             }
         });
@@ -213,7 +223,7 @@ public class ContainerRemovalTaskService
     }
 
     private void deleteResourceInstances(ContainerRemovalTaskState state,
-            Collection<String> resourceLinks, String subTaskLink) {
+            Collection<ContainerState> containers, String subTaskLink) {
 
         if (state.removeOnly) {
             logFine("Skipping actual container removal by the adapter since the removeOnly flag "
@@ -225,48 +235,81 @@ public class ContainerRemovalTaskService
         }
 
         if (subTaskLink == null) {
-            createDeleteResourceCounterSubTask(state, resourceLinks);
+            List<ContainerState> instances = new ArrayList<>();
+            for (ContainerState containerState : containers) {
+                if (containerState.id == null || containerState.id.isEmpty()) {
+                    logWarning("No ID set for container state: [%s]  ",
+                            containerState.documentSelfLink);
+                } else if (isSystemContainer(containerState)) {
+                    logWarning("Resource [%s] will not be removed because it is a system container",
+                            containerState.documentSelfLink);
+                } else {
+                    instances.add(containerState);
+                }
+            }
+            if (instances.isEmpty()) {
+                proceedTo(SubStage.INSTANCES_REMOVED);
+                return;
+            }
+            createDeleteResourceCounterSubTask(state, instances);
             return;
         }
 
         try {
-            logInfo("Starting delete of %d container resources", resourceLinks.size());
-            for (String resourceLink : resourceLinks) {
-                sendRequest(Operation
-                        .createGet(this, resourceLink)
-                        .setCompletion(
-                                (o, e) -> {
-                                    if (e != null) {
-                                        logWarning("Failed retrieving ContainerState: "
-                                                + resourceLink);
-                                        completeSubTasksCounter(subTaskLink, e);
-                                        return;
-                                    }
-                                    ContainerState containerState = o.getBody(ContainerState.class);
-                                    if (containerState.id == null
-                                            || containerState.id.isEmpty()) {
-                                        logWarning("No ID set for container state: [%s]  ",
-                                                containerState.documentSelfLink);
-                                        completeSubTasksCounter(subTaskLink, null);
-                                    } else if (isSystemContainer(o.getBody(ContainerState.class))) {
-                                        logWarning(
-                                                "Resource [%s] will not be removed because it is a system container",
-                                                o.getBody(ContainerState.class).documentSelfLink);
-                                        completeSubTasksCounter(subTaskLink, null);
-                                    } else {
-                                        sendContainerDeleteRequest(containerState, subTaskLink);
-                                    }
-                                }));
+            Map<String, List<ContainerState>> containersByHost = groupByHost(containers);
+            logInfo("Starting delete of %d container resources on %d hosts", containers.size(),
+                    containersByHost.size());
+
+            // retire all the containers before any of them is removed by the adapter, so that
+            // the data collection doesn't bring back the ones not removed yet
+            Map<String, Long> retireOperationIds = new HashMap<>();
+            List<Operation> retireOperations = new ArrayList<>(containers.size());
+            for (ContainerState containerState : containers) {
+                ContainerState ps = new ContainerState();
+                ps.isDeleted = true;
+                Operation retire = Operation.createPatch(this, containerState.documentSelfLink)
+                        .setBody(ps);
+                retireOperationIds.put(containerState.documentSelfLink, retire.getId());
+                retireOperations.add(retire);
             }
+
+            OperationJoin.create(retireOperations).setCompletion((ops, exs) -> {
+                // the removal requests of a host are sent together, the adapter limits how
+                // many of them run on the host at the same time
+                for (List<ContainerState> hostContainers : containersByHost.values()) {
+                    for (ContainerState containerState : hostContainers) {
+                        Throwable e = exs == null ? null
+                                : exs.get(retireOperationIds.get(containerState.documentSelfLink));
+                        if (e != null) {
+                            logWarning("Failed to modify container state isDeleted before"
+                                            + " container delete: %s. Error: %s",
+                                    containerState.documentSelfLink, Utils.toString(e));
+                            completeSubTasksCounter(subTaskLink, e);
+                        } else {
+                            sendContainerDeleteRequest(containerState, subTaskLink);
+                        }
+                    }
+                }
+            }).sendWith(this, STATE_UPDATE_BATCH_SIZE);
         } catch (Throwable e) {
             failTask("Unexpected exception while deleting container instances", e);
         }
     }
 
+    private static Map<String, List<ContainerState>> groupByHost(
+            Collection<ContainerState> containers) {
+        Map<String, List<ContainerState>> containersByHost = new LinkedHashMap<>();
+        for (ContainerState containerState : containers) {
+            containersByHost.computeIfAbsent(containerState.parentLink, k -> new ArrayList<>())
+                    .add(containerState);
+        }
+        return containersByHost;
+    }
+
     private void createDeleteResourceCounterSubTask(ContainerRemovalTaskState state,
-            Collection<String> resourceLinks) {
+            Collection<ContainerState> containers) {
         CounterSubTaskState subTaskInitState = new CounterSubTaskState();
-        subTaskInitState.completionsRemaining = resourceLinks.size();
+        subTaskInitState.completionsRemaining = containers.size();
         subTaskInitState.documentExpirationTimeMicros = ServiceUtils
                 .getDefaultTaskExpirationTimeInMicros();
         subTaskInitState.serviceTaskCallback = ServiceTaskCallback.create(
@@ -275,200 +318,200 @@ public class ContainerRemovalTaskService
                 TaskStage.STARTED, SubStage.ERROR);
 
         CounterSubTaskService.createSubTask(this, subTaskInitState,
-                (subTaskLink) -> deleteResourceInstances(state, resourceLinks, subTaskLink));
+                (subTaskLink) -> deleteResourceInstances(state, containers, subTaskLink));
     }
 
     private void sendContainerDeleteRequest(ContainerState containerState, String subTaskLink) {
-        ContainerState ps = new ContainerState();
-        ps.isDeleted = true;
-        sendRequest(Operation.createPatch(getHost(), containerState.documentSelfLink)
-                .setBody(ps)
-                .setCompletion((o, e) -> {
-                    if (e != null) {
-                        logWarning("Failed to modify container state isDeleted before container"
-                                        + " delete: %s. Error: %s",
-                                containerState.documentSelfLink, Utils.toString(e));
-                        return;
-                    } else {
-                        AdapterRequest adapterRequest = new AdapterRequest();
-                        String selfLink = containerState.documentSelfLink;
-                        adapterRequest.resourceReference = UriUtils.buildUri(getHost(), selfLink);
-                        adapterRequest.serviceTaskCallback = ServiceTaskCallback
-                                .create(subTaskLink);
-                        adapterRequest.operationTypeId = ContainerOperationType.DELETE.id;
+        AdapterRequest adapterRequest = new AdapterRequest();
+        String selfLink = containerState.documentSelfLink;
+        adapterRequest.resourceReference = UriUtils.buildUri(getHost(), selfLink);
+        adapterRequest.serviceTaskCallback = ServiceTaskCallback.create(subTaskLink);
+        adapterRequest.operationTypeId = ContainerOperationType.DELETE.id;
+        sendRequest(Operation.createPatch(getHost(),
+                containerState.adapterManagementReference.toString())
+                .setBody(adapterRequest)
+                .setContextId(getSelfId())
+                .setCompletion((o1, e1) -> {
+                    if (e1 != null) {
+                        failTask("AdapterRequest failed for container: " + selfLink, e1);
+                        ContainerState ps1 = new ContainerState();
+                        ps1.isDeleted = false;
                         sendRequest(Operation.createPatch(getHost(),
-                                containerState.adapterManagementReference.toString())
-                                .setBody(adapterRequest)
-                                .setContextId(getSelfId())
-                                .setCompletion((o1, e1) -> {
-                                    if (e1 != null) {
-                                        failTask("AdapterRequest failed for container: " + selfLink,
-                                                e1);
-                                        ContainerState ps1 = new ContainerState();
-                                        ps1.isDeleted = false;
-                                        sendRequest(Operation.createPatch(getHost(),
-                                                containerState.documentSelfLink)
-                                                .setBody(ps1)
-                                                .setCompletion((o2, e2) -> {
-                                                    if (e2 != null) {
-                                                        logWarning("Failed to modify container"
-                                                                        + " state  isDeleted after"
-                                                                        + " container delete: %s."
-                                                                        + " Error: %s",
-                                                                containerState.documentSelfLink,
-                                                                Utils.toString(e));
-                                                        return;
-                                                    }
-                                                }));
+                                containerState.documentSelfLink)
+                                .setBody(ps1)
+                                .setCompletion((o2, e2) -> {
+                                    if (e2 != null) {
+                                        logWarning("Failed to modify container"
+                                                        + " state  isDeleted after"
+                                                        + " container delete: %s."
+                                                        + " Error: %s",
+                                                containerState.documentSelfLink,
+                                                Utils.toString(e2));
                                         return;
                                     }
                                 }));
+                        return;
                     }
                 }));
     }
 
-    private void removeResources(ContainerRemovalTaskState state, String subTaskLink) {
-        if (subTaskLink == null) {
-            // count 2 * resourceLinks (to keep track of each removal operation starting and ending)
-            createCounterSubTask(state, 2 * state.resourceLinks.size(),
-                    (link) -> removeResources(state, link));
-            return;
-        }
+    private void removeResources(ContainerRemovalTaskState state) {
+        boolean isRemoveHost = state.serviceTaskCallback.serviceSelfLink
+                .startsWith(ManagementUriParts.REQUEST_HOST_REMOVAL_OPERATIONS);
 
-        AtomicBoolean isRemoveHost = new AtomicBoolean(state.serviceTaskCallback.serviceSelfLink
-                .startsWith(ManagementUriParts.REQUEST_HOST_REMOVAL_OPERATIONS));
+        QueryTask containerQuery = createResourcesQuery(ContainerState.class,
+                state.resourceLinks);
+        QueryUtil.addBroadcastOption(containerQuery);
+        QueryUtil.addExpandOption(containerQuery);
 
-        try {
-            for (String resourceLink : state.resourceLinks) {
-                sendRequest(Operation
-                        .createGet(this, resourceLink)
-                        .setCompletion((o, e) -> {
-                            // Don't fail if container is still collected but has already
-                            // been removed.
-                            if (o.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND) {
-                                logFine("Resource [%s] not found, it should have already been"
-                                                + " removed!", resourceLink);
-                                completeSubTasksCounter(subTaskLink, null);
-                                completeSubTasksCounter(subTaskLink, null);
-                                return;
-                            }
-                            if (e != null) {
-                                failTask("Failed retrieving Container State: " + resourceLink, e);
-                                return;
-                            }
-
-                            if (isSystemContainer(o.getBody(ContainerState.class))
-                                    && !(isRemoveHost.get())) {
-                                logWarning("Resource [%s] will not be removed because it is a"
-                                                + " system container",
-                                        o.getBody(ContainerState.class).documentSelfLink);
-                                // need to complete the counter twice, because the removal
-                                // task is not created in this case
-                                completeSubTasksCounter(subTaskLink, null);
-                                completeSubTasksCounter(subTaskLink, null);
-                                return;
-                            }
-
-                            ContainerState cs = o.getBody(ContainerState.class);
-                            doDeleteResource(state, subTaskLink, cs);
-                        }));
+        // containers still collected but already removed are not found and simply skipped
+        List<ContainerState> containers = new ArrayList<>();
+        ServiceDocumentQuery<ContainerState> query = new ServiceDocumentQuery<>(getHost(),
+                ContainerState.class);
+        query.query(containerQuery, (r) -> {
+            if (r.hasException()) {
+                failTask("Failed retrieving Container States: " + state.resourceLinks,
+                        r.getException());
+            } else if (r.hasResult()) {
+                if (isSystemContainer(r.getResult()) && !isRemoveHost) {
+                    logWarning("Resource [%s] will not be removed because it is a"
+                            + " system container", r.getDocumentSelfLink());
+                } else {
+                    containers.add(r.getResult());
+                }
+            } else if (containers.isEmpty()) {
+                logFine("No container states found to be removed with links: %s",
+                        state.resourceLinks);
+                proceedTo(SubStage.COMPLETED);
+            } else {
+                queryRetainedDescriptions(state, containers);
             }
-            proceedTo(SubStage.REMOVING_RESOURCE_STATES);
-        } catch (Throwable e) {
-            failTask("Unexpected exception while deleting resources", e);
-        }
+        });
     }
 
-    private void doDeleteResource(ContainerRemovalTaskState state, String subTaskLink,
-            ContainerState cs) {
-        QueryTask compositeQueryTask = QueryUtil.buildQuery(ContainerState.class, true);
+    /**
+     * Finds the descriptions of the given containers which are shared with containers not being
+     * removed, so the descriptions have to be kept.
+     */
+    private void queryRetainedDescriptions(ContainerRemovalTaskState state,
+            List<ContainerState> containers) {
+        Set<String> descriptionLinks = new HashSet<>();
+        for (ContainerState cs : containers) {
+            if (cs.descriptionLink != null) {
+                descriptionLinks.add(UriUtils.buildUriPath(CONTAINER_DESC,
+                        Service.getId(cs.descriptionLink)));
+            }
+        }
+        if (descriptionLinks.isEmpty()) {
+            doDeleteResources(state, containers, Collections.emptySet(), null);
+            return;
+        }
 
-        String containerDescriptionLink = UriUtils.buildUriPath(
-                CONTAINER_DESC,
-                Service.getId(cs.descriptionLink));
+        QueryTask compositeQueryTask = QueryUtil.buildQuery(ContainerState.class, true);
         QueryUtil.addListValueClause(compositeQueryTask,
-                ContainerState.FIELD_NAME_DESCRIPTION_LINK,
-                Arrays.asList(containerDescriptionLink));
+                ContainerState.FIELD_NAME_DESCRIPTION_LINK, descriptionLinks);
+        QueryUtil.addExpandOption(compositeQueryTask);
 
-        final List<String> resourcesSharingDesc = new ArrayList<String>();
+        Set<String> retainedDescriptionLinks = new HashSet<>();
         new ServiceDocumentQuery<ContainerState>(getHost(), ContainerState.class)
                 .query(compositeQueryTask, (r) -> {
                     if (r.hasException()) {
-                        logSevere("Failed to retrieve containers, sharing the same"
-                                        + " container description: %s -%s",
-                                r.getDocumentSelfLink(), r.getException());
+                        failTask("Failed to retrieve containers, sharing the same container"
+                                + " descriptions: " + descriptionLinks, r.getException());
                     } else if (r.hasResult()) {
-                        resourcesSharingDesc.add(r.getDocumentSelfLink());
-                    } else {
-                        AtomicLong skipDeleteDescriptionOperationException = new AtomicLong();
-                        AtomicLong skipHostPortProfileNotFoundException = new AtomicLong();
-                        List<AtomicLong> skipOperationExceptions = Arrays.asList(
-                                skipDeleteDescriptionOperationException,
-                                skipHostPortProfileNotFoundException);
-
-                        Operation delContainerOpr = deleteContainer(cs);
-                        Operation placementOpr = releaseResourcePlacement(state, cs, subTaskLink);
-                        Operation releasePortsOpr = releasePorts(cs,
-                                skipHostPortProfileNotFoundException);
-
-                        // list of operations to execute to release container resources
-                        List<Operation> operations = new ArrayList<>();
-                        operations.add(delContainerOpr);
-                        // add placementOpr only when needed
-                        if (placementOpr != null) {
-                            operations.add(placementOpr);
-                        } else {
-                            // if ReservationRemovalTask is not started, count it as finished
-                            completeSubTasksCounter(subTaskLink, null);
-                        }
-                        if (releasePortsOpr != null) {
-                            operations.add(releasePortsOpr);
+                        if (!state.resourceLinks.contains(r.getDocumentSelfLink())) {
+                            retainedDescriptionLinks.add(r.getResult().descriptionLink);
                         }
-                        // delete container description when deleting all its containers
-                        if (state.resourceLinks.containsAll(resourcesSharingDesc)
-                                && (state.customProperties != null && !state.customProperties
-                                        .containsKey(CONTAINER_REDEPLOYMENT_CUSTOM_PROP))) {
-                            // there could be a race condition when containers are in cluster and
-                            // the same description tries to be deleted multiple times, that's why
-                            // we need to skipOperationException is the description is NOT FOUND
-                            Operation deleteContainerDescription = deleteContainerDescription(cs,
-                                    skipDeleteDescriptionOperationException);
-                            operations.add(deleteContainerDescription);
-                        }
-
-                        OperationJoin.create(operations).setCompletion((ops, exs) -> {
-                            // remove skipped exceptions
-                            if (exs != null) {
-                                skipOperationExceptions
-                                        .stream()
-                                        .filter(p -> p.get() != 0)
-                                        .forEach(p -> exs.remove(p.get()));
-                            }
-                            // fail the task is there are exceptions in the children operations
-                            if (exs != null && !exs.isEmpty()) {
-                                failTask("Failed deleting container resources: "
-                                        + Utils.toString(exs), null);
-                                return;
-                            }
-
-                            // complete the counter task after all remove operations finished
-                            // successfully
-                            completeSubTasksCounter(subTaskLink, null);
-                        }).sendWith(this);
+                    } else {
+                        doDeleteResources(state, containers, retainedDescriptionLinks, null);
                     }
                 });
     }
 
-    private Operation deleteContainer(ContainerState cs) {
+    private void doDeleteResources(ContainerRemovalTaskState state,
+            List<ContainerState> containers, Set<String> retainedDescriptionLinks,
+            String subTaskLink) {
+        Collection<ReservationRemovalTaskState> reservationRemovals =
+                getReservationRemovals(state, containers);
+
+        if (subTaskLink == null) {
+            // count each reservation removal task and the removal of the states
+            createCounterSubTask(state, reservationRemovals.size() + 1,
+                    (link) -> doDeleteResources(state, containers, retainedDescriptionLinks,
+                            link));
+            return;
+        }
+
+        try {
+            Set<Long> skippedOperations = ConcurrentHashMap.newKeySet();
+            List<ContainerState> deletedContainers = Collections
+                    .synchronizedList(new ArrayList<>());
+
+            // list of operations to execute to release container resources
+            List<Operation> operations = new ArrayList<>();
+            for (ContainerState cs : containers) {
+                operations.add(deleteContainer(cs, deletedContainers));
+            }
+            for (ReservationRemovalTaskState rsrvTask : reservationRemovals) {
+                // Completion of the reservation removal also notifies the counter task
+                rsrvTask.serviceTaskCallback = ServiceTaskCallback.create(subTaskLink);
+                operations.add(releaseResourcePlacement(rsrvTask));
+            }
+            groupByHost(containers).forEach((hostLink, hostContainers) -> operations
+                    .add(releasePorts(hostLink, hostContainers, skippedOperations)));
+
+            // delete container descriptions when deleting all their containers
+            if (state.customProperties == null || !state.customProperties
+                    .containsKey(CONTAINER_REDEPLOYMENT_CUSTOM_PROP)) {
+                containers.stream()
+                        .map(cs -> cs.descriptionLink)
+                        .filter(link -> link != null)
+                        .distinct()
+                        .filter(link -> !retainedDescriptionLinks.contains(UriUtils
+                                .buildUriPath(CONTAINER_DESC, Service.getId(link))))
+                        .forEach(link -> operations.add(
+                                deleteContainerDescription(link, skippedOperations)));
+            }
+
+            OperationJoin.create(operations).setCompletion((ops, exs) -> {
+                notifyCompositeComponents(deletedContainers);
+
+                // remove skipped exceptions
+                if (exs != null) {
+                    exs.keySet().removeAll(skippedOperations);
+                }
+                // fail the task is there are exceptions in the children operations
+                if (exs != null && !exs.isEmpty()) {
+                    failTask("Failed deleting container resources: "
+                            + Utils.toString(exs), null);
+                    return;
+                }
+
+                // complete the counter task after all remove operations finished
+                // successfully
+                completeSubTasksCounter(subTaskLink, null);
+            }).sendWith(this, STATE_UPDATE_BATCH_SIZE);
+
+            proceedTo(SubStage.REMOVING_RESOURCE_STATES);
+        } catch (Throwable e) {
+            failTask("Unexpected exception while deleting resources", e);
+        }
+    }
+
+    private Operation deleteContainer(ContainerState cs, List<ContainerState> deletedContainers) {
         return Operation
                 .createDelete(this, cs.documentSelfLink)
                 .setBody(new ServiceDocument())
+                // the composite components are updated once for all the deleted containers
+                .addPragmaDirective(
+                        CompositeComponentNotifier.PRAGMA_DIRECTIVE_SKIP_COMPOSITE_NOTIFICATION)
                 .setCompletion((op, ex) -> {
                     if (ex != null) {
                         logWarning("Failed deleting ContainerState: %s. Error: %s",
                                 cs.documentSelfLink, Utils.toString(ex));
                         return;
                     }
+                    deletedContainers.add(cs);
                     logInfo("Deleted ContainerState: %s", cs.documentSelfLink);
                     // When removing container state, remove also if there are any logs created.
                     // This is workaround for:
@@ -478,23 +521,38 @@ public class ContainerRemovalTaskService
                 });
     }
 
-    private Operation deleteContainerDescription(ContainerState cs,
-            AtomicLong skipOperationException) {
+    private void notifyCompositeComponents(List<ContainerState> deletedContainers) {
+        Map<String, List<String>> linksByCompositeComponent = new HashMap<>();
+        synchronized (deletedContainers) {
+            for (ContainerState cs : deletedContainers) {
+                if (cs.compositeComponentLink != null) {
+                    linksByCompositeComponent.computeIfAbsent(cs.compositeComponentLink,
+                            k -> new ArrayList<>()).add(cs.documentSelfLink);
+                }
+            }
+        }
+        linksByCompositeComponent.forEach((compositeComponentLink, componentLinks) ->
+                CompositeComponentNotifier.notifyCompositionComponentRemoval(this,
+                        compositeComponentLink, componentLinks));
+    }
+
+    private Operation deleteContainerDescription(String descriptionLink,
+            Set<Long> skippedOperations) {
 
         Operation deleteContainerDesc = Operation
-                .createGet(this, cs.descriptionLink)
+                .createGet(this, descriptionLink)
                 .setCompletion((o, e) -> {
                     if (o.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND ||
                             e instanceof CancellationException) {
                         logFine("Resource [%s] not found, it will not be removed!",
-                                cs.descriptionLink);
-                        skipOperationException.set(o.getId());
+                                descriptionLink);
+                        skippedOperations.add(o.getId());
                         return;
                     }
 
                     if (e != null) {
                         logWarning("Failed retrieving ContainerDescription: %s. Error: %s",
-                                cs.descriptionLink, Utils.toString(e));
+                                descriptionLink, Utils.toString(e));
                         return;
                     }
 
@@ -524,35 +582,52 @@ public class ContainerRemovalTaskService
         return deleteContainerDesc;
     }
 
-    private Operation releaseResourcePlacement(ContainerRemovalTaskState state, ContainerState cs,
-            String subTaskLink) {
-
-        if (isDiscoveredContainer(cs) || state.skipReleaseResourcePlacement) {
-            logFine("Skipping releasing placement because container is a discovered one: %s",
-                    cs.documentSelfLink);
-            return null;
+    /**
+     * Returns the reservation removals of the given containers, one for each placement and
+     * description, instead of one for each container.
+     */
+    private Collection<ReservationRemovalTaskState> getReservationRemovals(
+            ContainerRemovalTaskState state, List<ContainerState> containers) {
+        Map<String, ReservationRemovalTaskState> reservationRemovals = new LinkedHashMap<>();
+        if (state.skipReleaseResourcePlacement) {
+            logFine("Skipping releasing placement of containers: %s", state.resourceLinks);
+            return reservationRemovals.values();
         }
 
-        if (isSystemContainer(cs)) {
-            logFine("Skipping releasing placement because container is a system one: %s",
-                    cs.documentSelfLink);
-            return null;
-        }
+        for (ContainerState cs : containers) {
+            if (isDiscoveredContainer(cs)) {
+                logFine("Skipping releasing placement because container is a discovered one: %s",
+                        cs.documentSelfLink);
+                continue;
+            }
 
-        ReservationRemovalTaskState rsrvTask = new ReservationRemovalTaskState();
-        rsrvTask.resourceCount = 1;
-        rsrvTask.resourceDescriptionLink = cs.descriptionLink;
-        rsrvTask.groupResourcePlacementLink = cs.groupResourcePlacementLink;
-        rsrvTask.requestTrackerLink = state.requestTrackerLink;
-        // Completion of the reservation removal also notifies the counter task
-        rsrvTask.serviceTaskCallback = ServiceTaskCallback.create(subTaskLink);
+            if (isSystemContainer(cs)) {
+                logFine("Skipping releasing placement because container is a system one: %s",
+                        cs.documentSelfLink);
+                continue;
+            }
 
+            String key = cs.groupResourcePlacementLink + ":" + cs.descriptionLink;
+            ReservationRemovalTaskState rsrvTask = reservationRemovals.computeIfAbsent(key,
+                    k -> {
+                        ReservationRemovalTaskState task = new ReservationRemovalTaskState();
+                        task.resourceDescriptionLink = cs.descriptionLink;
+                        task.groupResourcePlacementLink = cs.groupResourcePlacementLink;
+                        task.requestTrackerLink = state.requestTrackerLink;
+                        return task;
+                    });
+            rsrvTask.resourceCount++;
+        }
+        return reservationRemovals.values();
+    }
+
+    private Operation releaseResourcePlacement(ReservationRemovalTaskState rsrvTask) {
         return Operation.createPost(this, ReservationRemovalTaskFactoryService.SELF_LINK)
                 .setBody(rsrvTask)
                 .setCompletion((o, e) -> {
                     if (e != null) {
                         logWarning("Failed creating task to delete placement %s. Error: %s",
-                                cs.groupResourcePlacementLink, Utils.toString(e));
+                                rsrvTask.groupResourcePlacementLink, Utils.toString(e));
                         return;
                     }
                 });
@@ -563,15 +638,16 @@ public class ContainerRemovalTaskService
                 .startsWith(CLOSURES_CONTAINER_DESC);
     }
 
-    private Operation releasePorts(ContainerState cs, AtomicLong skipOperationException) {
-        String hostPortProfileLink = HostPortProfileService.getHostPortProfileLink(cs.parentLink);
+    private Operation releasePorts(String hostLink, List<ContainerState> containers,
+            Set<Long> skippedOperations) {
+        String hostPortProfileLink = HostPortProfileService.getHostPortProfileLink(hostLink);
         Operation operation = Operation
                 .createGet(this, hostPortProfileLink)
                 .setCompletion((o, e) -> {
                     if (o.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND ||
                             e instanceof CancellationException) {
                         logWarning("Cannot find host port profile [%s]", hostPortProfileLink);
-                        skipOperationException.set(o.getId());
+                        skippedOperations.add(o.getId());
                     }
 
                     if (e != null) {
@@ -582,31 +658,38 @@ public class ContainerRemovalTaskService
                     HostPortProfileService.HostPortProfileState profile =
                             o.getBody(HostPortProfileService.HostPortProfileState.class);
 
-                    Set<Long> allocatedPorts = HostPortProfileService.getAllocatedPorts(
-                            profile, cs.documentSelfLink);
-
-                    if (allocatedPorts.isEmpty()) {
-                        return;
+                    for (ContainerState cs : containers) {
+                        releasePorts(profile, cs);
                     }
-                    // release all ports of the container
-                    HostPortProfileService.HostPortProfileReservationRequest request =
-                            new HostPortProfileService.HostPortProfileReservationRequest();
-                    request.containerLink = cs.documentSelfLink;
-                    request.mode = HostPortProfileService
-                            .HostPortProfileReservationRequestMode.RELEASE;
-
-                    sendRequest(Operation
-                            .createPatch(getHost(), profile.documentSelfLink)
-                            .setBody(request)
-                            .setCompletion((op, ex) -> {
-                                if (ex != null) {
-                                    logWarning("Failed releasing container ports: %s. Error: %s",
-                                            cs.documentSelfLink, Utils.toString(ex));
-                                    return;
-                                }
-                            }));
                 });
         return operation;
     }
 
+    private void releasePorts(HostPortProfileService.HostPortProfileState profile,
+            ContainerState cs) {
+        Set<Long> allocatedPorts = HostPortProfileService.getAllocatedPorts(
+                profile, cs.documentSelfLink);
+
+        if (allocatedPorts.isEmpty()) {
+            return;
+        }
+        // release all ports of the container
+        HostPortProfileService.HostPortProfileReservationRequest request =
+                new HostPortProfileService.HostPortProfileReservationRequest();
+        request.containerLink = cs.documentSelfLink;
+        request.mode = HostPortProfileService
+                .HostPortProfileReservationRequestMode.RELEASE;
+
+        sendRequest(Operation
+                .createPatch(getHost(), profile.documentSelfLink)
+                .setBody(request)
+                .setCompletion((op, ex) -> {
+                    if (ex != null) {
+                        logWarning("Failed releasing container ports: %s. Error: %s",
+                                cs.documentSelfLink, Utils.toString(ex));
+                        return;
+                    }
+                }));
+    }
+
 }
@@ -28,12 +28,10 @@ import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.service.common.AbstractTaskStatefulService;
 import com.vmware.admiral.service.common.DefaultSubStage;
-import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixRequest;
-import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixResponse;
+import com.vmware.admiral.service.common.ResourceNamePrefixLeases;
 import com.vmware.admiral.service.common.ResourceNamePrefixService.ResourceNamePrefixState;
 import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
 import com.vmware.xenon.common.LocalizableValidationException;
-import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.services.common.QueryTask;
 
 /**
@@ -134,23 +132,17 @@ public class ResourceNamePrefixTaskService
     private void requestResourceNamePrefix(ResourceNamePrefixTaskState state,
             String resourceNamePrefixLink, Iterator<String> iterator, boolean globalSearch) {
 
-        NamePrefixRequest namePrefixRequest = new NamePrefixRequest();
-        namePrefixRequest.resourceCount = state.resourceCount;
-
-        sendRequest(Operation
-                .createPatch(this, resourceNamePrefixLink)
-                .setBody(namePrefixRequest)
-                .setCompletion((o, e) -> {
+        ResourceNamePrefixLeases.getInstance(getHost())
+                .allocate(this, resourceNamePrefixLink, state.resourceCount)
+                .whenComplete((namePrefixes, e) -> {
                     if (e != null) {
                         logWarning("Failure requesting resource name prefixes: %s. Retrying with"
                                         + " the next one...", e.getMessage());
                         selectResourceNamePrefix(state, iterator, globalSearch);
                         return;
                     }
-                    NamePrefixResponse response = o.getBody(NamePrefixResponse.class);
-                    Set<String> resourceNames = new LinkedHashSet<>(response.resourceNamePrefixes
-                            .size());
-                    for (String prefix : response.resourceNamePrefixes) {
+                    Set<String> resourceNames = new LinkedHashSet<>(namePrefixes.size());
+                    for (String prefix : namePrefixes) {
                         try {
                             resourceNames.add(String.format(state.baseResourceNameFormat,
                                     prefix));
@@ -162,7 +154,7 @@ public class ResourceNamePrefixTaskService
                     complete(DefaultSubStage.COMPLETED, s -> {
                         s.resourceNames = resourceNames;
                     });
-                }));
+                });
     }
 
 }
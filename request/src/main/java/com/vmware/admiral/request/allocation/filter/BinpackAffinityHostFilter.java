@@ -11,25 +11,20 @@
 
 package com.vmware.admiral.request.allocation.filter;
 
-import java.net.URI;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
-import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService;
-import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService.ElasticPlacementZoneConfigurationState;
+import com.vmware.admiral.compute.ElasticPlacementZonePolicyCache;
 import com.vmware.admiral.compute.ElasticPlacementZoneService;
+import com.vmware.admiral.compute.ElasticPlacementZoneService.ElasticPlacementZoneState;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState;
 import com.vmware.admiral.request.ReservationTaskFactoryService;
-import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceHost;
-import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 
 /**
@@ -45,17 +40,16 @@ import com.vmware.xenon.common.Utils;
 *   Constraint (2) means that hosts will be sorted by available memory in ascending order. Host with smallest available memory will be returned.
 *   Constraint (3) means there is exactly one host such that P(h)  is true.
 *
+*   The ranking is done by the {@link PlacementPolicyScorer} registered for the BINPACK policy, the
+*   minimal available memory of a host is taken from the elastic placement zone.
+*
 */
 public class BinpackAffinityHostFilter
         implements
         HostSelectionFilter<PlacementHostSelectionTaskService.PlacementHostSelectionTaskState> {
 
-    private static final Long MINIMAL_AVAILABLE_MEMORY_IN_BYTES = 3000000000L; // 3 GB
-
     private final ServiceHost host;
 
-    private Map<String, Long> dockerHostToMemory = new ConcurrentHashMap<>();
-
     public BinpackAffinityHostFilter(ServiceHost host, ContainerDescription desc) {
         this.host = host;
     }
@@ -100,12 +94,9 @@ public class BinpackAffinityHostFilter
     private void filterBasedOnBinpackPolicy(String resourcePoolLink,
             Map<String, HostSelection> hostSelectionMap, HostSelectionFilterCompletion callback) {
 
-        URI uri = UriUtils.buildUri(host, String.format("%s/%s",
-                ElasticPlacementZoneConfigurationService.SELF_LINK, resourcePoolLink));
-
-        host.sendRequest(Operation.createGet(uri)
-                .setReferer(host.getUri())
-                .setCompletion((o, ex) -> {
+        ElasticPlacementZonePolicyCache.getInstance(host)
+                .getElasticPlacementZone(resourcePoolLink)
+                .whenComplete((epzState, ex) -> {
 
                     if (ex != null) {
                         host.log(Level.WARNING, Utils.toString(ex));
@@ -113,55 +104,36 @@ public class BinpackAffinityHostFilter
                         return;
                     }
 
-                    ElasticPlacementZoneConfigurationState epz = o
-                            .getBody(ElasticPlacementZoneConfigurationState.class);
-                    if (epz != null && epz.epzState != null
-                            && epz.epzState.placementPolicy == ElasticPlacementZoneService.PlacementPolicy.BINPACK) {
-
-                        hostSelectionMap.forEach((host, hostSelection) -> {
-                            dockerHostToMemory.put(host, hostSelection.availableMemory);
-                        });
-
-                        returnMaxLoadedHost(hostSelectionMap, callback);
-
+                    if (epzState != null && epzState.placementPolicy
+                            == ElasticPlacementZoneService.PlacementPolicy.BINPACK) {
+                        returnMaxLoadedHost(epzState, hostSelectionMap, callback);
                     } else {
                         callback.complete(hostSelectionMap, null);
                     }
 
-                }));
+                });
     }
 
     // Get max loaded in terms of memory host.
-    private void returnMaxLoadedHost(Map<String, HostSelection> hostSelectionMap,
-            HostSelectionFilterCompletion callback) {
-
-        // This should never happen.
-        if (dockerHostToMemory.isEmpty()) {
-            callback.complete(hostSelectionMap, null);
-            return;
-        }
-
-        Map<String, HostSelection> result = new LinkedHashMap<>();
-        Map<String, Long> sortedMap = new LinkedHashMap<>();
+    private void returnMaxLoadedHost(ElasticPlacementZoneState epzState,
+            Map<String, HostSelection> hostSelectionMap, HostSelectionFilterCompletion callback) {
 
-        // Sort map ascending based on available memory.
-        dockerHostToMemory.entrySet().stream()
-                .sorted(Map.Entry.<String, Long> comparingByValue())
-                .forEachOrdered(x -> sortedMap.put(x.getKey(), x.getValue()));
+        PlacementPolicyScorer scorer = PlacementPolicyScorers
+                .get(ElasticPlacementZoneService.PlacementPolicy.BINPACK);
 
-        // Traverse trough sorted hosts to memory map and find first max loaded which has at least 3
-        // GB memory available.
-        Optional<Entry<String, Long>> hostToMemoryEntry = sortedMap.entrySet().stream()
-                .filter(obj -> obj.getValue() > MINIMAL_AVAILABLE_MEMORY_IN_BYTES).findFirst();
+        // Hosts sorted ascending based on available memory, only the ones which have at least the
+        // minimal memory available.
+        List<HostSelection> rankedHosts = scorer.rank(hostSelectionMap.values(), epzState);
 
-        if (!hostToMemoryEntry.isPresent()) {
+        if (rankedHosts.isEmpty()) {
             callback.complete(null, new Throwable("All hosts are overloaded."));
             return;
         }
 
-        String mostLoadedHost = hostToMemoryEntry.get().getKey();
+        HostSelection mostLoadedHost = rankedHosts.get(0);
 
-        result.put(mostLoadedHost, hostSelectionMap.get(mostLoadedHost));
+        Map<String, HostSelection> result = new LinkedHashMap<>();
+        result.put(mostLoadedHost.hostLink, mostLoadedHost);
         callback.complete(result, null);
     }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request.allocation.filter;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.vmware.admiral.compute.ElasticPlacementZoneService.ElasticPlacementZoneState;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
+
+/**
+ * Ranks the candidate hosts of a placement according to a placement policy. The elastic placement
+ * zone of the placement is passed along so that the thresholds used for ranking can be
+ * configured per zone.
+ */
+@FunctionalInterface
+public interface PlacementPolicyScorer {
+
+    /**
+     * Returns the eligible hosts ordered from the most to the least preferred one. An empty list
+     * means that none of the hosts is eligible.
+     */
+    List<HostSelection> rank(Collection<HostSelection> hostSelections,
+            ElasticPlacementZoneState epzState);
+}
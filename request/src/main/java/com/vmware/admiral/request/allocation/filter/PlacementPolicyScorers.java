@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request.allocation.filter;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import com.vmware.admiral.compute.ElasticPlacementZoneService.ElasticPlacementZoneState;
+import com.vmware.admiral.compute.ElasticPlacementZoneService.PlacementPolicy;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
+
+/**
+ * Registry of the {@link PlacementPolicyScorer}s used for the placement policies of elastic
+ * placement zones. The default scorers can be replaced by registering another one for the same
+ * policy.
+ */
+public final class PlacementPolicyScorers {
+
+    public static final long DEFAULT_BINPACK_MINIMAL_AVAILABLE_MEMORY_IN_BYTES = Long.getLong(
+            "com.vmware.admiral.request.placement.binpack.minimal.available.memory",
+            3000000000L); // 3 GB
+
+    private static final Map<PlacementPolicy, PlacementPolicyScorer> SCORERS =
+            new ConcurrentHashMap<>();
+
+    static {
+        register(PlacementPolicy.BINPACK, PlacementPolicyScorers::binpack);
+        register(PlacementPolicy.SPREAD, PlacementPolicyScorers::spread);
+    }
+
+    private PlacementPolicyScorers() {
+    }
+
+    public static void register(PlacementPolicy policy, PlacementPolicyScorer scorer) {
+        SCORERS.put(policy, scorer);
+    }
+
+    /**
+     * Returns the scorer for the given policy or <code>null</code> if hosts are not ranked for it.
+     */
+    public static PlacementPolicyScorer get(PlacementPolicy policy) {
+        return policy != null ? SCORERS.get(policy) : null;
+    }
+
+    /**
+     * Prefers the most loaded hosts in terms of memory, as long as they have more than the
+     * minimal available memory configured for the zone.
+     */
+    static List<HostSelection> binpack(Collection<HostSelection> hostSelections,
+            ElasticPlacementZoneState epzState) {
+        long minimalAvailableMemory = epzState != null
+                && epzState.binpackMinimalAvailableMemoryInBytes != null
+                        ? epzState.binpackMinimalAvailableMemoryInBytes
+                        : DEFAULT_BINPACK_MINIMAL_AVAILABLE_MEMORY_IN_BYTES;
+
+        return hostSelections.stream()
+                .filter(hs -> hs.availableMemory != null
+                        && hs.availableMemory > minimalAvailableMemory)
+                .sorted(Comparator.comparing(hs -> hs.availableMemory))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Prefers the hosts with the smallest number of resources.
+     */
+    static List<HostSelection> spread(Collection<HostSelection> hostSelections,
+            ElasticPlacementZoneState epzState) {
+        return hostSelections.stream()
+                .sorted(Comparator.comparing(hs -> hs.resourceCount))
+                .collect(Collectors.toList());
+    }
+}
@@ -11,10 +11,7 @@
 
 package com.vmware.admiral.request.allocation.filter;
 
-import java.net.URI;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,18 +19,16 @@ import java.util.logging.Level;
 
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.common.util.ServiceDocumentQuery;
-import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService;
-import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService.ElasticPlacementZoneConfigurationState;
+import com.vmware.admiral.compute.ElasticPlacementZonePolicyCache;
 import com.vmware.admiral.compute.ElasticPlacementZoneService;
+import com.vmware.admiral.compute.ElasticPlacementZoneService.ElasticPlacementZoneState;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 
 import com.vmware.admiral.request.PlacementHostSelectionTaskService;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState;
 import com.vmware.admiral.request.ReservationTaskFactoryService;
-import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceHost;
-import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
 
@@ -95,12 +90,9 @@ public class SpreadAffinityHostFilter implements
         // On allocation stage only one resource pool exists.
         String resourcePoolLink = state.resourcePoolLinks.get(0);
 
-        URI uri = UriUtils.buildUri(host, String.format("%s/%s",
-                ElasticPlacementZoneConfigurationService.SELF_LINK, resourcePoolLink));
-
-        host.sendRequest(Operation.createGet(uri)
-                .setReferer(host.getUri())
-                .setCompletion((o, ex) -> {
+        ElasticPlacementZonePolicyCache.getInstance(host)
+                .getElasticPlacementZone(resourcePoolLink)
+                .whenComplete((epzState, ex) -> {
 
                     if (ex != null) {
                         host.log(Level.WARNING, Utils.toString(ex));
@@ -108,20 +100,18 @@ public class SpreadAffinityHostFilter implements
                         return;
                     }
 
-                    ElasticPlacementZoneConfigurationState epz = o
-                            .getBody(ElasticPlacementZoneConfigurationState.class);
-                    if (epz != null && epz.epzState != null
-                            && epz.epzState.placementPolicy == ElasticPlacementZoneService.PlacementPolicy.SPREAD) {
+                    if (epzState != null && epzState.placementPolicy
+                            == ElasticPlacementZoneService.PlacementPolicy.SPREAD) {
                         // First find how many resources every host has.
-                        retrieveContainers(hostSelectionMap, callback);
+                        retrieveContainers(epzState, hostSelectionMap, callback);
                     } else {
                         callback.complete(hostSelectionMap, null);
                     }
-                }));
+                });
 
     }
 
-    private void retrieveContainers(
+    private void retrieveContainers(ElasticPlacementZoneState epzState,
             Map<String, HostSelection> hostSelectionMap,
             HostSelectionFilterCompletion callback) {
 
@@ -147,18 +137,20 @@ public class SpreadAffinityHostFilter implements
                 hostSelection.resourceCount += 1;
             } else {
                 // Return the host with minimum number of containers.
-                completeFilter(hostSelectionMap, callback);
+                completeFilter(epzState, hostSelectionMap, callback);
             }
         });
     }
 
-    private void completeFilter(Map<String, HostSelection> hostSelectionMap,
+    private void completeFilter(ElasticPlacementZoneState epzState,
+            Map<String, HostSelection> hostSelectionMap,
             HostSelectionFilterCompletion callback) {
 
         // Sort hosts by number of resources.
-        List<HostSelection> hostSelections = new ArrayList<>(hostSelectionMap.values());
         // i.e. hosts [A(5), B(3), C(9)] -> [B(3), A(5), C(9)]
-        hostSelections.sort(Comparator.comparing(h -> h.resourceCount));
+        List<HostSelection> hostSelections = PlacementPolicyScorers
+                .get(ElasticPlacementZoneService.PlacementPolicy.SPREAD)
+                .rank(hostSelectionMap.values(), epzState);
 
         // Host with smallest number of containers is the first element.
         HostSelection mostLoadedHost = hostSelections.get(0);
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request.composition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory scheduler of the components of a composition phase. A component is started as soon
+ * as all the components it depends on have completed, up to a maximum number of components
+ * running at the same time. When more components are ready than can be started, the ones with
+ * the longest chain of dependent components are started first, since they determine how long
+ * the whole phase takes.
+ *
+ * The scheduler also measures the critical path of the phase, i.e. the longest chain of
+ * dependent components by their actual duration.
+ */
+class CompositionScheduler {
+
+    private static class Node {
+        final Set<String> dependsOn = new HashSet<>();
+        final Set<String> dependents = new HashSet<>();
+        // number of components in the longest chain starting with this one
+        int depth;
+        boolean started;
+        long startTimeMicros;
+        long endTimeMicros;
+        boolean completed;
+        // duration of the longest chain of completed components ending with this one
+        long pathDurationMicros;
+    }
+
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final int maxConcurrency;
+    private final LongSupplier clock;
+    private int running;
+    private long criticalPathDurationMicros;
+
+    /**
+     * @param dependsOn the components of the phase mapped to the components they depend on
+     * @param maxConcurrency maximum number of components running at the same time
+     * @param clock the current time in microseconds
+     */
+    CompositionScheduler(Map<String, ? extends Collection<String>> dependsOn, int maxConcurrency,
+            LongSupplier clock) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.clock = clock;
+
+        dependsOn.keySet().forEach(link -> nodes.put(link, new Node()));
+        dependsOn.forEach((link, dependencies) -> {
+            if (dependencies == null) {
+                return;
+            }
+            for (String dependency : dependencies) {
+                Node dependencyNode = nodes.get(dependency);
+                if (dependencyNode == null) {
+                    throw new IllegalArgumentException(String.format(
+                            "Component [%s] depends on unknown component [%s]", link,
+                            dependency));
+                }
+                nodes.get(link).dependsOn.add(dependency);
+                dependencyNode.dependents.add(link);
+            }
+        });
+
+        Set<String> visiting = new HashSet<>();
+        nodes.keySet().forEach(link -> computeDepth(link, visiting));
+    }
+
+    private int computeDepth(String link, Set<String> visiting) {
+        Node node = nodes.get(link);
+        if (node.depth > 0) {
+            return node.depth;
+        }
+        if (!visiting.add(link)) {
+            throw new IllegalArgumentException(
+                    String.format("Cyclic dependency on component [%s]", link));
+        }
+        int depth = 0;
+        for (String dependent : node.dependents) {
+            depth = Math.max(depth, computeDepth(dependent, visiting));
+        }
+        visiting.remove(link);
+        node.depth = depth + 1;
+        return node.depth;
+    }
+
+    /**
+     * Marks the given components as completed, whether successfully or not, and returns the
+     * components to start now, which are considered running from then on. No new components are
+     * started if <code>dispatch</code> is <code>false</code>, e.g. after a failure.
+     */
+    synchronized List<String> update(Collection<String> completedLinks, boolean dispatch) {
+        long now = clock.getAsLong();
+        if (completedLinks != null) {
+            for (String link : completedLinks) {
+                complete(link, now);
+            }
+        }
+
+        if (!dispatch || running >= maxConcurrency) {
+            return Collections.emptyList();
+        }
+
+        List<String> ready = new ArrayList<>();
+        nodes.forEach((link, node) -> {
+            if (!node.started && !node.completed && isReady(node)) {
+                ready.add(link);
+            }
+        });
+        ready.sort(Comparator.comparingInt((String link) -> nodes.get(link).depth).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+
+        List<String> toStart = ready.subList(0, Math.min(ready.size(),
+                maxConcurrency - running));
+        for (String link : toStart) {
+            Node node = nodes.get(link);
+            node.started = true;
+            node.startTimeMicros = now;
+            running++;
+        }
+        return new ArrayList<>(toStart);
+    }
+
+    private void complete(String link, long now) {
+        Node node = nodes.get(link);
+        if (node == null || node.completed) {
+            return;
+        }
+        node.completed = true;
+        node.endTimeMicros = now;
+        if (node.started) {
+            running--;
+        } else {
+            // started before the scheduler was created, the duration is not known
+            node.startTimeMicros = now;
+        }
+
+        long longestDependency = 0;
+        for (String dependency : node.dependsOn) {
+            longestDependency = Math.max(longestDependency,
+                    nodes.get(dependency).pathDurationMicros);
+        }
+        node.pathDurationMicros = longestDependency + node.endTimeMicros - node.startTimeMicros;
+        criticalPathDurationMicros = Math.max(criticalPathDurationMicros,
+                node.pathDurationMicros);
+    }
+
+    private boolean isReady(Node node) {
+        for (String dependency : node.dependsOn) {
+            if (!nodes.get(dependency).completed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    synchronized boolean hasRunning() {
+        return running > 0;
+    }
+
+    synchronized boolean isCompleted() {
+        return nodes.values().stream().allMatch(n -> n.completed);
+    }
+
+    /**
+     * Returns the duration of the longest chain of dependent components completed so far.
+     */
+    synchronized long getCriticalPathDurationMicros() {
+        return criticalPathDurationMicros;
+    }
+}
@@ -175,10 +175,10 @@ public class CompositionSubTaskService
     @Override
     protected boolean validateStageTransitionAndState(Operation patch,
             CompositionSubTaskState patchBody, CompositionSubTaskState currentState) {
-        if (currentState.taskSubStage.ordinal() > patchBody.taskSubStage.ordinal()
+        if (currentState.taskSubStage.ordinal() >= patchBody.taskSubStage.ordinal()
                 && patchBody.taskSubStage == SubStage.EXECUTE) {
-            // ignore out-of-order EXECUTE from parent task: task was moved to EXECUTE by a
-            // dependent task
+            // ignore out-of-order or repeated EXECUTE from parent task: task was moved to EXECUTE
+            // by a dependent task or the parent task was restarted
             logFine("Ignoring subStage move from %s(%s) to %s(%s). Caller: [%s]",
                     currentState.taskInfo.stage, currentState.taskSubStage,
                     patchBody.taskInfo.stage, patchBody.taskSubStage, patch.getReferer());
@@ -22,12 +22,14 @@ import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOp
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
@@ -59,6 +61,7 @@ import com.vmware.admiral.service.common.ResourceNamePrefixService;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
 import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
 import com.vmware.admiral.service.common.TaskServiceDocument;
+import com.vmware.admiral.service.common.TaskStageMetrics;
 import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Operation.CompletionHandler;
@@ -78,9 +81,17 @@ public class CompositionTaskService
 
     public static final String DISPLAY_NAME = "Composition";
 
+    /** Maximum number of components of a composition allocated or provisioned at a time. */
+    public static final int MAX_CONCURRENT_COMPONENTS = Integer.getInteger(
+            "com.vmware.admiral.request.composition.max.concurrent.components", 32);
+
     // cached description
     private volatile CompositeDescriptionExpanded compositeDescription;
 
+    // scheduler of the current phase, rebuilt from the completed sub-tasks if missing
+    private volatile CompositionScheduler scheduler;
+    private volatile boolean provisioningScheduler;
+
     public static class CompositionTaskState extends
             com.vmware.admiral.service.common.TaskServiceDocument<CompositionTaskState.SubStage> {
 
@@ -111,6 +122,17 @@ public class CompositionTaskService
         /** Set by Task. Error count of the current allocations. */
         public long errorCount;
 
+        /** Set by Task. Links of the sub-tasks completed in the current phase. */
+        @PropertyOptions(usage = { SERVICE_USE }, indexing = STORE_ONLY)
+        public Set<String> completedSubTaskLinks;
+
+        /**
+         * Set by Task. The duration of the longest chain of dependent components allocated and
+         * provisioned so far.
+         */
+        @PropertyOptions(usage = { SERVICE_USE, AUTO_MERGE_IF_NOT_NULL }, indexing = STORE_ONLY)
+        public Long criticalPathDurationMicros;
+
         /** (Internal) Set by task with ContainerDescription name. */
         @PropertyOptions(usage = { SERVICE_USE, AUTO_MERGE_IF_NOT_NULL }, indexing = STORE_ONLY)
         public String descName;
@@ -201,6 +223,10 @@ public class CompositionTaskService
                 final ResourceNode resourceNode = currentState.resourceNodes.get(patchSelfLink);
                 if (resourceNode != null) {
                     currentState.remainingCount--;
+                    if (currentState.completedSubTaskLinks == null) {
+                        currentState.completedSubTaskLinks = new HashSet<>();
+                    }
+                    currentState.completedSubTaskLinks.add(patchSelfLink);
                     logInfo("Remaining count: [%s]. Stage: [%s]. Completion of resource name: [%s]"
                                     + " composition sub-task [%s] patched.",
                             currentState.remainingCount, patchBody.taskSubStage, resourceNode.name,
@@ -217,6 +243,9 @@ public class CompositionTaskService
             }
         } else if (SubStage.ERROR_ALLOCATING == patchBody.taskSubStage) {
             logWarning("No remaining count: %s", currentState.remainingCount);
+        } else if (SubStage.ALLOCATED == patchBody.taskSubStage) {
+            // the provisioning phase starts over
+            currentState.completedSubTaskLinks = null;
         }
 
         if (TaskStage.STARTED == patchBody.taskInfo.stage) {
@@ -398,29 +427,29 @@ public class CompositionTaskService
             updateComponentsInRequestTracker(state);
         }
 
-        final AtomicBoolean error = new AtomicBoolean();
-        for (final Map.Entry<String, ResourceNode> entry : state.resourceNodes.entrySet()) {
-            final ResourceNode resourceNode = entry.getValue();
-            final String subTaskSelfLink = entry.getKey();
+        // the sub-tasks are created as their dependencies get allocated
+        createCompositionSubTasks(state, getScheduler(state, false).update(null, true));
+
+        proceedTo(SubStage.DISTRIBUTING);
+    }
+
+    private void createCompositionSubTasks(CompositionTaskState state,
+            Collection<String> subTaskLinks) {
+        for (String subTaskSelfLink : subTaskLinks) {
+            ResourceNode resourceNode = state.resourceNodes.get(subTaskSelfLink);
             createCompositionSubTask(state, resourceNode, subTaskSelfLink, (o, e) -> {
+                if (o.getStatusCode() == Operation.STATUS_CODE_CONFLICT) {
+                    // already started before the scheduler was rebuilt
+                    logFine("Composition subTask already created: %s", subTaskSelfLink);
+                    return;
+                }
                 if (e != null) {
-                    if (error.compareAndSet(false, true)) {
-                        failTask("Failure creating composition subTask: " + subTaskSelfLink, e);
-                    } else {
-                        logWarning(// task already failed
-                                "Failure creating composition subTask: [%s]. Error: %s",
-                                subTaskSelfLink, Utils.toString(e));
-                    }
+                    failTask("Failure creating composition subTask: " + subTaskSelfLink, e);
                     return;
                 }
                 logFine("Composition subTask created: %s", subTaskSelfLink);
-                if (!error.get()) {
-                    logFine("Composition subTask creation completed successfully.");
-                }
             });
         }
-
-        proceedTo(SubStage.DISTRIBUTING);
     }
 
     private void createCompositionSubTask(final CompositionTaskState state,
@@ -439,18 +468,6 @@ public class CompositionTaskService
         compositionSubTask.operation = RequestBrokerState.PROVISION_RESOURCE_OPERATION;
         compositionSubTask.compositeDescriptionLink = state.resourceDescriptionLink;
 
-        if (resourceNode.dependsOn != null && !resourceNode.dependsOn.isEmpty()) {
-            compositionSubTask.dependsOnLinks = resourceNode.dependsOn
-                    .stream().map((r) -> buildCompositionSubTaskLink(r))
-                    .collect(Collectors.toSet());
-        }
-
-        if (resourceNode.dependents != null && !resourceNode.dependents.isEmpty()) {
-            compositionSubTask.dependentLinks = resourceNode.dependents
-                    .stream().map((r) -> buildCompositionSubTaskLink(r))
-                    .collect(Collectors.toSet());
-        }
-
         compositionSubTask.serviceTaskCallback = ServiceTaskCallback.create(getSelfLink(),
                 TaskStage.STARTED, SubStage.ALLOCATING,
                 TaskStage.STARTED, SubStage.ERROR_ALLOCATING);
@@ -467,7 +484,7 @@ public class CompositionTaskService
         for (final Map.Entry<String, ResourceNode> entry : state.resourceNodes.entrySet()) {
             final ResourceNode resourceNode = entry.getValue();
             final String subTaskSelfLink = entry.getKey();
-            // patch each subtask to PREPARE_EXECUTE, and set new callback and dependsOn
+            // patch each subtask to PREPARE_EXECUTE, and set new callback
             patchCompositionSubTask(state, resourceNode, subTaskSelfLink, (o, e) -> {
                 if (e != null) {
                     if (error.compareAndSet(false, true)) {
@@ -483,9 +500,10 @@ public class CompositionTaskService
                 if (!error.get()) {
                     logFine("Composition subTask patch completed successfully.");
                 }
-                // patch all subtasks to execute when all of them are prepared
+                // start executing the subtasks when all of them are prepared
                 if (countDown.decrementAndGet() == 0 && !error.get()) {
-                    patchSubTaskToExecute(state);
+                    patchSubTasksToExecute(getScheduler(state, true).update(null, true));
+                    proceedTo(SubStage.DISTRIBUTE_TASKS);
                 }
             });
         }
@@ -496,11 +514,6 @@ public class CompositionTaskService
             final CompletionHandler completionHandler) {
         final CompositionSubTaskState compositionSubTask = new CompositionSubTaskState();
         compositionSubTask.documentSelfLink = subTaskSelfLink;
-        if (resourceNode.dependsOn != null && !resourceNode.dependsOn.isEmpty()) {
-            compositionSubTask.dependsOnLinks = resourceNode.dependsOn
-                    .stream().map((r) -> buildCompositionSubTaskLink(r))
-                    .collect(Collectors.toSet());
-        }
         compositionSubTask.serviceTaskCallback = ServiceTaskCallback.create(getSelfLink(),
                 TaskStage.STARTED, SubStage.PROVISIONING,
                 TaskStage.STARTED, SubStage.ERROR_PROVISIONING);
@@ -514,10 +527,10 @@ public class CompositionTaskService
                 .setCompletion(completionHandler));
     }
 
-    private void patchSubTaskToExecute(CompositionTaskState state) {
+    private void patchSubTasksToExecute(Collection<String> subTaskLinks) {
         final AtomicBoolean error = new AtomicBoolean();
         // patch each subtask to EXECUTE
-        for (final String subTaskSelfLink : state.resourceNodes.keySet()) {
+        for (final String subTaskSelfLink : subTaskLinks) {
             patchCompositionSubTaskToExecute(subTaskSelfLink, (o, e) -> {
                 if (e != null) {
                     if (error.compareAndSet(false, true)) {
@@ -535,8 +548,6 @@ public class CompositionTaskService
                 }
             });
         }
-
-        proceedTo(SubStage.DISTRIBUTE_TASKS);
     }
 
     private void patchCompositionSubTaskToExecute(
@@ -561,21 +572,77 @@ public class CompositionTaskService
     }
 
     private void counting(CompositionTaskState state, boolean allocate) {
-        if (state.remainingCount == 0) {
+        if (state.externalSchedulerTaskLink != null && !state.externalSchedulerTaskLink.isEmpty()) {
+            // provisioned as a whole by the external scheduler
+            if (state.remainingCount == 0) {
+                proceedTo(state.errorCount > 0 ? SubStage.ERROR : SubStage.COMPLETED);
+            }
+            return;
+        }
+
+        CompositionScheduler scheduler = getScheduler(state, !allocate);
+        List<String> toStart = scheduler.update(state.completedSubTaskLinks,
+                state.errorCount == 0);
+
+        // after a failure no more subTasks are started, so the remaining ones never complete
+        if (state.remainingCount == 0 || (state.errorCount > 0 && !scheduler.hasRunning())) {
             if (state.errorCount > 0) {
                 proceedTo(SubStage.ERROR);
+                return;
+            }
+
+            long criticalPathDurationMicros = scheduler.getCriticalPathDurationMicros()
+                    + (state.criticalPathDurationMicros != null
+                            ? state.criticalPathDurationMicros : 0);
+            if (allocate) {
+                proceedTo(SubStage.ALLOCATED, s -> {
+                    s.remainingCount = (long) state.resourceNodes.size();
+                    s.criticalPathDurationMicros = criticalPathDurationMicros;
+                });
             } else {
-                if (allocate) {
-                    proceedTo(SubStage.ALLOCATED, s -> {
-                        s.remainingCount = (long) state.resourceNodes.size();
-                    });
-                } else {
-                    proceedTo(SubStage.COMPLETED);
-                }
+                logInfo("Critical path duration of composition: %s ms",
+                        TimeUnit.MICROSECONDS.toMillis(criticalPathDurationMicros));
+                TaskStageMetrics.getInstance(getHost()).recordDuration(
+                        getClass().getSimpleName(), TaskStageMetrics.CRITICAL_PATH,
+                        criticalPathDurationMicros);
+                proceedTo(SubStage.COMPLETED, s -> {
+                    s.criticalPathDurationMicros = criticalPathDurationMicros;
+                });
             }
         } else {
             logFine("CompositeTask patched - remaining subTasks in progress : %s",
                     state.remainingCount);
+            if (allocate) {
+                createCompositionSubTasks(state, toStart);
+            } else {
+                patchSubTasksToExecute(toStart);
+            }
+        }
+    }
+
+    /**
+     * Returns the scheduler of the current phase. The scheduler is rebuilt from the completed
+     * subTasks if the task was restarted meanwhile, in which case the subTasks which were running
+     * are started again.
+     */
+    private CompositionScheduler getScheduler(CompositionTaskState state, boolean provisioning) {
+        CompositionScheduler current = this.scheduler;
+        if (current != null && this.provisioningScheduler == provisioning) {
+            return current;
+        }
+        synchronized (this) {
+            if (this.scheduler == null || this.provisioningScheduler != provisioning) {
+                Map<String, Set<String>> dependsOn = new HashMap<>();
+                state.resourceNodes.forEach((link, node) -> dependsOn.put(link,
+                        node.dependsOn == null ? Collections.emptySet()
+                                : node.dependsOn.stream()
+                                        .map(this::buildCompositionSubTaskLink)
+                                        .collect(Collectors.toSet())));
+                this.scheduler = new CompositionScheduler(dependsOn, MAX_CONCURRENT_COMPONENTS,
+                        Utils::getSystemNowMicrosUtc);
+                this.provisioningScheduler = provisioning;
+            }
+            return this.scheduler;
         }
     }
 
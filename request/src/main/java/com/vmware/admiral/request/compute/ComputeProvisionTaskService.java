@@ -407,6 +407,7 @@ public class ComputeProvisionTaskService extends
                 if (retryCount > WAIT_CONNECTION_RETRY_COUNT) {
                     callback.accept(er);
                 } else {
+                    recordRetry(SubStage.PROVISIONING_COMPUTE_COMPLETED);
                     getHost().schedule(() -> waitUntilConnectionValid(specValidateUri, spec,
                             retryCount + 1, callback), 10, TimeUnit.SECONDS);
                 }
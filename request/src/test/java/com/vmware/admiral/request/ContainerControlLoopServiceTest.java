@@ -13,6 +13,7 @@ package com.vmware.admiral.request;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -47,6 +48,9 @@ import com.vmware.photon.controller.model.query.QueryUtils.QueryByPages;
 import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.LocalizableValidationException;
 import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.services.common.QueryTask.Query.Builder;
 
@@ -60,6 +64,10 @@ public class ContainerControlLoopServiceTest extends RequestBaseTest {
     public static void beforeForDataCollection() throws Throwable {
         setFinalStatic(ContainerControlLoopService.class
                 .getDeclaredField("MAINTENANCE_INTERVAL_MICROS"), TimeUnit.SECONDS.toMicros(1));
+        setFinalStatic(ContainerControlLoopService.class
+                .getDeclaredField("RECONCILE_DELAY_MICROS"), TimeUnit.MILLISECONDS.toMicros(200));
+        setFinalStatic(ContainerControlLoopService.class
+                .getDeclaredField("RECONCILE_MIN_INTERVAL_MICROS"), TimeUnit.SECONDS.toMicros(3));
     }
 
     @After
@@ -286,6 +294,48 @@ public class ContainerControlLoopServiceTest extends RequestBaseTest {
         }
     }
 
+    @Test
+    public void testIncrementalReconcileRedeploysWithoutPatch() throws Throwable {
+        ContainerDescription cd = createContainerDescription(false);
+
+        ServerSocket serverSocket = new ServerSocket(0);
+        HealthConfig healthConfig = createHealthConfigTcp(serverSocket.getLocalPort());
+        healthConfig.autoredeploy = true;
+        cd.healthConfig = healthConfig;
+        cd.tenantLinks = resourcePool.tenantLinks;
+        doPut(cd);
+
+        try {
+            ContainerState state = provisionContainer(cd.documentSelfLink);
+            // the change of the container alone marks its description for reconciliation, the
+            // control loop is not patched and the full pass does not run in test mode
+            state.powerState = PowerState.ERROR;
+            doPut(state);
+
+            AtomicBoolean redeployed = new AtomicBoolean(false);
+            waitFor(() -> {
+                retrieveContainerStates(cd.documentSelfLink).thenAccept(containerStates -> {
+                    redeployed.set(containerStates.size() == 1
+                            && PowerState.RUNNING.equals(containerStates.get(0).powerState)
+                            && !state.documentSelfLink
+                                    .equals(containerStates.get(0).documentSelfLink));
+                });
+                return redeployed.get();
+            });
+
+            ServiceStats stats = getDocument(ServiceStats.class,
+                    ContainerControlLoopService.CONTROL_LOOP_INFO_LINK
+                            + ServiceHost.SERVICE_URI_SUFFIX_STATS);
+            ServiceStat reconciled = stats.entries
+                    .get(ContainerControlLoopService.STAT_NAME_RECONCILED_DESCRIPTIONS);
+            assertNotNull(reconciled);
+            assertTrue(reconciled.latestValue >= 1);
+            assertNull(stats.entries.get(ContainerControlLoopService.STAT_NAME_FULL_RESYNCS));
+        } finally {
+            serverSocket.close();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Ignore("https://jira-hzn.eng.vmware.com/browse/VBV-1427")
     @Test
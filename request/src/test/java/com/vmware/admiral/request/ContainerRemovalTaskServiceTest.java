@@ -22,6 +22,7 @@ import static com.vmware.admiral.common.ManagementUriParts.CLOSURES_CONTAINER_DE
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -29,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -38,6 +40,7 @@ import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.compute.ContainerHostService;
 import com.vmware.admiral.compute.ResourceType;
 import com.vmware.admiral.compute.container.CompositeComponentFactoryService;
+import com.vmware.admiral.compute.container.CompositeComponentService;
 import com.vmware.admiral.compute.container.CompositeComponentService.CompositeComponent;
 import com.vmware.admiral.compute.container.CompositeDescriptionService.CompositeDescription;
 import com.vmware.admiral.compute.container.ContainerDescriptionService;
@@ -47,7 +50,9 @@ import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationRequest;
 import com.vmware.admiral.compute.container.HostPortProfileService;
+import com.vmware.admiral.host.interceptor.OperationInterceptorRegistry;
 import com.vmware.admiral.request.ContainerRemovalTaskService.ContainerRemovalTaskState;
 import com.vmware.admiral.request.RequestBrokerService.RequestBrokerState;
 import com.vmware.admiral.request.util.TestRequestStateFactory;
@@ -55,14 +60,34 @@ import com.vmware.admiral.request.utils.RequestUtils;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
 import com.vmware.admiral.service.test.MockDockerAdapterService;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service.Action;
 import com.vmware.xenon.common.TaskState;
 import com.vmware.xenon.common.UriUtils;
 
 public class ContainerRemovalTaskServiceTest extends RequestBaseTest {
 
+    /** Links of the components removed by each removal PATCH to a composite component. */
+    private static final List<List<String>> COMPONENT_REMOVAL_PATCHES =
+            new CopyOnWriteArrayList<>();
+
     private RequestBrokerState request;
 
+    @Override
+    protected void registerInterceptors(OperationInterceptorRegistry registry) {
+        super.registerInterceptors(registry);
+        registry.addServiceInterceptor(CompositeComponentService.class, Action.PATCH,
+                (s, o) -> {
+                    String query = o.getUri().getQuery();
+                    if (query != null && query.contains(UriUtils.URI_PARAM_INCLUDE_DELETED)) {
+                        COMPONENT_REMOVAL_PATCHES.add(
+                                o.getBody(CompositeComponent.class).componentLinks);
+                    }
+                    return DeferredResult.completed(null);
+                });
+    }
+
     @Before
     @Override
     public void setUp() throws Throwable {
@@ -777,6 +802,73 @@ public class ContainerRemovalTaskServiceTest extends RequestBaseTest {
                 .noneMatch(p -> documentLink.equals(p.getValue())));
     }
 
+    @Test
+    public void testRemoveContainersOfSeveralHostsInBulk() throws Throwable {
+        ComputeState otherHost = createDockerHost(createDockerHostDescription(), resourcePool,
+                true);
+
+        CompositeComponent component = new CompositeComponent();
+        component.name = "test-name";
+        component = doPost(component, CompositeComponentFactoryService.SELF_LINK);
+
+        // containers of the same description and placement on two hosts
+        Set<String> containerLinks = new HashSet<>();
+        for (String hostLink : Arrays.asList(computeHost.documentSelfLink,
+                otherHost.documentSelfLink)) {
+            for (int i = 0; i < 2; i++) {
+                ContainerState container = TestRequestStateFactory.createContainer();
+                container.id = UUID.randomUUID().toString();
+                container.parentLink = hostLink;
+                container.descriptionLink = containerDesc.documentSelfLink;
+                container.adapterManagementReference = containerDesc.instanceAdapterReference;
+                container.compositeComponentLink = component.documentSelfLink;
+                container.groupResourcePlacementLink = groupPlacementState.documentSelfLink;
+                container = doPost(container, ContainerFactoryService.SELF_LINK);
+                containerLinks.add(container.documentSelfLink);
+            }
+        }
+        reserve(containerLinks.size(), containerDesc.documentSelfLink);
+        GroupResourcePlacementState placement = getDocument(GroupResourcePlacementState.class,
+                groupPlacementState.documentSelfLink);
+        assertEquals(containerLinks.size(), placement.allocatedInstancesCount);
+
+        COMPONENT_REMOVAL_PATCHES.clear();
+        RequestBrokerState removalRequest = new RequestBrokerState();
+        removalRequest.resourceType = ResourceType.CONTAINER_TYPE.getName();
+        removalRequest.resourceLinks = containerLinks;
+        removalRequest.operation = ContainerOperationType.DELETE.id;
+        removalRequest = startRequest(removalRequest);
+        waitForRequestToComplete(removalRequest);
+
+        assertTrue(findResourceLinks(ContainerState.class, containerLinks).isEmpty());
+
+        // the composite component is notified once of the removal of all its containers
+        List<String> componentLinks = Arrays.asList(component.documentSelfLink);
+        waitFor(() -> findResourceLinks(CompositeComponent.class, componentLinks).isEmpty());
+        assertEquals(1, COMPONENT_REMOVAL_PATCHES.size());
+        assertEquals(containerLinks, new HashSet<>(COMPONENT_REMOVAL_PATCHES.get(0)));
+
+        // the reservation of all the containers sharing the description is released
+        placement = getDocument(GroupResourcePlacementState.class,
+                groupPlacementState.documentSelfLink);
+        assertEquals(0, placement.allocatedInstancesCount);
+    }
+
+    private void reserve(long count, String descriptionLink) throws Throwable {
+        ResourcePlacementReservationRequest rsrvRequest = new ResourcePlacementReservationRequest();
+        rsrvRequest.resourceCount = count;
+        rsrvRequest.resourceDescriptionLink = descriptionLink;
+        // simulated caller from reservation task:
+        rsrvRequest.referer = ManagementUriParts.REQUEST_RESERVATION_TASKS;
+
+        host.testStart(1);
+        host.send(Operation
+                .createPatch(UriUtils.buildUri(host, groupPlacementState.documentSelfLink))
+                .setBody(rsrvRequest)
+                .setCompletion(host.getCompletion()));
+        host.testWait();
+    }
+
     private ContainerState createContainer(CompositeComponent component) throws Throwable {
         ContainerState container = TestRequestStateFactory.createContainer();
         container.descriptionLink = containerDesc.documentSelfLink;
@@ -78,6 +78,7 @@ import com.vmware.admiral.request.util.TestRequestStateFactory;
 import com.vmware.admiral.request.utils.RequestUtils;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationFactoryService;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationState;
+import com.vmware.admiral.service.common.CounterLatchService;
 import com.vmware.admiral.service.common.CounterSubTaskService;
 import com.vmware.admiral.service.common.RegistryService;
 import com.vmware.admiral.service.common.ResourceNamePrefixService;
@@ -223,6 +224,7 @@ public abstract class RequestBaseTest extends BaseTestCase {
                 ConfigurationFactoryService.SELF_LINK,
                 EventLogService.FACTORY_LINK,
                 CounterSubTaskService.FACTORY_LINK,
+                CounterLatchService.SELF_LINK,
                 ReservationAllocationTaskService.FACTORY_LINK,
                 HostPortProfileService.FACTORY_LINK,
                 ContainerControlLoopService.FACTORY_LINK));
@@ -152,6 +152,32 @@ public class BinpackAffinityHostFilterTest extends BaseAffinityHostFilterTest {
         assertNotNull(selected.get(thirdHost));
     }
 
+    @Test
+    public void testMinimalAvailableMemoryFromPlacementZone() throws Throwable {
+
+        String firstHost = initialHostLinks.get(0);
+        String secondHost = initialHostLinks.get(1);
+        String thirdHost = initialHostLinks.get(2);
+
+        Map<String, Long> hostToAvailableMem = new HashMap<>();
+        hostToAvailableMem.put(firstHost, 9000000000L); // 9GB
+        hostToAvailableMem.put(secondHost, 1000000000L); // 1GB
+        hostToAvailableMem.put(thirdHost, 5000000000L); // 5GB
+
+        setHostsStats(hostToAvailableMem);
+
+        // The placement zone lowers the minimal available memory to 500MB, so host-2 is still
+        // eligible.
+        updateEpzWithPlacementPolicy(500000000L);
+
+        filter = new BinpackAffinityHostFilter(host, containerDesc);
+
+        Map<String, HostSelection> selected = filter();
+
+        assertEquals(1, selected.size());
+        assertNotNull(selected.get(secondHost));
+    }
+
     private void setHostsStats(Map<String, Long> hostToAvailableMemory) throws Throwable {
         assertEquals(3, initialHostLinks.size());
         for (String host : initialHostLinks) {
@@ -179,11 +205,16 @@ public class BinpackAffinityHostFilterTest extends BaseAffinityHostFilterTest {
     }
 
     private void updateEpzWithPlacementPolicy() throws Throwable {
+        updateEpzWithPlacementPolicy(null);
+    }
+
+    private void updateEpzWithPlacementPolicy(Long minimalAvailableMemory) throws Throwable {
 
         // Create ElasticPlacementZoneState which follows BINPACK deployment policy.
         ElasticPlacementZoneState epzState = new ElasticPlacementZoneState();
         epzState.placementPolicy = ElasticPlacementZoneService.PlacementPolicy.BINPACK;
         epzState.resourcePoolLink = resourcePool.documentSelfLink;
+        epzState.binpackMinimalAvailableMemoryInBytes = minimalAvailableMemory;
 
         ElasticPlacementZoneConfigurationState epz = new ElasticPlacementZoneConfigurationState();
         epz.documentSelfLink = resourcePool.documentSelfLink;
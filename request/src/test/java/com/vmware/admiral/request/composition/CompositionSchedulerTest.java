@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request.composition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class CompositionSchedulerTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+
+    @Test
+    public void testStartsComponentsWhenDependenciesComplete() {
+        // db <- app <- lb, cache
+        Map<String, Set<String>> dependsOn = new HashMap<>();
+        dependsOn.put("db", Collections.emptySet());
+        dependsOn.put("cache", Collections.emptySet());
+        dependsOn.put("app", set("db"));
+        dependsOn.put("lb", set("app"));
+        CompositionScheduler scheduler = new CompositionScheduler(dependsOn, 10, now::get);
+
+        assertEquals(Arrays.asList("db", "cache"), scheduler.update(null, true));
+        // nothing new is ready yet
+        assertTrue(scheduler.update(null, true).isEmpty());
+
+        now.addAndGet(100);
+        assertEquals(Arrays.asList("app"), scheduler.update(set("cache", "db"), true));
+
+        now.addAndGet(50);
+        assertEquals(Arrays.asList("lb"), scheduler.update(set("cache", "db", "app"), true));
+
+        now.addAndGet(10);
+        assertTrue(scheduler.update(set("cache", "db", "app", "lb"), true).isEmpty());
+        assertTrue(scheduler.isCompleted());
+        assertFalse(scheduler.hasRunning());
+        assertEquals(160, scheduler.getCriticalPathDurationMicros());
+    }
+
+    @Test
+    public void testStartsCriticalPathFirstWithinLimit() {
+        Map<String, Set<String>> dependsOn = new HashMap<>();
+        dependsOn.put("a", Collections.emptySet());
+        dependsOn.put("b", Collections.emptySet());
+        dependsOn.put("c", Collections.emptySet());
+        dependsOn.put("c1", set("c"));
+        dependsOn.put("c2", set("c1"));
+        CompositionScheduler scheduler = new CompositionScheduler(dependsOn, 2, now::get);
+
+        List<String> started = scheduler.update(null, true);
+        assertEquals(Arrays.asList("c", "a"), started);
+
+        // a completes, which frees a slot for b
+        assertEquals(Arrays.asList("b"), scheduler.update(set("a"), true));
+        // c completes, c1 gets the slot
+        assertEquals(Arrays.asList("c1"), scheduler.update(set("a", "c"), true));
+    }
+
+    @Test
+    public void testStopsDispatchingOnFailure() {
+        Map<String, Set<String>> dependsOn = new HashMap<>();
+        dependsOn.put("a", Collections.emptySet());
+        dependsOn.put("b", set("a"));
+        CompositionScheduler scheduler = new CompositionScheduler(dependsOn, 2, now::get);
+
+        assertEquals(Arrays.asList("a"), scheduler.update(null, true));
+        assertTrue(scheduler.update(set("a"), false).isEmpty());
+        assertFalse(scheduler.hasRunning());
+        assertFalse(scheduler.isCompleted());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsCycles() {
+        Map<String, Set<String>> dependsOn = new HashMap<>();
+        dependsOn.put("a", set("b"));
+        dependsOn.put("b", set("a"));
+        new CompositionScheduler(dependsOn, 2, now::get);
+    }
+
+    private static Set<String> set(String... links) {
+        return new HashSet<>(Arrays.asList(links));
+    }
+}
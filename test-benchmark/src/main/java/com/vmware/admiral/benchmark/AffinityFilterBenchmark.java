@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.benchmark;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.admiral.compute.ElasticPlacementZoneService.PlacementPolicy;
+import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState;
+import com.vmware.admiral.request.allocation.filter.BinpackAffinityHostFilter;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
+import com.vmware.admiral.request.allocation.filter.SpreadAffinityHostFilter;
+import com.vmware.admiral.request.utils.RequestUtils;
+import com.vmware.xenon.common.test.TestContext;
+
+/**
+ * Measures a single pass of the placement policy affinity filters over a large number of
+ * candidate hosts with containers already placed on them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AffinityFilterBenchmark {
+
+    @Param({ "100", "1000" })
+    public int hostCount;
+
+    @Param({ "10" })
+    public int containersPerHost;
+
+    @Param({ "BINPACK", "SPREAD" })
+    public PlacementPolicy placementPolicy;
+
+    private BenchmarkEnvironment environment;
+    private HostSelectionFilter<PlacementHostSelectionTaskState> filter;
+    private PlacementHostSelectionTaskState state;
+    private Map<String, HostSelection> hostSelectionMap;
+
+    @Setup
+    public void setUp() throws Throwable {
+        environment = new BenchmarkEnvironment();
+        environment.start();
+        environment.setPlacementPolicy(placementPolicy);
+
+        List<String> hostLinks = environment.createDockerHosts(hostCount);
+        environment.createContainers(hostCount * containersPerHost, hostLinks);
+
+        Random random = new Random(0);
+        hostSelectionMap = new HashMap<>();
+        for (String hostLink : hostLinks) {
+            HostSelection hostSelection = new HostSelection();
+            hostSelection.hostLink = hostLink;
+            hostSelection.clusterStore = "";
+            hostSelection.resourcePoolLinks = Collections.singletonList(
+                    environment.getResourcePool().documentSelfLink);
+            hostSelection.availableMemory = (1 + random.nextInt(16)) * 1024L * 1024L * 1024L;
+            hostSelectionMap.put(hostLink, hostSelection);
+        }
+
+        state = new PlacementHostSelectionTaskState();
+        state.contextId = UUID.randomUUID().toString();
+        state.resourceCount = 1;
+        state.customProperties = new HashMap<>();
+        state.customProperties.put(RequestUtils.FIELD_NAME_CONTEXT_ID_KEY,
+                UUID.randomUUID().toString());
+        state.resourcePoolLinks = Collections.singletonList(
+                environment.getResourcePool().documentSelfLink);
+
+        if (placementPolicy == PlacementPolicy.BINPACK) {
+            filter = new BinpackAffinityHostFilter(environment.getHost(),
+                    environment.getContainerDescription());
+        } else {
+            filter = new SpreadAffinityHostFilter(environment.getHost(),
+                    environment.getContainerDescription());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        environment.stop();
+    }
+
+    @Benchmark
+    public Map<String, HostSelection> filter() throws Throwable {
+        AtomicReference<Map<String, HostSelection>> result = new AtomicReference<>();
+        TestContext ctx = BenchmarkEnvironment.testCreate(1);
+        filter.filter(state, new HashMap<>(hostSelectionMap), (filtered, e) -> {
+            if (e != null) {
+                ctx.failIteration(e);
+                return;
+            }
+            result.set(filtered);
+            ctx.completeIteration();
+        });
+        ctx.await();
+        return result.get();
+    }
+}
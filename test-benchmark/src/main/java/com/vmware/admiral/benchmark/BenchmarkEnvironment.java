@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService;
+import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService.ElasticPlacementZoneConfigurationState;
+import com.vmware.admiral.compute.ElasticPlacementZoneService.ElasticPlacementZoneState;
+import com.vmware.admiral.compute.ElasticPlacementZoneService.PlacementPolicy;
+import com.vmware.admiral.compute.container.ContainerDescriptionService;
+import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.ContainerFactoryService;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
+import com.vmware.admiral.request.RequestBaseTest;
+import com.vmware.admiral.request.RequestBrokerService.RequestBrokerState;
+import com.vmware.admiral.request.util.TestRequestStateFactory;
+import com.vmware.admiral.service.test.MockDockerAdapterService;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.test.TestContext;
+import com.vmware.xenon.common.test.VerificationHost;
+import com.vmware.xenon.services.common.QueryTask;
+
+/**
+ * In-process Admiral host with request, compute and mock adapter services started, the same way
+ * the request tests set it up, plus helpers to populate it with a large fleet of container hosts
+ * and containers. Used by the benchmarks and the fleet simulator.
+ */
+public class BenchmarkEnvironment extends RequestBaseTest {
+
+    private static final int POST_BATCH_SIZE = 100;
+
+    private final Random random = new Random(0);
+
+    private int placementCapacity = 10;
+
+    public VerificationHost getHost() {
+        return host;
+    }
+
+    public ResourcePoolState getResourcePool() {
+        return resourcePool;
+    }
+
+    public ContainerDescription getContainerDescription() {
+        return containerDesc;
+    }
+
+    public void setPlacementCapacity(int placementCapacity) {
+        this.placementCapacity = placementCapacity;
+    }
+
+    public void start() throws Throwable {
+        before();
+        setUp();
+    }
+
+    public void stop() throws Throwable {
+        if (host != null) {
+            after();
+        }
+    }
+
+    @Override
+    protected GroupResourcePlacementState createGroupResourcePlacement(
+            ResourcePoolState resourcePool) throws Throwable {
+        return createGroupResourcePlacement(resourcePool, placementCapacity);
+    }
+
+    @Override
+    protected ContainerDescription createContainerDescription() throws Throwable {
+        synchronized (initializationLock) {
+            if (containerDesc == null) {
+                ContainerDescription desc = TestRequestStateFactory.createContainerDescription();
+                desc.documentSelfLink = UUID.randomUUID().toString();
+                // many instances of the description are placed on the same hosts
+                desc.portBindings = null;
+                containerDesc = doPost(desc, ContainerDescriptionService.FACTORY_LINK);
+            }
+            return containerDesc;
+        }
+    }
+
+    /**
+     * Creates the given number of container hosts in the default resource pool, each with a
+     * random amount of available memory between 1GB and 16GB.
+     */
+    public List<String> createDockerHosts(int count) throws Throwable {
+        ComputeDescription hostDescription = createDockerHostDescription();
+        List<String> hostLinks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long availableMemory = (1 + random.nextInt(16)) * 1024L * 1024L * 1024L;
+            hostLinks.add(createDockerHost(hostDescription, createResourcePool(),
+                    availableMemory, true).documentSelfLink);
+        }
+        return hostLinks;
+    }
+
+    /**
+     * Creates the given number of running containers of the default description, distributed
+     * randomly over the given hosts. The containers are also registered in the mock docker
+     * adapter, as if they were provisioned.
+     */
+    public List<String> createContainers(int count, List<String> hostLinks) throws Throwable {
+        List<String> containerLinks = new ArrayList<>(count);
+        for (int created = 0; created < count; created += POST_BATCH_SIZE) {
+            int batchSize = Math.min(POST_BATCH_SIZE, count - created);
+            TestContext ctx = testCreate(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                ContainerState container = TestRequestStateFactory.createContainer();
+                container.id = UUID.randomUUID().toString();
+                container.documentSelfLink = container.id;
+                container.names = new ArrayList<>();
+                container.names.add("container-" + (created + i));
+                container.descriptionLink = containerDesc.documentSelfLink;
+                container.parentLink = hostLinks.get(random.nextInt(hostLinks.size()));
+                container.powerState = PowerState.RUNNING;
+                host.send(Operation.createPost(host, ContainerFactoryService.SELF_LINK)
+                        .setBody(container)
+                        .setReferer(host.getUri())
+                        .setCompletion((o, e) -> {
+                            if (e != null) {
+                                ctx.failIteration(e);
+                                return;
+                            }
+                            ContainerState body = o.getBody(ContainerState.class);
+                            synchronized (containerLinks) {
+                                containerLinks.add(body.documentSelfLink);
+                            }
+                            MockDockerAdapterService.addContainerId(
+                                    Service.getId(body.parentLink), body.id,
+                                    UriUtils.buildUri(host, body.documentSelfLink).toString());
+                            ctx.completeIteration();
+                        }));
+            }
+            ctx.await();
+        }
+        return containerLinks;
+    }
+
+    /**
+     * Iterates over all containers with {@link ServiceDocumentQuery}, using the given page size,
+     * and returns their number.
+     */
+    public long queryContainers(boolean expand, int pageSize) throws Throwable {
+        QueryTask q = QueryUtil.buildQuery(ContainerState.class, true);
+        if (expand) {
+            QueryUtil.addExpandOption(q);
+        }
+        q.querySpec.resultLimit = pageSize;
+
+        AtomicLong count = new AtomicLong();
+        TestContext ctx = testCreate(1);
+        new ServiceDocumentQuery<>(host, ContainerState.class).query(q, (r) -> {
+            if (r.hasException()) {
+                ctx.failIteration(r.getException());
+            } else if (r.hasResult()) {
+                count.incrementAndGet();
+            } else {
+                ctx.completeIteration();
+            }
+        });
+        ctx.await();
+        return count.get();
+    }
+
+    /**
+     * Makes the default resource pool an elastic placement zone with the given placement policy.
+     */
+    public void setPlacementPolicy(PlacementPolicy placementPolicy) throws Throwable {
+        ElasticPlacementZoneState epzState = new ElasticPlacementZoneState();
+        epzState.placementPolicy = placementPolicy;
+        epzState.resourcePoolLink = resourcePool.documentSelfLink;
+
+        ElasticPlacementZoneConfigurationState epz = new ElasticPlacementZoneConfigurationState();
+        epz.documentSelfLink = resourcePool.documentSelfLink;
+        epz.resourcePoolState = resourcePool;
+        epz.epzState = epzState;
+
+        doOperation(epz,
+                UriUtils.buildUri(host, ElasticPlacementZoneConfigurationService.SELF_LINK),
+                ElasticPlacementZoneConfigurationState.class, false, Action.PATCH);
+    }
+
+    /**
+     * Replaces the mock docker adapter started by default with the given one.
+     */
+    public void replaceDockerAdapter(MockDockerAdapterService adapter) throws Throwable {
+        TestContext ctx = testCreate(1);
+        host.send(Operation.createDelete(host, MockDockerAdapterService.SELF_LINK)
+                .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_NO_INDEX_UPDATE)
+                .setReplicationDisabled(true)
+                .setReferer(host.getUri())
+                .setCompletion(ctx.getCompletion()));
+        ctx.await();
+
+        host.startServiceAndWait(adapter, MockDockerAdapterService.SELF_LINK, null);
+    }
+
+    /**
+     * Submits a request for a single container of the default description.
+     */
+    public RequestBrokerState startContainerRequest() throws Throwable {
+        RequestBrokerState request = TestRequestStateFactory.createRequestState();
+        request.resourceDescriptionLink = containerDesc.documentSelfLink;
+        request.tenantLinks = groupPlacementState.tenantLinks;
+        return startRequest(request);
+    }
+
+    public RequestBrokerState waitForContainerRequest(RequestBrokerState request)
+            throws Throwable {
+        return waitForRequestToComplete(request);
+    }
+}
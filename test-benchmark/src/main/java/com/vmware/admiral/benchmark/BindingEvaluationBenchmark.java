@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.admiral.compute.BindingEvaluator;
+import com.vmware.admiral.compute.content.CompositeTemplate;
+import com.vmware.admiral.compute.content.CompositeTemplateUtil;
+
+/**
+ * Measures the parsing and the binding evaluation of generated composite templates, where every
+ * container is bound to the previous one, as done when a template is imported and provisioned.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BindingEvaluationBenchmark {
+
+    @Param({ "10", "100" })
+    public int componentCount;
+
+    private String compositeTemplateYaml;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("---\nname: \"bindings-benchmark\"\ncomponents:\n");
+        for (int i = 0; i < componentCount; i++) {
+            sb.append("  c").append(i).append(":\n");
+            sb.append("    type: \"App.Container\"\n");
+            sb.append("    data:\n");
+            sb.append("      name: \"c").append(i).append("\"\n");
+            if (i == 0) {
+                sb.append("      image: \"registry.hub.docker.com/library/nginx:latest\"\n");
+                sb.append("      _cluster: 2\n");
+                sb.append("      restart_policy: \"always\"\n");
+            } else {
+                sb.append("      image: ${c").append(i - 1).append("~image}\n");
+                sb.append("      _cluster: ${c").append(i - 1).append("~_cluster}\n");
+                sb.append("      restart_policy: ${c").append(i - 1)
+                        .append("~restart_policy}\n");
+                sb.append("      env:\n");
+                sb.append("      - var: \"UPSTREAM_HOST\"\n");
+                sb.append("        value: \"${_resource~c").append(i - 1)
+                        .append("~address}\"\n");
+            }
+        }
+        compositeTemplateYaml = sb.toString();
+    }
+
+    @Benchmark
+    public CompositeTemplate deserializeCompositeTemplate() throws Exception {
+        return CompositeTemplateUtil.deserializeCompositeTemplate(compositeTemplateYaml);
+    }
+
+    @Benchmark
+    public CompositeTemplate evaluateBindings() throws Exception {
+        CompositeTemplate template = CompositeTemplateUtil
+                .deserializeCompositeTemplate(compositeTemplateYaml);
+        BindingEvaluator.evaluateBindings(template);
+        return template;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.admiral.common.util.FileUtil;
+import com.vmware.admiral.compute.content.CompositeTemplate;
+import com.vmware.admiral.compute.content.CompositeTemplateUtil;
+import com.vmware.admiral.compute.content.CompositeTemplateUtil.YamlType;
+import com.vmware.admiral.compute.content.compose.DockerCompose;
+
+/**
+ * Measures the parsing of templates as done on import, using the sample templates of the compute
+ * tests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CompositeTemplateParsingBenchmark {
+
+    @Param({ "composite.simple.yaml", "composite.wordpress.yaml", "composite.complex.yaml" })
+    public String compositeTemplate;
+
+    @Param({ "docker.complex.yaml" })
+    public String dockerCompose;
+
+    private String compositeTemplateYaml;
+    private String dockerComposeYaml;
+
+    @Setup
+    public void setUp() {
+        compositeTemplateYaml = FileUtil.getResourceAsString("/compose/" + compositeTemplate,
+                true);
+        dockerComposeYaml = FileUtil.getResourceAsString("/compose/" + dockerCompose, true);
+    }
+
+    @Benchmark
+    public YamlType getYamlType() throws Exception {
+        return CompositeTemplateUtil.getYamlType(compositeTemplateYaml);
+    }
+
+    @Benchmark
+    public CompositeTemplate deserializeCompositeTemplate() throws Exception {
+        return CompositeTemplateUtil.deserializeCompositeTemplate(compositeTemplateYaml);
+    }
+
+    @Benchmark
+    public CompositeTemplate convertDockerCompose() throws Exception {
+        DockerCompose compose = CompositeTemplateUtil.deserializeDockerCompose(dockerComposeYaml);
+        return CompositeTemplateUtil.fromDockerComposeToCompositeTemplate(compose);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.admiral.compute.container.maintenance.ContainerStats;
+import com.vmware.admiral.compute.container.maintenance.ContainerStatsEvaluator;
+
+/**
+ * Measures the parsing of the raw docker stats payload which is done for every container on
+ * every stats collection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ContainerStatsEvaluatorBenchmark {
+
+    @Param({ "2", "32" })
+    public int cpuCount;
+
+    @Param({ "1", "8" })
+    public int networkCount;
+
+    private String statsJson;
+
+    @Setup
+    public void setUp() {
+        JsonObject stats = new JsonObject();
+
+        JsonObject cpuStats = new JsonObject();
+        cpuStats.addProperty("system_cpu_usage", 684753090000000L);
+        JsonObject cpuUsage = new JsonObject();
+        cpuUsage.addProperty("total_usage", 257301730000000L);
+        JsonArray perCpuUsage = new JsonArray();
+        for (int i = 0; i < cpuCount; i++) {
+            perCpuUsage.add(new JsonPrimitive(257301730000000L / cpuCount));
+        }
+        cpuUsage.add("percpu_usage", perCpuUsage);
+        cpuStats.add("cpu_usage", cpuUsage);
+        stats.add("cpu_stats", cpuStats);
+
+        JsonObject preCpuStats = new JsonObject();
+        preCpuStats.addProperty("system_cpu_usage", 484235090000000L);
+        JsonObject preCpuUsage = new JsonObject();
+        preCpuUsage.addProperty("total_usage", 227305640000000L);
+        preCpuStats.add("cpu_usage", preCpuUsage);
+        stats.add("precpu_stats", preCpuStats);
+
+        JsonObject memoryStats = new JsonObject();
+        memoryStats.addProperty("usage", 3042080);
+        memoryStats.addProperty("limit", 5000000);
+        stats.add("memory_stats", memoryStats);
+
+        JsonObject networks = new JsonObject();
+        for (int i = 0; i < networkCount; i++) {
+            JsonObject iface = new JsonObject();
+            iface.addProperty("rx_bytes", 34887);
+            iface.addProperty("tx_bytes", 579367);
+            networks.add("eth" + i, iface);
+        }
+        stats.add("networks", networks);
+
+        statsJson = stats.toString();
+    }
+
+    @Benchmark
+    public ContainerStats calculateStatsValues() {
+        return ContainerStatsEvaluator.calculateStatsValues(statsJson);
+    }
+}
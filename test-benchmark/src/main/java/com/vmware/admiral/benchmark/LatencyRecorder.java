@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latencies of the operations of a simulation phase and summarizes them as
+ * throughput and latency percentiles.
+ */
+public class LatencyRecorder {
+
+    /**
+     * Summary of a simulation phase, serialized as part of the simulation report.
+     */
+    public static class PhaseReport {
+        public String name;
+        public long operations;
+        public long errors;
+        public double durationSeconds;
+        public double throughputPerSecond;
+        public double meanMillis;
+        public double p50Millis;
+        public double p90Millis;
+        public double p99Millis;
+        public double maxMillis;
+    }
+
+    private final String name;
+    private long[] latenciesNanos = new long[1024];
+    private int count;
+    private long errors;
+    private long startNanos = -1;
+    private long endNanos = -1;
+
+    public LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    public synchronized void start(long nowNanos) {
+        startNanos = nowNanos;
+    }
+
+    public synchronized void stop(long nowNanos) {
+        endNanos = nowNanos;
+    }
+
+    public synchronized void record(long latencyNanos) {
+        if (count == latenciesNanos.length) {
+            latenciesNanos = Arrays.copyOf(latenciesNanos, count * 2);
+        }
+        latenciesNanos[count++] = latencyNanos;
+    }
+
+    public synchronized void recordError() {
+        errors++;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the latency below which the given percentage of the recorded operations fall,
+     * using the nearest-rank method, or 0 if nothing was recorded.
+     */
+    public synchronized long getPercentileNanos(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latenciesNanos, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.max(0, Math.min(count, rank) - 1)];
+    }
+
+    public synchronized PhaseReport getReport() {
+        PhaseReport report = new PhaseReport();
+        report.name = name;
+        report.operations = count;
+        report.errors = errors;
+
+        long durationNanos = startNanos >= 0 && endNanos >= startNanos ? endNanos - startNanos : 0;
+        report.durationSeconds = durationNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        report.throughputPerSecond = durationNanos > 0 ? count / report.durationSeconds : 0;
+
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += latenciesNanos[i];
+        }
+        report.meanMillis = count > 0 ? toMillis(total / count) : 0;
+        report.p50Millis = toMillis(getPercentileNanos(50));
+        report.p90Millis = toMillis(getPercentileNanos(90));
+        report.p99Millis = toMillis(getPercentileNanos(99));
+        report.maxMillis = toMillis(getPercentileNanos(100));
+        return report;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
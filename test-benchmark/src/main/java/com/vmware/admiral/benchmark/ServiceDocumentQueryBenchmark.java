@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures iterating over all containers of a large fleet with a paged query, with and without
+ * expanding the documents, for different page sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ServiceDocumentQueryBenchmark {
+
+    @Param({ "100" })
+    public int hostCount;
+
+    @Param({ "1000", "10000" })
+    public int containerCount;
+
+    @Param({ "100", "1000" })
+    public int pageSize;
+
+    private BenchmarkEnvironment environment;
+
+    @Setup
+    public void setUp() throws Throwable {
+        environment = new BenchmarkEnvironment();
+        environment.start();
+        environment.createContainers(containerCount, environment.createDockerHosts(hostCount));
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        environment.stop();
+    }
+
+    @Benchmark
+    public long queryLinks() throws Throwable {
+        return environment.queryContainers(false, pageSize);
+    }
+
+    @Benchmark
+    public long queryExpanded() throws Throwable {
+        return environment.queryContainers(true, pageSize);
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.benchmark.simulator;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vmware.admiral.benchmark.BenchmarkEnvironment;
+import com.vmware.admiral.benchmark.LatencyRecorder;
+import com.vmware.admiral.benchmark.LatencyRecorder.PhaseReport;
+import com.vmware.admiral.request.RequestBrokerService.RequestBrokerState;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Simulates a large fleet of container hosts and containers in process and reports the
+ * throughput and latency percentiles of seeding the fleet, provisioning requests and container
+ * queries as JSON. The docker hosts are emulated by {@link SimulatedDockerAdapterService} with
+ * configurable latency and churn.
+ *
+ * The simulation is configured with system properties, for example:
+ *
+ * <pre>
+ * java -Dadmiral.simulator.host.count=1000 -Dadmiral.simulator.container.count=20000 \
+ *      -Dadmiral.simulator.report.file=target/simulation.json \
+ *      -cp target/benchmarks.jar com.vmware.admiral.benchmark.simulator.FleetSimulator
+ * </pre>
+ */
+public class FleetSimulator {
+
+    private static final int HOST_COUNT = Integer.getInteger(
+            "admiral.simulator.host.count", 1000);
+    private static final int CONTAINER_COUNT = Integer.getInteger(
+            "admiral.simulator.container.count", 10000);
+    private static final int REQUEST_COUNT = Integer.getInteger(
+            "admiral.simulator.request.count", 200);
+    private static final int QUERY_COUNT = Integer.getInteger(
+            "admiral.simulator.query.count", 20);
+    private static final int QUERY_PAGE_SIZE = Integer.getInteger(
+            "admiral.simulator.query.page.size", 1000);
+    private static final int CONCURRENCY = Integer.getInteger(
+            "admiral.simulator.concurrency", 10);
+    private static final long ADAPTER_LATENCY_MILLIS = Long.getLong(
+            "admiral.simulator.adapter.latency.millis", 50);
+    private static final long ADAPTER_LATENCY_JITTER_MILLIS = Long.getLong(
+            "admiral.simulator.adapter.latency.jitter.millis", 50);
+    private static final int CHURN_PER_SECOND = Integer.getInteger(
+            "admiral.simulator.churn.per.second", 20);
+    private static final String REPORT_FILE = System.getProperty(
+            "admiral.simulator.report.file");
+
+    private static final int SEED_BATCH_SIZE = 100;
+
+    /**
+     * Machine readable result of a simulation.
+     */
+    public static class SimulationReport {
+        public int hostCount;
+        public int containerCount;
+        public int concurrency;
+        public long adapterLatencyMillis;
+        public long adapterLatencyJitterMillis;
+        public int churnPerSecond;
+        public long adapterRequests;
+        public List<PhaseReport> phases = new ArrayList<>();
+    }
+
+    @FunctionalInterface
+    private interface SimulatedOperation {
+        void run() throws Throwable;
+    }
+
+    private final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    private final SimulatedDockerAdapterService adapter = new SimulatedDockerAdapterService(
+            ADAPTER_LATENCY_MILLIS, ADAPTER_LATENCY_JITTER_MILLIS);
+    private final List<String> hostLinks = new ArrayList<>();
+    private final List<String> containerLinks = new ArrayList<>();
+
+    public static void main(String[] args) throws Throwable {
+        SimulationReport report = new FleetSimulator().run();
+
+        String json = Utils.toJsonHtml(report);
+        System.out.println(json);
+        if (REPORT_FILE != null) {
+            Files.write(new File(REPORT_FILE).toPath(), json.getBytes(StandardCharsets.UTF_8));
+        }
+        System.exit(0);
+    }
+
+    public SimulationReport run() throws Throwable {
+        SimulationReport report = new SimulationReport();
+        report.hostCount = HOST_COUNT;
+        report.containerCount = CONTAINER_COUNT;
+        report.concurrency = CONCURRENCY;
+        report.adapterLatencyMillis = ADAPTER_LATENCY_MILLIS;
+        report.adapterLatencyJitterMillis = ADAPTER_LATENCY_JITTER_MILLIS;
+        report.churnPerSecond = CHURN_PER_SECOND;
+
+        environment.setPlacementCapacity(CONTAINER_COUNT + REQUEST_COUNT);
+        environment.start();
+        ScheduledExecutorService churnExecutor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            environment.replaceDockerAdapter(adapter);
+
+            report.phases.add(seedHosts());
+            report.phases.add(seedContainers());
+
+            if (CHURN_PER_SECOND > 0) {
+                churnExecutor.scheduleAtFixedRate(
+                        () -> adapter.simulateChurn(hostLinks, containerLinks, CHURN_PER_SECOND),
+                        1, 1, TimeUnit.SECONDS);
+            }
+
+            report.phases.add(runConcurrently("provision-container", REQUEST_COUNT, () -> {
+                RequestBrokerState request = environment.startContainerRequest();
+                environment.waitForContainerRequest(request);
+            }));
+            report.phases.add(runConcurrently("query-containers", QUERY_COUNT,
+                    () -> environment.queryContainers(true, QUERY_PAGE_SIZE)));
+
+            report.adapterRequests = adapter.getRequestCount();
+        } finally {
+            churnExecutor.shutdownNow();
+            environment.stop();
+        }
+        return report;
+    }
+
+    /**
+     * Creates the container hosts one by one and records the latency of each creation.
+     */
+    private PhaseReport seedHosts() throws Throwable {
+        LatencyRecorder recorder = new LatencyRecorder("seed-hosts");
+        recorder.start(System.nanoTime());
+        for (int i = 0; i < HOST_COUNT; i++) {
+            long start = System.nanoTime();
+            hostLinks.addAll(environment.createDockerHosts(1));
+            recorder.record(System.nanoTime() - start);
+        }
+        recorder.stop(System.nanoTime());
+        return recorder.getReport();
+    }
+
+    /**
+     * Creates the containers in parallel batches and records the latency of each batch.
+     */
+    private PhaseReport seedContainers() throws Throwable {
+        LatencyRecorder recorder = new LatencyRecorder(
+                "seed-containers-batch-" + SEED_BATCH_SIZE);
+        recorder.start(System.nanoTime());
+        for (int created = 0; created < CONTAINER_COUNT; created += SEED_BATCH_SIZE) {
+            long start = System.nanoTime();
+            containerLinks.addAll(environment.createContainers(
+                    Math.min(SEED_BATCH_SIZE, CONTAINER_COUNT - created), hostLinks));
+            recorder.record(System.nanoTime() - start);
+        }
+        recorder.stop(System.nanoTime());
+        return recorder.getReport();
+    }
+
+    /**
+     * Runs the operation the given number of times from {@link #CONCURRENCY} threads and records
+     * the latency of each run.
+     */
+    private PhaseReport runConcurrently(String name, int count, SimulatedOperation operation)
+            throws Throwable {
+        LatencyRecorder recorder = new LatencyRecorder(name);
+        AtomicInteger remaining = new AtomicInteger(count);
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+        try {
+            recorder.start(System.nanoTime());
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CONCURRENCY; i++) {
+                futures.add(executor.submit(() -> {
+                    while (remaining.getAndDecrement() > 0) {
+                        long start = System.nanoTime();
+                        try {
+                            operation.run();
+                            recorder.record(System.nanoTime() - start);
+                        } catch (Throwable e) {
+                            recorder.recordError();
+                            environment.getHost().log("%s failed: %s", name, e.getMessage());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            recorder.stop(System.nanoTime());
+        } finally {
+            executor.shutdownNow();
+        }
+        return recorder.getReport();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.benchmark.simulator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
+import com.vmware.admiral.service.test.MockDockerAdapterService;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+
+/**
+ * Mock docker adapter which emulates the latency of real docker hosts and changes done on the
+ * hosts outside of Admiral, so that a large fleet can be simulated in process.
+ */
+public class SimulatedDockerAdapterService extends MockDockerAdapterService {
+
+    private static final String UNMANAGED_CONTAINER_IMAGE = "simulated/unmanaged:latest";
+
+    private final long latencyMillis;
+    private final long latencyJitterMillis;
+    private final Random random = new Random(0);
+
+    /** Host id and container id of the containers created on the hosts outside of Admiral. */
+    private final Deque<String[]> unmanagedContainers = new ArrayDeque<>();
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    public SimulatedDockerAdapterService(long latencyMillis, long latencyJitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = latencyJitterMillis;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    @Override
+    public void handleRequest(Operation op) {
+        if (op.getAction() != Action.PATCH) {
+            super.handleRequest(op);
+            return;
+        }
+
+        requestCount.incrementAndGet();
+        long delay = latencyMillis;
+        if (latencyJitterMillis > 0) {
+            delay += ThreadLocalRandom.current().nextLong(latencyJitterMillis);
+        }
+        if (delay <= 0) {
+            super.handleRequest(op);
+            return;
+        }
+        getHost().schedule(() -> super.handleRequest(op), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Simulates changes done on the hosts outside of Admiral: half of the given number of
+     * changes are containers created or removed directly on the hosts, the other half are
+     * managed containers which were stopped or started.
+     */
+    public synchronized void simulateChurn(List<String> hostLinks, List<String> containerLinks,
+            int changes) {
+        for (int i = 0; i < changes / 2; i++) {
+            if (!unmanagedContainers.isEmpty() && random.nextBoolean()) {
+                String[] removed = unmanagedContainers.poll();
+                removeContainerId(removed[0], removed[1]);
+            } else {
+                String hostId = Service.getId(hostLinks.get(random.nextInt(hostLinks.size())));
+                String containerId = UUID.randomUUID().toString();
+                addContainerId(hostId, containerId, "");
+                addContainerNames(hostId, containerId, "unmanaged-" + containerId);
+                addContainerImage(hostId, containerId, UNMANAGED_CONTAINER_IMAGE);
+                unmanagedContainers.add(new String[] { hostId, containerId });
+            }
+        }
+
+        for (int i = 0; i < changes - changes / 2 && !containerLinks.isEmpty(); i++) {
+            ContainerState patch = new ContainerState();
+            patch.powerState = random.nextBoolean() ? PowerState.STOPPED : PowerState.RUNNING;
+            sendRequest(Operation
+                    .createPatch(this, containerLinks.get(random.nextInt(containerLinks.size())))
+                    .setBody(patch)
+                    .setCompletion((o, e) -> {
+                        if (e != null) {
+                            logWarning("Simulated power state change failed: %s",
+                                    e.getMessage());
+                        }
+                    }));
+        }
+    }
+}
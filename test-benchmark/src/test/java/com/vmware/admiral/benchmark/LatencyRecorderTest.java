@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.benchmark;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.vmware.admiral.benchmark.LatencyRecorder.PhaseReport;
+
+public class LatencyRecorderTest {
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    public void testPercentiles() {
+        LatencyRecorder recorder = new LatencyRecorder("test");
+        // record 100..1 ms in reverse order to verify the values are sorted
+        for (int i = 100; i > 0; i--) {
+            recorder.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals(100, recorder.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), recorder.getPercentileNanos(50));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(99), recorder.getPercentileNanos(99));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), recorder.getPercentileNanos(100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), recorder.getPercentileNanos(0));
+    }
+
+    @Test
+    public void testReport() {
+        LatencyRecorder recorder = new LatencyRecorder("provision");
+        recorder.start(0);
+        recorder.record(TimeUnit.MILLISECONDS.toNanos(10));
+        recorder.record(TimeUnit.MILLISECONDS.toNanos(30));
+        recorder.recordError();
+        recorder.stop(TimeUnit.SECONDS.toNanos(2));
+
+        PhaseReport report = recorder.getReport();
+        assertEquals("provision", report.name);
+        assertEquals(2, report.operations);
+        assertEquals(1, report.errors);
+        assertEquals(2, report.durationSeconds, DELTA);
+        assertEquals(1, report.throughputPerSecond, DELTA);
+        assertEquals(20, report.meanMillis, DELTA);
+        assertEquals(10, report.p50Millis, DELTA);
+        assertEquals(30, report.maxMillis, DELTA);
+    }
+
+    @Test
+    public void testEmptyReport() {
+        PhaseReport report = new LatencyRecorder("empty").getReport();
+        assertEquals(0, report.operations);
+        assertEquals(0, report.throughputPerSecond, DELTA);
+        assertEquals(0, report.p99Millis, DELTA);
+    }
+}